@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+import com.rhymestore.event.EventBus;
+import com.rhymestore.store.DefaultRhymesLoader;
+import com.rhymestore.store.RhymeStore;
+import com.rhymestore.twitter.TwitterAccounts;
+import com.rhymestore.web.async.AsyncApiServer;
+import com.rhymestore.web.async.EventStreamHandler;
+import com.rhymestore.web.async.HealthHandler;
+import com.rhymestore.web.async.RhymeLookupService;
+
+/**
+ * Runs the rhyme API and the Twitter bot without a servlet container.
+ * <p>
+ * The API and the bot start serving immediately, while the default rhymes are loaded in the
+ * background. The health check reports when the load has finished. Usage:
+ * 
+ * <pre>
+ * java -jar rhymestore-standalone.jar [--port &lt;port&gt;] [--no-twitter]
+ * </pre>
+ * 
+ * @author Ignasi Barrera
+ * @see AsyncApiServer
+ * @see HealthHandler
+ * @see EventStreamHandler
+ */
+public class Launcher
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(Launcher.class);
+
+    /** The port used if none is configured. */
+    public static final int DEFAULT_PORT = 8080;
+
+    /** The port of the HTTP API. */
+    private final int port;
+
+    /** Indicates if the Twitter accounts must be run. */
+    private final boolean twitterEnabled;
+
+    /** Loads the default rhymes in the background. */
+    private DefaultRhymesLoader defaultRhymes;
+
+    /** The HTTP API. */
+    private AsyncApiServer server;
+
+    /** Streams the events of the store and the bot. */
+    private EventStreamHandler eventStream;
+
+    /** The Twitter API call schedulers of the configured accounts. */
+    private TwitterAccounts twitterAccounts;
+
+    /**
+     * Creates a new {@link Launcher}.
+     * 
+     * @param port The port of the HTTP API. Use <code>0</code> to choose any free port.
+     * @param twitterEnabled Indicates if the Twitter accounts must be run.
+     */
+    public Launcher(final int port, final boolean twitterEnabled)
+    {
+        super();
+        this.port = port;
+        this.twitterEnabled = twitterEnabled;
+    }
+
+    /**
+     * Starts the API and the Twitter bot, and starts loading the default rhymes.
+     * 
+     * @throws IOException If the HTTP API cannot be started.
+     */
+    public void start() throws IOException
+    {
+        defaultRhymes = new DefaultRhymesLoader();
+        defaultRhymes.start();
+
+        server = new AsyncApiServer(port, new RhymeLookupService(RhymeStore.getInstance()));
+        server.createContext(HealthHandler.HEALTH_PATH, new HealthHandler(defaultRhymes));
+        eventStream = new EventStreamHandler(EventBus.getInstance());
+        server.createContext(EventStreamHandler.EVENTS_PATH, eventStream);
+        server.start();
+
+        if (twitterEnabled)
+        {
+            twitterAccounts = new TwitterAccounts();
+            twitterAccounts.start();
+        }
+    }
+
+    /**
+     * Stops the API and the Twitter bot.
+     */
+    public void shutdown()
+    {
+        if (server != null)
+        {
+            eventStream.shutdown();
+            server.shutdown();
+        }
+
+        if (twitterAccounts != null)
+        {
+            twitterAccounts.shutdown();
+        }
+    }
+
+    /**
+     * Gets the port of the HTTP API.
+     * 
+     * @return The port of the HTTP API, once started.
+     */
+    public int getPort()
+    {
+        return server.getPort();
+    }
+
+    /**
+     * Starts the standalone server.
+     * 
+     * @param args The command line arguments.
+     * @throws IOException If the HTTP API cannot be started.
+     */
+    public static void main(final String... args) throws IOException
+    {
+        long begin = System.currentTimeMillis();
+        int port = getConfiguredPort();
+        boolean twitterEnabled = true;
+
+        for (int i = 0; i < args.length; i++)
+        {
+            if ("--no-twitter".equals(args[i]))
+            {
+                twitterEnabled = false;
+            }
+            else if ("--port".equals(args[i]) && i + 1 < args.length)
+            {
+                port = parsePort(args[++i]);
+            }
+            else
+            {
+                throw new IllegalArgumentException(
+                    "Usage: Launcher [--port <port>] [--no-twitter]");
+            }
+        }
+
+        final Launcher launcher = new Launcher(port, twitterEnabled);
+
+        Runtime.getRuntime().addShutdownHook(new Thread("shutdown")
+        {
+            @Override
+            public void run()
+            {
+                LOGGER.info("Shutting down");
+                launcher.shutdown();
+            }
+        });
+
+        launcher.start();
+
+        LOGGER.info("Rhymestore started in {} ms", System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * Gets the configured port of the HTTP API.
+     * 
+     * @return The configured port, or {@link #DEFAULT_PORT} if none is configured.
+     */
+    private static int getConfiguredPort()
+    {
+        String value = Configuration.getConfigValue(Configuration.ASYNC_API_PORT_PROPERTY);
+        return value == null ? DEFAULT_PORT : parsePort(value);
+    }
+
+    /**
+     * Parses the given port.
+     * 
+     * @param value The port to parse.
+     * @return The port.
+     * @throws ConfigurationException If the port is not valid.
+     */
+    private static int parsePort(final String value)
+    {
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new ConfigurationException("Invalid port: " + value);
+        }
+    }
+}
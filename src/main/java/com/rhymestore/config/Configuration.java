@@ -54,11 +54,41 @@ public class Configuration
     /** Name of the property that holds the default rhymes to use. */
     public static final String DEFAULT_RHYME_PROPERTY = "rhymestore.wordparser.default";
 
+    /** Name of the property that holds the weights of the default rhymes. */
+    public static final String DEFAULT_RHYME_WEIGHT_PROPERTY = "rhymestore.wordparser.weight";
+
+    /** Name of the property that holds the strategy used to choose the default rhymes. */
+    public static final String DEFAULT_RHYME_STRATEGY_PROPERTY = "rhymestore.wordparser.strategy";
+
     /** Name of the property that holds the default rhymes URI. */
     public static final String DEFAULT_RHYMES_URI_PROPERTY = "rhymestore.store.rhymes.defaulturi";
 
+    /** Name of the property that holds the number of threads used to prepare the replies. */
+    public static final String TWITTER_WORKERS_PROPERTY = "rhymestore.twitter.workers";
+
+    /** Name of the property that holds the path of the journal with the pending replies. */
+    public static final String TWITTER_JOURNAL_PROPERTY = "rhymestore.twitter.journal";
+
+    /** Name of the property that enables receiving the mentions through the streaming API. */
+    public static final String TWITTER_STREAMING_PROPERTY = "rhymestore.twitter.streaming";
+
+    /** Name of the property that holds the names of the Twitter accounts to run. */
+    public static final String TWITTER_ACCOUNTS_PROPERTY = "rhymestore.twitter.accounts";
+
+    /** Prefix of the properties that hold the access token of each Twitter account. */
+    public static final String TWITTER_TOKEN_PROPERTY = "rhymestore.twitter.token.";
+
+    /** Prefix of the properties that hold the access token secret of each Twitter account. */
+    public static final String TWITTER_TOKEN_SECRET_PROPERTY = "rhymestore.twitter.secret.";
+
+    /** Name of the property that enables running the Twitter accounts in several nodes. */
+    public static final String TWITTER_CLUSTER_PROPERTY = "rhymestore.twitter.cluster";
+
+    /** Name of the property with the port of the asynchronous rhyme API. */
+    public static final String ASYNC_API_PORT_PROPERTY = "rhymestore.api.async.port";
+
     /** The singleton instance of the configuration object. */
-    private static Configuration instance;
+    private static volatile Configuration instance;
 
     /** The configuration properties. */
     private Properties properties;
@@ -78,30 +108,68 @@ public class Configuration
      */
     public static Properties getConfiguration()
     {
-        if (instance == null)
+        Configuration current = instance;
+
+        if (current == null)
         {
-            instance = new Configuration();
+            synchronized (Configuration.class)
+            {
+                current = instance;
+                if (current == null)
+                {
+                    current = load();
+                    instance = current;
+                }
+            }
+        }
 
-            LOGGER.debug("Loading configuration from {}", CONFIG_FILE);
+        return current.properties;
+    }
 
-            // Load properties
-            ClassLoader cl = Thread.currentThread().getContextClassLoader();
-            instance.properties = new Properties();
+    /**
+     * Reloads the configuration properties from the configuration file.
+     * <p>
+     * Threads reading the configuration while it is being reloaded will keep reading the previous
+     * values until the new ones are loaded.
+     * 
+     * @return The reloaded configuration properties.
+     */
+    public static Properties reload()
+    {
+        Configuration reloaded = load();
+        instance = reloaded;
 
-            try
-            {
-                instance.properties.load(cl.getResourceAsStream(CONFIG_FILE));
-            }
-            catch (Exception ex)
-            {
-                throw new ConfigurationException("Could not load configuration file: "
-                    + ex.getMessage());
-            }
+        return reloaded.properties;
+    }
 
-            LOGGER.debug("Loaded {} configuration properties", instance.properties.size());
+    /**
+     * Loads the configuration properties from the configuration file.
+     * 
+     * @return The loaded configuration.
+     */
+    private static Configuration load()
+    {
+        Configuration config = new Configuration();
+
+        LOGGER.debug("Loading configuration from {}", CONFIG_FILE);
+
+        // Load properties
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        config.properties = new Properties();
+
+        try
+        {
+            config.properties.load(cl.getResourceAsStream(CONFIG_FILE));
+        }
+        catch (Exception ex)
+        {
+            throw new ConfigurationException("Could not load configuration file: "
+                + ex.getMessage());
         }
 
-        return instance.properties;
+        LOGGER.debug("Loaded {} configuration properties", config.properties.size());
+
+        return config;
     }
 
     /**
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.event;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.rhymestore.util.JsonWriter;
+
+/**
+ * A change in the store or an action of the bot, published in the {@link EventBus}.
+ * 
+ * @author Ignasi Barrera
+ * @see EventBus
+ */
+public class Event
+{
+    /**
+     * The type of the event.
+     * 
+     * @author Ignasi Barrera
+     */
+    public static enum Type
+    {
+        /** A rhyme has been added to the store. */
+        ADDED,
+
+        /** A rhyme has been deleted from the store. */
+        DELETED,
+
+        /** The bot has replied a mention. */
+        REPLIED
+    }
+
+    /** The sequence number of the event. */
+    private final long id;
+
+    /** The type of the event. */
+    private final Type type;
+
+    /** The time of the event. */
+    private final long time;
+
+    /** The properties of the event. */
+    private final Map<String, String> data;
+
+    /**
+     * Creates a new {@link Event}.
+     * 
+     * @param id The sequence number of the event.
+     * @param type The type of the event.
+     * @param time The time of the event.
+     * @param data The properties of the event.
+     */
+    public Event(final long id, final Type type, final long time, final Map<String, String> data)
+    {
+        super();
+        this.id = id;
+        this.type = type;
+        this.time = time;
+        this.data = Collections.unmodifiableMap(new LinkedHashMap<String, String>(data));
+    }
+
+    /**
+     * Writes the properties of the event as a JSON object.
+     * 
+     * @param json The writer.
+     * @throws IOException If the event cannot be written.
+     */
+    public void write(final JsonWriter json) throws IOException
+    {
+        json.beginObject().name("id").value(id).name("type").value(getName());
+        json.name("time").value(time);
+
+        for (Map.Entry<String, String> property : data.entrySet())
+        {
+            json.name(property.getKey()).value(property.getValue());
+        }
+
+        json.endObject();
+    }
+
+    /**
+     * Gets the name of the type of the event.
+     * 
+     * @return The name of the type of the event.
+     */
+    public String getName()
+    {
+        return type.name().toLowerCase();
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    public long getTime()
+    {
+        return time;
+    }
+
+    public Map<String, String> getData()
+    {
+        return data;
+    }
+}
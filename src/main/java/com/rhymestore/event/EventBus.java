@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the changes in the store and the actions of the bot to all the subscribed listeners.
+ * <p>
+ * Events are numbered in the order they are published, and the last {@link #RECENT_EVENTS}
+ * events are kept, so clients can poll the events since the last one they have seen instead of
+ * reading the whole store. Publishing an event never blocks: listeners must buffer the events
+ * they cannot process immediately. This class is thread-safe.
+ * 
+ * @author Ignasi Barrera
+ * @see EventListener
+ */
+public class EventBus
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventBus.class);
+
+    /** The number of published events that are kept. */
+    public static final int RECENT_EVENTS = 1000;
+
+    /** The singleton instance of the bus. */
+    private static EventBus instance;
+
+    /** The subscribed listeners. */
+    private final List<EventListener> listeners = new CopyOnWriteArrayList<EventListener>();
+
+    /** The last published events. */
+    private final LinkedList<Event> recentEvents = new LinkedList<Event>();
+
+    /** The sequence number of the last published event. */
+    private long lastId;
+
+    /**
+     * Gets the singleton instance of the bus.
+     * 
+     * @return The singleton instance of the bus.
+     */
+    public static synchronized EventBus getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new EventBus();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Publishes a new event.
+     * <p>
+     * The listeners are notified in the order the events are published.
+     * 
+     * @param type The type of the event.
+     * @param data The properties of the event.
+     * @return The published event.
+     */
+    public synchronized Event publish(final Event.Type type, final Map<String, String> data)
+    {
+        Event event = new Event(++lastId, type, System.currentTimeMillis(), data);
+
+        recentEvents.addLast(event);
+        if (recentEvents.size() > RECENT_EVENTS)
+        {
+            recentEvents.removeFirst();
+        }
+
+        for (EventListener listener : listeners)
+        {
+            try
+            {
+                listener.onEvent(event);
+            }
+            catch (RuntimeException ex)
+            {
+                LOGGER.warn("Could not deliver event {}: {}", event.getId(), ex.getMessage());
+            }
+        }
+
+        return event;
+    }
+
+    /**
+     * Gets the kept events published after the given one.
+     * 
+     * @param id The sequence number of the last seen event.
+     * @return The events published after the given one, in order. Events older than the last
+     *         {@link #RECENT_EVENTS} are not returned.
+     */
+    public synchronized List<Event> getEventsSince(final long id)
+    {
+        return getSnapshot(id).getEvents();
+    }
+
+    /**
+     * Gets the kept events published after the given one, and the last published event, at the
+     * same time.
+     * <p>
+     * Both values are read while no event is being published, so the snapshot is consistent even
+     * if new events are published meanwhile.
+     * 
+     * @param id The sequence number of the last seen event.
+     * @return The snapshot of the events published after the given one.
+     */
+    public synchronized Snapshot getSnapshot(final long id)
+    {
+        if (recentEvents.isEmpty() || recentEvents.getLast().getId() <= id)
+        {
+            return new Snapshot(Collections.<Event> emptyList(), lastId, true);
+        }
+
+        List<Event> events = new ArrayList<Event>();
+
+        for (Event event : recentEvents)
+        {
+            if (event.getId() > id)
+            {
+                events.add(event);
+            }
+        }
+
+        return new Snapshot(events, lastId, events.get(0).getId() == id + 1);
+    }
+
+    /**
+     * Gets the sequence number of the last published event.
+     * 
+     * @return The sequence number of the last published event, or <code>0</code> if no event has
+     *         been published.
+     */
+    public synchronized long getLastId()
+    {
+        return lastId;
+    }
+
+    /**
+     * Subscribes the given listener to the published events.
+     * 
+     * @param listener The listener.
+     */
+    public void subscribe(final EventListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unsubscribes the given listener from the published events.
+     * 
+     * @param listener The listener.
+     */
+    public void unsubscribe(final EventListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the number of subscribed listeners.
+     * 
+     * @return The number of subscribed listeners.
+     */
+    public int getSubscribers()
+    {
+        return listeners.size();
+    }
+
+    /**
+     * The events published after a given one, read at the same time as the last published event.
+     * 
+     * @author Ignasi Barrera
+     * @see EventBus#getSnapshot(long)
+     */
+    public static class Snapshot
+    {
+        /** The kept events published after the given one. */
+        private final List<Event> events;
+
+        /** The sequence number of the last published event. */
+        private final long lastId;
+
+        /** Indicates if no event published after the given one has been discarded. */
+        private final boolean complete;
+
+        /**
+         * Creates a new {@link Snapshot}.
+         * 
+         * @param events The kept events published after the given one.
+         * @param lastId The sequence number of the last published event.
+         * @param complete Indicates if no event published after the given one has been discarded.
+         */
+        public Snapshot(final List<Event> events, final long lastId, final boolean complete)
+        {
+            super();
+            this.events = events;
+            this.lastId = lastId;
+            this.complete = complete;
+        }
+
+        public List<Event> getEvents()
+        {
+            return events;
+        }
+
+        public long getLastId()
+        {
+            return lastId;
+        }
+
+        public boolean isComplete()
+        {
+            return complete;
+        }
+    }
+}
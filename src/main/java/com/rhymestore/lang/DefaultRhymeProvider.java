@@ -0,0 +1,456 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+
+/**
+ * Provides the default rhymes to use when no rhyme is found for a sentence.
+ * <p>
+ * This class is thread-safe and lock-free: the default rhyme list is kept in an immutable snapshot
+ * that is atomically replaced when the list is reloaded, and the round robin rotation uses an
+ * atomic counter, so it can be shared between the Twitter scheduler and all the API request
+ * threads without contention.
+ * 
+ * @author Ignasi Barrera
+ * @see WordParser#getDefaultRhyme()
+ */
+public class DefaultRhymeProvider
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultRhymeProvider.class);
+
+    /** Maximum number of users to track to avoid repeating default rhymes. */
+    /* package */static final int MAX_TRACKED_USERS = 10000;
+
+    /**
+     * The strategies that can be used to choose the default rhyme.
+     * 
+     * @author Ignasi Barrera
+     */
+    public static enum Strategy
+    {
+        /** Default rhymes are used in order. */
+        ROUND_ROBIN,
+
+        /** Default rhymes are chosen randomly. */
+        RANDOM,
+
+        /** Default rhymes are chosen randomly according to their configured weights. */
+        WEIGHTED;
+    }
+
+    /** The current default rhymes. */
+    private volatile Snapshot snapshot;
+
+    /** The strategy used to choose the default rhyme. */
+    private volatile Strategy strategy;
+
+    /** The rotation counter used by the {@link Strategy#ROUND_ROBIN} strategy. */
+    /* package */final AtomicInteger counter = new AtomicInteger();
+
+    /** The index of the last default rhyme returned to each user. */
+    private final ConcurrentMap<String, Integer> lastUsedByUser =
+        new ConcurrentHashMap<String, Integer>();
+
+    /** Per-thread random generators, to avoid contention in the shared seed. */
+    private final ThreadLocal<Random> random = new ThreadLocal<Random>()
+    {
+        @Override
+        protected Random initialValue()
+        {
+            return new Random();
+        }
+    };
+
+    /**
+     * Creates a new {@link DefaultRhymeProvider} with the given rhymes.
+     * 
+     * @param strategy The strategy used to choose the default rhyme.
+     * @param rhymes The default rhymes.
+     */
+    public DefaultRhymeProvider(final Strategy strategy, final List<String> rhymes)
+    {
+        this(strategy, rhymes, null);
+    }
+
+    /**
+     * Creates a new {@link DefaultRhymeProvider} with the given rhymes and weights.
+     * 
+     * @param strategy The strategy used to choose the default rhyme.
+     * @param rhymes The default rhymes.
+     * @param weights The weight of each rhyme. If <code>null</code> all rhymes will have the same
+     *            weight.
+     */
+    public DefaultRhymeProvider(final Strategy strategy, final List<String> rhymes,
+        final int[] weights)
+    {
+        super();
+        this.strategy = strategy;
+        setRhymes(rhymes, weights);
+    }
+
+    /**
+     * Creates a new {@link DefaultRhymeProvider} with the rhymes defined in the
+     * {@link Configuration}.
+     * 
+     * @return The <code>DefaultRhymeProvider</code>.
+     * @throws ConfigurationException If the configuration is not valid.
+     */
+    public static DefaultRhymeProvider fromConfiguration()
+    {
+        DefaultRhymeProvider provider = new DefaultRhymeProvider(Strategy.ROUND_ROBIN,
+            Collections.<String> emptyList());
+        provider.load(Configuration.getConfiguration());
+        return provider;
+    }
+
+    /**
+     * Gets the next default rhyme.
+     * 
+     * @return The next default rhyme, or <code>null</code> if there are no default rhymes.
+     */
+    public String getDefaultRhyme()
+    {
+        Snapshot current = snapshot;
+        return current.isEmpty() ? null : current.rhymes.get(nextIndex(current));
+    }
+
+    /**
+     * Gets the next default rhyme for the given user, avoiding to return the same rhyme that was
+     * returned to that user the last time.
+     * 
+     * @param user The user that will receive the rhyme.
+     * @return The next default rhyme, or <code>null</code> if there are no default rhymes.
+     */
+    public String getDefaultRhyme(final String user)
+    {
+        Snapshot current = snapshot;
+
+        if (current.isEmpty())
+        {
+            return null;
+        }
+
+        int index = nextIndex(current);
+
+        if (user != null && current.size() > 1)
+        {
+            Integer last = lastUsedByUser.get(user);
+            if (last != null && last.intValue() == index)
+            {
+                index = (index + 1) % current.size();
+            }
+
+            // Keep the tracking map bounded. Forgetting users is harmless: it
+            // only means that they may get the same rhyme twice
+            if (lastUsedByUser.size() >= MAX_TRACKED_USERS)
+            {
+                lastUsedByUser.clear();
+            }
+
+            lastUsedByUser.put(user, index);
+        }
+
+        return current.rhymes.get(index);
+    }
+
+    /**
+     * Gets the current default rhymes.
+     * 
+     * @return An unmodifiable list with the current default rhymes.
+     */
+    public List<String> getRhymes()
+    {
+        return snapshot.rhymes;
+    }
+
+    /**
+     * Gets the strategy used to choose the default rhyme.
+     * 
+     * @return The strategy used to choose the default rhyme.
+     */
+    public Strategy getStrategy()
+    {
+        return strategy;
+    }
+
+    /**
+     * Sets the strategy used to choose the default rhyme.
+     * 
+     * @param strategy The strategy used to choose the default rhyme.
+     */
+    public void setStrategy(final Strategy strategy)
+    {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Atomically replaces the default rhymes.
+     * 
+     * @param rhymes The new default rhymes.
+     * @param weights The weight of each rhyme. If <code>null</code> all rhymes will have the same
+     *            weight.
+     */
+    public void setRhymes(final List<String> rhymes, final int[] weights)
+    {
+        if (weights != null && weights.length != rhymes.size())
+        {
+            throw new IllegalArgumentException("There must be a weight for each rhyme");
+        }
+
+        snapshot = new Snapshot(rhymes, weights);
+    }
+
+    /**
+     * Reloads the configuration and replaces the default rhymes with the configured ones.
+     * <p>
+     * Threads using the provider while it is being reloaded will keep using the previous default
+     * rhymes until the new ones are loaded.
+     * 
+     * @throws ConfigurationException If the configuration cannot be reloaded.
+     */
+    public void reload()
+    {
+        load(Configuration.reload());
+    }
+
+    /**
+     * Loads the strategy, the default rhymes and their weights from the given properties.
+     * 
+     * @param properties The properties to load.
+     */
+    /* package */void load(final Properties properties)
+    {
+        List<String> names = new ArrayList<String>();
+
+        for (Object prop : properties.keySet())
+        {
+            String propertyName = (String) prop;
+            if (propertyName.startsWith(Configuration.DEFAULT_RHYME_PROPERTY))
+            {
+                names.add(propertyName);
+            }
+        }
+
+        // Sort them to use the default rhymes in the configured order
+        Collections.sort(names, new PropertySuffixComparator());
+
+        List<String> rhymes = new ArrayList<String>(names.size());
+        int[] weights = new int[names.size()];
+
+        for (int i = 0; i < names.size(); i++)
+        {
+            String name = names.get(i);
+            String suffix = name.substring(Configuration.DEFAULT_RHYME_PROPERTY.length());
+            String weight =
+                properties.getProperty(Configuration.DEFAULT_RHYME_WEIGHT_PROPERTY + suffix);
+
+            rhymes.add(properties.getProperty(name));
+            weights[i] = weight == null ? 1 : parseWeight(weight);
+        }
+
+        String strategyName =
+            properties.getProperty(Configuration.DEFAULT_RHYME_STRATEGY_PROPERTY);
+
+        if (strategyName != null)
+        {
+            try
+            {
+                strategy = Strategy.valueOf(strategyName.trim().toUpperCase());
+            }
+            catch (IllegalArgumentException ex)
+            {
+                throw new ConfigurationException("Invalid default rhyme strategy: "
+                    + strategyName);
+            }
+        }
+
+        setRhymes(rhymes, weights);
+
+        LOGGER.info("Loaded {} default rhymes using the {} strategy", rhymes.size(), strategy);
+    }
+
+    /**
+     * Computes the index of the next default rhyme to use.
+     * 
+     * @param current The current default rhymes.
+     * @return The index of the next default rhyme to use.
+     */
+    private int nextIndex(final Snapshot current)
+    {
+        switch (strategy)
+        {
+            case RANDOM:
+                return random.get().nextInt(current.size());
+            case WEIGHTED:
+                return current.weightedIndex(random.get().nextInt(current.totalWeight));
+            default:
+                // Mask the sign bit so the index never becomes negative
+                // when the counter overflows
+                return (counter.getAndIncrement() & Integer.MAX_VALUE) % current.size();
+        }
+    }
+
+    /**
+     * Parses the weight of a default rhyme.
+     * 
+     * @param weight The weight to parse.
+     * @return The weight.
+     * @throws ConfigurationException If the weight is not a positive number.
+     */
+    private static int parseWeight(final String weight)
+    {
+        try
+        {
+            int value = Integer.parseInt(weight.trim());
+            if (value > 0)
+            {
+                return value;
+            }
+        }
+        catch (NumberFormatException ex)
+        {
+            // Fail below
+        }
+
+        throw new ConfigurationException("Invalid default rhyme weight: " + weight);
+    }
+
+    /**
+     * Immutable view of the default rhymes.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class Snapshot
+    {
+        /** The default rhymes. */
+        private final List<String> rhymes;
+
+        /** The cumulative weights of the rhymes. */
+        private final int[] cumulativeWeights;
+
+        /** The sum of all weights. */
+        private final int totalWeight;
+
+        public Snapshot(final List<String> rhymes, final int[] weights)
+        {
+            this.rhymes = Collections.unmodifiableList(new ArrayList<String>(rhymes));
+            this.cumulativeWeights = new int[rhymes.size()];
+
+            int total = 0;
+            for (int i = 0; i < cumulativeWeights.length; i++)
+            {
+                total += weights == null ? 1 : weights[i];
+                cumulativeWeights[i] = total;
+            }
+
+            this.totalWeight = total;
+        }
+
+        public boolean isEmpty()
+        {
+            return rhymes.isEmpty();
+        }
+
+        public int size()
+        {
+            return rhymes.size();
+        }
+
+        /**
+         * Gets the index of the rhyme that corresponds to the given weight value.
+         * 
+         * @param value A value between 0 (inclusive) and the total weight (exclusive).
+         * @return The index of the rhyme.
+         */
+        public int weightedIndex(final int value)
+        {
+            int low = 0;
+            int high = cumulativeWeights.length - 1;
+
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (cumulativeWeights[mid] > value)
+                {
+                    high = mid;
+                }
+                else
+                {
+                    low = mid + 1;
+                }
+            }
+
+            return low;
+        }
+    }
+
+    /**
+     * Sorts the default rhyme properties by their numeric suffix.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class PropertySuffixComparator implements Comparator<String>
+    {
+        @Override
+        public int compare(final String name1, final String name2)
+        {
+            Long suffix1 = numericSuffix(name1);
+            Long suffix2 = numericSuffix(name2);
+
+            if (suffix1 != null && suffix2 != null)
+            {
+                return suffix1.compareTo(suffix2);
+            }
+
+            return name1.compareTo(name2);
+        }
+
+        private static Long numericSuffix(final String name)
+        {
+            try
+            {
+                return Long.valueOf(name.substring(Configuration.DEFAULT_RHYME_PROPERTY.length()));
+            }
+            catch (NumberFormatException ex)
+            {
+                return null;
+            }
+        }
+    }
+}
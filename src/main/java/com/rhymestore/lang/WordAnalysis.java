@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.io.Serializable;
+
+/**
+ * The result of analysing a word to find the part used to build the rhymes.
+ * 
+ * @author Ignasi Barrera
+ * @see WordParser#analyze(String)
+ */
+public class WordAnalysis implements Serializable
+{
+    /** Serial UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The analysed word. */
+    private final String word;
+
+    /** The part of the word that is used to create the rhyme. */
+    private final String rhymePart;
+
+    /** The {@link StressType} of the word. */
+    private final StressType stressType;
+
+    /**
+     * Creates the analysis of a valid word.
+     * 
+     * @param word The analysed word.
+     * @param rhymePart The part of the word that is used to create the rhyme.
+     * @param stressType The <code>StressType</code> of the word.
+     */
+    public WordAnalysis(final String word, final String rhymePart, final StressType stressType)
+    {
+        super();
+        this.word = word;
+        this.rhymePart = rhymePart;
+        this.stressType = stressType;
+    }
+
+    /**
+     * Creates the analysis of a word that cannot be used to build rhymes.
+     * 
+     * @param word The analysed word.
+     * @return The analysis of the invalid word.
+     */
+    public static WordAnalysis invalid(final String word)
+    {
+        return new WordAnalysis(word, null, null);
+    }
+
+    /**
+     * Checks if the analysed word can be used to build rhymes.
+     * 
+     * @return Boolean indicating if the analysed word can be used to build rhymes.
+     */
+    public boolean isValid()
+    {
+        return rhymePart != null;
+    }
+
+    public String getWord()
+    {
+        return word;
+    }
+
+    public String getRhymePart()
+    {
+        return rhymePart;
+    }
+
+    public StressType getStressType()
+    {
+        return stressType;
+    }
+
+    @Override
+    public String toString()
+    {
+        return isValid() ? word + " [" + rhymePart + ", " + stressType + "]" : word
+            + " [invalid]";
+    }
+}
@@ -22,6 +22,10 @@
 
 package com.rhymestore.lang;
 
+import java.util.List;
+
+import com.rhymestore.config.ConfigurationException;
+
 /**
  * Parses words in a concrete language to build perfect rhymes.
  * 
@@ -45,6 +49,26 @@ public interface WordParser
      */
     public StressType stressType(final String word);
 
+    /**
+     * Analyses the given word to get the rhyme part and the {@link StressType} in a single pass.
+     * 
+     * @param word The word.
+     * @return The analysis of the word. If the word is not a valid word, the analysis will be
+     *         marked as invalid.
+     */
+    public WordAnalysis analyze(String word);
+
+    /**
+     * Analyses all the given words.
+     * <p>
+     * Implementations should take advantage of processing the words in bulk, so this method
+     * should be preferred over {@link #analyze(String)} when there are many words to analyse.
+     * 
+     * @param words The words.
+     * @return The analysis of each word, in the same order than the given words.
+     */
+    public List<WordAnalysis> analyze(List<String> words);
+
     /**
      * Checks if the given words rhyme between them.
      * 
@@ -77,4 +101,23 @@ public interface WordParser
      */
     public String getDefaultRhyme();
 
+    /**
+     * Gets the default rhyme for the given user, trying not to repeat the last default rhyme
+     * returned to that user.
+     * 
+     * @param user The user that will receive the rhyme.
+     * @return The default rhyme.
+     */
+    public String getDefaultRhyme(String user);
+
+    /**
+     * Reloads the configured default rhymes.
+     * <p>
+     * Threads using the parser while the default rhymes are being reloaded will keep using the
+     * previous ones until the new ones are loaded.
+     * 
+     * @throws ConfigurationException If the configuration cannot be reloaded.
+     */
+    public void reloadDefaultRhymes();
+
 }
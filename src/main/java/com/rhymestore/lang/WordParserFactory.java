@@ -40,7 +40,7 @@ public class WordParserFactory
     private static final Logger LOGGER = LoggerFactory.getLogger(WordParserFactory.class);
 
     /** The {@link WordParser} used in the application. */
-    private static WordParser wordParser;
+    private static volatile WordParser wordParser;
 
     /**
      * Gets the {@link WordParser} to be used in the application.
@@ -48,36 +48,56 @@ public class WordParserFactory
      * @return The <code>WordParser</code> to be used in the application.
      * @throws ConfigurationException If the <code>WordParser</code> cannot be created.
      */
-    @SuppressWarnings("unchecked")
     public static WordParser getWordParser() throws ConfigurationException
     {
-        if (wordParser == null)
-        {
-            String className =
-                Configuration.getRequiredConfigValue(Configuration.WORDPARSER_PROPERTY);
+        WordParser current = wordParser;
 
-            if (className == null)
+        if (current == null)
+        {
+            synchronized (WordParserFactory.class)
             {
-                throw new ConfigurationException(Configuration.WORDPARSER_PROPERTY
-                    + " property not defined");
+                current = wordParser;
+                if (current == null)
+                {
+                    current = createWordParser();
+                    wordParser = current;
+                }
             }
+        }
 
-            LOGGER.info("Using WordParser: {}", className);
+        return current;
+    }
 
-            try
-            {
-                ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-                Class< ? extends WordParser> clazz =
-                    (Class< ? extends WordParser>) Class.forName(className, true, classLoader);
-                wordParser = clazz.newInstance();
-            }
-            catch (Exception ex)
-            {
-                throw new ConfigurationException("Could not create the WordParser of class: "
-                    + className, ex);
-            }
+    /**
+     * Creates the configured {@link WordParser}.
+     * 
+     * @return The <code>WordParser</code> to be used in the application.
+     * @throws ConfigurationException If the <code>WordParser</code> cannot be created.
+     */
+    @SuppressWarnings("unchecked")
+    private static WordParser createWordParser() throws ConfigurationException
+    {
+        String className = Configuration.getRequiredConfigValue(Configuration.WORDPARSER_PROPERTY);
+
+        if (className == null)
+        {
+            throw new ConfigurationException(Configuration.WORDPARSER_PROPERTY
+                + " property not defined");
         }
 
-        return wordParser;
+        LOGGER.info("Using WordParser: {}", className);
+
+        try
+        {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            Class< ? extends WordParser> clazz =
+                (Class< ? extends WordParser>) Class.forName(className, true, classLoader);
+            return clazz.newInstance();
+        }
+        catch (Exception ex)
+        {
+            throw new ConfigurationException("Could not create the WordParser of class: "
+                + className, ex);
+        }
     }
 }
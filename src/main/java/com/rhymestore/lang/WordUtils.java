@@ -23,6 +23,7 @@
 package com.rhymestore.lang;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -34,25 +35,186 @@ public class WordUtils
 {
     /**
      * Gets the last word of the given sentence.
+     * <p>
+     * Words are separated by any Unicode whitespace character, and trailing whitespace is ignored.
      * 
      * @param sentence The sentence to parse.
      * @return The last word of the given sentence.
      */
     public static String getLastWord(final String sentence)
     {
-        String word = "";
+        return getLastWord(sentence, false);
+    }
+
+    /**
+     * Gets the last word of the given sentence.
+     * <p>
+     * The sentence is scanned backwards from its end, so only the returned word is allocated.
+     * 
+     * @param sentence The sentence to parse.
+     * @param skipEntities If URLs, hashtags and mentions must be ignored.
+     * @return The last word of the given sentence, or an empty string if there is no word.
+     */
+    public static String getLastWord(final String sentence, final boolean skipEntities)
+    {
+        if (sentence == null)
+        {
+            return "";
+        }
+
+        int end = sentence.length();
+
+        while (end > 0)
+        {
+            end = skipSeparators(sentence, end);
+            if (end == 0)
+            {
+                break;
+            }
+
+            int start = wordStart(sentence, end);
+            if (!skipEntities || !isEntity(sentence, start, end))
+            {
+                return sentence.substring(start, end);
+            }
+
+            end = start;
+        }
+
+        return "";
+    }
+
+    /**
+     * Gets the last words of the given sentence.
+     * 
+     * @param sentence The sentence to parse.
+     * @param count The maximum number of words to get.
+     * @param skipEntities If URLs, hashtags and mentions must be ignored.
+     * @return The last words of the given sentence, in the same order they appear in the sentence.
+     */
+    public static List<String> getLastWords(final String sentence, final int count,
+        final boolean skipEntities)
+    {
+        if (sentence == null || count <= 0)
+        {
+            return Collections.emptyList();
+        }
+
+        String[] words = new String[count];
+        int found = 0;
+        int end = sentence.length();
+
+        while (end > 0 && found < count)
+        {
+            end = skipSeparators(sentence, end);
+            if (end == 0)
+            {
+                break;
+            }
+
+            int start = wordStart(sentence, end);
+            if (!skipEntities || !isEntity(sentence, start, end))
+            {
+                words[count - ++found] = sentence.substring(start, end);
+            }
+
+            end = start;
+        }
+
+        return Arrays.asList(words).subList(count - found, count);
+    }
 
-        if (sentence != null)
+    /**
+     * Checks if the given code point separates words.
+     * 
+     * @param codePoint The code point to check.
+     * @return Boolean indicating if the given code point separates words.
+     */
+    public static boolean isSeparator(final int codePoint)
+    {
+        return Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)
+            || codePoint == '\u200B' || codePoint == '\uFEFF';
+    }
+
+    /**
+     * Moves backwards from the given position skipping all word separators.
+     * 
+     * @param sentence The sentence to scan.
+     * @param end The position where the scan starts.
+     * @return The position right after the last character of the previous word, or 0 if there are
+     *         no more words.
+     */
+    private static int skipSeparators(final String sentence, final int end)
+    {
+        int i = end;
+
+        while (i > 0)
         {
-            List<String> words = Arrays.asList(sentence.split(" "));
+            int codePoint = sentence.codePointBefore(i);
+            if (!isSeparator(codePoint))
+            {
+                break;
+            }
+            i -= Character.charCount(codePoint);
+        }
+
+        return i;
+    }
 
-            if (words.size() > 0)
+    /**
+     * Moves backwards from the given position to the beginning of the word.
+     * 
+     * @param sentence The sentence to scan.
+     * @param end The position right after the last character of the word.
+     * @return The position of the first character of the word.
+     */
+    private static int wordStart(final String sentence, final int end)
+    {
+        int i = end;
+
+        while (i > 0)
+        {
+            int codePoint = sentence.codePointBefore(i);
+            if (isSeparator(codePoint))
             {
-                word = words.get(words.size() - 1);
+                break;
             }
+            i -= Character.charCount(codePoint);
+        }
+
+        return i;
+    }
+
+    /**
+     * Checks if the given word is an URL, a hashtag or a mention.
+     * 
+     * @param sentence The sentence that contains the word.
+     * @param start The position of the first character of the word.
+     * @param end The position right after the last character of the word.
+     * @return Boolean indicating if the given word is an URL, a hashtag or a mention.
+     */
+    private static boolean isEntity(final String sentence, final int start, final int end)
+    {
+        char first = sentence.charAt(start);
+
+        if (first == '@' || first == '#')
+        {
+            return end - start > 1;
         }
 
-        return word;
+        return startsWith(sentence, start, end, "http://")
+            || startsWith(sentence, start, end, "https://")
+            || startsWith(sentence, start, end, "www.");
+    }
+
+    /**
+     * Checks if the given word starts with the given prefix, ignoring case.
+     */
+    private static boolean startsWith(final String sentence, final int start, final int end,
+        final String prefix)
+    {
+        return end - start > prefix.length()
+            && sentence.regionMatches(true, start, prefix, 0, prefix.length());
     }
 
     /**
@@ -92,21 +254,16 @@ public class WordUtils
             return false;
         }
 
-        String wordToParse = new String(word);
-
-        if (wordToParse.startsWith("-"))
-        {
-            wordToParse = wordToParse.replaceFirst("-", "");
-        }
+        int start = word.startsWith("-") ? 1 : 0;
 
-        if (wordToParse.length() == 0)
+        if (word.length() == start)
         {
             return false;
         }
 
-        for (char c : wordToParse.toCharArray())
+        for (int i = start; i < word.length(); i++)
         {
-            if (!Character.isDigit(c))
+            if (!Character.isDigit(word.charAt(i)))
             {
                 return false;
             }
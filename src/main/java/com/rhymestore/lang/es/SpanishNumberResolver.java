@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang.es;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Resolves the base sound of the numbers, as defined by {@link SpanishNumber}, computing it
+ * arithmetically from the digits.
+ * <p>
+ * The sounds for all the numbers below one hundred are precomputed, so resolving a number only
+ * requires a few divisions and a table lookup. This class is thread-safe.
+ * 
+ * @author Serafin Sedano
+ * @see SpanishNumber
+ */
+public class SpanishNumberResolver
+{
+    /** Numbers greater than this one are resolved using their last digits. */
+    private static final String MAX_LONG = String.valueOf(Long.MAX_VALUE);
+
+    /** Number of digits used to resolve numbers greater than {@link Long#MAX_VALUE}. */
+    private static final int BIG_NUMBER_DIGITS = 7;
+
+    /** Divisor used to get the last digits of the numbers greater than {@link Long#MAX_VALUE}. */
+    private static final BigInteger BIG_NUMBER_DIVISOR = BigInteger.TEN.pow(BIG_NUMBER_DIGITS);
+
+    /** The powers of ten that fit in a long value. */
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    /** The base sound of the numbers between 0 and 99, when they are the last two digits. */
+    private static final String[] TENS = new String[100];
+
+    /** The base sound of the numbers between 0 and 9, when they are written alone. */
+    private static final String[] UNITS = new String[10];
+
+    static
+    {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+        {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+
+        for (int i = 0; i < UNITS.length; i++)
+        {
+            UNITS[i] = SpanishNumber.getWordByNumber(i);
+        }
+
+        for (int i = 1; i < TENS.length; i++)
+        {
+            int rest = i % 10;
+
+            if (i == 10 || i == 20)
+            {
+                TENS[i] = SpanishNumber.getWordByNumber(i);
+            }
+            else if (i > 20)
+            {
+                TENS[i] = rest == 0 ? SpanishNumber.DECENAS.getWord() : UNITS[rest];
+            }
+            else
+            {
+                TENS[i] = rest > 5 ? UNITS[rest] : SpanishNumber.getWordByNumber(i);
+            }
+        }
+    }
+
+    /**
+     * Gets the base sound of the given number.
+     * 
+     * @param number The number.
+     * @return The base sound of the number.
+     */
+    public static String getBaseSound(final long number)
+    {
+        // The sign is not pronounced at the end of the number
+        if (number < 0)
+        {
+            return number == Long.MIN_VALUE ? getBaseSound(String.valueOf(number))
+                : resolve(-number);
+        }
+
+        return resolve(number);
+    }
+
+    /**
+     * Gets the base sound of the given number.
+     * <p>
+     * If the number has a fractional part, the sound of the fractional part is returned.
+     * 
+     * @param number The number.
+     * @return The base sound of the number.
+     */
+    public static String getBaseSound(final BigDecimal number)
+    {
+        BigInteger digits = number.unscaledValue().abs();
+
+        if (number.scale() > 0)
+        {
+            digits = digits.mod(BigInteger.TEN.pow(number.scale()));
+        }
+        else if (number.scale() < 0)
+        {
+            digits = digits.multiply(BigInteger.TEN.pow(-number.scale()));
+        }
+
+        return getBaseSound(digits);
+    }
+
+    /**
+     * Gets the base sound of the given number.
+     * 
+     * @param number The number.
+     * @return The base sound of the number.
+     */
+    public static String getBaseSound(final BigInteger number)
+    {
+        BigInteger value = number.abs();
+
+        if (value.bitLength() < 64)
+        {
+            return resolve(value.longValue());
+        }
+
+        // Only the last digits are used for very big numbers
+        return resolveLastDigits(value.mod(BIG_NUMBER_DIVISOR).longValue());
+    }
+
+    /**
+     * Gets the base sound of the given number.
+     * 
+     * @param number A string with the digits of the number, optionally preceded by a sign.
+     * @return The base sound of the number, or <code>null</code> if the string is empty.
+     * @throws NumberFormatException If the string is not a number.
+     */
+    public static String getBaseSound(final CharSequence number)
+    {
+        int length = number == null ? 0 : number.length();
+
+        if (length == 0)
+        {
+            return null;
+        }
+
+        int start = number.charAt(0) == '-' || number.charAt(0) == '+' ? 1 : 0;
+
+        // Skip leading zeros
+        int first = start;
+        while (first < length - 1 && Character.digit(number.charAt(first), 10) == 0)
+        {
+            first++;
+        }
+
+        int digits = length - first;
+
+        if (digits == 0)
+        {
+            throw new NumberFormatException("Not a number: " + number);
+        }
+
+        if (digits > MAX_LONG.length() || digits == MAX_LONG.length()
+            && compare(number, first, MAX_LONG) > 0)
+        {
+            // Only the last digits are used for very big numbers
+            return resolveLastDigits(parse(number, length - BIG_NUMBER_DIGITS, length));
+        }
+
+        return resolve(parse(number, first, length));
+    }
+
+    /**
+     * Resolves the base sound of a positive number.
+     * 
+     * @param number The number.
+     * @return The base sound of the number.
+     */
+    private static String resolve(final long number)
+    {
+        long n = number;
+        int digits = digits(n);
+
+        // Millions and thousands. Leading digits are dropped until the number
+        // has less than six digits
+        while (digits >= 6)
+        {
+            if (n % 1000000 == 0)
+            {
+                return n == 1000000 ? SpanishNumber.MILLON.getWord() : SpanishNumber.MILLONES
+                    .getWord();
+            }
+            if (n % 100000 == 0)
+            {
+                return SpanishNumber.MIL.getWord();
+            }
+
+            n %= POWERS_OF_TEN[digits - 1];
+            digits = digits(n);
+        }
+
+        switch (digits)
+        {
+            case 1:
+                return UNITS[(int) n];
+            case 2:
+                return TENS[(int) n];
+            case 3:
+                if (n % 100 == 0)
+                {
+                    return n == 100 ? SpanishNumber.CIEN.getWord() : SpanishNumber.CIENTOS
+                        .getWord();
+                }
+                return TENS[(int) (n % 100)];
+            default:
+                if (n % 1000 == 0)
+                {
+                    return SpanishNumber.MIL.getWord();
+                }
+                if (n % 100 == 0)
+                {
+                    return SpanishNumber.CIENTOS.getWord();
+                }
+                return TENS[(int) (n % 100)];
+        }
+    }
+
+    /**
+     * Resolves the base sound of a very big number given its last digits.
+     * 
+     * @param lastDigits The value of the last {@link #BIG_NUMBER_DIGITS} digits of the number.
+     * @return The base sound of the number.
+     */
+    private static String resolveLastDigits(final long lastDigits)
+    {
+        return lastDigits == 0 ? SpanishNumber.MILLONES.getWord() : resolve(lastDigits);
+    }
+
+    /**
+     * Gets the number of digits of a positive number.
+     */
+    private static int digits(final long number)
+    {
+        int digits = 1;
+        while (digits < POWERS_OF_TEN.length && number >= POWERS_OF_TEN[digits])
+        {
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Parses the digits in the given range.
+     * 
+     * @throws NumberFormatException If there are non digit characters in the range.
+     */
+    private static long parse(final CharSequence number, final int from, final int to)
+    {
+        long value = 0;
+
+        for (int i = from; i < to; i++)
+        {
+            int digit = Character.digit(number.charAt(i), 10);
+            if (digit < 0)
+            {
+                throw new NumberFormatException("Not a number: " + number);
+            }
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    /**
+     * Compares the digits of the given number, starting at the given position, with the given
+     * digits of the same length.
+     */
+    private static int compare(final CharSequence number, final int from, final String digits)
+    {
+        for (int i = 0; i < digits.length(); i++)
+        {
+            int diff = Character.digit(number.charAt(from + i), 10) - (digits.charAt(i) - '0');
+            if (diff != 0)
+            {
+                return diff;
+            }
+        }
+        return 0;
+    }
+}
@@ -24,9 +24,17 @@ package com.rhymestore.lang.es;
 
 import java.util.ArrayList;
 import java.util.List;
-
-import com.rhymestore.config.Configuration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.rhymestore.lang.DefaultRhymeProvider;
 import com.rhymestore.lang.StressType;
+import com.rhymestore.lang.WordAnalysis;
 import com.rhymestore.lang.WordParser;
 import com.rhymestore.lang.WordUtils;
 
@@ -39,27 +47,17 @@ import com.rhymestore.lang.WordUtils;
  */
 public class SpanishWordParser implements WordParser
 {
-	/** The default rhymes for the Spanish language. */
-	/* package */List<String> defaultRhymes;
+	/** Minimum number of words per thread when analyzing words in bulk. */
+	/* package */static final int PARALLEL_THRESHOLD = 256;
 
-	/** The last used default rhyme. */
-	/* package */int lastUsedDefault = 0;
+	/** The default rhymes for the Spanish language. */
+	/* package */final DefaultRhymeProvider defaultRhymes;
 
 	public SpanishWordParser()
 	{
 		super();
 
-		defaultRhymes = new ArrayList<String>();
-
-		for (Object prop : Configuration.getConfiguration().keySet())
-		{
-			String propertyName = (String) prop;
-			if (propertyName.startsWith(Configuration.DEFAULT_RHYME_PROPERTY))
-			{
-				defaultRhymes.add(Configuration
-						.getRequiredConfigValue(propertyName));
-			}
-		}
+		defaultRhymes = DefaultRhymeProvider.fromConfiguration();
 	}
 
 	private int letra(final char c)
@@ -457,8 +455,11 @@ public class SpanishWordParser implements WordParser
 			return "";
 		}
 
-		String[] syllables = silabas(word.toLowerCase());
+		return rhymePart(silabas(word.toLowerCase()));
+	}
 
+	private static String rhymePart(final String[] syllables)
+	{
 		// Monosilabo
 		if (syllables.length == 1)
 		{
@@ -748,11 +749,14 @@ public class SpanishWordParser implements WordParser
 		// If it is a number, just translate its phonetic part
 		if (WordUtils.isNumber(withoutPunctuation))
 		{
-			withoutPunctuation = SpanishNumber.getBaseSound(withoutPunctuation);
+			withoutPunctuation = SpanishNumberResolver.getBaseSound(withoutPunctuation);
 		}
 
-		String[] silabas = silabas(withoutPunctuation);
+		return stressType(silabas(withoutPunctuation));
+	}
 
+	private static StressType stressType(final String[] silabas)
+	{
 		if (silabas.length == 1)
 		{
 			return StressType.LAST;
@@ -784,6 +788,135 @@ public class SpanishWordParser implements WordParser
 		return rhyme1.equalsIgnoreCase(rhyme2);
 	}
 
+	@Override
+	public WordAnalysis analyze(final String word)
+	{
+		return analyze(word, new StringBuilder());
+	}
+
+	@Override
+	public List<WordAnalysis> analyze(final List<String> words)
+	{
+		int parts = Math.min(Workers.SIZE, words.size() / PARALLEL_THRESHOLD);
+
+		if (parts <= 1)
+		{
+			return analyze(words, 0, words.size());
+		}
+
+		// Split the batch across the worker threads, and analyze the first
+		// part in the calling thread
+		int partSize = (words.size() + parts - 1) / parts;
+		List<Future<List<WordAnalysis>>> futures = new ArrayList<Future<List<WordAnalysis>>>(
+				parts - 1);
+
+		for (int from = partSize; from < words.size(); from += partSize)
+		{
+			final int start = from;
+			final int end = Math.min(from + partSize, words.size());
+
+			futures.add(Workers.POOL.submit(new Callable<List<WordAnalysis>>()
+			{
+				@Override
+				public List<WordAnalysis> call()
+				{
+					return analyze(words, start, end);
+				}
+			}));
+		}
+
+		List<WordAnalysis> result = new ArrayList<WordAnalysis>(words.size());
+		result.addAll(analyze(words, 0, partSize));
+
+		for (int i = 0; i < futures.size(); i++)
+		{
+			try
+			{
+				result.addAll(futures.get(i).get());
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(
+						"Interrupted while analyzing the words", ex);
+			}
+			catch (ExecutionException ex)
+			{
+				throw new IllegalStateException("Could not analyze the words",
+						ex.getCause());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Analyzes the words in the given range, sharing the same scratch buffer.
+	 * 
+	 * @param words The words to analyze.
+	 * @param from The index of the first word to analyze (inclusive).
+	 * @param to The index of the last word to analyze (exclusive).
+	 * @return The analysis of each word.
+	 */
+	private List<WordAnalysis> analyze(final List<String> words,
+			final int from, final int to)
+	{
+		StringBuilder scratch = new StringBuilder();
+		List<WordAnalysis> result = new ArrayList<WordAnalysis>(to - from);
+
+		for (int i = from; i < to; i++)
+		{
+			result.add(analyze(words.get(i), scratch));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Analyzes the given word computing the syllables only once.
+	 * 
+	 * @param word The word to analyze.
+	 * @param scratch The buffer used to build the phonetic rhyme part.
+	 * @return The analysis of the word.
+	 */
+	private WordAnalysis analyze(final String word, final StringBuilder scratch)
+	{
+		if (word == null || !isWord(word))
+		{
+			return WordAnalysis.invalid(word);
+		}
+
+		try
+		{
+			String withoutPunctuation = removeTrailingPunctuation(word);
+
+			// If it is a number, just translate its phonetic part
+			if (WordUtils.isNumber(withoutPunctuation))
+			{
+				withoutPunctuation = SpanishNumberResolver
+						.getBaseSound(withoutPunctuation);
+			}
+
+			// The rhyme part is computed from the lower case syllables, but the
+			// stress type from the original ones
+			String lowerCase = withoutPunctuation.toLowerCase();
+			String[] lowerCaseSyllables = silabas(lowerCase);
+			String[] syllables = lowerCase.equals(withoutPunctuation) ? lowerCaseSyllables
+					: silabas(withoutPunctuation);
+
+			scratch.setLength(0);
+			phonetic(rhymePart(lowerCaseSyllables), scratch);
+
+			return new WordAnalysis(word, scratch.toString(),
+					stressType(syllables));
+		}
+		catch (IllegalArgumentException ex)
+		{
+			// Words without vowels cannot be used to rhyme
+			return WordAnalysis.invalid(word);
+		}
+	}
+
 	@Override
 	public String phoneticRhymePart(final String word)
 	{
@@ -792,17 +925,32 @@ public class SpanishWordParser implements WordParser
 		// If it is a number, just translate its phonetic part
 		if (WordUtils.isNumber(withoutPunctuation))
 		{
-			withoutPunctuation = SpanishNumber.getBaseSound(withoutPunctuation);
+			withoutPunctuation = SpanishNumberResolver.getBaseSound(withoutPunctuation);
 		}
 
-		String rhymePart = rhymePart(withoutPunctuation);
-
 		StringBuilder result = new StringBuilder();
-		char[] letters = rhymePart.toCharArray();
+		phonetic(rhymePart(withoutPunctuation), result);
 
-		for (int i = 0; i < letters.length; i++)
+		return result.toString();
+	}
+
+	/**
+	 * Appends the phonetic transcription of the given rhyme part to the
+	 * given buffer.
+	 * 
+	 * @param rhymePart The rhyme part to transcribe.
+	 * @param result The buffer where the transcription will be appended.
+	 */
+	private static void phonetic(final String rhymePart,
+			final StringBuilder result)
+	{
+		int length = rhymePart.length();
+
+		for (int i = 0; i < length; i++)
 		{
-			switch (letters[i]) {
+			char letter = rhymePart.charAt(i);
+
+			switch (letter) {
 			// Vocales
 			case 225: // a con acento
 				result.append('a');
@@ -833,7 +981,7 @@ public class SpanishWordParser implements WordParser
 
 			// h => añadirla solo si es una 'ch'
 			case 'h':
-				if (i > 0 && letters[i - 1] == 'c')
+				if (i > 0 && rhymePart.charAt(i - 1) == 'c')
 				{
 					result.append('h');
 				}
@@ -841,8 +989,9 @@ public class SpanishWordParser implements WordParser
 
 			// g => transformarla en 'j' si va antes de 'e' o 'i'
 			case 'g':
-				if (i + 1 < letters.length
-						&& (letters[i + 1] == 'e' || letters[i + 1] == 'i'))
+				if (i + 1 < length
+						&& (rhymePart.charAt(i + 1) == 'e' || rhymePart
+								.charAt(i + 1) == 'i'))
 				{
 					result.append('j');
 				}
@@ -854,12 +1003,10 @@ public class SpanishWordParser implements WordParser
 
 			// Otros
 			default:
-				result.append(letters[i]);
+				result.append(letter);
 				break;
 			}
 		}
-
-		return result.toString();
 	}
 
 	@Override
@@ -946,6 +1093,45 @@ public class SpanishWordParser implements WordParser
 	@Override
 	public String getDefaultRhyme()
 	{
-		return defaultRhymes.get(lastUsedDefault++ % defaultRhymes.size());
+		return defaultRhymes.getDefaultRhyme();
+	}
+
+	@Override
+	public String getDefaultRhyme(final String user)
+	{
+		return defaultRhymes.getDefaultRhyme(user);
+	}
+
+	@Override
+	public void reloadDefaultRhymes()
+	{
+		defaultRhymes.reload();
+	}
+
+	/**
+	 * Lazily creates the threads used to analyze big batches of words.
+	 * 
+	 * @author Ignasi Barrera
+	 */
+	private static class Workers
+	{
+		/** The number of worker threads. */
+		static final int SIZE = Runtime.getRuntime().availableProcessors();
+
+		/** The worker threads. */
+		static final ExecutorService POOL = Executors.newFixedThreadPool(SIZE,
+				new ThreadFactory()
+				{
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(final Runnable runnable)
+					{
+						Thread thread = new Thread(runnable, "word-parser-"
+								+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
 	}
 }
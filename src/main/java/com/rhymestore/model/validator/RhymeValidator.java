@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.model.validator;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+import org.hibernate.validator.constraints.Length;
+
+import com.rhymestore.lang.WordParser;
+import com.rhymestore.lang.WordParserFactory;
+import com.rhymestore.lang.WordUtils;
+import com.rhymestore.model.Rhyme;
+
+/**
+ * Validates the text of a {@link Rhyme} without the reflective bean validation.
+ * <p>
+ * The constraints and their messages are read once from the annotations of the {@link Rhyme}
+ * class, so a single instance can validate all the requests and reports the same errors than the
+ * bean validation. This class is thread-safe.
+ * 
+ * @author Ignasi Barrera
+ * @see ValidWord
+ */
+public class RhymeValidator
+{
+    /** The default message of the {@link Length} constraint. */
+    private static final String DEFAULT_LENGTH_MESSAGE = "length must be between {min} and {max}";
+
+    /** The singleton instance of the validator. */
+    private static RhymeValidator instance;
+
+    /** The {@link WordParser} used to validate the last word. */
+    private final WordParser wordParser;
+
+    /** The message reported when the text is <code>null</code>. */
+    private final String notNullMessage;
+
+    /** The minimum length of the text. */
+    private final int minLength;
+
+    /** The maximum length of the text. */
+    private final int maxLength;
+
+    /** The message reported when the length of the text is not valid. */
+    private final String lengthMessage;
+
+    /** The message reported when the last word is not valid, followed by the text. */
+    private final String invalidWordMessage;
+
+    /**
+     * Gets the singleton instance of the validator.
+     * 
+     * @return The singleton instance of the validator.
+     */
+    public static synchronized RhymeValidator getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new RhymeValidator(WordParserFactory.getWordParser());
+        }
+
+        return instance;
+    }
+
+    /**
+     * Creates a new {@link RhymeValidator}.
+     * 
+     * @param wordParser The {@link WordParser} used to validate the last word.
+     */
+    public RhymeValidator(final WordParser wordParser)
+    {
+        super();
+        this.wordParser = wordParser;
+
+        Field field = getRhymeField();
+        NotNull notNull = field.getAnnotation(NotNull.class);
+        Length length = field.getAnnotation(Length.class);
+        ValidWord validWord = field.getAnnotation(ValidWord.class);
+
+        notNullMessage = notNull.message();
+        minLength = length.min();
+        maxLength = length.max();
+
+        String lengthTemplate =
+            length.message().startsWith("{") ? DEFAULT_LENGTH_MESSAGE : length.message();
+        lengthMessage =
+            lengthTemplate.replace("{min}", String.valueOf(minLength)).replace("{max}",
+                String.valueOf(maxLength));
+
+        invalidWordMessage = validWord.message() + ": ";
+    }
+
+    /**
+     * Validates the given text.
+     * 
+     * @param text The text of the rhyme.
+     * @return The error messages, or an empty list if the text is valid.
+     */
+    public List<String> validate(final String text)
+    {
+        if (text == null)
+        {
+            return Collections.singletonList(notNullMessage);
+        }
+
+        List<String> errors = null;
+
+        if (text.length() < minLength || text.length() > maxLength)
+        {
+            errors = new ArrayList<String>(2);
+            errors.add(lengthMessage);
+        }
+
+        if (text.length() > 0 && !wordParser.isWord(WordUtils.getLastWord(text)))
+        {
+            if (errors == null)
+            {
+                errors = new ArrayList<String>(1);
+            }
+
+            errors.add(invalidWordMessage + text);
+        }
+
+        if (errors == null)
+        {
+            return Collections.emptyList();
+        }
+
+        return errors;
+    }
+
+    /**
+     * Gets the field of the {@link Rhyme} class with the validation constraints.
+     * 
+     * @return The field with the text of the rhyme.
+     */
+    private static Field getRhymeField()
+    {
+        try
+        {
+            return Rhyme.class.getDeclaredField("rhyme");
+        }
+        catch (NoSuchFieldException ex)
+        {
+            throw new IllegalStateException("The Rhyme class has no rhyme field", ex);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.store;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The progress of a bulk operation on the rhymes.
+ * <p>
+ * The rhymes of the job are submitted in batches that are processed in parallel. The job is
+ * finished when all the rhymes have been submitted and all batches have been processed. This class
+ * is thread-safe.
+ * 
+ * @author Ignasi Barrera
+ * @see BulkJobManager
+ */
+public class BulkJob
+{
+    /**
+     * The type of the bulk operation.
+     * 
+     * @author Ignasi Barrera
+     */
+    public static enum Type
+    {
+        /** The rhymes are added to the store. */
+        ADD,
+
+        /** The rhymes are deleted from the store. */
+        DELETE
+    }
+
+    /** The id of the job. */
+    private final String id;
+
+    /** The type of the job. */
+    private final Type type;
+
+    /** The number of submitted rhymes. */
+    private final AtomicInteger submitted = new AtomicInteger();
+
+    /** The number of processed rhymes. */
+    private final AtomicInteger processed = new AtomicInteger();
+
+    /** The number of rhymes that have been added or deleted. */
+    private final AtomicInteger changed = new AtomicInteger();
+
+    /** The number of batches that have not been processed yet. */
+    private final AtomicInteger pendingBatches = new AtomicInteger();
+
+    /** Indicates if all the rhymes of the job have been submitted. */
+    private volatile boolean sealed;
+
+    /** The last error of the job, if any. */
+    private volatile String error;
+
+    /**
+     * Creates a new {@link BulkJob}.
+     * 
+     * @param type The type of the job.
+     */
+    public BulkJob(final Type type)
+    {
+        super();
+        this.id = UUID.randomUUID().toString();
+        this.type = type;
+    }
+
+    /**
+     * Records a submitted batch.
+     * 
+     * @param size The number of rhymes in the batch.
+     */
+    void submitted(final int size)
+    {
+        submitted.addAndGet(size);
+        pendingBatches.incrementAndGet();
+    }
+
+    /**
+     * Records a processed batch.
+     * 
+     * @param size The number of rhymes in the batch.
+     * @param changedRhymes The number of rhymes that have been added or deleted.
+     */
+    void processed(final int size, final int changedRhymes)
+    {
+        changed.addAndGet(changedRhymes);
+        processed.addAndGet(size);
+        pendingBatches.decrementAndGet();
+    }
+
+    /**
+     * Records a batch that could not be processed.
+     * 
+     * @param size The number of rhymes in the batch.
+     * @param message The error message.
+     */
+    void failed(final int size, final String message)
+    {
+        error = message;
+        processed(size, 0);
+    }
+
+    /**
+     * Records that all the rhymes of the job have been submitted.
+     */
+    void seal()
+    {
+        sealed = true;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    public int getSubmitted()
+    {
+        return submitted.get();
+    }
+
+    public int getProcessed()
+    {
+        return processed.get();
+    }
+
+    public int getChanged()
+    {
+        return changed.get();
+    }
+
+    public String getError()
+    {
+        return error;
+    }
+
+    /**
+     * Checks if all the rhymes of the job have been processed.
+     * 
+     * @return Boolean indicating if the job is finished.
+     */
+    public boolean isFinished()
+    {
+        return sealed && pendingBatches.get() == 0;
+    }
+}
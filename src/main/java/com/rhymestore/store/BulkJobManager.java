@@ -0,0 +1,297 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.store;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the bulk operations on the rhymes.
+ * <p>
+ * The batches of each {@link BulkJob} are processed in parallel by a pool of background threads,
+ * so the words of several batches are analysed at the same time while the store serializes the
+ * writes. At most {@link #PENDING_BATCHES_PER_THREAD} batches per thread are waiting to be
+ * processed: further submissions block until a batch is done, so the requests are read only as
+ * fast as the store can process them. The last {@link #RECENT_JOBS} jobs are remembered so their
+ * progress can be checked.
+ * 
+ * @author Ignasi Barrera
+ * @see BulkJob
+ */
+public class BulkJobManager
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkJobManager.class);
+
+    /** The number of jobs remembered to report their progress. */
+    public static final int RECENT_JOBS = 100;
+
+    /** The number of batches per thread that can be submitted before they are processed. */
+    public static final int PENDING_BATCHES_PER_THREAD = 2;
+
+    /** The singleton instance of the manager. */
+    private static BulkJobManager instance;
+
+    /** The store where the operations are performed. */
+    private final RhymeStore store;
+
+    /** The threads that process the batches. */
+    private final ExecutorService executor;
+
+    /** Limits the number of batches submitted and not yet processed. */
+    private final Semaphore pending;
+
+    /** The last started jobs, by id. */
+    private final Map<String, BulkJob> jobs = new LinkedHashMap<String, BulkJob>()
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, BulkJob> eldest)
+        {
+            return size() > RECENT_JOBS;
+        }
+    };
+
+    /**
+     * Gets the singleton instance of the manager.
+     * 
+     * @return The singleton instance of the manager.
+     */
+    public static synchronized BulkJobManager getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new BulkJobManager(RhymeStore.getInstance());
+        }
+
+        return instance;
+    }
+
+    /**
+     * Creates a new {@link BulkJobManager} with one thread per available processor.
+     * 
+     * @param store The store where the operations are performed.
+     */
+    public BulkJobManager(final RhymeStore store)
+    {
+        this(store, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new {@link BulkJobManager}.
+     * 
+     * @param store The store where the operations are performed.
+     * @param threads The number of threads that process the batches.
+     */
+    public BulkJobManager(final RhymeStore store, final int threads)
+    {
+        super();
+        this.store = store;
+        this.pending = new Semaphore(threads * PENDING_BATCHES_PER_THREAD);
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "bulk-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts a new job.
+     * 
+     * @param type The type of the job.
+     * @return The started job.
+     */
+    public BulkJob start(final BulkJob.Type type)
+    {
+        BulkJob job = new BulkJob(type);
+
+        synchronized (jobs)
+        {
+            jobs.put(job.getId(), job);
+        }
+
+        LOGGER.info("Started bulk {} job {}", type, job.getId());
+
+        return job;
+    }
+
+    /**
+     * Submits a batch of rhymes to be processed in the background.
+     * <p>
+     * This method blocks while there are too many batches waiting to be processed.
+     * 
+     * @param job The job of the batch.
+     * @param batch The rhymes of the batch.
+     */
+    public void submit(final BulkJob job, final List<String> batch)
+    {
+        if (batch.isEmpty())
+        {
+            return;
+        }
+
+        job.submitted(batch.size());
+
+        try
+        {
+            pending.acquire();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            job.failed(batch.size(), "The bulk operation has been interrupted");
+            return;
+        }
+
+        Batch task = new Batch(job, batch);
+
+        try
+        {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Records that all the rhymes of the given job have been submitted.
+     * 
+     * @param job The job.
+     */
+    public void finish(final BulkJob job)
+    {
+        job.seal();
+    }
+
+    /**
+     * Gets the job with the given id.
+     * 
+     * @param id The id of the job.
+     * @return The job, or <code>null</code> if it does not exist or it is too old.
+     */
+    public BulkJob getJob(final String id)
+    {
+        synchronized (jobs)
+        {
+            return jobs.get(id);
+        }
+    }
+
+    /**
+     * Stops processing the batches.
+     * <p>
+     * The batches that are waiting to be processed are recorded as failed.
+     */
+    public void shutdown()
+    {
+        for (Runnable task : executor.shutdownNow())
+        {
+            ((Batch) task).cancel();
+        }
+    }
+
+    /**
+     * Processes a batch of rhymes.
+     * 
+     * @param job The job of the batch.
+     * @param batch The rhymes of the batch.
+     */
+    private void process(final BulkJob job, final List<String> batch)
+    {
+        try
+        {
+            int changed = job.getType() == BulkJob.Type.ADD ? store.addAll(batch) : store
+                .deleteAll(batch);
+            job.processed(batch.size(), changed);
+        }
+        catch (Exception ex)
+        {
+            LOGGER.error("Could not process a batch of the bulk job " + job.getId(), ex);
+            job.failed(batch.size(), ex.getMessage());
+        }
+    }
+
+    /**
+     * A batch of rhymes waiting to be processed.
+     * 
+     * @author Ignasi Barrera
+     */
+    private class Batch implements Runnable
+    {
+        /** The job of the batch. */
+        private final BulkJob job;
+
+        /** The rhymes of the batch. */
+        private final List<String> rhymes;
+
+        public Batch(final BulkJob job, final List<String> rhymes)
+        {
+            super();
+            this.job = job;
+            this.rhymes = rhymes;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                process(job, rhymes);
+            }
+            finally
+            {
+                pending.release();
+            }
+        }
+
+        /**
+         * Records the batch as failed because it will not be processed.
+         */
+        public void cancel()
+        {
+            pending.release();
+            job.failed(rhymes.size(), "The bulk operations have been stopped");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import java.net.URL;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.util.SSLUtils;
+
+/**
+ * Loads the default rhymes in the background.
+ * <p>
+ * The store is synchronized with the default rhymes in the configured URI, so the application can
+ * start serving requests while they are loaded. Only the changes since the last load are applied.
+ * The state of the load can be checked to report when the application is ready. Once loaded, the
+ * rhymes stored before the search indexes existed are added to them.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeSync
+ */
+public class DefaultRhymesLoader implements Runnable
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultRhymesLoader.class);
+
+    /**
+     * The state of the load.
+     * 
+     * @author Ignasi Barrera
+     */
+    public static enum State
+    {
+        /** The default rhymes are being loaded. */
+        LOADING,
+
+        /** The default rhymes have been loaded, or there are no default rhymes. */
+        READY,
+
+        /** The default rhymes could not be loaded. */
+        FAILED
+    }
+
+    /** The URI of the default rhymes, or <code>null</code> if there are no default rhymes. */
+    private final String rhymesURI;
+
+    /** The state of the load. */
+    private volatile State state = State.LOADING;
+
+    /** The number of rhymes added or deleted by the load. */
+    private volatile int changed;
+
+    /**
+     * Creates a loader of the rhymes in the configured URI.
+     */
+    public DefaultRhymesLoader()
+    {
+        this(Configuration.getConfigValue(Configuration.DEFAULT_RHYMES_URI_PROPERTY));
+    }
+
+    /**
+     * Creates a loader of the rhymes in the given URI.
+     * 
+     * @param rhymesURI The URI of the default rhymes. May be <code>null</code>.
+     */
+    public DefaultRhymesLoader(final String rhymesURI)
+    {
+        super();
+        this.rhymesURI = rhymesURI;
+    }
+
+    /**
+     * Starts loading the default rhymes in a new thread.
+     */
+    public void start()
+    {
+        if (rhymesURI == null)
+        {
+            state = State.READY;
+        }
+
+        Thread thread = new Thread(this, "default-rhymes");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run()
+    {
+        if (rhymesURI != null)
+        {
+            LOGGER.info("Synchronizing rhymes from: {}", rhymesURI);
+
+            try
+            {
+                // Ensure there won't be SSL certificate issues
+                SSLUtils.installIgnoreCertTrustManager();
+                // Apply the changes in the rhymes of the configured URI
+                changed = new RhymeSync(RhymeStore.getInstance()).sync(new URL(rhymesURI));
+                state = State.READY;
+            }
+            catch (Exception ex)
+            {
+                LOGGER.error("Could not load the default rhymes: " + ex.getMessage(), ex);
+                state = State.FAILED;
+            }
+        }
+
+        try
+        {
+            RhymeStore.getInstance().buildSearchIndex();
+        }
+        catch (Exception ex)
+        {
+            LOGGER.error("Could not build the search indexes: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Gets the state of the load.
+     * 
+     * @return The state of the load.
+     */
+    public State getState()
+    {
+        return state;
+    }
+
+    /**
+     * Gets the number of rhymes added or deleted by the load.
+     * 
+     * @return The number of added or deleted rhymes, once the load has finished.
+     */
+    public int getChanged()
+    {
+        return changed;
+    }
+}
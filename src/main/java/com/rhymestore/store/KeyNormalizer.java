@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import java.text.Normalizer;
+import java.text.Normalizer.Form;
+import java.util.Locale;
+
+/**
+ * Normalizes the text used to build the keys of the {@link RhymeStore}.
+ * <p>
+ * The normalized form of a text is the text converted to lower case, without diacritics and
+ * without non alphanumeric characters. Instead of running several regular expressions on each
+ * invocation, each character is folded in a single pass using a table precomputed for the whole
+ * Basic Multilingual Plane, so the normalized keys are exactly the same than the ones produced by
+ * applying the individual transformations.
+ * 
+ * @author Enric Ruiz
+ * @see RhymeStore
+ */
+public class KeyNormalizer
+{
+    /** Marks the characters that must be dropped. */
+    private static final char DROP = 0;
+
+    /** Marks the characters that must be folded with the full transformation. */
+    private static final char FOLD = '\uFFFF';
+
+    /** The normalized form of each character. */
+    private static final char[] TABLE = buildTable();
+
+    /**
+     * Lower case conversion is context sensitive in some locales, so the characters cannot be
+     * folded one by one.
+     */
+    private static final boolean CONTEXT_SENSITIVE_LOCALE =
+        isContextSensitive(Locale.getDefault());
+
+    /** Reusable per-thread buffers used to build the normalized strings. */
+    private static final ThreadLocal<StringBuilder> BUFFERS = new ThreadLocal<StringBuilder>()
+    {
+        @Override
+        protected StringBuilder initialValue()
+        {
+            return new StringBuilder(64);
+        }
+    };
+
+    /**
+     * Normalizes the given string.
+     * 
+     * @param value The string to be normalized.
+     * @return The normalized string.
+     */
+    public String normalize(final String value)
+    {
+        if (CONTEXT_SENSITIVE_LOCALE)
+        {
+            return fold(value);
+        }
+
+        int length = value.length();
+        int i = 0;
+
+        // Most keys are already normalized. Avoid copying them.
+        while (i < length && isNormalized(value.charAt(i)))
+        {
+            i++;
+        }
+
+        if (i == length)
+        {
+            return value;
+        }
+
+        StringBuilder buffer = BUFFERS.get();
+        buffer.setLength(0);
+        buffer.append(value, 0, i);
+
+        while (i < length)
+        {
+            char c = value.charAt(i);
+
+            if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                buffer.append(fold(value.substring(i, i + 2)));
+                i += 2;
+                continue;
+            }
+
+            char folded = TABLE[c];
+
+            if (folded == FOLD)
+            {
+                buffer.append(fold(String.valueOf(c)));
+            }
+            else if (folded != DROP)
+            {
+                buffer.append(folded);
+            }
+
+            i++;
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * Applies the full normalization transformation to the given string.
+     * 
+     * @param value The string to be normalized.
+     * @return The normalized string.
+     */
+    /* package */static String fold(final String value)
+    {
+        // To lower case and remove diacritics
+        String token = Normalizer.normalize(value.toLowerCase(), Form.NFD);
+
+        // Remove non ASCII and non alphanumeric characters
+        StringBuilder result = new StringBuilder(token.length());
+        for (int i = 0; i < token.length(); i++)
+        {
+            char c = token.charAt(i);
+            if (isAlphanumeric(c))
+            {
+                result.append(c);
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Checks if the given character does not change when normalized.
+     */
+    private static boolean isNormalized(final char c)
+    {
+        return c >= 'a' && c <= 'z' || c >= '0' && c <= '9';
+    }
+
+    /**
+     * Checks if the given character is an ASCII alphanumeric character.
+     */
+    private static boolean isAlphanumeric(final char c)
+    {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9';
+    }
+
+    /**
+     * Checks if lower case conversion is context sensitive in the given locale.
+     */
+    private static boolean isContextSensitive(final Locale locale)
+    {
+        String language = locale.getLanguage();
+        return "tr".equals(language) || "az".equals(language) || "lt".equals(language);
+    }
+
+    /**
+     * Builds the folding table for all the characters in the Basic Multilingual Plane.
+     * 
+     * @return The folding table.
+     */
+    private static char[] buildTable()
+    {
+        char[] table = new char[Character.MAX_VALUE + 1];
+
+        for (int c = 0; c <= Character.MAX_VALUE; c++)
+        {
+            if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+            {
+                // Unpaired surrogates are always dropped
+                table[c] = DROP;
+                continue;
+            }
+
+            String folded = fold(String.valueOf((char) c));
+
+            switch (folded.length())
+            {
+                case 0:
+                    table[c] = DROP;
+                    break;
+                case 1:
+                    table[c] = folded.charAt(0);
+                    break;
+                default:
+                    table[c] = FOLD;
+                    break;
+            }
+        }
+
+        return table;
+    }
+}
@@ -28,6 +28,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +45,9 @@ public class RhymeLoader
     /** The logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(RhymeLoader.class);
 
+    /** The number of rhymes to add to the store at once. */
+    private static final int BATCH_SIZE = 1000;
+
     /** The backend rhyme store. */
     private final RhymeStore store;
 
@@ -58,38 +63,50 @@ public class RhymeLoader
      * Loads the rhymes in the given file into the {@link #store}.
      * 
      * @param file The file with the rhymes to add.
+     * @return The number of loaded rhymes.
      * @throws IOException If the rhymes cannot be loaded.
      */
-    public void load(File file) throws IOException
+    public int load(File file) throws IOException
     {
         if (!file.exists())
         {
             throw new IOException("The rhyme file does not exist");
         }
 
-        load(new FileInputStream(file));
+        return load(new FileInputStream(file));
     }
 
     /**
      * Loads the rhymes in the given {@link InputStream} into the {@link #store}.
      * 
      * @param in The stream with the rhymes to add.
+     * @return The number of loaded rhymes.
      * @throws IOException If the rhymes cannot be loaded.
      */
-    public void load(InputStream in) throws IOException
+    public int load(InputStream in) throws IOException
     {
         BufferedReader br = new BufferedReader(new InputStreamReader(in));
+        List<String> batch = new ArrayList<String>(BATCH_SIZE);
         String line = br.readLine();
         int numLines = 0;
 
         while (line != null)
         {
-            store.add(line);
+            batch.add(line);
             line = br.readLine();
             numLines++;
+
+            // Add the rhymes in bulk to analyse them at once
+            if (batch.size() == BATCH_SIZE || line == null)
+            {
+                store.addAll(batch);
+                batch.clear();
+            }
         }
 
         LOGGER.info("Loaded {} rhymes", numLines);
+
+        return numLines;
     }
 
     /**
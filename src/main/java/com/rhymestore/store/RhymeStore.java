@@ -26,28 +26,41 @@ import java.io.IOException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.net.UnknownHostException;
-import java.text.Normalizer;
-import java.text.Normalizer.Form;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPipeline;
+import redis.clients.jedis.SortingParams;
 
 import com.rhymestore.config.Configuration;
+import com.rhymestore.event.Event;
+import com.rhymestore.event.EventBus;
 import com.rhymestore.lang.StressType;
+import com.rhymestore.lang.WordAnalysis;
 import com.rhymestore.lang.WordParser;
 import com.rhymestore.lang.WordParserFactory;
 import com.rhymestore.lang.WordUtils;
 
 /**
  * Manages the Redis database to store and search rhymes.
+ * <p>
+ * This class is thread-safe. Accesses to the Redis database are serialized, since all of them are
+ * performed using the same connection.
  * 
  * @author Enric Ruiz
  * @see Keymaker
@@ -62,12 +75,45 @@ public class RhymeStore
     /** The key used to store the next id value. */
     private static final String NEXT_ID_KEY = "next.id";
 
+    /** The time the version of the stored rhymes is cached, in milliseconds. */
+    public static final long VERSION_CACHE_TIME = TimeUnit.SECONDS.toMillis(5);
+
+    /** The time the results of a search are kept to get their next pages, in seconds. */
+    public static final int SEARCH_CACHE_TIME = 60;
+
+    /** The number of sentences indexed at once when building the search indexes. */
+    private static final int SEARCH_INDEX_BATCH = 1000;
+
     /** Redis namespace for sentences. */
     private final Keymaker sentencens = new Keymaker("sentence");
 
     /** Redis namespace for index. */
     private final Keymaker indexns = new Keymaker("index");
 
+    /** Redis namespace for the state of the default rhymes synchronization. */
+    private final Keymaker syncns = new Keymaker("sync");
+
+    /** Redis namespace for the sentences that contain each word. */
+    private final Keymaker wordns = new Keymaker("word");
+
+    /** Redis namespace for the sentences of each stress type. */
+    private final Keymaker stressns = new Keymaker("stress");
+
+    /** Redis namespace for the results of the searches. */
+    private final Keymaker searchns = new Keymaker("search");
+
+    /** Redis namespace for the state of the store. */
+    private final Keymaker storens = new Keymaker("store");
+
+    /** The key used to store the version of the stored rhymes. */
+    private final String versionKey = storens.build("version").toString();
+
+    /** The key that marks that the search indexes contain all the stored rhymes. */
+    private final String searchIndexedKey = storens.build("search", "indexed").toString();
+
+    /** Normalizes the text used to build the keys. */
+    private final KeyNormalizer normalizer = new KeyNormalizer();
+
     /** The character encoding to use. */
     private final String encoding = "UTF-8";
 
@@ -77,15 +123,27 @@ public class RhymeStore
     /** Parses the words to get the part used to rhyme. */
     private final WordParser wordParser;
 
+    /** Publishes the added and deleted rhymes. */
+    private final EventBus events = EventBus.getInstance();
+
+    /** Used to choose one of the rhymes found (thread-safe). */
+    private final Random random = new Random();
+
     /** The Redis database API. */
     protected final Jedis redis;
 
+    /** The cached version of the stored rhymes, or <code>-1</code> if not read yet. */
+    private long version = -1L;
+
+    /** The time when the cached version was read. */
+    private long versionReadAt;
+
     /**
      * Gets the singleton instance of the store.
      * 
      * @return The singleton instance of the store.
      */
-    public static RhymeStore getInstance()
+    public static synchronized RhymeStore getInstance()
     {
         if (instance == null)
         {
@@ -113,7 +171,7 @@ public class RhymeStore
      * @param sentence The rhyme to add.
      * @throws IOException If an error occurs while adding the rhyme.
      */
-    public void add(final String sentence) throws IOException
+    public synchronized void add(final String sentence) throws IOException
     {
         String word = WordUtils.getLastWord(sentence);
 
@@ -124,18 +182,124 @@ public class RhymeStore
 
         // Get the rhyme and type (and check that the word is valid before
         // adding)
-        String rhyme = normalizeString(wordParser.phoneticRhymePart(word));
+        String rhyme = wordParser.phoneticRhymePart(word);
         StressType type = wordParser.stressType(word);
 
         connect();
 
+        try
+        {
+            add(sentence, rhyme, type);
+        }
+        finally
+        {
+            disconnect();
+        }
+    }
+
+    /**
+     * Adds all the given rhymes to the Redis database.
+     * <p>
+     * The last words of all sentences are analysed in bulk and all rhymes are added using the same
+     * connection. Sentences that end with an invalid word are ignored. The sentences are analysed
+     * outside the lock, so several threads can analyse their sentences at the same time.
+     * 
+     * @param sentences The rhymes to add.
+     * @return The number of rhymes that have been added. Rhymes that were already stored are not
+     *         counted.
+     * @throws IOException If an error occurs while adding the rhymes.
+     */
+    public int addAll(final List<String> sentences) throws IOException
+    {
+        List<String> words = new ArrayList<String>(sentences.size());
+        for (String sentence : sentences)
+        {
+            words.add(WordUtils.getLastWord(sentence));
+        }
+
+        List<WordAnalysis> analysis = wordParser.analyze(words);
+        List<String> rhymeParts = new ArrayList<String>(sentences.size());
+        List<StressType> types = new ArrayList<StressType>(sentences.size());
+
+        for (int i = 0; i < sentences.size(); i++)
+        {
+            WordAnalysis word = analysis.get(i);
+            String rhymePart = null;
+            StressType type = null;
+
+            if (word.isValid())
+            {
+                rhymePart = word.getRhymePart();
+                type = word.getStressType();
+            }
+            else if (!word.getWord().isEmpty())
+            {
+                // The word parser may still be able to get the rhyme part of
+                // words that are not valid mentions, such as words with
+                // leading punctuation
+                try
+                {
+                    rhymePart = wordParser.phoneticRhymePart(word.getWord());
+                    type = wordParser.stressType(word.getWord());
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    LOGGER.warn("Ignoring rhyme {}: {}", sentences.get(i), ex.getMessage());
+                }
+            }
+
+            rhymeParts.add(rhymePart);
+            types.add(type);
+        }
+
+        int added = 0;
+
+        synchronized (this)
+        {
+            connect();
+
+            try
+            {
+                for (int i = 0; i < sentences.size(); i++)
+                {
+                    if (rhymeParts.get(i) != null
+                        && add(sentences.get(i), rhymeParts.get(i), types.get(i)))
+                    {
+                        added++;
+                    }
+                }
+            }
+            finally
+            {
+                disconnect();
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Adds the given rhyme to the Redis database.
+     * <p>
+     * This method assumes that the connection to the database is already open.
+     * 
+     * @param sentence The rhyme to add.
+     * @param rhymePart The phonetic rhyme part of the last word of the sentence.
+     * @param type The stress type of the last word of the sentence.
+     * @return Boolean indicating if the rhyme has been added, or if it was already stored.
+     * @throws IOException If an error occurs while adding the rhyme.
+     */
+    private boolean add(final String sentence, final String rhymePart, final StressType type)
+        throws IOException
+    {
+        String rhyme = normalizeString(rhymePart);
+
         String sentenceKey = getUniqueId(sentencens, normalizeString(sentence));
         sentenceKey = sentencens.build(sentenceKey).toString();
 
         if (redis.exists(sentenceKey) == 1)
         {
-            disconnect();
-            return;
+            return false;
         }
 
         // Insert sentence
@@ -146,10 +310,13 @@ public class RhymeStore
         indexKey = indexns.build(indexKey).toString();
 
         redis.sadd(indexKey, sentenceKey);
-
-        disconnect();
+        indexForSearch(sentenceKey, sentence, type);
+        changed();
+        events.publish(Event.Type.ADDED, Collections.singletonMap("rhyme", sentence));
 
         LOGGER.info("Added rhyme: {}", sentence);
+
+        return true;
     }
 
     /**
@@ -158,7 +325,7 @@ public class RhymeStore
      * @param sentence The rhyme to delete.
      * @throws IOException If an error occurs while deleting the rhyme.
      */
-    public void delete(final String sentence) throws IOException
+    public synchronized void delete(final String sentence) throws IOException
     {
         String word = WordUtils.getLastWord(sentence);
 
@@ -172,12 +339,102 @@ public class RhymeStore
 
         connect();
 
+        try
+        {
+            if (!delete(sentence, rhyme, type))
+            {
+                throw new IOException("The element to remove does not exist.");
+            }
+        }
+        finally
+        {
+            disconnect();
+        }
+    }
+
+    /**
+     * Deletes all the given rhymes from the Redis database.
+     * <p>
+     * The sentences are analysed outside the lock and all rhymes are deleted using the same
+     * connection. Sentences that end with an invalid word or that do not exist are ignored.
+     * 
+     * @param sentences The rhymes to delete.
+     * @return The number of deleted rhymes.
+     * @throws IOException If an error occurs while deleting the rhymes.
+     */
+    public int deleteAll(final List<String> sentences) throws IOException
+    {
+        List<String> rhymeParts = new ArrayList<String>(sentences.size());
+        List<StressType> types = new ArrayList<StressType>(sentences.size());
+
+        for (String sentence : sentences)
+        {
+            String word = WordUtils.getLastWord(sentence);
+            String rhymePart = null;
+            StressType type = null;
+
+            if (!word.isEmpty())
+            {
+                try
+                {
+                    rhymePart = normalizeString(wordParser.phoneticRhymePart(word));
+                    type = wordParser.stressType(word);
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    LOGGER.debug("Ignoring rhyme {}: {}", sentence, ex.getMessage());
+                }
+            }
+
+            rhymeParts.add(rhymePart);
+            types.add(type);
+        }
+
+        int deleted = 0;
+
+        synchronized (this)
+        {
+            connect();
+
+            try
+            {
+                for (int i = 0; i < sentences.size(); i++)
+                {
+                    if (rhymeParts.get(i) != null
+                        && delete(sentences.get(i), rhymeParts.get(i), types.get(i)))
+                    {
+                        deleted++;
+                    }
+                }
+            }
+            finally
+            {
+                disconnect();
+            }
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Deletes the given rhyme from the Redis database.
+     * <p>
+     * This method assumes that the connection to the database is already open.
+     * 
+     * @param sentence The rhyme to delete.
+     * @param rhyme The normalized phonetic rhyme part of the last word of the sentence.
+     * @param type The stress type of the last word of the sentence.
+     * @return Boolean indicating if the rhyme existed.
+     * @throws IOException If an error occurs while deleting the rhyme.
+     */
+    private boolean delete(final String sentence, final String rhyme, final StressType type)
+        throws IOException
+    {
         String sentenceKey = getUniqueIdKey(sentencens, normalizeString(sentence));
 
         if (redis.exists(sentenceKey) == 0)
         {
-            disconnect();
-            throw new IOException("The element to remove does not exist.");
+            return false;
         }
 
         String indexKey = getUniqueIdKey(indexns, buildUniqueToken(rhyme, type));
@@ -203,12 +460,21 @@ public class RhymeStore
             }
         }
 
+        // Remove the sentence from the search indexes
+        for (String word : getSearchWords(sentence))
+        {
+            redis.srem(wordns.build(word).toString(), sentenceId);
+        }
+        redis.srem(stressns.build(type.name()).toString(), sentenceId);
+
         // Remove the key
         redis.del(sentenceId, sentenceKey);
-
-        disconnect();
+        changed();
+        events.publish(Event.Type.DELETED, Collections.singletonMap("rhyme", sentence));
 
         LOGGER.info("Deleted rhyme: {}", sentence);
+
+        return true;
     }
 
     /**
@@ -217,7 +483,7 @@ public class RhymeStore
      * @return A <code>Set</code> with all the stored rhymes.
      * @throws IOException If the rhymes cannot be obtained.
      */
-    public Set<String> findAll() throws IOException
+    public synchronized Set<String> findAll() throws IOException
     {
         Set<String> rhymes = new HashSet<String>();
 
@@ -246,199 +512,935 @@ public class RhymeStore
     }
 
     /**
-     * Gets a rhyme for the given sentence.
+     * Gets the version of the stored rhymes.
+     * <p>
+     * The version changes each time a rhyme is added or deleted. Changes made by this store are
+     * seen immediately, and the changes made by other processes are seen after at most
+     * {@link #VERSION_CACHE_TIME} milliseconds, since the version is not read from the database
+     * each time.
      * 
-     * @param sentence The sentence to rhyme.
-     * @return The rhyme.
+     * @return The version of the stored rhymes.
+     * @throws IOException If the version cannot be obtained.
      */
-    public String getRhyme(final String sentence) throws IOException
+    public synchronized long getVersion() throws IOException
     {
-        String lastWord = WordUtils.getLastWord(sentence);
-
-        String rhymepart = wordParser.phoneticRhymePart(lastWord);
-        StressType type = wordParser.stressType(lastWord);
-
-        LOGGER.debug("Finding rhymes for {}", sentence);
-
-        connect();
-
-        Set<String> rhymes = search(rhymepart, type);
-
-        disconnect();
+        long now = System.currentTimeMillis();
 
-        if (rhymes.isEmpty())
+        if (version < 0 || now - versionReadAt >= VERSION_CACHE_TIME)
         {
-            // If no rhyme is found, return null
-            return null;
-        }
-        else
-        {
-            // Otherwise, return a random rhyme
-            List<String> rhymeList = new ArrayList<String>(rhymes);
+            connect();
 
-            Random random = new Random(System.currentTimeMillis());
-            int index = random.nextInt(rhymeList.size());
-
-            return rhymeList.get(index);
+            try
+            {
+                String current = redis.get(versionKey);
+                version = current == null ? 0L : Long.parseLong(current);
+                versionReadAt = now;
+            }
+            finally
+            {
+                disconnect();
+            }
         }
+
+        return version;
     }
 
     /**
-     * Connects to the Redis database.
+     * Gets the key that identifies the rhymes of the given sentence.
+     * <p>
+     * All the sentences with the same key get their rhymes from the same index. The key is
+     * computed without accessing the database.
      * 
-     * @throws UnknownHostException If the target host does not respond.
-     * @throws IOException If an error occurs while connecting.
+     * @param sentence The sentence to rhyme.
+     * @return The key of the rhymes of the sentence, or <code>null</code> if the sentence cannot
+     *         be rhymed.
      */
-    protected void connect() throws UnknownHostException, IOException
+    public String getRhymeKey(final String sentence)
     {
-        if (!redis.isConnected())
-        {
-            redis.connect();
-        }
+        List<WordAnalysis> analysis = wordParser.analyze(Collections.singletonList(WordUtils
+            .getLastWord(sentence)));
+        return getIndexKey(analysis.get(0));
     }
 
     /**
-     * Disconnects from the Redis database.
+     * Gets a rhyme for the given sentence.
      * 
-     * @throws IOException If an error occurs while disconnecting.
+     * @param sentence The sentence to rhyme.
+     * @return The rhyme, or <code>null</code> if no rhyme is found.
+     * @throws IOException If an error occurs while searching for the rhyme.
      */
-    protected void disconnect() throws IOException
+    public String getRhyme(final String sentence) throws IOException
     {
-        if (redis.isConnected())
-        {
-            redis.disconnect();
-        }
+        return getRhymes(Collections.singletonList(sentence)).get(0);
     }
 
     /**
-     * Search for rhymes for the given sentence.
+     * Gets a rhyme for each one of the given sentences.
+     * <p>
+     * The last words of all sentences are analysed in bulk, and the rhymes are searched with the
+     * same number of requests to the database regardless of the number of sentences. Sentences
+     * whose last words share the rhyme part and the stress type are searched only once.
      * 
-     * @param rhyme The rhyme to search.
-     * @param type The <code>StressType</code> of the rhyme to search.
-     * @return A <code>Set</code> of rhymes for the given sentence.
+     * @param sentences The sentences to rhyme.
+     * @return The rhyme for each sentence, in the same order, or <code>null</code> for the
+     *         sentences that have no rhyme.
      * @throws IOException If an error occurs while searching for the rhymes.
      */
-    private Set<String> search(final String rhyme, final StressType type) throws IOException
+    public List<String> getRhymes(final List<String> sentences) throws IOException
     {
-        Set<String> rhymes = new HashSet<String>();
-        String norm = normalizeString(rhyme);
+        List<String> words = new ArrayList<String>(sentences.size());
+        for (String sentence : sentences)
+        {
+            words.add(WordUtils.getLastWord(sentence));
+        }
 
-        String indexKey = getUniqueIdKey(indexns, buildUniqueToken(norm, type));
+        // Get the index of each sentence, and the distinct indexes to search
+        List<WordAnalysis> analysis = wordParser.analyze(words);
+        List<String> indexKeys = new ArrayList<String>(sentences.size());
+        Set<String> searchKeys = new LinkedHashSet<String>();
 
-        if (redis.exists(indexKey) == 1)
+        for (WordAnalysis word : analysis)
         {
-            String indexId = redis.get(indexKey);
-            indexId = indexns.build(indexId).toString();
+            String indexKey = getIndexKey(word);
+            indexKeys.add(indexKey);
 
-            if (redis.exists(indexId) == 1)
+            if (indexKey != null)
             {
-                for (String sentenceKey : redis.smembers(indexId))
-                {
-                    if (redis.exists(sentenceKey) == 1)
-                    {
-                        rhymes.add(URLDecoder.decode(redis.get(sentenceKey), encoding));
-                    }
-                }
+                searchKeys.add(indexKey);
             }
         }
 
-        return rhymes;
-    }
+        LOGGER.debug("Finding rhymes for {} sentences", sentences.size());
 
-    /**
-     * Build a unique token for the given rhyme to be used to index it.
-     * 
-     * @param rhyme The rhyme part of the sentence.
-     * @param type The stress type of the rhyme.
-     * @return The unique token for the rhyme.
-     */
-    private String buildUniqueToken(final String rhyme, final StressType type)
-    {
-        return sum(type.name().concat(rhyme));
-    }
+        Map<String, List<String>> rhymes = null;
 
-    /**
-     * Get the key of the id for the given token.
-     * 
-     * @param ns The namespace of the key.
-     * @param token The token which key is requested.
-     * @return The key for the given token.
-     */
-    private String getUniqueIdKey(final Keymaker ns, final String token)
-    {
-        String md = sum(token);
-        return ns.build(md, "id").toString();
+        // The sentences are parsed outside the lock, so only the database
+        // access is serialized
+        synchronized (this)
+        {
+            connect();
+
+            try
+            {
+                rhymes = search(new ArrayList<String>(searchKeys));
+            }
+            finally
+            {
+                disconnect();
+            }
+        }
+
+        // Choose a random rhyme for each sentence, if any
+        List<String> result = new ArrayList<String>(sentences.size());
+        for (String indexKey : indexKeys)
+        {
+            List<String> found = indexKey == null ? null : rhymes.get(indexKey);
+            result.add(found == null || found.isEmpty() ? null : found.get(random
+                .nextInt(found.size())));
+        }
+
+        return result;
     }
 
     /**
-     * Get a unique id id for the given token.
+     * Searches the stored rhymes.
+     * <p>
+     * The rhymes are found with the search indexes: the words of each sentence, the stress type of
+     * its last word and the index used to find the rhymes. All the given criteria must match. The
+     * matches are sorted in the database the first time a search is run, so its cost depends on
+     * the number of matches, and the sorted matches are kept for {@link #SEARCH_CACHE_TIME}
+     * seconds, or until the rhymes change, so the next pages are read without sorting them again.
      * 
-     * @param ns The namespace of the id.
-     * @param token The token which id is requested.
-     * @return The id for the given token.
+     * @param text The words that the rhymes must contain, or <code>null</code>.
+     * @param rhymesWith The sentence the rhymes must rhyme with, or <code>null</code>.
+     * @param type The stress type of the last word of the rhymes, or <code>null</code>.
+     * @param offset The position of the first rhyme to return.
+     * @param count The maximum number of rhymes to return.
+     * @return The page of rhymes, sorted alphabetically, and the total number of matches.
+     * @throws IOException If an error occurs while searching the rhymes.
+     * @throws IllegalArgumentException If no criteria are given.
      */
-    private String getUniqueId(final Keymaker ns, final String token)
+    public SearchResult search(final String text, final String rhymesWith, final StressType type,
+        final int offset, final int count) throws IOException
     {
-        String key = getUniqueIdKey(ns, token);
-        String id = redis.get(key);
+        List<String> criteria = new ArrayList<String>();
 
-        if (id != null)
+        if (text != null)
         {
-            return id;
+            for (String word : getSearchWords(text))
+            {
+                criteria.add(wordns.build(word).toString());
+            }
         }
 
-        Integer next = redis.incr(ns.build(NEXT_ID_KEY).toString());
-        id = next.toString();
-
-        if (redis.setnx(key, id) == 0)
+        if (type != null)
         {
-            id = redis.get(key);
+            criteria.add(stressns.build(type.name()).toString());
         }
 
-        return id;
-    }
+        String rhymeKey = null;
 
-    /**
-     * Get the last used id in the given namespace.
-     * 
-     * @param ns The namespace.
-     * @return The last used id in the given namespace.
-     */
-    private String getLastId(final Keymaker ns)
-    {
-        return redis.get(ns.build(NEXT_ID_KEY).toString());
-    }
+        if (rhymesWith != null)
+        {
+            rhymeKey = getRhymeKey(rhymesWith);
 
-    /**
-     * Makes a md5 sum of the given text.
-     * 
-     * @param value The text to sum.
-     * @return The md5 sum of the given text.
-     */
-    private String sum(final String value)
-    {
-        return DigestUtils.md5Hex(value.getBytes());
-    }
+            if (rhymeKey == null)
+            {
+                return new SearchResult(0, offset, Collections.<String> emptyList());
+            }
+        }
 
-    /**
-     * Normalizes the given string.
-     * 
-     * @param value The string to be normalized.
-     * @return The normalized string.
+        if (criteria.isEmpty() && rhymeKey == null)
+        {
+            throw new IllegalArgumentException("No search criteria");
+        }
+
+        synchronized (this)
+        {
+            connect();
+
+            try
+            {
+                if (rhymeKey != null)
+                {
+                    String indexId = redis.get(rhymeKey);
+
+                    if (indexId == null)
+                    {
+                        return new SearchResult(0, offset, Collections.<String> emptyList());
+                    }
+
+                    criteria.add(indexns.build(indexId).toString());
+                }
+
+                String resultKey = getSearchResultKey(criteria);
+                int total = redis.llen(resultKey);
+                List<String> rhymes = new ArrayList<String>();
+
+                if (offset < total && count > 0)
+                {
+                    // The sentences are already sorted, so only the requested page is read
+                    List<String> page = redis.lrange(resultKey, offset, offset + count - 1);
+
+                    for (String sentence : page)
+                    {
+                        if (sentence != null && sentence.length() > 0)
+                        {
+                            rhymes.add(URLDecoder.decode(sentence, encoding));
+                        }
+                    }
+                }
+
+                return new SearchResult(total, offset, rhymes);
+            }
+            finally
+            {
+                disconnect();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of stored rhymes of each stress type.
+     * 
+     * @return The number of stored rhymes of each stress type.
+     * @throws IOException If the rhymes cannot be counted.
      */
-    private String normalizeString(final String value)
+    public synchronized Map<StressType, Integer> getStressTypeCounts() throws IOException
+    {
+        Map<StressType, Integer> counts = new EnumMap<StressType, Integer>(StressType.class);
+
+        connect();
+
+        try
+        {
+            for (StressType type : StressType.values())
+            {
+                counts.put(type, redis.scard(stressns.build(type.name()).toString()));
+            }
+        }
+        finally
+        {
+            disconnect();
+        }
+
+        return counts;
+    }
+
+    /**
+     * Adds the rhymes stored before the search indexes existed to the search indexes.
+     * <p>
+     * The rhymes are indexed in batches, so the store can be used while they are indexed. Once
+     * all the rhymes have been indexed, this method does nothing.
+     * 
+     * @return The number of indexed rhymes.
+     * @throws IOException If the rhymes cannot be indexed.
+     */
+    public int buildSearchIndex() throws IOException
+    {
+        int lastId = 0;
+
+        synchronized (this)
+        {
+            connect();
+
+            try
+            {
+                if (redis.exists(searchIndexedKey) == 1)
+                {
+                    return 0;
+                }
+
+                String last = getLastId(sentencens);
+                lastId = last == null ? 0 : Integer.parseInt(last);
+            }
+            finally
+            {
+                disconnect();
+            }
+        }
+
+        LOGGER.info("Building the search indexes of {} rhymes", lastId);
+
+        int indexed = 0;
+
+        for (int first = 1; first <= lastId; first += SEARCH_INDEX_BATCH)
+        {
+            indexed += buildSearchIndex(first, Math.min(lastId, first + SEARCH_INDEX_BATCH - 1));
+        }
+
+        synchronized (this)
+        {
+            connect();
+
+            try
+            {
+                redis.set(searchIndexedKey, String.valueOf(lastId));
+            }
+            finally
+            {
+                disconnect();
+            }
+        }
+
+        LOGGER.info("Built the search indexes of {} rhymes", indexed);
+
+        return indexed;
+    }
+
+    /**
+     * Adds the rhymes with the ids in the given range to the search indexes.
+     * 
+     * @param first The first id.
+     * @param last The last id.
+     * @return The number of indexed rhymes.
+     * @throws IOException If the rhymes cannot be indexed.
+     */
+    private int buildSearchIndex(final int first, final int last) throws IOException
+    {
+        String[] keys = new String[last - first + 1];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = sentencens.build(String.valueOf(first + i)).toString();
+        }
+
+        List<String> values = null;
+
+        synchronized (this)
+        {
+            connect();
+
+            try
+            {
+                values = redis.mget(keys);
+            }
+            finally
+            {
+                disconnect();
+            }
+        }
+
+        // Analyse the sentences outside the lock
+        List<String> sentenceKeys = new ArrayList<String>(values.size());
+        List<String> sentences = new ArrayList<String>(values.size());
+        List<String> words = new ArrayList<String>(values.size());
+
+        for (int i = 0; i < values.size(); i++)
+        {
+            if (values.get(i) != null)
+            {
+                String sentence = URLDecoder.decode(values.get(i), encoding);
+                sentenceKeys.add(keys[i]);
+                sentences.add(sentence);
+                words.add(WordUtils.getLastWord(sentence));
+            }
+        }
+
+        List<WordAnalysis> analysis = wordParser.analyze(words);
+        int indexed = 0;
+
+        synchronized (this)
+        {
+            connect();
+
+            try
+            {
+                for (int i = 0; i < sentences.size(); i++)
+                {
+                    StressType type = getStressType(analysis.get(i));
+
+                    if (type != null)
+                    {
+                        indexForSearch(sentenceKeys.get(i), sentences.get(i), type);
+                        indexed++;
+                    }
+                }
+            }
+            finally
+            {
+                disconnect();
+            }
+        }
+
+        return indexed;
+    }
+
+    /**
+     * Gets a property of the state of the default rhymes synchronization.
+     * 
+     * @param name The name of the property.
+     * @return The value of the property, or <code>null</code> if it is not defined.
+     * @throws IOException If the property cannot be read.
+     * @see RhymeSync
+     */
+    public synchronized String getSyncProperty(final String name) throws IOException
+    {
+        connect();
+
+        try
+        {
+            return redis.get(syncns.build("property", name).toString());
+        }
+        finally
+        {
+            disconnect();
+        }
+    }
+
+    /**
+     * Sets a property of the state of the default rhymes synchronization.
+     * 
+     * @param name The name of the property.
+     * @param value The value of the property. If <code>null</code> the property is removed.
+     * @throws IOException If the property cannot be written.
+     * @see RhymeSync
+     */
+    public synchronized void setSyncProperty(final String name, final String value)
+        throws IOException
+    {
+        String key = syncns.build("property", name).toString();
+
+        connect();
+
+        try
+        {
+            if (value == null)
+            {
+                redis.del(key);
+            }
+            else
+            {
+                redis.set(key, value);
+            }
+        }
+        finally
+        {
+            disconnect();
+        }
+    }
+
+    /**
+     * Gets the hashes of the synchronized blocks of default rhymes.
+     * 
+     * @return The hashes of the synchronized blocks.
+     * @throws IOException If the hashes cannot be read.
+     * @see RhymeSync
+     */
+    public synchronized Set<String> getSyncBlocks() throws IOException
+    {
+        connect();
+
+        try
+        {
+            return redis.smembers(syncns.build("blocks").toString());
+        }
+        finally
+        {
+            disconnect();
+        }
+    }
+
+    /**
+     * Gets the content of the given synchronized blocks of default rhymes.
+     * 
+     * @param hashes The hashes of the blocks.
+     * @return The content of each block, in the same order, or <code>null</code> for the blocks
+     *         that do not exist.
+     * @throws IOException If the blocks cannot be read.
+     * @see RhymeSync
+     */
+    public synchronized List<String> getSyncBlockContents(final List<String> hashes)
+        throws IOException
+    {
+        if (hashes.isEmpty())
+        {
+            return new ArrayList<String>();
+        }
+
+        String[] keys = new String[hashes.size()];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = syncns.build("block", hashes.get(i)).toString();
+        }
+
+        connect();
+
+        try
+        {
+            return redis.mget(keys);
+        }
+        finally
+        {
+            disconnect();
+        }
+    }
+
+    /**
+     * Records the changes in the synchronized blocks of default rhymes.
+     * 
+     * @param added The content of the new blocks, by hash.
+     * @param removed The hashes of the blocks that no longer exist.
+     * @throws IOException If the blocks cannot be written.
+     * @see RhymeSync
+     */
+    public synchronized void updateSyncBlocks(final Map<String, String> added,
+        final Collection<String> removed) throws IOException
+    {
+        String blocksKey = syncns.build("blocks").toString();
+
+        connect();
+
+        try
+        {
+            // Add the new blocks before referencing them
+            for (Map.Entry<String, String> block : added.entrySet())
+            {
+                redis.set(syncns.build("block", block.getKey()).toString(), block.getValue());
+                redis.sadd(blocksKey, block.getKey());
+            }
+
+            for (String hash : removed)
+            {
+                redis.srem(blocksKey, hash);
+                redis.del(syncns.build("block", hash).toString());
+            }
+        }
+        finally
+        {
+            disconnect();
+        }
+    }
+
+    /**
+     * Connects to the Redis database.
+     * 
+     * @throws UnknownHostException If the target host does not respond.
+     * @throws IOException If an error occurs while connecting.
+     */
+    protected void connect() throws UnknownHostException, IOException
+    {
+        if (!redis.isConnected())
+        {
+            redis.connect();
+        }
+    }
+
+    /**
+     * Disconnects from the Redis database.
+     * 
+     * @throws IOException If an error occurs while disconnecting.
+     */
+    protected void disconnect() throws IOException
+    {
+        if (redis.isConnected())
+        {
+            redis.disconnect();
+        }
+    }
+
+    /**
+     * Increments the version of the stored rhymes.
+     * <p>
+     * This method assumes that the connection to the database is already open.
+     */
+    private void changed()
+    {
+        version = redis.incr(versionKey);
+        versionReadAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the key of the id of the index for the given word.
+     * 
+     * @param word The analysed last word of a sentence.
+     * @return The key of the id of the index, or <code>null</code> if the word cannot be used to
+     *         find rhymes.
+     */
+    private String getIndexKey(final WordAnalysis word)
+    {
+        String rhyme = null;
+        StressType type = null;
+
+        if (word.isValid())
+        {
+            rhyme = word.getRhymePart();
+            type = word.getStressType();
+        }
+        else if (!word.getWord().isEmpty())
+        {
+            // The word parser may still be able to get the rhyme part of
+            // words that are not valid mentions, such as words with
+            // leading punctuation
+            try
+            {
+                rhyme = wordParser.phoneticRhymePart(word.getWord());
+                type = wordParser.stressType(word.getWord());
+            }
+            catch (IllegalArgumentException ex)
+            {
+                LOGGER.debug("Cannot rhyme with {}: {}", word.getWord(), ex.getMessage());
+                return null;
+            }
+        }
+        else
+        {
+            return null;
+        }
+
+        return getUniqueIdKey(indexns, buildUniqueToken(normalizeString(rhyme), type));
+    }
+
+    /**
+     * Adds the given sentence to the search indexes.
+     * <p>
+     * This method assumes that the connection to the database is already open.
+     * 
+     * @param sentenceKey The key of the sentence.
+     * @param sentence The sentence.
+     * @param type The stress type of the last word of the sentence.
+     */
+    private void indexForSearch(final String sentenceKey, final String sentence,
+        final StressType type)
+    {
+        for (String word : getSearchWords(sentence))
+        {
+            redis.sadd(wordns.build(word).toString(), sentenceKey);
+        }
+
+        redis.sadd(stressns.build(type.name()).toString(), sentenceKey);
+    }
+
+    /**
+     * Gets the key of the list with the sentences that match all the given criteria, sorted by
+     * their text.
+     * <p>
+     * The sorted matches are stored with a key that depends on the version of the stored rhymes,
+     * so they are computed again when the rhymes change. This method assumes that the connection
+     * to the database is already open.
+     * 
+     * @param criteria The keys of the sets with the sentences that match each criteria.
+     * @return The key of the list with the sentences that match all the criteria.
+     */
+    private String getSearchResultKey(final List<String> criteria)
     {
-        // To lower case
-        String token = value.toLowerCase();
+        StringBuilder token = new StringBuilder(String.valueOf(redis.get(versionKey)));
+        for (String key : criteria)
+        {
+            token.append(' ').append(key);
+        }
 
-        // Remove diacritics
-        token = Normalizer.normalize(token, Form.NFD);
-        token = token.replaceAll("[^\\p{ASCII}]", "");
+        Keymaker searchKey = searchns.build(sum(token.toString()));
+        String resultKey = searchKey.toString();
 
-        // Remove non alphanumeric characters
-        token = token.replaceAll("[^a-zA-Z0-9]", "");
+        if (redis.exists(resultKey) == 0)
+        {
+            String matchesKey = criteria.get(0);
+
+            if (criteria.size() > 1)
+            {
+                matchesKey = searchKey.build("matches").toString();
+                redis.sinterstore(matchesKey, criteria.toArray(new String[criteria.size()]));
+            }
+
+            // Sort the sentences by their text once, and keep the sentences instead of their keys
+            redis.sort(matchesKey, new SortingParams().by("*").alpha().get("*"), resultKey);
+
+            if (criteria.size() > 1)
+            {
+                redis.del(matchesKey);
+            }
+        }
 
-        return token;
+        redis.expire(resultKey, SEARCH_CACHE_TIME);
+
+        return resultKey;
+    }
+
+    /**
+     * Gets the distinct normalized words of the given text, as used in the search indexes.
+     * 
+     * @param text The text.
+     * @return The normalized words of the text.
+     */
+    private Set<String> getSearchWords(final String text)
+    {
+        Set<String> words = new LinkedHashSet<String>();
+        int start = -1;
+
+        for (int i = 0; i <= text.length(); i++)
+        {
+            boolean separator = i == text.length() || WordUtils.isSeparator(text.charAt(i));
+
+            if (separator && start >= 0)
+            {
+                String word = normalizeString(text.substring(start, i));
+
+                if (word.length() > 0)
+                {
+                    words.add(word);
+                }
+
+                start = -1;
+            }
+            else if (!separator && start < 0)
+            {
+                start = i;
+            }
+        }
+
+        return words;
+    }
+
+    /**
+     * Gets the stress type used to index the given word.
+     * 
+     * @param word The analysed last word of a sentence.
+     * @return The stress type, or <code>null</code> if the word cannot be used to find rhymes.
+     */
+    private StressType getStressType(final WordAnalysis word)
+    {
+        if (word.isValid())
+        {
+            return word.getStressType();
+        }
+
+        if (!word.getWord().isEmpty())
+        {
+            try
+            {
+                return wordParser.stressType(word.getWord());
+            }
+            catch (IllegalArgumentException ex)
+            {
+                LOGGER.debug("Cannot index {}: {}", word.getWord(), ex.getMessage());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Search for the rhymes in the given indexes.
+     * <p>
+     * The search is performed with three requests: one to get the ids of all the indexes, one to
+     * get the members of all the indexes and one to get all the sentences.
+     * 
+     * @param indexKeys The keys of the ids of the indexes to search.
+     * @return The rhymes found in each index.
+     * @throws IOException If an error occurs while searching for the rhymes.
+     */
+    private Map<String, List<String>> search(final List<String> indexKeys) throws IOException
+    {
+        Map<String, List<String>> rhymes = new HashMap<String, List<String>>();
+
+        if (indexKeys.isEmpty())
+        {
+            return rhymes;
+        }
+
+        // Get the ids of all the indexes
+        List<String> ids = redis.mget(indexKeys.toArray(new String[indexKeys.size()]));
+        final List<String> indexIds = new ArrayList<String>(ids.size());
+        List<String> foundKeys = new ArrayList<String>(ids.size());
+
+        for (int i = 0; i < ids.size(); i++)
+        {
+            if (ids.get(i) != null)
+            {
+                indexIds.add(indexns.build(ids.get(i)).toString());
+                foundKeys.add(indexKeys.get(i));
+            }
+        }
+
+        if (indexIds.isEmpty())
+        {
+            return rhymes;
+        }
+
+        // Get the sentences of all the indexes in a single round trip
+        List<Object> members = redis.pipelined(new JedisPipeline()
+        {
+            @Override
+            public void execute()
+            {
+                for (String indexId : indexIds)
+                {
+                    client.smembers(indexId);
+                }
+            }
+        });
+
+        List<String> sentenceKeys = new ArrayList<String>();
+        List<Integer> sentenceIndexes = new ArrayList<Integer>();
+
+        for (int i = 0; i < members.size(); i++)
+        {
+            @SuppressWarnings("unchecked")
+            List<Object> keys = (List<Object>) members.get(i);
+
+            if (keys != null)
+            {
+                for (Object key : keys)
+                {
+                    sentenceKeys.add((String) key);
+                    sentenceIndexes.add(i);
+                }
+            }
+        }
+
+        if (sentenceKeys.isEmpty())
+        {
+            return rhymes;
+        }
+
+        // Get all the sentences at once
+        List<String> sentences = redis.mget(sentenceKeys.toArray(new String[sentenceKeys.size()]));
+
+        for (int i = 0; i < sentences.size(); i++)
+        {
+            if (sentences.get(i) != null)
+            {
+                String indexKey = foundKeys.get(sentenceIndexes.get(i));
+                List<String> found = rhymes.get(indexKey);
+
+                if (found == null)
+                {
+                    found = new ArrayList<String>();
+                    rhymes.put(indexKey, found);
+                }
+
+                found.add(URLDecoder.decode(sentences.get(i), encoding));
+            }
+        }
+
+        return rhymes;
+    }
+
+    /**
+     * Build a unique token for the given rhyme to be used to index it.
+     * 
+     * @param rhyme The rhyme part of the sentence.
+     * @param type The stress type of the rhyme.
+     * @return The unique token for the rhyme.
+     */
+    private String buildUniqueToken(final String rhyme, final StressType type)
+    {
+        return sum(type.name().concat(rhyme));
+    }
+
+    /**
+     * Get the key of the id for the given token.
+     * 
+     * @param ns The namespace of the key.
+     * @param token The token which key is requested.
+     * @return The key for the given token.
+     */
+    private String getUniqueIdKey(final Keymaker ns, final String token)
+    {
+        String md = sum(token);
+        return ns.build(md, "id").toString();
+    }
+
+    /**
+     * Get a unique id id for the given token.
+     * 
+     * @param ns The namespace of the id.
+     * @param token The token which id is requested.
+     * @return The id for the given token.
+     */
+    private String getUniqueId(final Keymaker ns, final String token)
+    {
+        String key = getUniqueIdKey(ns, token);
+        String id = redis.get(key);
+
+        if (id != null)
+        {
+            return id;
+        }
+
+        Integer next = redis.incr(ns.build(NEXT_ID_KEY).toString());
+        id = next.toString();
+
+        if (redis.setnx(key, id) == 0)
+        {
+            id = redis.get(key);
+        }
+
+        return id;
+    }
+
+    /**
+     * Get the last used id in the given namespace.
+     * 
+     * @param ns The namespace.
+     * @return The last used id in the given namespace.
+     */
+    private String getLastId(final Keymaker ns)
+    {
+        return redis.get(ns.build(NEXT_ID_KEY).toString());
+    }
+
+    /**
+     * Makes a md5 sum of the given text.
+     * 
+     * @param value The text to sum.
+     * @return The md5 sum of the given text.
+     */
+    private String sum(final String value)
+    {
+        return DigestUtils.md5Hex(value.getBytes());
+    }
+
+    /**
+     * Normalizes the given string.
+     * 
+     * @param value The string to be normalized.
+     * @return The normalized string.
+     * @see KeyNormalizer
+     */
+    private String normalizeString(final String value)
+    {
+        return normalizer.normalize(value);
     }
 
 }
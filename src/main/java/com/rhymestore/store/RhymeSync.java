@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Synchronizes the store with a file of default rhymes, applying only the changes since the last
+ * synchronization.
+ * <p>
+ * The file is only downloaded if it has changed, according to its <code>ETag</code> and
+ * <code>Last-Modified</code> headers. When it has changed, its lines are split in blocks whose
+ * boundaries depend on the content of the lines, so inserting or removing a line only changes
+ * the block that contains it. Only the rhymes of the blocks that are not in the store yet are
+ * added, and only the rhymes of the blocks that no longer exist are deleted, so the cost of the
+ * synchronization depends on the number of changes instead of on the size of the file.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeLoader
+ */
+public class RhymeSync
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhymeSync.class);
+
+    /** Lines whose hash has these bits set to zero end a block, giving blocks of 64 lines. */
+    private static final int BOUNDARY_MASK = 0x3f;
+
+    /** The maximum number of lines of a block. */
+    public static final int MAX_BLOCK_LINES = 1024;
+
+    /** The number of rhymes to add to the store at once. */
+    private static final int BATCH_SIZE = 1000;
+
+    /** The name of the property with the entity tag of the last synchronized file. */
+    private static final String ETAG_PROPERTY = "etag";
+
+    /** The name of the property with the modification time of the last synchronized file. */
+    private static final String MODIFIED_PROPERTY = "modified";
+
+    /** The store to synchronize. */
+    private final RhymeStore store;
+
+    /**
+     * Creates a new {@link RhymeSync}.
+     * 
+     * @param store The store to synchronize.
+     */
+    public RhymeSync(final RhymeStore store)
+    {
+        super();
+        this.store = store;
+    }
+
+    /**
+     * Synchronizes the store with the file in the given URL.
+     * 
+     * @param url The URL of the file with the default rhymes.
+     * @return The number of added and deleted rhymes.
+     * @throws IOException If the file cannot be read or the store cannot be updated.
+     */
+    public int sync(final URL url) throws IOException
+    {
+        String etag = store.getSyncProperty(ETAG_PROPERTY);
+        String modified = store.getSyncProperty(MODIFIED_PROPERTY);
+        long lastModified = modified == null ? 0L : Long.parseLong(modified);
+
+        URLConnection conn = url.openConnection();
+
+        if (etag != null)
+        {
+            conn.setRequestProperty("If-None-Match", etag);
+        }
+        if (lastModified > 0)
+        {
+            conn.setIfModifiedSince(lastModified);
+        }
+
+        conn.connect();
+
+        // Not all protocols support conditional requests, so the modification
+        // time is compared too
+        if (conn instanceof HttpURLConnection
+            && ((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED
+            || lastModified > 0 && conn.getLastModified() == lastModified)
+        {
+            LOGGER.info("The default rhymes have not changed since the last synchronization");
+            conn.getInputStream().close();
+            return 0;
+        }
+
+        int changes = sync(conn.getInputStream());
+
+        // Record the version only once the changes have been applied
+        store.setSyncProperty(ETAG_PROPERTY, conn.getHeaderField("ETag"));
+        store.setSyncProperty(MODIFIED_PROPERTY, conn.getLastModified() > 0 ? String
+            .valueOf(conn.getLastModified()) : null);
+
+        return changes;
+    }
+
+    /**
+     * Synchronizes the store with the rhymes in the given stream.
+     * 
+     * @param in The stream with the default rhymes.
+     * @return The number of added and deleted rhymes.
+     * @throws IOException If the stream cannot be read or the store cannot be updated.
+     */
+    public int sync(final InputStream in) throws IOException
+    {
+        Set<String> lines = new HashSet<String>();
+        Map<String, String> blocks = readBlocks(in, lines);
+        Set<String> synced = store.getSyncBlocks();
+
+        // Blocks that are new or that no longer exist
+        Map<String, String> addedBlocks = new LinkedHashMap<String, String>(blocks);
+        addedBlocks.keySet().removeAll(synced);
+        List<String> removedBlocks = new ArrayList<String>(synced);
+        removedBlocks.removeAll(blocks.keySet());
+
+        Set<String> removedLines = new LinkedHashSet<String>();
+        for (String content : store.getSyncBlockContents(removedBlocks))
+        {
+            if (content != null)
+            {
+                removedLines.addAll(split(content));
+            }
+        }
+
+        Set<String> addedLines = new LinkedHashSet<String>();
+        for (String content : addedBlocks.values())
+        {
+            addedLines.addAll(split(content));
+        }
+
+        // Lines that moved between blocks are neither added nor deleted
+        addedLines.removeAll(removedLines);
+        removedLines.removeAll(lines);
+
+        int added = add(new ArrayList<String>(addedLines));
+        int deleted = delete(removedLines);
+
+        store.updateSyncBlocks(addedBlocks, removedBlocks);
+
+        LOGGER.info("Synchronized default rhymes: {} blocks changed, {} rhymes added, {} rhymes "
+            + "deleted", new Object[] {addedBlocks.size() + removedBlocks.size(), added, deleted});
+
+        return added + deleted;
+    }
+
+    /**
+     * Reads the given stream splitting its lines in blocks.
+     * 
+     * @param in The stream to read.
+     * @param lines Receives all the lines of the stream.
+     * @return The content of each block, by hash.
+     * @throws IOException If the stream cannot be read.
+     */
+    private static Map<String, String> readBlocks(final InputStream in, final Set<String> lines)
+        throws IOException
+    {
+        Map<String, String> blocks = new LinkedHashMap<String, String>();
+        BufferedReader br = new BufferedReader(new InputStreamReader(in));
+
+        try
+        {
+            StringBuilder block = new StringBuilder();
+            int blockLines = 0;
+            String line = null;
+
+            while ((line = br.readLine()) != null)
+            {
+                lines.add(line);
+                block.append(line).append('\n');
+                blockLines++;
+
+                if ((line.hashCode() & BOUNDARY_MASK) == 0 || blockLines == MAX_BLOCK_LINES)
+                {
+                    addBlock(blocks, block);
+                    blockLines = 0;
+                }
+            }
+
+            addBlock(blocks, block);
+        }
+        finally
+        {
+            br.close();
+        }
+
+        return blocks;
+    }
+
+    /**
+     * Adds the given block, if not empty, and clears it to start the next one.
+     * 
+     * @param blocks The content of each block, by hash.
+     * @param block The block to add.
+     */
+    private static void addBlock(final Map<String, String> blocks, final StringBuilder block)
+    {
+        if (block.length() > 0)
+        {
+            String content = block.toString();
+            blocks.put(DigestUtils.md5Hex(content), content);
+            block.setLength(0);
+        }
+    }
+
+    /**
+     * Gets the lines of a block.
+     * 
+     * @param content The content of the block.
+     * @return The lines of the block.
+     */
+    private static List<String> split(final String content)
+    {
+        return Arrays.asList(content.split("\n"));
+    }
+
+    /**
+     * Adds the given rhymes to the store.
+     * 
+     * @param rhymes The rhymes to add.
+     * @return The number of added rhymes.
+     * @throws IOException If the rhymes cannot be added.
+     */
+    private int add(final List<String> rhymes) throws IOException
+    {
+        int added = 0;
+
+        for (int i = 0; i < rhymes.size(); i += BATCH_SIZE)
+        {
+            added += store.addAll(rhymes.subList(i, Math.min(rhymes.size(), i + BATCH_SIZE)));
+        }
+
+        return added;
+    }
+
+    /**
+     * Deletes the given rhymes from the store.
+     * 
+     * @param rhymes The rhymes to delete.
+     * @return The number of deleted rhymes.
+     * @throws IOException If the store cannot be accessed.
+     */
+    private int delete(final Set<String> rhymes) throws IOException
+    {
+        int deleted = 0;
+
+        for (String rhyme : rhymes)
+        {
+            try
+            {
+                store.delete(rhyme);
+                deleted++;
+            }
+            catch (IOException ex)
+            {
+                // The rhyme may have already been deleted by hand
+                LOGGER.debug("Could not delete rhyme {}: {}", rhyme, ex.getMessage());
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // Rhymes that end with an invalid word were never added
+                LOGGER.debug("Ignoring rhyme {}: {}", rhyme, ex.getMessage());
+            }
+        }
+
+        return deleted;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.store;
+
+import java.util.List;
+
+/**
+ * A page of the rhymes found by a search.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeStore#search(String, String, com.rhymestore.lang.StressType, int, int)
+ */
+public class SearchResult
+{
+    /** The total number of rhymes that match the search. */
+    private final int total;
+
+    /** The position of the first rhyme of the page. */
+    private final int offset;
+
+    /** The rhymes of the page. */
+    private final List<String> rhymes;
+
+    /**
+     * Creates a new {@link SearchResult}.
+     * 
+     * @param total The total number of rhymes that match the search.
+     * @param offset The position of the first rhyme of the page.
+     * @param rhymes The rhymes of the page.
+     */
+    public SearchResult(final int total, final int offset, final List<String> rhymes)
+    {
+        super();
+        this.total = total;
+        this.offset = offset;
+        this.rhymes = rhymes;
+    }
+
+    public int getTotal()
+    {
+        return total;
+    }
+
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    public List<String> getRhymes()
+    {
+        return rhymes;
+    }
+}
@@ -0,0 +1,381 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded priority queue of the commands waiting to be executed.
+ * <p>
+ * Commands that have not failed go first, and among them, the ones with the earliest deadline.
+ * Commands that have failed wait until their retry time, and expired commands are discarded when
+ * they reach the head of the queue. This class is thread-safe.
+ * 
+ * @author Ignasi Barrera
+ * @see ScheduledCommand
+ */
+public class CommandQueue
+{
+    /** Orders the commands that can be executed. */
+    private static final Comparator<ScheduledCommand> PRIORITY = new Comparator<ScheduledCommand>()
+    {
+        @Override
+        public int compare(final ScheduledCommand c1, final ScheduledCommand c2)
+        {
+            if (c1.getAttempts() != c2.getAttempts())
+            {
+                return c1.getAttempts() < c2.getAttempts() ? -1 : 1;
+            }
+            if (c1.getDeadline() != c2.getDeadline())
+            {
+                return c1.getDeadline() < c2.getDeadline() ? -1 : 1;
+            }
+            return c1.sequence < c2.sequence ? -1 : c1.sequence == c2.sequence ? 0 : 1;
+        }
+    };
+
+    /** Orders the commands waiting to be retried. */
+    private static final Comparator<ScheduledCommand> RETRY_TIME =
+        new Comparator<ScheduledCommand>()
+        {
+            @Override
+            public int compare(final ScheduledCommand c1, final ScheduledCommand c2)
+            {
+                if (c1.getNotBefore() != c2.getNotBefore())
+                {
+                    return c1.getNotBefore() < c2.getNotBefore() ? -1 : 1;
+                }
+                return c1.sequence < c2.sequence ? -1 : c1.sequence == c2.sequence ? 0 : 1;
+            }
+        };
+
+    /**
+     * The maximum number of commands added with {@link #put(ScheduledCommand)} and
+     * {@link #offer(ScheduledCommand, long, TimeUnit)}.
+     */
+    private final int capacity;
+
+    /** The commands that can be executed. */
+    private final PriorityQueue<ScheduledCommand> ready =
+        new PriorityQueue<ScheduledCommand>(16, PRIORITY);
+
+    /** The commands waiting to be retried. */
+    private final PriorityQueue<ScheduledCommand> delayed =
+        new PriorityQueue<ScheduledCommand>(16, RETRY_TIME);
+
+    /** Guards the queue. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when there is room in the queue. */
+    private final Condition notFull = lock.newCondition();
+
+    /** The order of arrival of the next command. */
+    private long sequence;
+
+    /** The number of discarded expired commands. */
+    private long expiredCount;
+
+    /**
+     * Creates a new {@link CommandQueue}.
+     * 
+     * @param capacity The maximum number of commands added with {@link #put(ScheduledCommand)}.
+     */
+    public CommandQueue(final int capacity)
+    {
+        super();
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds the given command, waiting until there is room for it.
+     * 
+     * @param command The command to add.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void put(final ScheduledCommand command) throws InterruptedException
+    {
+        lock.lockInterruptibly();
+
+        try
+        {
+            while (size() >= capacity)
+            {
+                notFull.await();
+            }
+
+            add(command);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the given command, waiting up to the given time until there is room for it.
+     * 
+     * @param command The command to add.
+     * @param timeout The maximum time to wait.
+     * @param unit The unit of the timeout.
+     * @return Boolean indicating if the command has been added, or if there was no room for it
+     *         before the timeout.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean offer(final ScheduledCommand command, final long timeout, final TimeUnit unit)
+        throws InterruptedException
+    {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+
+        try
+        {
+            while (size() >= capacity)
+            {
+                if (nanos <= 0)
+                {
+                    return false;
+                }
+
+                nanos = notFull.awaitNanos(nanos);
+            }
+
+            add(command);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds again a command that has been taken from the queue.
+     * <p>
+     * This method does not wait for room in the queue, so the queue may temporarily exceed its
+     * capacity.
+     * 
+     * @param command The command to add.
+     */
+    public void retry(final ScheduledCommand command)
+    {
+        lock.lock();
+
+        try
+        {
+            add(command);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next command that can be executed.
+     * 
+     * @param now The current time, in milliseconds.
+     * @param expired The list where the discarded expired commands will be added.
+     * @return The next command, or <code>null</code> if no command can be executed now.
+     */
+    public ScheduledCommand poll(final long now, final List<ScheduledCommand> expired)
+    {
+        lock.lock();
+
+        try
+        {
+            promoteDelayed(now);
+
+            ScheduledCommand next = ready.poll();
+
+            while (next != null && next.isExpired(now))
+            {
+                expired.add(next);
+                expiredCount++;
+                next = ready.poll();
+            }
+
+            // Expired commands also make room in the queue
+            notFull.signalAll();
+
+            return next;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if there is a command that can be executed now.
+     * 
+     * @param now The current time, in milliseconds.
+     * @return Boolean indicating if there is a command that can be executed now.
+     */
+    public boolean hasReady(final long now)
+    {
+        lock.lock();
+
+        try
+        {
+            promoteDelayed(now);
+            return !ready.isEmpty();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of commands in the queue.
+     * 
+     * @return The number of commands in the queue, including the ones waiting to be retried.
+     */
+    public int size()
+    {
+        lock.lock();
+
+        try
+        {
+            return ready.size() + delayed.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of commands that can be added without waiting.
+     * 
+     * @return The number of commands that can be added with {@link #put(ScheduledCommand)}
+     *         without waiting.
+     */
+    public int remainingCapacity()
+    {
+        return Math.max(0, capacity - size());
+    }
+
+    /**
+     * Gets the number of commands waiting to be retried.
+     * 
+     * @return The number of commands waiting to be retried.
+     */
+    public int getDelayedCount()
+    {
+        lock.lock();
+
+        try
+        {
+            return delayed.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the time since the oldest command in the queue was enqueued.
+     * 
+     * @param now The current time, in milliseconds.
+     * @return The age of the oldest command, in milliseconds, or <code>0</code> if the queue is
+     *         empty.
+     */
+    public long getOldestAge(final long now)
+    {
+        lock.lock();
+
+        try
+        {
+            long oldest = now;
+
+            for (ScheduledCommand command : ready)
+            {
+                oldest = Math.min(oldest, command.getEnqueuedAt());
+            }
+            for (ScheduledCommand command : delayed)
+            {
+                oldest = Math.min(oldest, command.getEnqueuedAt());
+            }
+
+            return now - oldest;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of expired commands that have been discarded.
+     * 
+     * @return The number of expired commands that have been discarded.
+     */
+    public long getExpiredCount()
+    {
+        lock.lock();
+
+        try
+        {
+            return expiredCount;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the given command. The lock must be held.
+     */
+    private void add(final ScheduledCommand command)
+    {
+        command.sequence = sequence++;
+
+        if (command.getNotBefore() > 0)
+        {
+            delayed.add(command);
+        }
+        else
+        {
+            ready.add(command);
+        }
+    }
+
+    /**
+     * Moves the commands whose retry time has come to the ready queue. The lock must be held.
+     */
+    private void promoteDelayed(final long now)
+    {
+        while (!delayed.isEmpty() && delayed.peek().getNotBefore() <= now)
+        {
+            ready.add(delayed.poll());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import com.rhymestore.twitter.commands.TwitterCommand;
+
+/**
+ * A {@link TwitterCommand} waiting in the {@link CommandQueue}, with its scheduling information.
+ * 
+ * @author Ignasi Barrera
+ */
+public class ScheduledCommand
+{
+    /** Deadline of the commands that never expire. */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /** The command to execute. */
+    private final TwitterCommand command;
+
+    /** The time after which the command is discarded, in milliseconds. */
+    private final long deadline;
+
+    /** The time when the command was first enqueued, in milliseconds. */
+    private final long enqueuedAt;
+
+    /** The number of failed executions. */
+    private int attempts;
+
+    /** The time before which the command must not be executed, in milliseconds. */
+    private long notBefore;
+
+    /** Order of arrival to the queue, used to break ties. */
+    /* package */long sequence;
+
+    /**
+     * Creates a new {@link ScheduledCommand}.
+     * 
+     * @param command The command to execute.
+     * @param deadline The time after which the command is discarded, in milliseconds.
+     * @param now The current time, in milliseconds.
+     */
+    public ScheduledCommand(final TwitterCommand command, final long deadline, final long now)
+    {
+        super();
+        this.command = command;
+        this.deadline = deadline;
+        this.enqueuedAt = now;
+    }
+
+    /**
+     * Checks if the command has expired.
+     * 
+     * @param now The current time, in milliseconds.
+     * @return Boolean indicating if the command has expired.
+     */
+    public boolean isExpired(final long now)
+    {
+        return now > deadline;
+    }
+
+    /**
+     * Records a failed execution and delays the next one.
+     * 
+     * @param retryAt The time when the command can be executed again, in milliseconds.
+     */
+    public void failed(final long retryAt)
+    {
+        attempts++;
+        notBefore = retryAt;
+    }
+
+    /**
+     * Delays the next execution without counting it as a failure.
+     * 
+     * @param retryAt The time when the command can be executed again, in milliseconds.
+     */
+    public void delay(final long retryAt)
+    {
+        notBefore = retryAt;
+    }
+
+    public TwitterCommand getCommand()
+    {
+        return command;
+    }
+
+    public long getDeadline()
+    {
+        return deadline;
+    }
+
+    public long getEnqueuedAt()
+    {
+        return enqueuedAt;
+    }
+
+    public int getAttempts()
+    {
+        return attempts;
+    }
+
+    public long getNotBefore()
+    {
+        return notBefore;
+    }
+}
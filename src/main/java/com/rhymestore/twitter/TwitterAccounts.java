@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import twitter4j.Twitter;
+import twitter4j.TwitterFactory;
+import twitter4j.auth.AccessToken;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+import com.rhymestore.twitter.cluster.RedisClusterBackend;
+
+/**
+ * Runs a {@link TwitterScheduler} for each configured Twitter account.
+ * <p>
+ * Each account has its own rate limits, queues and polling state, but all of them share the same
+ * pool of worker threads to prepare the replies, and the same rhyme store and word parser.
+ * <p>
+ * The accounts are configured in the {@link Configuration#TWITTER_ACCOUNTS_PROPERTY} property. If
+ * no accounts are configured, the default account configured for twitter4j is used.
+ * <p>
+ * If the {@link Configuration#TWITTER_CLUSTER_PROPERTY} is enabled, the accounts can be run by
+ * several nodes at the same time, coordinated through the Redis database.
+ * 
+ * @author Ignasi Barrera
+ * @see TwitterScheduler
+ */
+public class TwitterAccounts
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(TwitterAccounts.class);
+
+    /** The Twitter connection of each account. */
+    private final Map<String, Twitter> accounts;
+
+    /** The scheduler of each account. */
+    private final List<TwitterScheduler> schedulers;
+
+    /** The worker threads shared by all schedulers. */
+    private final ExecutorService workers;
+
+    /** The backend used to coordinate the nodes, in cluster mode. */
+    private final RedisClusterBackend cluster;
+
+    /**
+     * Creates the Twitter connections and schedulers for the configured accounts.
+     * 
+     * @throws ConfigurationException If the accounts are not properly configured.
+     */
+    public TwitterAccounts()
+    {
+        this(connect());
+    }
+
+    /**
+     * Creates the schedulers for the given accounts.
+     * 
+     * @param accounts The Twitter connection of each account. The default account is identified
+     *            by a <code>null</code> name.
+     */
+    public TwitterAccounts(final Map<String, Twitter> accounts)
+    {
+        super();
+        this.accounts = accounts;
+        this.workers = TwitterScheduler.newWorkerPool();
+        this.schedulers = new ArrayList<TwitterScheduler>(accounts.size());
+
+        String node = null;
+
+        if (Boolean.parseBoolean(Configuration
+            .getConfigValue(Configuration.TWITTER_CLUSTER_PROPERTY)))
+        {
+            cluster = new RedisClusterBackend();
+            node = ManagementFactory.getRuntimeMXBean().getName();
+
+            LOGGER.info("Running the Twitter accounts in cluster mode as node {}", node);
+        }
+        else
+        {
+            cluster = null;
+        }
+
+        for (Map.Entry<String, Twitter> account : accounts.entrySet())
+        {
+            schedulers.add(new TwitterScheduler(account.getValue(), account.getKey(), workers,
+                cluster, node));
+        }
+    }
+
+    /**
+     * Starts the schedulers of all the accounts.
+     */
+    public void start()
+    {
+        for (TwitterScheduler scheduler : schedulers)
+        {
+            scheduler.start();
+        }
+    }
+
+    /**
+     * Shuts down the schedulers and the Twitter connections of all the accounts.
+     */
+    public void shutdown()
+    {
+        for (TwitterScheduler scheduler : schedulers)
+        {
+            scheduler.shutdown();
+        }
+
+        workers.shutdownNow();
+
+        if (cluster != null)
+        {
+            try
+            {
+                cluster.close();
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not disconnect from the cluster backend", ex);
+            }
+        }
+
+        for (Twitter twitter : accounts.values())
+        {
+            twitter.shutdown();
+        }
+    }
+
+    /**
+     * Gets the Twitter connections of all the accounts.
+     * 
+     * @return The Twitter connections, in the configured order.
+     */
+    public List<Twitter> getAccounts()
+    {
+        return Collections.unmodifiableList(new ArrayList<Twitter>(accounts.values()));
+    }
+
+    /**
+     * Gets the schedulers of all the accounts.
+     * 
+     * @return The schedulers, in the configured order.
+     */
+    public List<TwitterScheduler> getSchedulers()
+    {
+        return Collections.unmodifiableList(schedulers);
+    }
+
+    /**
+     * Creates the Twitter connections for the configured accounts.
+     * 
+     * @return The Twitter connection of each account.
+     * @throws ConfigurationException If the access token of an account is not configured.
+     */
+    private static Map<String, Twitter> connect()
+    {
+        Map<String, Twitter> accounts = new LinkedHashMap<String, Twitter>();
+        TwitterFactory factory = new TwitterFactory();
+        String names = Configuration.getConfigValue(Configuration.TWITTER_ACCOUNTS_PROPERTY);
+
+        if (names == null || names.trim().isEmpty())
+        {
+            accounts.put(null, factory.getInstance());
+            return accounts;
+        }
+
+        for (String name : names.split(","))
+        {
+            String account = name.trim();
+
+            if (!account.isEmpty())
+            {
+                String token = Configuration
+                    .getRequiredConfigValue(Configuration.TWITTER_TOKEN_PROPERTY + account);
+                String secret = Configuration
+                    .getRequiredConfigValue(Configuration.TWITTER_TOKEN_SECRET_PROPERTY + account);
+
+                LOGGER.info("Configuring Twitter account: {}", account);
+
+                accounts.put(account, factory.getInstance(new AccessToken(token, secret)));
+            }
+        }
+
+        return accounts;
+    }
+}
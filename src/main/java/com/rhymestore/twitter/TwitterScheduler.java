@@ -22,27 +22,81 @@
 
 package com.rhymestore.twitter;
 
-import java.util.Queue;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import twitter4j.Twitter;
 import twitter4j.TwitterException;
+import twitter4j.internal.http.HttpResponseCode;
 
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+import com.rhymestore.store.Keymaker;
+import com.rhymestore.store.RhymeStore;
+import com.rhymestore.twitter.cluster.ClusterBackend;
+import com.rhymestore.twitter.cluster.LeaderElection;
+import com.rhymestore.twitter.cluster.SharedReplyQueue;
 import com.rhymestore.twitter.commands.GetMentionsCommand;
+import com.rhymestore.twitter.commands.MentionHandler;
+import com.rhymestore.twitter.commands.PreparableCommand;
+import com.rhymestore.twitter.commands.ReplyCommand;
 import com.rhymestore.twitter.commands.TwitterCommand;
+import com.rhymestore.twitter.journal.CommandJournal;
+import com.rhymestore.twitter.journal.PendingReply;
+import com.rhymestore.twitter.ratelimit.RateLimiter;
+import com.rhymestore.twitter.ratelimit.RateLimiter.Endpoint;
+import com.rhymestore.twitter.stream.MentionStreamer;
+import com.rhymestore.twitter.stream.TwitterStreamSource;
+import com.rhymestore.twitter.util.AccountIdentity;
 import com.rhymestore.twitter.util.TwitterUtils;
 
 /**
  * Schedules Twitter API calls to execute them in order.
  * <p>
- * Twitter only allows {@link TwitterUtils#MAX_API_CALLS_PER_HOUR} calls per hour. This class will
- * enqueue and run all requested API calls when possible.
+ * Twitter limits the number of calls to each API endpoint. This class will enqueue and run all
+ * requested API calls when the {@link RateLimiter} allows it.
+ * <p>
+ * Commands are processed in three stages connected by bounded queues:
+ * <ol>
+ * <li>The mentions are polled and the replies are added to the preparation queue.</li>
+ * <li>A pool of worker threads prepares the {@link PreparableCommand commands} (finds the rhymes
+ * for the replies) and moves them to the publish queue. The pool may be shared by the schedulers
+ * of several accounts; each scheduler uses one worker at a time.</li>
+ * <li>The prepared commands are executed, at the rate allowed by the Twitter API. The publish
+ * queue is a {@link CommandQueue}: the replies to the oldest mentions go first, and the replies
+ * that cannot be sent before {@link #REPLY_TIMEOUT} are discarded.</li>
+ * </ol>
+ * The mentions are only polled when the preparation queue has room for them. Since the mentions
+ * and the replies use different API endpoints, a backlog of replies does not delay the polling.
+ * <p>
+ * Failed commands are retried with exponential backoff, up to {@link #MAX_ATTEMPTS} times.
+ * <p>
+ * If streaming is enabled, the mentions are also received through a {@link MentionStreamer}, and
+ * they are only polled until the stream is caught up.
+ * <p>
+ * If a journal file is configured, the enqueued replies and the last processed mention are
+ * recorded in a {@link CommandJournal}, and the pending replies are enqueued again when the
+ * scheduler is created.
+ * <p>
+ * If a {@link ClusterBackend} is given, the account can be run by several nodes. Only the node
+ * elected as leader polls the mentions, and the replies are added to a {@link SharedReplyQueue}
+ * where every node takes the ones it has room to send.
  * 
  * @author Ignasi Barrera
  * @see TwitterCommand
@@ -52,42 +106,233 @@ public class TwitterScheduler implements Runnable
     /** The logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(TwitterScheduler.class);
 
+    /** The maximum number of commands waiting to be prepared. */
+    public static final int PREPARE_QUEUE_CAPACITY = 1000;
+
+    /** The maximum number of commands prepared together. */
+    public static final int PREPARE_BATCH_SIZE = TwitterUtils.MENTIONS_PER_PAGE;
+
+    /** The maximum number of prepared commands waiting to be executed. */
+    public static final int PUBLISH_QUEUE_CAPACITY = 100;
+
+    /** The interval between the checks for API calls to run, in milliseconds. */
+    public static final long TICK_INTERVAL = 1000;
+
+    /**
+     * The time a prepared command waits for room in the publish queue before it is enqueued
+     * again to be prepared later, in milliseconds.
+     */
+    public static final long PUBLISH_TIMEOUT = TICK_INTERVAL;
+
+    /** The maximum time to reply a mention, in milliseconds. */
+    public static final long REPLY_TIMEOUT = TimeUnit.HOURS.toMillis(12);
+
+    /** The maximum number of times a command is executed. */
+    public static final int MAX_ATTEMPTS = 5;
+
+    /** The time to wait before retrying a failed command for the first time, in milliseconds. */
+    public static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(30);
+
+    /** The maximum time to wait before retrying a failed command, in milliseconds. */
+    public static final long MAX_RETRY_DELAY = TimeUnit.HOURS.toMillis(1);
+
+    /** The interval between the queue statistics log messages, in milliseconds. */
+    public static final long STATS_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /** The name used for the default account in the keys of the cluster mode. */
+    private static final String DEFAULT_ACCOUNT = "default";
+
+    /** Namespace of the keys used in the cluster mode. */
+    private static final Keymaker CLUSTER_KEYS = new Keymaker("twitter");
+
     /** The scheduler service. */
     private ScheduledExecutorService scheduler;
 
-    /** The queue with the pending commands. */
-    private Queue<TwitterCommand> commandQueue;
+    /** The worker threads that prepare the commands. */
+    private ExecutorService workers;
+
+    /** Indicates if the worker threads must be shut down with the scheduler. */
+    private boolean ownWorkers;
+
+    /** Indicates if a worker is preparing the commands of this scheduler. */
+    private final AtomicBoolean preparing = new AtomicBoolean();
+
+    /** The queue with the commands waiting to be prepared. */
+    private BlockingQueue<TwitterCommand> commandQueue;
+
+    /** The queue with the prepared commands waiting to be executed. */
+    private CommandQueue publishQueue;
 
     /** The Twitter account where the API calls will be performed. */
     private Twitter twitter;
 
+    /** The cached identity of the Twitter account. */
+    private AccountIdentity identity;
+
     /** The command used to get mentions, */
-    private TwitterCommand getMentionsCommand;
+    private GetMentionsCommand getMentionsCommand;
+
+    /** Receives the mentions as they are published, if streaming is enabled. */
+    private MentionStreamer mentionStreamer;
+
+    /** Limits the rate of the API calls. */
+    private RateLimiter rateLimiter;
+
+    /** The journal with the pending replies, if configured. */
+    private CommandJournal journal;
+
+    /** The backend used to coordinate the nodes that run the account, in cluster mode. */
+    private ClusterBackend cluster;
+
+    /** Elects the node that polls the mentions, in cluster mode. */
+    private LeaderElection leaderElection;
+
+    /** The replies to send shared by all the nodes, in cluster mode. */
+    private SharedReplyQueue sharedQueue;
+
+    /** The key where the last processed mention is shared, in cluster mode. */
+    private String checkpointKey;
+
+    /** The number of commands executed successfully. */
+    private final AtomicLong publishedCount = new AtomicLong();
+
+    /** The number of failed executions that have been retried. */
+    private final AtomicLong retriedCount = new AtomicLong();
+
+    /** The number of commands discarded after {@link #MAX_ATTEMPTS} failed executions. */
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /** The last time the queue statistics were logged. */
+    private long lastStats;
 
     /**
-     * Creates a new {@link TwitterScheduler}.
+     * Creates a new {@link TwitterScheduler} with its own worker threads.
      * 
      * @param twitter The Twitter account where the API calls will be performed.
      */
     public TwitterScheduler(final Twitter twitter)
+    {
+        this(twitter, null, newWorkerPool());
+        ownWorkers = true;
+    }
+
+    /**
+     * Creates a new {@link TwitterScheduler} that prepares the commands in the given worker
+     * threads.
+     * <p>
+     * The worker threads are not shut down with the scheduler.
+     * 
+     * @param twitter The Twitter account where the API calls will be performed.
+     * @param account The name of the account, used to keep its journal apart from the journals of
+     *            other accounts. May be <code>null</code> for the default account.
+     * @param workers The worker threads that prepare the commands.
+     */
+    public TwitterScheduler(final Twitter twitter, final String account,
+        final ExecutorService workers)
+    {
+        this(twitter, account, workers, null, null);
+    }
+
+    /**
+     * Creates a new {@link TwitterScheduler} that coordinates with the other nodes that run the
+     * same account.
+     * <p>
+     * The worker threads are not shut down with the scheduler.
+     * 
+     * @param twitter The Twitter account where the API calls will be performed.
+     * @param account The name of the account. May be <code>null</code> for the default account.
+     * @param workers The worker threads that prepare the commands.
+     * @param cluster The backend used to coordinate the nodes, or <code>null</code> if this is
+     *            the only node that runs the account.
+     * @param node The name of this node, unique among the nodes that run the account.
+     */
+    public TwitterScheduler(final Twitter twitter, final String account,
+        final ExecutorService workers, final ClusterBackend cluster, final String node)
     {
         super();
 
         this.twitter = twitter;
-        commandQueue = new LinkedBlockingDeque<TwitterCommand>(); // Thread-safe
-        getMentionsCommand = new GetMentionsCommand(commandQueue);
+        this.workers = workers;
+        this.cluster = cluster;
+        rateLimiter = new RateLimiter();
+        twitter.addRateLimitStatusListener(rateLimiter);
+        commandQueue = new LinkedBlockingQueue<TwitterCommand>(PREPARE_QUEUE_CAPACITY);
+        publishQueue = new CommandQueue(PUBLISH_QUEUE_CAPACITY);
+        journal = openJournal(account);
+        identity = new AccountIdentity(twitter);
+        MentionHandler mentionHandler;
+
+        if (cluster != null)
+        {
+            // The shared queue keeps the replies until a node takes them, so
+            // they are recorded in the journal of that node
+            Keymaker keys = CLUSTER_KEYS.build(account == null ? DEFAULT_ACCOUNT : account);
+            leaderElection = new LeaderElection(cluster, keys.build("leader").toString(), node);
+            sharedQueue = new SharedReplyQueue(cluster, keys.build("replies").toString());
+            checkpointKey = keys.build("checkpoint").toString();
+            mentionHandler = new MentionHandler(sharedQueue, null, identity);
+        }
+        else
+        {
+            mentionHandler = new MentionHandler(commandQueue, journal, identity);
+        }
+
+        getMentionsCommand = new GetMentionsCommand(mentionHandler);
+
+        if (Boolean.parseBoolean(Configuration
+            .getConfigValue(Configuration.TWITTER_STREAMING_PROPERTY)))
+        {
+            if (cluster != null)
+            {
+                throw new ConfigurationException(
+                    "Streaming the mentions is not supported in cluster mode");
+            }
+
+            mentionStreamer = new MentionStreamer(new TwitterStreamSource(twitter), mentionHandler,
+                getMentionsCommand, twitter);
+        }
+
         scheduler = Executors.newSingleThreadScheduledExecutor();
     }
 
+    /**
+     * Creates a pool with the configured number of worker threads to prepare the commands.
+     * 
+     * @return The pool of worker threads.
+     * @throws ConfigurationException If the configured number of threads is not valid.
+     */
+    public static ExecutorService newWorkerPool()
+    {
+        return Executors.newFixedThreadPool(getWorkerCount(), new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "twitter-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     /**
      * Starts down the scheduler.
      */
     public void start()
     {
-        double callsPerMinute = Math.floor(TwitterUtils.MAX_API_CALLS_PER_HOUR / 60);
-        long interval = (long) Math.ceil(60 / callsPerMinute);
+        if (journal != null)
+        {
+            recoverPendingReplies();
+        }
 
-        scheduler.scheduleAtFixedRate(this, 0, interval, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this, 0, TICK_INTERVAL, TimeUnit.MILLISECONDS);
+
+        if (mentionStreamer != null)
+        {
+            mentionStreamer.start();
+        }
     }
 
     /**
@@ -95,34 +340,671 @@ public class TwitterScheduler implements Runnable
      */
     public void shutdown()
     {
+        if (mentionStreamer != null)
+        {
+            mentionStreamer.shutdown();
+        }
+
         scheduler.shutdown();
+
+        if (leaderElection != null)
+        {
+            // Let another node take over the polling
+            leaderElection.release();
+        }
+
+        if (ownWorkers)
+        {
+            workers.shutdownNow();
+        }
+
+        if (journal != null)
+        {
+            try
+            {
+                journal.close();
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not close the command journal", ex);
+            }
+        }
     }
 
     /**
-     * Executes the enqueued Twitter API calls.
+     * Executes the enqueued Twitter API calls, if the rate limits allow it.
      */
     @Override
     public void run()
     {
         try
         {
-            if (commandQueue.isEmpty())
+            long now = System.currentTimeMillis();
+
+            if (publishQueue.hasReady(now) && rateLimiter.tryAcquire(Endpoint.UPDATE_STATUS))
             {
-                LOGGER.trace("Running GetMentions API call...");
+                LOGGER.trace("Running command from queue...");
+
+                List<ScheduledCommand> expired = new ArrayList<ScheduledCommand>();
+                ScheduledCommand next = publishQueue.poll(now, expired);
+
+                for (ScheduledCommand cmd : expired)
+                {
+                    LOGGER.warn("Discarding expired command: {}", cmd.getCommand());
+                    completed(cmd.getCommand());
+                }
+
+                if (next != null)
+                {
+                    publish(next, now);
+                }
+            }
+
+            if (cluster == null)
+            {
+                // Mentions are not polled while the stream delivers them
+                boolean streaming = mentionStreamer != null && mentionStreamer.isCaughtUp();
+
+                // Poll only if all the pages of mentions fit in the queue
+                int maxMentions = TwitterUtils.MENTIONS_PER_PAGE * GetMentionsCommand.MAX_PAGES;
+
+                if (!streaming && commandQueue.remainingCapacity() >= maxMentions
+                    && rateLimiter.tryAcquire(Endpoint.MENTIONS))
+                {
+                    LOGGER.trace("Running GetMentions API call...");
 
-                getMentionsCommand.execute(twitter);
+                    pollMentions();
+                }
             }
             else
             {
-                LOGGER.trace("Running command from queue...");
+                // Only the leader polls, but all nodes send replies
+                if (leaderElection.update(now) && rateLimiter.tryAcquire(Endpoint.MENTIONS))
+                {
+                    LOGGER.trace("Running GetMentions API call as the leader...");
+
+                    pollSharedMentions();
+                }
+
+                takeSharedReplies();
+            }
+
+            if (!commandQueue.isEmpty())
+            {
+                prepareCommands();
+            }
+
+            // Write the replies completed since the last execution at once
+            if (journal != null)
+            {
+                try
+                {
+                    journal.commit();
+                }
+                catch (IOException ex)
+                {
+                    LOGGER.error("Could not write the command journal", ex);
+                }
+            }
+
+            if (now - lastStats >= STATS_INTERVAL)
+            {
+                logStats(now);
+            }
+        }
+        catch (RuntimeException ex)
+        {
+            // Do not let unexpected errors cancel the scheduled executions
+            LOGGER.error("Unexpected error in the scheduled execution", ex);
+        }
+    }
+
+    /**
+     * Gets the cached identity of the Twitter account.
+     * 
+     * @return The identity of the Twitter account.
+     */
+    public AccountIdentity getIdentity()
+    {
+        return identity;
+    }
+
+    /**
+     * Gets the number of commands waiting to be prepared.
+     * 
+     * @return The number of commands waiting to be prepared.
+     */
+    public int getPrepareQueueSize()
+    {
+        return commandQueue.size();
+    }
+
+    /**
+     * Gets the number of prepared commands waiting to be executed.
+     * 
+     * @return The number of prepared commands waiting to be executed, including the ones waiting
+     *         to be retried.
+     */
+    public int getPublishQueueSize()
+    {
+        return publishQueue.size();
+    }
+
+    /**
+     * Gets the time since the oldest prepared command was enqueued.
+     * 
+     * @return The age of the oldest prepared command, in milliseconds.
+     */
+    public long getOldestCommandAge()
+    {
+        return publishQueue.getOldestAge(System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the number of commands executed successfully.
+     * 
+     * @return The number of commands executed successfully.
+     */
+    public long getPublishedCount()
+    {
+        return publishedCount.get();
+    }
+
+    /**
+     * Gets the number of failed executions that have been retried.
+     * 
+     * @return The number of failed executions that have been retried.
+     */
+    public long getRetriedCount()
+    {
+        return retriedCount.get();
+    }
+
+    /**
+     * Gets the number of commands discarded because they could not be executed in time.
+     * 
+     * @return The number of expired commands.
+     */
+    public long getExpiredCount()
+    {
+        return publishQueue.getExpiredCount();
+    }
+
+    /**
+     * Gets the number of commands discarded after {@link #MAX_ATTEMPTS} failed executions.
+     * 
+     * @return The number of failed commands.
+     */
+    public long getFailedCount()
+    {
+        return failedCount.get();
+    }
+
+    /**
+     * Prepares the enqueued commands in a worker thread, if no worker is already preparing them.
+     */
+    private void prepareCommands()
+    {
+        if (publishQueue.remainingCapacity() > 0 && preparing.compareAndSet(false, true))
+        {
+            try
+            {
+                workers.execute(new Preparer());
+            }
+            catch (RejectedExecutionException ex)
+            {
+                // The workers are being shut down
+                preparing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Executes the given prepared command, scheduling a retry if it fails.
+     * 
+     * @param cmd The command to execute.
+     * @param now The current time, in milliseconds.
+     */
+    private void publish(final ScheduledCommand cmd, final long now)
+    {
+        try
+        {
+            cmd.getCommand().execute(twitter);
+            publishedCount.incrementAndGet();
+            completed(cmd.getCommand());
+        }
+        catch (TwitterException ex)
+        {
+            LOGGER.error("Could not execute the Twitter API call", ex);
 
-                TwitterCommand cmd = commandQueue.poll();
-                cmd.execute(twitter);
+            if (ex.exceededRateLimitation())
+            {
+                // Not the command's fault. The endpoint will be blocked
+                rateLimiter.backOff(Endpoint.UPDATE_STATUS, ex);
+                publishQueue.retry(cmd);
+            }
+            else
+            {
+                retryLater(cmd, now);
             }
         }
+        catch (RuntimeException ex)
+        {
+            // Do not let unexpected errors cancel the scheduled executions
+            LOGGER.error("Unexpected error executing the Twitter API call", ex);
+            retryLater(cmd, now);
+        }
+    }
+
+    /**
+     * Schedules a retry of the given failed command, if it has not reached the maximum number of
+     * attempts.
+     * 
+     * @param cmd The failed command.
+     * @param now The current time, in milliseconds.
+     */
+    private void retryLater(final ScheduledCommand cmd, final long now)
+    {
+        if (cmd.getAttempts() + 1 >= MAX_ATTEMPTS)
+        {
+            LOGGER.error("Discarding command after {} attempts: {}", MAX_ATTEMPTS, cmd
+                .getCommand());
+
+            failedCount.incrementAndGet();
+            completed(cmd.getCommand());
+            return;
+        }
+
+        long delay = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << cmd.getAttempts());
+        cmd.failed(now + delay);
+        retriedCount.incrementAndGet();
+
+        LOGGER.debug("Retrying command in {} seconds", TimeUnit.MILLISECONDS.toSeconds(delay));
+
+        publishQueue.retry(cmd);
+    }
+
+    /**
+     * Gets the latest mentions.
+     * 
+     * @return Boolean indicating if the mentions have been processed.
+     */
+    private boolean pollMentions()
+    {
+        int generation = mentionStreamer != null ? mentionStreamer.getGeneration() : 0;
+
+        try
+        {
+            getMentionsCommand.execute(twitter);
+
+            if (mentionStreamer != null)
+            {
+                mentionStreamer.polled(generation);
+            }
+
+            return true;
+        }
         catch (TwitterException ex)
         {
             LOGGER.error("Could not execute the Twitter API call", ex);
+
+            if (ex.exceededRateLimitation())
+            {
+                rateLimiter.backOff(Endpoint.MENTIONS, ex);
+            }
+            else if (ex.getStatusCode() == HttpResponseCode.UNAUTHORIZED)
+            {
+                // The credentials may have changed
+                identity.refresh();
+            }
+        }
+        catch (RuntimeException ex)
+        {
+            // Do not let unexpected errors cancel the scheduled executions
+            LOGGER.error("Unexpected error executing the Twitter API call", ex);
+        }
+
+        return false;
+    }
+
+    /**
+     * Polls the mentions as the leader of the cluster, and shares the last processed mention with
+     * the other nodes.
+     */
+    private void pollSharedMentions()
+    {
+        try
+        {
+            // Continue from the last mention processed by any leader
+            String checkpoint = cluster.get(checkpointKey);
+            if (checkpoint != null)
+            {
+                getMentionsCommand.advanceLastTweetId(Long.parseLong(checkpoint));
+            }
+
+            // The last processed mention is not shared if the replies could not be shared,
+            // so the next leader polls them again
+            if (pollMentions())
+            {
+                long lastTweetId = getMentionsCommand.getLastTweetId();
+                if (lastTweetId > 0)
+                {
+                    cluster.set(checkpointKey, String.valueOf(lastTweetId));
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            LOGGER.error("Could not share the last processed mention", ex);
+        }
+        catch (NumberFormatException ex)
+        {
+            LOGGER.error("Invalid last processed mention in {}: {}", checkpointKey, ex
+                .getMessage());
+        }
+    }
+
+    /**
+     * Takes from the shared queue the replies that this node has room to send.
+     */
+    private void takeSharedReplies()
+    {
+        if (!commandQueue.isEmpty())
+        {
+            return;
+        }
+
+        int room = Math.min(PREPARE_BATCH_SIZE, publishQueue.remainingCapacity());
+
+        for (int i = 0; i < room; i++)
+        {
+            ReplyCommand cmd = sharedQueue.poll();
+
+            if (cmd == null)
+            {
+                break;
+            }
+
+            PendingReply reply = cmd.getStatus();
+
+            if (journal != null)
+            {
+                try
+                {
+                    journal.added(reply);
+                }
+                catch (IOException ex)
+                {
+                    LOGGER.error("Could not record the reply to tweet " + reply.getStatusId()
+                        + " in the journal", ex);
+                }
+            }
+
+            commandQueue.offer(cmd);
+        }
+    }
+
+    /**
+     * Records the completion of the given command in the journal, if it is a reply.
+     * 
+     * @param cmd The completed command.
+     */
+    private void completed(final TwitterCommand cmd)
+    {
+        if (journal != null && cmd instanceof ReplyCommand)
+        {
+            long statusId = ((ReplyCommand) cmd).getStatus().getStatusId();
+
+            try
+            {
+                journal.completed(statusId);
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not record the reply to tweet " + statusId
+                    + " in the journal", ex);
+            }
+        }
+    }
+
+    /**
+     * Logs the queue statistics.
+     * 
+     * @param now The current time, in milliseconds.
+     */
+    private void logStats(final long now)
+    {
+        lastStats = now;
+
+        LOGGER.info("Queues: {} to prepare, {} to publish ({} to retry), oldest {} seconds ago",
+            new Object[] {commandQueue.size(), publishQueue.size(),
+                publishQueue.getDelayedCount(),
+                TimeUnit.MILLISECONDS.toSeconds(publishQueue.getOldestAge(now))});
+        LOGGER.info("Commands: {} published, {} retried, {} expired, {} failed", new Object[] {
+            publishedCount.get(), retriedCount.get(), publishQueue.getExpiredCount(),
+            failedCount.get()});
+    }
+
+    /**
+     * Enqueues the replies that were pending when the application was stopped.
+     */
+    private void recoverPendingReplies()
+    {
+        for (PendingReply pending : journal.getPendingReplies())
+        {
+            // Replies that do not fit will be recovered the next time
+            if (!commandQueue.offer(new ReplyCommand(pending)))
+            {
+                LOGGER.warn("The command queue is full. Could not recover all pending replies");
+                break;
+            }
+        }
+    }
+
+    /**
+     * Opens the configured command journal.
+     * <p>
+     * Each account has its own journal file, named after the configured one.
+     * 
+     * @param account The name of the account, or <code>null</code> for the default account.
+     * @return The command journal, or <code>null</code> if no journal is configured.
+     * @throws ConfigurationException If the journal cannot be opened.
+     */
+    private static CommandJournal openJournal(final String account)
+    {
+        String path = Configuration.getConfigValue(Configuration.TWITTER_JOURNAL_PROPERTY);
+
+        if (path == null)
+        {
+            return null;
+        }
+        if (account != null)
+        {
+            path = path + "." + account;
+        }
+
+        try
+        {
+            LOGGER.info("Using command journal: {}", path);
+
+            return CommandJournal.open(new File(path));
+        }
+        catch (IOException ex)
+        {
+            throw new ConfigurationException("Could not open the command journal " + path + ": "
+                + ex.getMessage());
+        }
+    }
+
+    /**
+     * Gets the configured number of worker threads.
+     * 
+     * @return The number of worker threads.
+     * @throws ConfigurationException If the configured value is not valid.
+     */
+    private static int getWorkerCount()
+    {
+        String value = Configuration.getConfigValue(Configuration.TWITTER_WORKERS_PROPERTY);
+
+        if (value == null)
+        {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        try
+        {
+            int count = Integer.parseInt(value.trim());
+
+            if (count < 1)
+            {
+                throw new ConfigurationException("The number of Twitter workers must be positive: "
+                    + value);
+            }
+
+            return count;
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new ConfigurationException("Invalid number of Twitter workers: " + value);
+        }
+    }
+
+    /**
+     * Gets the time after which the given command must be discarded.
+     * 
+     * @param cmd The command.
+     * @param now The current time, in milliseconds.
+     * @return The deadline of the command, in milliseconds.
+     */
+    private static long getDeadline(final TwitterCommand cmd, final long now)
+    {
+        if (cmd instanceof ReplyCommand)
+        {
+            long createdAt = ((ReplyCommand) cmd).getStatus().getCreatedAt();
+            return (createdAt > 0 ? createdAt : now) + REPLY_TIMEOUT;
+        }
+
+        return ScheduledCommand.NO_DEADLINE;
+    }
+
+    /**
+     * Takes the commands from the preparation queue, prepares them and moves them to the publish
+     * queue.
+     * <p>
+     * Only the commands that fit in the publish queue are taken, so the worker threads never wait
+     * for a scheduler and can be shared by several of them.
+     * 
+     * @author Ignasi Barrera
+     */
+    private class Preparer implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            List<TwitterCommand> batch = new ArrayList<TwitterCommand>(PREPARE_BATCH_SIZE);
+
+            try
+            {
+                while (!Thread.currentThread().isInterrupted())
+                {
+                    // Take all the available commands, to prepare them together
+                    int room = Math.min(PREPARE_BATCH_SIZE, publishQueue.remainingCapacity());
+                    if (room == 0 || commandQueue.drainTo(batch, room) == 0)
+                    {
+                        break;
+                    }
+
+                    prepare(batch);
+
+                    for (int i = 0; i < batch.size(); i++)
+                    {
+                        TwitterCommand cmd = batch.get(i);
+                        long now = System.currentTimeMillis();
+
+                        // Failed commands are retried without waiting for room, so
+                        // do not block the shared worker if they fill the queue
+                        if (!publishQueue.offer(new ScheduledCommand(cmd, getDeadline(cmd, now),
+                            now), PUBLISH_TIMEOUT, TimeUnit.MILLISECONDS))
+                        {
+                            requeue(batch.subList(i, batch.size()));
+                            return;
+                        }
+                    }
+
+                    batch.clear();
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                preparing.set(false);
+            }
+        }
+
+        /**
+         * Enqueues again the given commands, because there is no room for them in the publish
+         * queue.
+         * <p>
+         * The commands are prepared again when there is room. Commands that do not fit in the
+         * queue of commands to prepare are discarded. The discarded replies are kept as pending
+         * in the journal, if any, so they are sent when the scheduler is restarted.
+         * 
+         * @param commands The commands to enqueue again.
+         */
+        private void requeue(final List<TwitterCommand> commands)
+        {
+            int discarded = 0;
+
+            for (TwitterCommand cmd : commands)
+            {
+                if (!commandQueue.offer(cmd))
+                {
+                    discarded++;
+                }
+            }
+
+            LOGGER.warn("The publish queue is full. Enqueued again {} commands, and discarded {}",
+                commands.size() - discarded, discarded);
+        }
+
+        /**
+         * Prepares the given commands.
+         * <p>
+         * Replies are prepared in bulk, so the rhymes for all of them are searched at once.
+         * 
+         * @param batch The commands to prepare.
+         */
+        private void prepare(final List<TwitterCommand> batch)
+        {
+            List<ReplyCommand> replies = new ArrayList<ReplyCommand>(batch.size());
+
+            try
+            {
+                for (TwitterCommand cmd : batch)
+                {
+                    if (cmd instanceof ReplyCommand)
+                    {
+                        replies.add((ReplyCommand) cmd);
+                    }
+                    else if (cmd instanceof PreparableCommand)
+                    {
+                        ((PreparableCommand) cmd).prepare();
+                    }
+                }
+
+                if (!replies.isEmpty())
+                {
+                    ReplyCommand.prepareAll(RhymeStore.getInstance(), replies);
+                }
+            }
+            catch (RuntimeException ex)
+            {
+                // The commands will be prepared again when executed
+                LOGGER.error("Could not prepare the commands", ex);
+            }
         }
     }
 }
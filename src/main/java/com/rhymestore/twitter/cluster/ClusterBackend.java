@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.cluster;
+
+import java.io.IOException;
+
+/**
+ * Shared storage used to coordinate the nodes that run the same Twitter accounts.
+ * <p>
+ * Implementations must be thread-safe.
+ * 
+ * @author Ignasi Barrera
+ * @see LeaderElection
+ * @see SharedReplyQueue
+ */
+public interface ClusterBackend
+{
+    /**
+     * Acquires the given lease, or renews it if it is already owned by the given node.
+     * 
+     * @param lease The name of the lease.
+     * @param node The node that requests the lease.
+     * @param ttl The time until the lease expires if it is not renewed, in seconds.
+     * @return Boolean indicating if the node owns the lease.
+     * @throws IOException If the lease cannot be acquired.
+     */
+    public boolean acquireLease(String lease, String node, int ttl) throws IOException;
+
+    /**
+     * Releases the given lease, if it is owned by the given node.
+     * 
+     * @param lease The name of the lease.
+     * @param node The node that releases the lease.
+     * @throws IOException If the lease cannot be released.
+     */
+    public void releaseLease(String lease, String node) throws IOException;
+
+    /**
+     * Adds an item to the end of the given queue.
+     * 
+     * @param queue The name of the queue.
+     * @param item The item to add.
+     * @throws IOException If the item cannot be added.
+     */
+    public void push(String queue, String item) throws IOException;
+
+    /**
+     * Takes the first item of the given queue.
+     * 
+     * @param queue The name of the queue.
+     * @return The first item, or <code>null</code> if the queue is empty.
+     * @throws IOException If the item cannot be taken.
+     */
+    public String pop(String queue) throws IOException;
+
+    /**
+     * Gets the number of items in the given queue.
+     * 
+     * @param queue The name of the queue.
+     * @return The number of items in the queue.
+     * @throws IOException If the size of the queue cannot be obtained.
+     */
+    public int size(String queue) throws IOException;
+
+    /**
+     * Gets the value of the given key.
+     * 
+     * @param key The key.
+     * @return The value, or <code>null</code> if the key does not exist.
+     * @throws IOException If the value cannot be obtained.
+     */
+    public String get(String key) throws IOException;
+
+    /**
+     * Sets the value of the given key.
+     * 
+     * @param key The key.
+     * @param value The value.
+     * @throws IOException If the value cannot be set.
+     */
+    public void set(String key, String value) throws IOException;
+}
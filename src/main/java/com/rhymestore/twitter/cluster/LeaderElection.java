@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.cluster;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Elects the node that polls the mentions of an account among all the nodes that run it.
+ * <p>
+ * The leader owns a lease in the {@link ClusterBackend} and renews it every
+ * {@link #RENEW_INTERVAL}. If the leader dies, the lease expires after {@link #LEASE_TTL} seconds
+ * and another node takes it over. A leader that cannot renew its lease steps down before the
+ * lease expires, so two nodes are never leaders at the same time.
+ * 
+ * @author Ignasi Barrera
+ */
+public class LeaderElection
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LeaderElection.class);
+
+    /** The time until the lease expires if it is not renewed, in seconds. */
+    public static final int LEASE_TTL = 10;
+
+    /** The interval between the renewals of the lease, in milliseconds. */
+    public static final long RENEW_INTERVAL = TimeUnit.SECONDS.toMillis(3);
+
+    /** The backend where the lease is stored. */
+    private final ClusterBackend backend;
+
+    /** The name of the lease. */
+    private final String lease;
+
+    /** The name of this node. */
+    private final String node;
+
+    /** Indicates if this node is the leader. */
+    private boolean leader;
+
+    /** The last time the lease was acquired or renewed, in milliseconds. */
+    private long renewedAt;
+
+    /**
+     * Creates a new {@link LeaderElection}.
+     * 
+     * @param backend The backend where the lease is stored.
+     * @param lease The name of the lease.
+     * @param node The name of this node.
+     */
+    public LeaderElection(final ClusterBackend backend, final String lease, final String node)
+    {
+        super();
+        this.backend = backend;
+        this.lease = lease;
+        this.node = node;
+    }
+
+    /**
+     * Tries to acquire the lease, or renews it if it is due.
+     * 
+     * @param now The current time, in milliseconds.
+     * @return Boolean indicating if this node is the leader.
+     */
+    public synchronized boolean update(final long now)
+    {
+        if (!leader || now - renewedAt >= RENEW_INTERVAL)
+        {
+            try
+            {
+                boolean acquired = backend.acquireLease(lease, node, LEASE_TTL);
+
+                if (acquired)
+                {
+                    if (!leader)
+                    {
+                        LOGGER.info("Node {} is now the leader of {}", node, lease);
+                    }
+
+                    renewedAt = now;
+                }
+                else if (leader)
+                {
+                    LOGGER.warn("Node {} has lost the lease {}", node, lease);
+                }
+
+                leader = acquired;
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not renew the lease " + lease, ex);
+            }
+        }
+
+        // Step down before the lease may be acquired by another node
+        if (leader && now - renewedAt >= TimeUnit.SECONDS.toMillis(LEASE_TTL) - RENEW_INTERVAL)
+        {
+            LOGGER.warn("Node {} could not renew the lease {} in time", node, lease);
+            leader = false;
+        }
+
+        return leader;
+    }
+
+    /**
+     * Checks if this node is the leader.
+     * 
+     * @return Boolean indicating if this node is the leader.
+     */
+    public synchronized boolean isLeader()
+    {
+        return leader;
+    }
+
+    /**
+     * Releases the lease, if this node is the leader, so another node can take it over
+     * immediately.
+     */
+    public synchronized void release()
+    {
+        if (leader)
+        {
+            leader = false;
+
+            try
+            {
+                backend.releaseLease(lease, node);
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not release the lease " + lease, ex);
+            }
+        }
+    }
+}
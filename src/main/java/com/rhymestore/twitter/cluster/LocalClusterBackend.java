@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.cluster;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * {@link ClusterBackend} that keeps the shared data in memory.
+ * <p>
+ * It can only coordinate schedulers that run in the same JVM, and is used to test the cluster
+ * mode without a Redis database.
+ * 
+ * @author Ignasi Barrera
+ */
+public class LocalClusterBackend implements ClusterBackend
+{
+    /** The owner of each lease. */
+    private final Map<String, String> owners = new HashMap<String, String>();
+
+    /** The expiration time of each lease, in milliseconds. */
+    private final Map<String, Long> expirations = new HashMap<String, Long>();
+
+    /** The items of each queue. */
+    private final Map<String, LinkedList<String>> queues = new HashMap<String, LinkedList<String>>();
+
+    /** The values of the keys. */
+    private final Map<String, String> values = new HashMap<String, String>();
+
+    @Override
+    public synchronized boolean acquireLease(final String lease, final String node, final int ttl)
+    {
+        long now = currentTime();
+        String owner = owners.get(lease);
+
+        if (owner != null && !owner.equals(node) && expirations.get(lease) > now)
+        {
+            return false;
+        }
+
+        owners.put(lease, node);
+        expirations.put(lease, now + ttl * 1000L);
+        return true;
+    }
+
+    @Override
+    public synchronized void releaseLease(final String lease, final String node)
+    {
+        if (node.equals(owners.get(lease)))
+        {
+            owners.remove(lease);
+            expirations.remove(lease);
+        }
+    }
+
+    @Override
+    public synchronized void push(final String queue, final String item)
+    {
+        LinkedList<String> items = queues.get(queue);
+
+        if (items == null)
+        {
+            items = new LinkedList<String>();
+            queues.put(queue, items);
+        }
+
+        items.addLast(item);
+    }
+
+    @Override
+    public synchronized String pop(final String queue)
+    {
+        LinkedList<String> items = queues.get(queue);
+        return items == null ? null : items.pollFirst();
+    }
+
+    @Override
+    public synchronized int size(final String queue)
+    {
+        LinkedList<String> items = queues.get(queue);
+        return items == null ? 0 : items.size();
+    }
+
+    @Override
+    public synchronized String get(final String key)
+    {
+        return values.get(key);
+    }
+
+    @Override
+    public synchronized void set(final String key, final String value)
+    {
+        values.put(key, value);
+    }
+
+    /**
+     * Gets the current time, used to check the expiration of the leases.
+     * 
+     * @return The current time, in milliseconds.
+     */
+    protected long currentTime()
+    {
+        return System.currentTimeMillis();
+    }
+}
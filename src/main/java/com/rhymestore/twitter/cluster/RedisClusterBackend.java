@@ -0,0 +1,280 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.cluster;
+
+import java.io.IOException;
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisException;
+import redis.clients.jedis.Transaction;
+
+import com.rhymestore.config.Configuration;
+
+/**
+ * {@link ClusterBackend} that keeps the shared data in a Redis database.
+ * <p>
+ * Leases are keys that expire. They are acquired with <code>SETNX</code> and renewed with a
+ * transaction that only succeeds if the node still owns the key. The connection is kept open and
+ * accesses are serialized, since all of them use the same connection.
+ * 
+ * @author Ignasi Barrera
+ * @see Jedis
+ */
+public class RedisClusterBackend implements ClusterBackend
+{
+    /** The Redis database API. */
+    protected final Jedis redis;
+
+    /**
+     * Creates a new <code>RedisClusterBackend</code> connecting to the configured Redis database.
+     */
+    public RedisClusterBackend()
+    {
+        this(Configuration.getRequiredConfigValue(Configuration.REDIS_HOST_PROPERTY), Integer
+            .valueOf(Configuration.getRequiredConfigValue(Configuration.REDIS_PORT_PROPERTY)));
+    }
+
+    /**
+     * Creates a new <code>RedisClusterBackend</code> connecting to the given Redis database.
+     * 
+     * @param host The Redis host.
+     * @param port The Redis port.
+     */
+    public RedisClusterBackend(final String host, final int port)
+    {
+        super();
+        redis = new Jedis(host, port);
+    }
+
+    @Override
+    public synchronized boolean acquireLease(final String lease, final String node, final int ttl)
+        throws IOException
+    {
+        connect();
+
+        try
+        {
+            if (redis.setnx(lease, node) == 1)
+            {
+                redis.expire(lease, ttl);
+                return true;
+            }
+
+            // Renew the lease only if this node still owns it
+            redis.watch(lease);
+
+            if (!node.equals(redis.get(lease)))
+            {
+                redis.unwatch();
+
+                // The owner may have died before setting the expiration
+                if (redis.ttl(lease) == -1)
+                {
+                    redis.expire(lease, ttl);
+                }
+
+                return false;
+            }
+
+            Transaction tx = redis.multi();
+            tx.expire(lease, ttl);
+            return tx.exec() != null;
+        }
+        catch (JedisException ex)
+        {
+            throw failed(ex);
+        }
+    }
+
+    @Override
+    public synchronized void releaseLease(final String lease, final String node)
+        throws IOException
+    {
+        connect();
+
+        try
+        {
+            redis.watch(lease);
+
+            if (node.equals(redis.get(lease)))
+            {
+                Transaction tx = redis.multi();
+                tx.del(lease);
+                tx.exec();
+            }
+            else
+            {
+                redis.unwatch();
+            }
+        }
+        catch (JedisException ex)
+        {
+            throw failed(ex);
+        }
+    }
+
+    @Override
+    public synchronized void push(final String queue, final String item) throws IOException
+    {
+        connect();
+
+        try
+        {
+            redis.rpush(queue, item);
+        }
+        catch (JedisException ex)
+        {
+            throw failed(ex);
+        }
+    }
+
+    @Override
+    public synchronized String pop(final String queue) throws IOException
+    {
+        connect();
+
+        try
+        {
+            return redis.lpop(queue);
+        }
+        catch (JedisException ex)
+        {
+            throw failed(ex);
+        }
+    }
+
+    @Override
+    public synchronized int size(final String queue) throws IOException
+    {
+        connect();
+
+        try
+        {
+            return redis.llen(queue);
+        }
+        catch (JedisException ex)
+        {
+            throw failed(ex);
+        }
+    }
+
+    @Override
+    public synchronized String get(final String key) throws IOException
+    {
+        connect();
+
+        try
+        {
+            return redis.get(key);
+        }
+        catch (JedisException ex)
+        {
+            throw failed(ex);
+        }
+    }
+
+    @Override
+    public synchronized void set(final String key, final String value) throws IOException
+    {
+        connect();
+
+        try
+        {
+            redis.set(key, value);
+        }
+        catch (JedisException ex)
+        {
+            throw failed(ex);
+        }
+    }
+
+    /**
+     * Deletes the given keys.
+     * 
+     * @param keys The keys to delete.
+     * @throws IOException If the keys cannot be deleted.
+     */
+    public synchronized void delete(final List<String> keys) throws IOException
+    {
+        connect();
+
+        try
+        {
+            redis.del(keys.toArray(new String[keys.size()]));
+        }
+        catch (JedisException ex)
+        {
+            throw failed(ex);
+        }
+    }
+
+    /**
+     * Disconnects from the Redis database.
+     * 
+     * @throws IOException If an error occurs while disconnecting.
+     */
+    public synchronized void close() throws IOException
+    {
+        if (redis.isConnected())
+        {
+            redis.disconnect();
+        }
+    }
+
+    /**
+     * Connects to the Redis database, if not connected.
+     * 
+     * @throws IOException If an error occurs while connecting.
+     */
+    protected void connect() throws IOException
+    {
+        if (!redis.isConnected())
+        {
+            redis.connect();
+        }
+    }
+
+    /**
+     * Closes the connection after a failure, so it is opened again in the next access.
+     * 
+     * @param ex The failure.
+     * @return The exception to throw.
+     */
+    private IOException failed(final JedisException ex)
+    {
+        try
+        {
+            close();
+        }
+        catch (IOException closeEx)
+        {
+            // The connection is already broken
+        }
+
+        IOException ioe = new IOException("Could not access the Redis database: "
+            + ex.getMessage());
+        ioe.initCause(ex);
+        return ioe;
+    }
+}
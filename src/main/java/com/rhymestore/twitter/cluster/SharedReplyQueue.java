@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.cluster;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.twitter.commands.ReplyCommand;
+import com.rhymestore.twitter.commands.ReplySink;
+import com.rhymestore.twitter.journal.PendingReply;
+
+/**
+ * Queue of replies shared by all the nodes that run an account.
+ * <p>
+ * The leader adds the replies to the mentions, and every node takes them to send them. The
+ * records that cannot be decoded are moved to a separate queue with the {@link #INVALID_SUFFIX},
+ * so they can be inspected without stopping the replies behind them.
+ * 
+ * @author Ignasi Barrera
+ * @see ClusterBackend
+ */
+public class SharedReplyQueue implements ReplySink
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedReplyQueue.class);
+
+    /** The suffix of the name of the queue with the records that cannot be decoded. */
+    public static final String INVALID_SUFFIX = ":invalid";
+
+    /** The backend where the replies are stored. */
+    private final ClusterBackend backend;
+
+    /** The name of the queue. */
+    private final String queue;
+
+    /**
+     * Creates a new {@link SharedReplyQueue}.
+     * 
+     * @param backend The backend where the replies are stored.
+     * @param queue The name of the queue.
+     */
+    public SharedReplyQueue(final ClusterBackend backend, final String queue)
+    {
+        super();
+        this.backend = backend;
+        this.queue = queue;
+    }
+
+    /**
+     * Adds the given reply to the shared queue.
+     * 
+     * @param reply The reply to add.
+     * @return Always <code>true</code>, the shared queue is not bounded.
+     * @throws IOException If the reply cannot be added to the backend.
+     */
+    @Override
+    public boolean offer(final ReplyCommand reply) throws IOException
+    {
+        backend.push(queue, reply.getStatus().encode());
+        return true;
+    }
+
+    /**
+     * Takes the first valid reply of the shared queue.
+     * <p>
+     * The invalid records found before it are moved to the queue of invalid records.
+     * 
+     * @return The first valid reply, or <code>null</code> if the queue is empty or cannot be
+     *         accessed.
+     */
+    public ReplyCommand poll()
+    {
+        try
+        {
+            String encoded = null;
+
+            while ((encoded = backend.pop(queue)) != null)
+            {
+                try
+                {
+                    return new ReplyCommand(PendingReply.decode(encoded));
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    LOGGER.warn("Moving invalid reply out of the shared queue: {}",
+                        ex.getMessage());
+                    backend.push(queue + INVALID_SUFFIX, encoded);
+                }
+            }
+
+            return null;
+        }
+        catch (IOException ex)
+        {
+            LOGGER.error("Could not take a reply from the shared queue", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the number of replies in the shared queue.
+     * 
+     * @return The number of replies, or <code>0</code> if the queue cannot be accessed.
+     */
+    public int size()
+    {
+        try
+        {
+            return backend.size(queue);
+        }
+        catch (IOException ex)
+        {
+            LOGGER.error("Could not get the size of the shared queue", ex);
+            return 0;
+        }
+    }
+
+    /**
+     * Checks if the shared queue is empty.
+     * 
+     * @return Boolean indicating if the shared queue is empty or cannot be accessed.
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+}
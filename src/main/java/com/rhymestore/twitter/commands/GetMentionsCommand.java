@@ -22,6 +22,10 @@
 
 package com.rhymestore.twitter.commands;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
 
 import org.slf4j.Logger;
@@ -32,12 +36,10 @@ import twitter4j.ResponseList;
 import twitter4j.Status;
 import twitter4j.Twitter;
 import twitter4j.TwitterException;
-import twitter4j.User;
 
-import com.rhymestore.lang.WordParser;
-import com.rhymestore.lang.WordParserFactory;
-import com.rhymestore.lang.WordUtils;
 import com.rhymestore.twitter.TwitterScheduler;
+import com.rhymestore.twitter.journal.CommandJournal;
+import com.rhymestore.twitter.util.TwitterUtils;
 
 /**
  * Gets the list of mentions.
@@ -51,14 +53,32 @@ public class GetMentionsCommand implements TwitterCommand
     /** The logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(GetMentionsCommand.class);
 
-    /** The queue with the pending commands. */
-    private final Queue<TwitterCommand> commandQueue;
+    /**
+     * The maximum number of pages read in each execution. The mentions timeline only goes back
+     * 800 tweets.
+     */
+    public static final int MAX_PAGES = 4;
+
+    /** Enqueues the replies to the mentions. */
+    private final MentionHandler mentionHandler;
+
+    /** The journal where the last processed mention is recorded, if any. */
+    private final CommandJournal journal;
 
     /** The id of the last tweet responded. */
     private long lastTweetId = -1L;
 
-    /** The {@link WordParser} to use to check if the mention is well written. */
-    private final WordParser wordParser;
+    /**
+     * The id of the newest mention that has been handled while older mentions are still pending to
+     * be fetched, or <code>-1</code> if there are no pending mentions.
+     */
+    private long pendingTweetId = -1L;
+
+    /**
+     * The id of the newest mention that is still pending to be fetched, or <code>-1</code> if
+     * there are no pending mentions.
+     */
+    private long resumeMaxId = -1L;
 
     /**
      * Creates a new {@link ReplyCommand} for the given status.
@@ -66,89 +86,207 @@ public class GetMentionsCommand implements TwitterCommand
      * @param commandQueue The queue with the pending commands.
      */
     public GetMentionsCommand(final Queue<TwitterCommand> commandQueue)
+    {
+        this(new MentionHandler(commandQueue, null));
+    }
+
+    /**
+     * Creates a new {@link GetMentionsCommand} that records the enqueued replies in the given
+     * journal.
+     * <p>
+     * The last processed mention is restored from the journal, so the mentions received while the
+     * application was stopped will be replied too.
+     * 
+     * @param commandQueue The queue with the pending commands.
+     * @param journal The journal where the enqueued replies will be recorded. May be
+     *            <code>null</code>.
+     */
+    public GetMentionsCommand(final Queue<TwitterCommand> commandQueue,
+        final CommandJournal journal)
+    {
+        this(new MentionHandler(commandQueue, journal));
+    }
+
+    /**
+     * Creates a new {@link GetMentionsCommand} that uses the given {@link MentionHandler}.
+     * <p>
+     * The last processed mention is restored from the journal of the handler, if any.
+     * 
+     * @param mentionHandler Enqueues the replies to the mentions.
+     */
+    public GetMentionsCommand(final MentionHandler mentionHandler)
     {
         super();
-        this.commandQueue = commandQueue;
-        this.wordParser = WordParserFactory.getWordParser();
+        this.mentionHandler = mentionHandler;
+        this.journal = mentionHandler.getJournal();
+
+        if (journal != null)
+        {
+            lastTweetId = journal.getLastTweetId();
+        }
     }
 
     @Override
     public void execute(final Twitter twitter) throws TwitterException
     {
-        // Get last mentions
-        Paging paging = lastTweetId < 0 ? new Paging() : new Paging(lastTweetId);
-        ResponseList<Status> mentions = twitter.getMentions(paging);
+        long sinceId = getLastTweetId();
 
         // Reply only if the lastTweetId existed before calling this method
         // (only reply to mentions made since the application is running)
-        if (lastTweetId > 0)
+        if (sinceId < 0)
         {
-            for (Status mention : mentions)
+            ResponseList<Status> mentions = twitter.getMentions(new Paging(1, 1));
+
+            if (!mentions.isEmpty())
             {
-                // Enqueue a reply to the mention only if it is a valid mention and
-                // it is not from the current Twitter user
-                if (isValidMention(mention) && !isCurrentUser(twitter, mention.getUser()))
-                {
-                    LOGGER.debug("Adding tweet {} from {}", mention.getId(), mention.getUser()
-                        .getScreenName());
+                advanceLastTweetId(mentions.get(0).getId());
+            }
+        }
+        else
+        {
+            List<Status> mentions = new ArrayList<Status>();
+            long maxId = getMentionsSince(twitter, sinceId, mentions);
 
-                    ReplyCommand reply = new ReplyCommand(mention, commandQueue);
-                    commandQueue.add(reply);
+            if (!mentions.isEmpty())
+            {
+                int enqueued = 0;
+
+                try
+                {
+                    enqueued = mentionHandler.handle(twitter, mentions);
                 }
-                else
+                catch (IOException ex)
                 {
-                    LOGGER.debug("Ignoring mention: {}", mention.getText());
+                    // Do not advance the last tweet past the mentions that were not enqueued
+                    throw new TwitterException(ex);
                 }
+
+                LOGGER.info("Added {} mentions to the reply queue.", enqueued);
+
+                pendingTweetId =
+                    Math.max(pendingTweetId, mentions.get(mentions.size() - 1).getId());
             }
 
-            if (!mentions.isEmpty())
+            if (maxId > sinceId)
+            {
+                // Keep the last tweet until the older mentions have been fetched too
+                LOGGER.warn("Too many mentions since tweet " + sinceId
+                    + ". The oldest ones will be fetched in the next execution");
+                resumeMaxId = maxId;
+            }
+            else if (pendingTweetId > 0)
             {
-                LOGGER.info("Added {} mentions to the reply queue.", mentions.size());
+                // Update the lastTweetId to avoid reply duplication
+                advanceLastTweetId(pendingTweetId);
+                pendingTweetId = -1L;
+                resumeMaxId = -1L;
             }
         }
 
-        // Update the lastTweetId to avoid reply duplication
-        if (!mentions.isEmpty())
+        // Write all the pages to the journal at once
+        if (journal != null)
         {
-            lastTweetId = mentions.get(0).getId();
-
-            LOGGER.debug("Setting last tweet to {}", lastTweetId);
+            try
+            {
+                journal.commit();
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not write the last tweet to the journal", ex);
+            }
         }
     }
 
     /**
-     * Gets the Id of the last processed tweet.
+     * Gets the mentions after the given tweet, in chronological order.
+     * <p>
+     * Mentions are requested walking backwards from the most recent one, or from the oldest one
+     * that could not be fetched in the previous execution, until an empty page is returned, the
+     * given tweet is reached or {@link #MAX_PAGES} have been read.
      * 
-     * @return The Id of the last processed tweet.
+     * @param twitter The Twitter account.
+     * @param sinceId The id of the last processed tweet.
+     * @param mentions The list where the mentions after the given tweet will be added, from the
+     *            oldest to the newest.
+     * @return The id of the newest mention that could not be fetched, or a value lower or equal
+     *         than the given tweet if all the mentions have been fetched.
+     * @throws TwitterException If the mentions cannot be obtained.
      */
-    protected long getLastTweetId()
+    private long getMentionsSince(final Twitter twitter, final long sinceId,
+        final List<Status> mentions) throws TwitterException
     {
-        return lastTweetId;
+        long maxId = resumeMaxId;
+
+        for (int page = 0; page < MAX_PAGES; page++)
+        {
+            Paging paging = new Paging(1, TwitterUtils.MENTIONS_PER_PAGE, sinceId);
+            if (maxId > 0)
+            {
+                paging.setMaxId(maxId);
+            }
+
+            ResponseList<Status> results = twitter.getMentions(paging);
+
+            // Pages may be shorter than requested, so only an empty one ends the timeline
+            if (results.isEmpty())
+            {
+                maxId = sinceId;
+                break;
+            }
+
+            mentions.addAll(results);
+            maxId = results.get(results.size() - 1).getId() - 1;
+
+            if (maxId <= sinceId)
+            {
+                break;
+            }
+        }
+
+        // Mentions are returned from the newest to the oldest
+        Collections.reverse(mentions);
+
+        return maxId;
     }
 
     /**
-     * Checks if the given user is the current Twitter user.
+     * Sets the id of the last processed tweet, if it is newer than the current one.
+     * <p>
+     * The next executions of this command will only get the mentions after that tweet.
      * 
-     * @param twitter The current Twitter connection data.
-     * @param user The user to check.
-     * @return Boolean indicating if the given user is the current Twitter user.
-     * @throws TwitterException If an error occurs while checking user name.
+     * @param tweetId The id of the last processed tweet.
      */
-    private boolean isCurrentUser(Twitter twitter, User user) throws TwitterException
+    public synchronized void advanceLastTweetId(final long tweetId)
     {
-        return user.getScreenName().equalsIgnoreCase(twitter.getScreenName());
+        if (tweetId <= lastTweetId)
+        {
+            return;
+        }
+
+        lastTweetId = tweetId;
+
+        LOGGER.debug("Setting last tweet to {}", lastTweetId);
+
+        if (journal != null)
+        {
+            try
+            {
+                journal.checkpoint(lastTweetId);
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not write the last tweet to the journal", ex);
+            }
+        }
     }
 
     /**
-     * Checks if the given mention is a valid mention according to the {@link WordParser} rules.
+     * Gets the Id of the last processed tweet.
      * 
-     * @param mention The mention to check.
-     * @return Boolean indicating if the given mention is a valid mention.
+     * @return The Id of the last processed tweet.
      */
-    private boolean isValidMention(Status mention)
+    public synchronized long getLastTweetId()
     {
-        String lastWord = WordUtils.getLastWord(mention.getText());
-        return wordParser.isWord(lastWord);
+        return lastTweetId;
     }
-
 }
@@ -0,0 +1,358 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.commands;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import twitter4j.Status;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.User;
+
+import com.rhymestore.lang.WordAnalysis;
+import com.rhymestore.lang.WordParser;
+import com.rhymestore.lang.WordParserFactory;
+import com.rhymestore.lang.WordUtils;
+import com.rhymestore.twitter.journal.CommandJournal;
+import com.rhymestore.twitter.journal.PendingReply;
+import com.rhymestore.twitter.util.AccountIdentity;
+
+/**
+ * Enqueues the replies to the received mentions.
+ * <p>
+ * Mentions can be received both by polling and by streaming, so this class remembers the last
+ * {@link #RECENT_MENTIONS} enqueued mentions to avoid replying them twice. This class is
+ * thread-safe.
+ * 
+ * @author Ignasi Barrera
+ * @see GetMentionsCommand
+ */
+public class MentionHandler
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MentionHandler.class);
+
+    /** The number of enqueued mentions remembered to avoid duplicate replies. */
+    public static final int RECENT_MENTIONS = 10000;
+
+    /** Receives the replies to the mentions. */
+    private final ReplySink replies;
+
+    /** The journal where the enqueued replies are recorded, if any. */
+    private final CommandJournal journal;
+
+    /** The identity of the current Twitter user, obtained when first needed if not provided. */
+    private AccountIdentity identity;
+
+    /** The {@link WordParser} to use to check if the mention is well written. */
+    private final WordParser wordParser;
+
+    /** The ids of the last enqueued mentions. */
+    private final Map<Long, Boolean> recentMentions = new LinkedHashMap<Long, Boolean>()
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, Boolean> eldest)
+        {
+            return size() > RECENT_MENTIONS;
+        }
+    };
+
+    /**
+     * Creates a new {@link MentionHandler}.
+     * 
+     * @param commandQueue The queue with the pending commands.
+     * @param journal The journal where the enqueued replies will be recorded. May be
+     *            <code>null</code>.
+     */
+    public MentionHandler(final Queue<TwitterCommand> commandQueue, final CommandJournal journal)
+    {
+        this(commandQueue, journal, null);
+    }
+
+    /**
+     * Creates a new {@link MentionHandler}.
+     * 
+     * @param commandQueue The queue with the pending commands.
+     * @param journal The journal where the enqueued replies will be recorded. May be
+     *            <code>null</code>.
+     * @param identity The identity of the current Twitter user. May be <code>null</code>.
+     */
+    public MentionHandler(final Queue<TwitterCommand> commandQueue,
+        final CommandJournal journal, final AccountIdentity identity)
+    {
+        this(new QueueSink(commandQueue), journal, identity);
+    }
+
+    /**
+     * Creates a new {@link MentionHandler} that sends the replies to the given sink.
+     * 
+     * @param replies Receives the replies to the mentions.
+     * @param journal The journal where the enqueued replies will be recorded. May be
+     *            <code>null</code>.
+     * @param identity The identity of the current Twitter user. May be <code>null</code>.
+     */
+    public MentionHandler(final ReplySink replies, final CommandJournal journal,
+        final AccountIdentity identity)
+    {
+        super();
+        this.replies = replies;
+        this.journal = journal;
+        this.identity = identity;
+        this.wordParser = WordParserFactory.getWordParser();
+    }
+
+    /**
+     * Enqueues a reply to each valid mention that has not been enqueued yet.
+     * <p>
+     * If a reply cannot be enqueued, the remaining mentions are not processed, and the failed
+     * mention is forgotten so it can be handled again.
+     * 
+     * @param twitter The current Twitter connection data.
+     * @param mentions The received mentions.
+     * @return The number of enqueued replies.
+     * @throws TwitterException If the current Twitter user cannot be obtained.
+     * @throws IOException If a reply cannot be enqueued.
+     */
+    public int handle(final Twitter twitter, final List<Status> mentions)
+        throws TwitterException, IOException
+    {
+        // Analyse the last words of all mentions at once
+        List<String> lastWords = new ArrayList<String>(mentions.size());
+        for (Status mention : mentions)
+        {
+            lastWords.add(WordUtils.getLastWord(mention.getText()));
+        }
+
+        List<WordAnalysis> analysis = wordParser.analyze(lastWords);
+        int enqueued = 0;
+
+        for (int i = 0; i < mentions.size(); i++)
+        {
+            Status mention = mentions.get(i);
+
+            // Enqueue a reply to the mention only if it is a valid mention and
+            // it is not from the current Twitter user
+            if (!analysis.get(i).isValid() || isCurrentUser(twitter, mention.getUser()))
+            {
+                LOGGER.debug("Ignoring mention: {}", mention.getText());
+            }
+            else if (!markEnqueued(mention.getId()))
+            {
+                LOGGER.debug("Ignoring already enqueued mention: {}", mention.getId());
+            }
+            else
+            {
+                try
+                {
+                    if (enqueue(new ReplyCommand(mention)))
+                    {
+                        enqueued++;
+                    }
+                }
+                catch (IOException ex)
+                {
+                    forget(mention.getId());
+                    throw ex;
+                }
+            }
+        }
+
+        return enqueued;
+    }
+
+    /**
+     * Gets the journal where the enqueued replies are recorded.
+     * 
+     * @return The journal, or <code>null</code> if there is no journal.
+     */
+    public CommandJournal getJournal()
+    {
+        return journal;
+    }
+
+    /**
+     * Gets the cached identity of the current Twitter user.
+     * 
+     * @param twitter The current Twitter connection data.
+     * @return The identity of the current Twitter user.
+     */
+    public synchronized AccountIdentity getIdentity(final Twitter twitter)
+    {
+        if (identity == null)
+        {
+            identity = new AccountIdentity(twitter);
+        }
+
+        return identity;
+    }
+
+    /**
+     * Enqueues the given reply.
+     * 
+     * @param reply The reply to enqueue.
+     * @return Boolean indicating if the reply has been enqueued.
+     * @throws IOException If the reply cannot be enqueued.
+     */
+    private boolean enqueue(final ReplyCommand reply) throws IOException
+    {
+        PendingReply status = reply.getStatus();
+
+        LOGGER.debug("Adding tweet {} from {}", status.getStatusId(), status.getScreenName());
+
+        // Record the reply before enqueuing it, so its completion is never
+        // recorded before it
+        record(status);
+
+        boolean added;
+
+        try
+        {
+            added = replies.offer(reply);
+        }
+        catch (IOException ex)
+        {
+            discard(status);
+            throw ex;
+        }
+
+        if (!added)
+        {
+            LOGGER.warn("The command queue is full. Discarding tweet {}", status.getStatusId());
+
+            discard(status);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Remembers the given mention.
+     * 
+     * @param statusId The id of the mention.
+     * @return Boolean indicating if the mention had not been enqueued before.
+     */
+    private synchronized boolean markEnqueued(final long statusId)
+    {
+        return recentMentions.put(statusId, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Forgets the given mention, so it can be enqueued again.
+     * 
+     * @param statusId The id of the mention.
+     */
+    private synchronized void forget(final long statusId)
+    {
+        recentMentions.remove(statusId);
+    }
+
+    /**
+     * Records the given reply in the journal.
+     * 
+     * @param reply The enqueued reply.
+     */
+    private void record(final PendingReply reply)
+    {
+        if (journal != null)
+        {
+            try
+            {
+                journal.added(reply);
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not record the reply to tweet " + reply.getStatusId()
+                    + " in the journal", ex);
+            }
+        }
+    }
+
+    /**
+     * Records the given discarded reply in the journal.
+     * 
+     * @param reply The discarded reply.
+     */
+    private void discard(final PendingReply reply)
+    {
+        if (journal != null)
+        {
+            try
+            {
+                journal.completed(reply.getStatusId());
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not record the reply to tweet " + reply.getStatusId()
+                    + " in the journal", ex);
+            }
+        }
+    }
+
+    /**
+     * Checks if the given user is the current Twitter user.
+     * 
+     * @param twitter The current Twitter connection data.
+     * @param user The user to check.
+     * @return Boolean indicating if the given user is the current Twitter user.
+     * @throws TwitterException If the identity of the current Twitter user cannot be obtained.
+     */
+    private boolean isCurrentUser(final Twitter twitter, final User user)
+        throws TwitterException
+    {
+        return getIdentity(twitter).isCurrentUser(user);
+    }
+
+    /**
+     * {@link ReplySink} that adds the replies to a local command queue.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class QueueSink implements ReplySink
+    {
+        /** The queue with the pending commands. */
+        private final Queue<TwitterCommand> commandQueue;
+
+        public QueueSink(final Queue<TwitterCommand> commandQueue)
+        {
+            super();
+            this.commandQueue = commandQueue;
+        }
+
+        @Override
+        public boolean offer(final ReplyCommand reply)
+        {
+            return commandQueue.offer(reply);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.commands;
+
+import com.rhymestore.twitter.TwitterScheduler;
+
+/**
+ * A {@link TwitterCommand} that can do its expensive work before being executed.
+ * <p>
+ * The {@link TwitterScheduler} prepares these commands in a pool of worker threads, so the only
+ * work left to do in the {@link #execute(twitter4j.Twitter)} method is the Twitter API call.
+ * 
+ * @author Ignasi Barrera
+ * @see TwitterScheduler
+ */
+public interface PreparableCommand extends TwitterCommand
+{
+    /**
+     * Prepares the command to be executed.
+     * <p>
+     * This method may be called from any thread, and commands must be executable even if this
+     * method has not been called.
+     */
+    public void prepare();
+}
@@ -23,7 +23,11 @@
 package com.rhymestore.twitter.commands;
 
 import java.io.IOException;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,29 +37,32 @@ import twitter4j.StatusUpdate;
 import twitter4j.Twitter;
 import twitter4j.TwitterException;
 
+import com.rhymestore.event.Event;
+import com.rhymestore.event.EventBus;
 import com.rhymestore.lang.WordParser;
 import com.rhymestore.lang.WordParserFactory;
 import com.rhymestore.store.RhymeStore;
 import com.rhymestore.twitter.TwitterScheduler;
+import com.rhymestore.twitter.journal.PendingReply;
 import com.rhymestore.twitter.util.TwitterUtils;
 
 /**
  * Executes a reply to a user's tweet.
+ * <p>
+ * Failed replies are not retried by this command. The {@link TwitterScheduler} decides if and when
+ * to retry them.
  * 
  * @author Ignasi Barrera
  * @see Twitter
  * @see TwitterScheduler
  */
-public class ReplyCommand implements TwitterCommand
+public class ReplyCommand implements PreparableCommand
 {
     /** The logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(ReplyCommand.class);
 
-    /** The queue with the pending commands. */
-    private final Queue<TwitterCommand> commandQueue;
-
     /** The status to reply. */
-    private final Status status;
+    private final PendingReply status;
 
     /** The {@link WordParser} used to get the default rhyme if none is found. */
     private final WordParser wordParser;
@@ -63,78 +70,162 @@ public class ReplyCommand implements TwitterCommand
     /** The Rhyme Store. */
     /* package */RhymeStore rhymeStore;
 
+    /** The reply to send, once the command has been prepared. */
+    private volatile String tweet;
+
     /**
      * Creates a new {@link ReplyCommand} for the given status.
      * 
      * @param status The status to reply.
-     * @param commandQueue The queue with the pending commands.
      */
-    public ReplyCommand(final Status status, final Queue<TwitterCommand> commandQueue)
+    public ReplyCommand(final Status status)
+    {
+        this(new PendingReply(status.getId(), status.getUser().getScreenName(), status.getText(),
+            status.getCreatedAt() == null ? 0L : status.getCreatedAt().getTime()));
+    }
+
+    /**
+     * Creates a new {@link ReplyCommand} for the given pending reply.
+     * 
+     * @param status The status to reply.
+     */
+    public ReplyCommand(final PendingReply status)
     {
         super();
         this.status = status;
-        this.commandQueue = commandQueue;
         this.rhymeStore = RhymeStore.getInstance();
         this.wordParser = WordParserFactory.getWordParser();
     }
 
+    /**
+     * Gets the status to reply.
+     * 
+     * @return The status to reply.
+     */
+    public PendingReply getStatus()
+    {
+        return status;
+    }
+
     @Override
-    public void execute(final Twitter twitter) throws TwitterException
+    public void prepare()
     {
-        String rhyme = null;
-        String targetUser = status.getUser().getScreenName();
+        if (tweet == null)
+        {
+            prepareAll(rhymeStore, Collections.singletonList(this));
+        }
+    }
+
+    /**
+     * Prepares all the given replies at once.
+     * <p>
+     * The rhymes for all the replies, and for the screen names of the users to reply, are searched
+     * in bulk, so the cost of accessing the store is shared by all the replies.
+     * 
+     * @param rhymeStore The store where the rhymes are searched.
+     * @param replies The replies to prepare.
+     */
+    public static void prepareAll(final RhymeStore rhymeStore, final List<ReplyCommand> replies)
+    {
+        // Search the rhymes for the mentions and for the screen names at once
+        List<String> sentences = new ArrayList<String>(replies.size() * 2);
+        for (ReplyCommand reply : replies)
+        {
+            String targetUser = reply.status.getScreenName();
+
+            sentences.add(reply.status.getText());
+            sentences.add(reply.wordParser.isWord(targetUser) ? targetUser : "");
+        }
+
+        List<String> rhymes = null;
 
         try
         {
-            rhyme = rhymeStore.getRhyme(status.getText());
+            rhymes = rhymeStore.getRhymes(sentences);
+        }
+        catch (IOException ex)
+        {
+            LOGGER.error("An error occured while connecting to the rhyme store. "
+                + "Could not find rhymes for " + replies.size() + " replies", ex);
+        }
 
-            if (rhyme == null)
+        for (int i = 0; i < replies.size(); i++)
+        {
+            ReplyCommand reply = replies.get(i);
+            String targetUser = reply.status.getScreenName();
+            String rhyme = rhymes == null ? null : rhymes.get(i * 2);
+
+            if (rhyme == null && rhymes != null && rhymes.get(i * 2 + 1) != null)
             {
-                // Try to rhyme with the user screen name
-                if (wordParser.isWord(targetUser))
-                {
-                    LOGGER.info("Trying to rhyme with the screen name: {}", targetUser);
-                    rhyme = rhymeStore.getRhyme(targetUser);
-                }
+                // Rhyme with the user screen name
+                LOGGER.info("Rhyming with the screen name: {}", targetUser);
+                rhyme = rhymes.get(i * 2 + 1);
             }
 
             if (rhyme == null)
             {
-                rhyme = wordParser.getDefaultRhyme();
+                rhyme = reply.wordParser.getDefaultRhyme(targetUser);
 
                 LOGGER.info("No rhyme found. Using default rhyme: {}", rhyme);
             }
+
+            reply.tweet = TwitterUtils.reply(targetUser, rhyme);
         }
-        catch (IOException ex)
-        {
-            LOGGER.error(
-                "An error occured while connecting to the rhyme store. Could not reply to {}",
-                targetUser, ex);
-        }
+    }
+
+    /**
+     * Checks if the reply has been prepared.
+     * 
+     * @return Boolean indicating if the reply has been prepared.
+     */
+    public boolean isPrepared()
+    {
+        return tweet != null;
+    }
+
+    /**
+     * Sends the reply.
+     * <p>
+     * Duplicate replies are ignored, since Twitter already has them. Sent replies are published
+     * in the {@link EventBus}.
+     * 
+     * @throws TwitterException If the reply cannot be sent.
+     */
+    @Override
+    public void execute(final Twitter twitter) throws TwitterException
+    {
+        // Commands that have not been prepared by the scheduler are prepared here
+        prepare();
 
         try
         {
-            String tweet = TwitterUtils.reply(targetUser, rhyme);
-
-            LOGGER.info("Replying to {} with: {}", targetUser, tweet);
+            LOGGER.info("Replying to {} with: {}", status.getScreenName(), tweet);
 
             // Reply to the user
             StatusUpdate newStatus = new StatusUpdate(tweet);
-            newStatus.setInReplyToStatusId(status.getId());
+            newStatus.setInReplyToStatusId(status.getStatusId());
             twitter.updateStatus(newStatus);
+
+            Map<String, String> reply = new LinkedHashMap<String, String>();
+            reply.put("user", status.getScreenName());
+            reply.put("statusId", String.valueOf(status.getStatusId()));
+            reply.put("reply", tweet);
+            EventBus.getInstance().publish(Event.Type.REPLIED, reply);
         }
         catch (TwitterException ex)
         {
-            LOGGER.error("Could not send reply to tweet " + status.getId(), ex);
-
-            // If it is not a duplicate tweet, enqueue the API call again, to
-            // retry it later
             if (!TwitterUtils.isDuplicateTweetError(ex))
             {
-                LOGGER.debug("Enqueuing the reply to try again later...");
-
-                commandQueue.add(this);
+                throw ex;
             }
+
+            LOGGER.warn("Tweet {} was already replied", status.getStatusId());
         }
     }
+
+    @Override
+    public String toString()
+    {
+        return "Reply to " + status;
+    }
 }
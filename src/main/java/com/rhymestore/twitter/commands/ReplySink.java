@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.commands;
+
+import java.io.IOException;
+
+import com.rhymestore.twitter.cluster.SharedReplyQueue;
+
+/**
+ * Receives the replies to the mentions.
+ * <p>
+ * Replies are usually added to the local command queue, but they can also be shared with other
+ * nodes through a {@link SharedReplyQueue}.
+ * 
+ * @author Ignasi Barrera
+ * @see MentionHandler
+ */
+public interface ReplySink
+{
+    /**
+     * Adds the given reply.
+     * 
+     * @param reply The reply to add.
+     * @return Boolean indicating if the reply has been added, or <code>false</code> if there is no
+     *         room for it.
+     * @throws IOException If the reply cannot be added.
+     */
+    public boolean offer(ReplyCommand reply) throws IOException;
+}
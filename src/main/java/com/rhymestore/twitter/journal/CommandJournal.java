@@ -0,0 +1,428 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.journal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal that makes the pending Twitter replies survive restarts.
+ * <p>
+ * Each change is appended as one line of text:
+ * <ul>
+ * <li><code>A &lt;status id&gt; &lt;creation time&gt; &lt;screen name&gt; &lt;text&gt;</code>: a
+ * reply has been enqueued.</li>
+ * <li><code>D &lt;status id&gt;</code>: a reply has been sent or discarded.</li>
+ * <li><code>C &lt;tweet id&gt;</code>: checkpoint of the last processed mention.</li>
+ * </ul>
+ * Changes are buffered in memory and only written to disk when {@link #commit()} is called, so
+ * several changes share the same disk synchronization. Changes that were not committed are lost if
+ * the process crashes; at worst, this makes a reply to be sent twice, and Twitter will reject the
+ * duplicate.
+ * <p>
+ * When the journal is opened, it is replayed to recover the pending replies and the last
+ * checkpoint, and it is compacted to contain only that information. It is compacted again when
+ * enough replies have been completed. This class is thread-safe.
+ * 
+ * @author Ignasi Barrera
+ */
+public class CommandJournal
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandJournal.class);
+
+    /** Number of completed replies after which the journal is compacted. */
+    public static final int COMPACTION_THRESHOLD = 1000;
+
+    /** The character encoding of the journal. */
+    private static final String ENCODING = "UTF-8";
+
+    /** Record type of the enqueued replies. */
+    private static final char ADDED = 'A';
+
+    /** Record type of the completed replies. */
+    private static final char DONE = 'D';
+
+    /** Record type of the checkpoints. */
+    private static final char CHECKPOINT = 'C';
+
+    /** The journal file. */
+    private final File file;
+
+    /** The pending replies, in the order they were added. */
+    private final Map<Long, PendingReply> pending = new LinkedHashMap<Long, PendingReply>();
+
+    /** The id of the last processed mention. */
+    private long lastTweetId = -1L;
+
+    /** Number of replies completed since the last compaction. */
+    private int completed;
+
+    /** The stream used to force the changes to disk. */
+    private FileOutputStream out;
+
+    /** The writer used to append the changes. */
+    private Writer writer;
+
+    /** Indicates if there are changes that have not been committed. */
+    private boolean dirty;
+
+    /**
+     * Opens the given journal, replaying its contents.
+     * 
+     * @param file The journal file. It will be created if it does not exist.
+     * @return The opened journal.
+     * @throws IOException If the journal cannot be read or written.
+     */
+    public static CommandJournal open(final File file) throws IOException
+    {
+        CommandJournal journal = new CommandJournal(file);
+        journal.replay();
+        journal.compact();
+        return journal;
+    }
+
+    /**
+     * Creates a new journal for the given file.
+     * 
+     * @param file The journal file.
+     */
+    private CommandJournal(final File file)
+    {
+        super();
+        this.file = file;
+    }
+
+    /**
+     * Gets the id of the last processed mention.
+     * 
+     * @return The id of the last processed mention, or <code>-1</code> if there is none.
+     */
+    public synchronized long getLastTweetId()
+    {
+        return lastTweetId;
+    }
+
+    /**
+     * Gets the replies that have not been completed.
+     * 
+     * @return The pending replies, in the order they were added.
+     */
+    public synchronized List<PendingReply> getPendingReplies()
+    {
+        return new ArrayList<PendingReply>(pending.values());
+    }
+
+    /**
+     * Records an enqueued reply.
+     * 
+     * @param reply The enqueued reply.
+     * @throws IOException If the change cannot be written.
+     */
+    public synchronized void added(final PendingReply reply) throws IOException
+    {
+        if (pending.put(reply.getStatusId(), reply) == null)
+        {
+            append(reply);
+        }
+    }
+
+    /**
+     * Records a reply that has been sent or discarded.
+     * 
+     * @param statusId The id of the replied tweet.
+     * @throws IOException If the change cannot be written.
+     */
+    public synchronized void completed(final long statusId) throws IOException
+    {
+        if (pending.remove(statusId) == null)
+        {
+            return;
+        }
+
+        append(DONE, String.valueOf(statusId));
+
+        if (++completed >= COMPACTION_THRESHOLD)
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Records the id of the last processed mention.
+     * 
+     * @param tweetId The id of the last processed mention.
+     * @throws IOException If the change cannot be written.
+     */
+    public synchronized void checkpoint(final long tweetId) throws IOException
+    {
+        if (tweetId != lastTweetId)
+        {
+            lastTweetId = tweetId;
+            append(CHECKPOINT, String.valueOf(tweetId));
+        }
+    }
+
+    /**
+     * Writes all the recorded changes to disk.
+     * 
+     * @throws IOException If the changes cannot be written.
+     */
+    public synchronized void commit() throws IOException
+    {
+        if (dirty)
+        {
+            writer.flush();
+            out.getFD().sync();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Commits the pending changes and closes the journal.
+     * 
+     * @throws IOException If the changes cannot be written.
+     */
+    public synchronized void close() throws IOException
+    {
+        if (writer != null)
+        {
+            try
+            {
+                commit();
+            }
+            finally
+            {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal to contain only the pending replies and the last checkpoint.
+     * 
+     * @throws IOException If the journal cannot be written.
+     */
+    private void compact() throws IOException
+    {
+        File compacted = new File(file.getPath() + ".tmp");
+        FileOutputStream compactedOut = new FileOutputStream(compacted);
+        Writer compactedWriter = createWriter(compactedOut);
+
+        try
+        {
+            if (lastTweetId > 0)
+            {
+                write(compactedWriter, CHECKPOINT, String.valueOf(lastTweetId));
+            }
+            for (PendingReply reply : pending.values())
+            {
+                write(compactedWriter, reply);
+            }
+
+            compactedWriter.flush();
+            compactedOut.getFD().sync();
+        }
+        finally
+        {
+            compactedWriter.close();
+        }
+
+        // The previous journal is not needed anymore
+        if (writer != null)
+        {
+            writer.close();
+            writer = null;
+        }
+
+        // Some platforms do not allow to overwrite files when renaming
+        boolean replaced =
+            compacted.renameTo(file) || file.delete() && compacted.renameTo(file);
+
+        out = new FileOutputStream(file, true);
+        writer = createWriter(out);
+
+        if (!replaced)
+        {
+            throw new IOException("Could not replace the journal file " + file);
+        }
+
+        dirty = false;
+        completed = 0;
+
+        LOGGER.debug("Compacted the command journal: {} pending replies", pending.size());
+    }
+
+    /**
+     * Loads the pending replies and the last checkpoint from the journal file.
+     * 
+     * @throws IOException If the journal cannot be read.
+     */
+    private void replay() throws IOException
+    {
+        if (!file.exists())
+        {
+            return;
+        }
+
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+
+        try
+        {
+            String line = null;
+            while ((line = reader.readLine()) != null)
+            {
+                try
+                {
+                    replay(line);
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    // The last line may be incomplete if the process crashed
+                    LOGGER.warn("Ignoring invalid journal record: {}", line);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        LOGGER.info("Recovered {} pending replies from the command journal", pending.size());
+    }
+
+    /**
+     * Applies the given journal record.
+     * 
+     * @param line The journal record.
+     * @throws IllegalArgumentException If the record is not valid.
+     */
+    private void replay(final String line) throws IOException
+    {
+        String[] fields = line.split(" ", -1);
+
+        if (fields.length < 2 || fields[0].length() != 1)
+        {
+            throw new IllegalArgumentException("Invalid record type");
+        }
+
+        switch (fields[0].charAt(0))
+        {
+            case ADDED:
+                PendingReply reply = PendingReply.decode(line.substring(2));
+                pending.put(reply.getStatusId(), reply);
+                break;
+            case DONE:
+                if (fields.length != 2)
+                {
+                    throw new IllegalArgumentException("Invalid completion record");
+                }
+                pending.remove(Long.parseLong(fields[1]));
+                break;
+            case CHECKPOINT:
+                if (fields.length != 2)
+                {
+                    throw new IllegalArgumentException("Invalid checkpoint record");
+                }
+                lastTweetId = Long.parseLong(fields[1]);
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid record type");
+        }
+    }
+
+    /**
+     * Appends the given reply to the journal.
+     */
+    private void append(final PendingReply reply) throws IOException
+    {
+        checkOpen();
+        write(writer, reply);
+        dirty = true;
+    }
+
+    /**
+     * Appends the given record to the journal.
+     */
+    private void append(final char type, final String data) throws IOException
+    {
+        checkOpen();
+        write(writer, type, data);
+        dirty = true;
+    }
+
+    /**
+     * Checks that the journal has not been closed.
+     */
+    private void checkOpen() throws IOException
+    {
+        if (writer == null)
+        {
+            throw new IOException("The command journal is closed");
+        }
+    }
+
+    /**
+     * Writes the record of the given reply.
+     */
+    private static void write(final Writer target, final PendingReply reply) throws IOException
+    {
+        write(target, ADDED, reply.encode());
+    }
+
+    /**
+     * Writes the given record.
+     */
+    private static void write(final Writer target, final char type, final String data)
+        throws IOException
+    {
+        target.write(type);
+        target.write(' ');
+        target.write(data);
+        target.write('\n');
+    }
+
+    /**
+     * Creates the writer used to append the records to the given stream.
+     */
+    private static Writer createWriter(final FileOutputStream stream) throws IOException
+    {
+        return new BufferedWriter(new OutputStreamWriter(stream, ENCODING));
+    }
+}
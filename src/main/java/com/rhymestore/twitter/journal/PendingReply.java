@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.journal;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+/**
+ * A reply that has been recorded in the {@link CommandJournal} but has not been sent yet.
+ * 
+ * @author Ignasi Barrera
+ */
+public class PendingReply implements Serializable
+{
+    /** Serial UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The character encoding used to encode the text fields. */
+    private static final String ENCODING = "UTF-8";
+
+    /** The id of the tweet to reply. */
+    private final long statusId;
+
+    /** The screen name of the user to reply. */
+    private final String screenName;
+
+    /** The text of the tweet to reply. */
+    private final String text;
+
+    /** The creation time of the tweet to reply, in milliseconds. */
+    private final long createdAt;
+
+    /**
+     * Creates a new {@link PendingReply}.
+     * 
+     * @param statusId The id of the tweet to reply.
+     * @param screenName The screen name of the user to reply.
+     * @param text The text of the tweet to reply.
+     * @param createdAt The creation time of the tweet to reply, in milliseconds, or
+     *            <code>0</code> if unknown.
+     */
+    public PendingReply(final long statusId, final String screenName, final String text,
+        final long createdAt)
+    {
+        super();
+        this.statusId = statusId;
+        this.screenName = screenName;
+        this.text = text;
+        this.createdAt = createdAt;
+    }
+
+    public long getStatusId()
+    {
+        return statusId;
+    }
+
+    public String getScreenName()
+    {
+        return screenName;
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    public long getCreatedAt()
+    {
+        return createdAt;
+    }
+
+    /**
+     * Encodes the reply in a single line of text.
+     * 
+     * @return The encoded reply.
+     * @throws IOException If the reply cannot be encoded.
+     * @see #decode(String)
+     */
+    public String encode() throws IOException
+    {
+        return statusId + " " + createdAt + " " + URLEncoder.encode(screenName, ENCODING) + " "
+            + URLEncoder.encode(text, ENCODING);
+    }
+
+    /**
+     * Decodes a reply encoded with {@link #encode()}.
+     * 
+     * @param encoded The encoded reply.
+     * @return The decoded reply.
+     * @throws IOException If the reply cannot be decoded.
+     * @throws IllegalArgumentException If the encoded reply is not valid.
+     */
+    public static PendingReply decode(final String encoded) throws IOException
+    {
+        String[] fields = encoded.split(" ", -1);
+
+        if (fields.length != 4)
+        {
+            throw new IllegalArgumentException("Invalid reply: " + encoded);
+        }
+
+        return new PendingReply(Long.parseLong(fields[0]), URLDecoder.decode(fields[2], ENCODING),
+            URLDecoder.decode(fields[3], ENCODING), Long.parseLong(fields[1]));
+    }
+
+    @Override
+    public String toString()
+    {
+        return statusId + " from " + screenName + ": " + text;
+    }
+}
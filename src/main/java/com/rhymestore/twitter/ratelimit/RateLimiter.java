@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.ratelimit;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import twitter4j.RateLimitStatus;
+import twitter4j.RateLimitStatusEvent;
+import twitter4j.RateLimitStatusListener;
+import twitter4j.TwitterException;
+
+import com.rhymestore.twitter.util.TwitterUtils;
+
+/**
+ * Limits the rate of the Twitter API calls using a {@link TokenBucket} for each endpoint.
+ * <p>
+ * The buckets start with the documented Twitter limits, and are adapted to the rate limit status
+ * returned by the API after each call. This class must be registered as a
+ * {@link RateLimitStatusListener} in the Twitter client. The rate limit status is applied to the
+ * endpoint of the last call acquired by the thread that performs the API call, since twitter4j
+ * notifies the listeners from that thread.
+ * 
+ * @author Ignasi Barrera
+ * @see TokenBucket
+ */
+public class RateLimiter implements RateLimitStatusListener
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimiter.class);
+
+    /** The time to wait after a rate limit error, if the API does not say how much to wait. */
+    public static final long DEFAULT_BACKOFF = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The rate limited Twitter API endpoints.
+     * 
+     * @author Ignasi Barrera
+     */
+    public static enum Endpoint
+    {
+        /** Calls to get the mentions, limited by the REST API hourly limit. */
+        MENTIONS(5, TwitterUtils.MAX_API_CALLS_PER_HOUR, TimeUnit.HOURS.toMillis(1)),
+
+        /** Calls to update the status, limited by the daily update limit. */
+        UPDATE_STATUS(20, TwitterUtils.MAX_UPDATES_PER_DAY, TimeUnit.DAYS.toMillis(1));
+
+        /** The maximum number of consecutive calls. */
+        private final int burst;
+
+        /** The number of calls allowed in the period. */
+        private final int calls;
+
+        /** The period, in milliseconds. */
+        private final long period;
+
+        private Endpoint(final int burst, final int calls, final long period)
+        {
+            this.burst = burst;
+            this.calls = calls;
+            this.period = period;
+        }
+    }
+
+    /** The token bucket of each endpoint. */
+    private final Map<Endpoint, TokenBucket> buckets;
+
+    /** The endpoint of the last call acquired by each thread. */
+    private final ThreadLocal<Endpoint> lastAcquired = new ThreadLocal<Endpoint>();
+
+    /**
+     * Creates a new {@link RateLimiter} with the default Twitter limits.
+     */
+    public RateLimiter()
+    {
+        super();
+
+        long now = System.currentTimeMillis();
+        buckets = new EnumMap<Endpoint, TokenBucket>(Endpoint.class);
+
+        for (Endpoint endpoint : Endpoint.values())
+        {
+            buckets.put(endpoint, new TokenBucket(endpoint.burst, endpoint.calls,
+                endpoint.period, now));
+        }
+    }
+
+    /**
+     * Checks if a call to the given endpoint can be made now, and consumes a token if so.
+     * 
+     * @param endpoint The endpoint to call.
+     * @return Boolean indicating if the call can be made.
+     */
+    public boolean tryAcquire(final Endpoint endpoint)
+    {
+        if (!getBucket(endpoint).tryAcquire(System.currentTimeMillis()))
+        {
+            return false;
+        }
+
+        lastAcquired.set(endpoint);
+        return true;
+    }
+
+    /**
+     * Gets the time to wait until a call to the given endpoint can be made.
+     * 
+     * @param endpoint The endpoint to call.
+     * @return The time to wait, in milliseconds.
+     */
+    public long getWaitTime(final Endpoint endpoint)
+    {
+        return getBucket(endpoint).getWaitTime(System.currentTimeMillis());
+    }
+
+    /**
+     * Adapts the limits of the given endpoint to the given rate limit status.
+     * 
+     * @param endpoint The endpoint.
+     * @param status The rate limit status returned by the API.
+     */
+    public void update(final Endpoint endpoint, final RateLimitStatus status)
+    {
+        long now = System.currentTimeMillis();
+        long resetTime = now + TimeUnit.SECONDS.toMillis(status.getSecondsUntilReset());
+
+        LOGGER.debug("{} remaining calls to {} in {} seconds", new Object[] {
+            status.getRemainingHits(), endpoint, status.getSecondsUntilReset()});
+
+        getBucket(endpoint).update(status.getRemainingHits(), resetTime, now);
+    }
+
+    /**
+     * Backs off the given endpoint after a rate limit error.
+     * <p>
+     * No calls will be allowed until the time requested by the API, or until the rate limit
+     * reset time, if present.
+     * 
+     * @param endpoint The endpoint.
+     * @param ex The rate limit error.
+     */
+    public void backOff(final Endpoint endpoint, final TwitterException ex)
+    {
+        long wait = DEFAULT_BACKOFF;
+
+        if (ex.getRetryAfter() > 0)
+        {
+            wait = TimeUnit.SECONDS.toMillis(ex.getRetryAfter());
+        }
+        else if (ex.getRateLimitStatus() != null)
+        {
+            wait = TimeUnit.SECONDS.toMillis(ex.getRateLimitStatus().getSecondsUntilReset());
+        }
+
+        LOGGER.warn("Rate limit exceeded for {}. Waiting {} seconds", endpoint,
+            TimeUnit.MILLISECONDS.toSeconds(wait));
+
+        getBucket(endpoint).block(System.currentTimeMillis() + wait);
+    }
+
+    @Override
+    public void onRateLimitStatus(final RateLimitStatusEvent event)
+    {
+        Endpoint endpoint = lastAcquired.get();
+
+        if (endpoint != null && event.getRateLimitStatus() != null)
+        {
+            update(endpoint, event.getRateLimitStatus());
+        }
+    }
+
+    @Override
+    public void onRateLimitReached(final RateLimitStatusEvent event)
+    {
+        // The remaining calls in the status are already zero
+        onRateLimitStatus(event);
+    }
+
+    /**
+     * Gets the bucket of the given endpoint.
+     * 
+     * @param endpoint The endpoint.
+     * @return The bucket of the endpoint.
+     */
+    /* package */TokenBucket getBucket(final Endpoint endpoint)
+    {
+        return buckets.get(endpoint);
+    }
+}
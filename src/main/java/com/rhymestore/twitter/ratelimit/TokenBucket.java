@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.ratelimit;
+
+/**
+ * A token bucket that limits the rate of the calls to an API endpoint.
+ * <p>
+ * The bucket is refilled continuously at the configured rate, up to its capacity, and each call
+ * consumes one token. The refill rate can be adjusted at any time to spread the remaining quota
+ * until the quota reset time, and the bucket can be blocked until a given time when the quota has
+ * been exhausted. This class is thread-safe.
+ * 
+ * @author Ignasi Barrera
+ * @see RateLimiter
+ */
+public class TokenBucket
+{
+    /** The maximum number of tokens (the maximum burst size). */
+    private final int capacity;
+
+    /** The default number of tokens added per millisecond. */
+    private final double defaultRate;
+
+    /** The current number of tokens added per millisecond. */
+    private double rate;
+
+    /** The time until the current rate applies. */
+    private long rateExpiration;
+
+    /** The current number of tokens. */
+    private double tokens;
+
+    /** The last time the bucket was refilled. */
+    private long lastRefill;
+
+    /** The time until no tokens are given. */
+    private long blockedUntil;
+
+    /**
+     * Creates a new full {@link TokenBucket}.
+     * 
+     * @param capacity The maximum number of tokens.
+     * @param calls The number of calls allowed in the given period.
+     * @param period The period, in milliseconds.
+     * @param now The current time, in milliseconds.
+     */
+    public TokenBucket(final int capacity, final int calls, final long period, final long now)
+    {
+        super();
+
+        if (capacity < 1 || calls < 1 || period < 1)
+        {
+            throw new IllegalArgumentException("The bucket capacity and rate must be positive");
+        }
+
+        this.capacity = capacity;
+        this.defaultRate = (double) calls / period;
+        this.rate = defaultRate;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Takes a token from the bucket, if available.
+     * 
+     * @param now The current time, in milliseconds.
+     * @return Boolean indicating if a token has been taken.
+     */
+    public synchronized boolean tryAcquire(final long now)
+    {
+        refill(now);
+
+        if (now < blockedUntil || tokens < 1)
+        {
+            return false;
+        }
+
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Gets the time to wait until a token will be available.
+     * 
+     * @param now The current time, in milliseconds.
+     * @return The time to wait, in milliseconds.
+     */
+    public synchronized long getWaitTime(final long now)
+    {
+        refill(now);
+
+        long wait = Math.max(0, blockedUntil - now);
+
+        if (tokens < 1)
+        {
+            wait = Math.max(wait, (long) Math.ceil((1 - tokens) / rate));
+        }
+
+        return wait;
+    }
+
+    /**
+     * Gets the number of available tokens.
+     * 
+     * @param now The current time, in milliseconds.
+     * @return The number of available tokens.
+     */
+    public synchronized int getAvailableTokens(final long now)
+    {
+        refill(now);
+        return now < blockedUntil ? 0 : (int) tokens;
+    }
+
+    /**
+     * Adapts the bucket to the remaining quota.
+     * <p>
+     * The remaining calls are spread until the reset time, allowing bursts up to the bucket
+     * capacity. If there are no remaining calls, the bucket is blocked until the reset time.
+     * 
+     * @param remaining The number of remaining calls.
+     * @param resetTime The time when the quota will be reset, in milliseconds.
+     * @param now The current time, in milliseconds.
+     */
+    public synchronized void update(final int remaining, final long resetTime, final long now)
+    {
+        refill(now);
+
+        if (resetTime <= now)
+        {
+            // The quota has already been reset
+            return;
+        }
+
+        tokens = Math.min(tokens, Math.max(0, remaining));
+
+        if (remaining <= 0)
+        {
+            // The whole quota will be available after the reset
+            block(resetTime, capacity);
+        }
+        else
+        {
+            rate = (double) remaining / (resetTime - now);
+            rateExpiration = resetTime;
+        }
+    }
+
+    /**
+     * Blocks the bucket until the given time.
+     * <p>
+     * No tokens will be given until then, and only one token will be available after that time, so
+     * a single call can check if the quota has been restored.
+     * 
+     * @param until The time until the bucket is blocked, in milliseconds.
+     */
+    public synchronized void block(final long until)
+    {
+        block(until, 1);
+    }
+
+    /**
+     * Blocks the bucket until the given time.
+     * 
+     * @param until The time until the bucket is blocked, in milliseconds.
+     * @param tokensAfter The number of tokens available once the bucket is unblocked.
+     */
+    private void block(final long until, final int tokensAfter)
+    {
+        if (until <= blockedUntil)
+        {
+            return;
+        }
+
+        blockedUntil = until;
+        lastRefill = until;
+        tokens = tokensAfter;
+    }
+
+    /**
+     * Adds the tokens for the elapsed time since the last refill.
+     * 
+     * @param now The current time, in milliseconds.
+     */
+    private void refill(final long now)
+    {
+        if (now <= lastRefill)
+        {
+            return;
+        }
+
+        // The adjusted rate only applies until the quota is reset
+        if (rateExpiration > 0 && rateExpiration <= now)
+        {
+            if (rateExpiration > lastRefill)
+            {
+                tokens += (rateExpiration - lastRefill) * rate;
+                lastRefill = rateExpiration;
+            }
+
+            rate = defaultRate;
+            rateExpiration = 0;
+        }
+
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * rate);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import twitter4j.TwitterException;
+
+/**
+ * A streaming connection that pushes the statuses of the Twitter account.
+ * 
+ * @author Ignasi Barrera
+ * @see MentionStreamer
+ */
+public interface MentionSource
+{
+    /**
+     * Connects to the source and delivers the received statuses to the given listener.
+     * <p>
+     * This method blocks until the connection is lost or {@link #close() closed}. It does not
+     * reconnect by itself.
+     * 
+     * @param listener The listener that will receive the statuses.
+     * @throws TwitterException If the connection fails.
+     */
+    public void stream(MentionListener listener) throws TwitterException;
+
+    /**
+     * Closes the current connection, if any.
+     */
+    public void close();
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import twitter4j.Status;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+
+import com.rhymestore.twitter.commands.GetMentionsCommand;
+import com.rhymestore.twitter.commands.MentionHandler;
+import com.rhymestore.twitter.util.TwitterUtils;
+
+/**
+ * Receives the mentions from a {@link MentionSource} and enqueues the replies as soon as they
+ * arrive.
+ * <p>
+ * The connection is established again when it is lost, waiting an exponentially increasing time
+ * between attempts. Mentions received while disconnected are obtained by polling: once a poll
+ * started after the current connection was established has finished, the stream is caught up and
+ * polling is not needed anymore. From then on, the streamed mentions also advance the last
+ * processed tweet of the {@link GetMentionsCommand}.
+ * 
+ * @author Ignasi Barrera
+ * @see MentionSource
+ */
+public class MentionStreamer implements Runnable, MentionListener
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MentionStreamer.class);
+
+    /** The time to wait before the first reconnection, in milliseconds. */
+    public static final long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(1);
+
+    /** The time to wait before reconnecting after a rate limit error, in milliseconds. */
+    public static final long RATE_LIMIT_BACKOFF = TimeUnit.MINUTES.toMillis(1);
+
+    /** The maximum time to wait before reconnecting, in milliseconds. */
+    public static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(4);
+
+    /** The source of the mentions. */
+    private final MentionSource source;
+
+    /** Enqueues the replies to the mentions. */
+    private final MentionHandler mentionHandler;
+
+    /** The command that polls the mentions. */
+    private final GetMentionsCommand getMentionsCommand;
+
+    /** The Twitter account. */
+    private final Twitter twitter;
+
+    /** Incremented each time a connection is established or lost. */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /** Indicates if the source is connected. */
+    private volatile boolean connected;
+
+    /** Indicates if all the mentions since the last poll are being received. */
+    private volatile boolean caughtUp;
+
+    /** Indicates if the streamer is running. */
+    private volatile boolean running;
+
+    /** The time to wait before the next reconnection. */
+    private volatile long backoff = MIN_BACKOFF;
+
+    /** The thread that reads the stream. */
+    private Thread thread;
+
+    /**
+     * Creates a new {@link MentionStreamer}.
+     * 
+     * @param source The source of the mentions.
+     * @param mentionHandler Enqueues the replies to the mentions.
+     * @param getMentionsCommand The command that polls the mentions.
+     * @param twitter The Twitter account.
+     */
+    public MentionStreamer(final MentionSource source, final MentionHandler mentionHandler,
+        final GetMentionsCommand getMentionsCommand, final Twitter twitter)
+    {
+        super();
+        this.source = source;
+        this.mentionHandler = mentionHandler;
+        this.getMentionsCommand = getMentionsCommand;
+        this.twitter = twitter;
+    }
+
+    /**
+     * Starts reading the stream in a new thread.
+     */
+    public synchronized void start()
+    {
+        running = true;
+        thread = new Thread(this, "twitter-stream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops reading the stream.
+     */
+    public synchronized void shutdown()
+    {
+        running = false;
+        source.close();
+
+        if (thread != null)
+        {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Checks if the stream is delivering all the mentions since the last poll.
+     * 
+     * @return Boolean indicating if polling the mentions is not needed.
+     */
+    public boolean isCaughtUp()
+    {
+        return caughtUp;
+    }
+
+    /**
+     * Gets the current connection generation, to be passed to {@link #polled(int)}.
+     * 
+     * @return The current connection generation.
+     */
+    public int getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Notifies that the mentions have been polled successfully.
+     * 
+     * @param pollGeneration The connection generation when the poll started.
+     */
+    public void polled(final int pollGeneration)
+    {
+        // Only if the connection was already established when the poll started
+        if (connected && generation.get() == pollGeneration)
+        {
+            if (!caughtUp)
+            {
+                LOGGER.info("The mentions stream is caught up. Polling is not needed anymore");
+            }
+
+            caughtUp = true;
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while (running)
+        {
+            try
+            {
+                source.stream(this);
+
+                LOGGER.info("The mentions stream has been closed");
+            }
+            catch (TwitterException ex)
+            {
+                LOGGER.error("The mentions stream has failed", ex);
+
+                if (ex.exceededRateLimitation())
+                {
+                    backoff = Math.max(backoff, RATE_LIMIT_BACKOFF);
+                }
+            }
+            catch (RuntimeException ex)
+            {
+                LOGGER.error("Unexpected error reading the mentions stream", ex);
+            }
+            finally
+            {
+                disconnected();
+            }
+
+            if (running)
+            {
+                waitToReconnect();
+            }
+        }
+    }
+
+    @Override
+    public void onConnect()
+    {
+        LOGGER.info("Connected to the mentions stream");
+
+        generation.incrementAndGet();
+        connected = true;
+        backoff = MIN_BACKOFF;
+    }
+
+    @Override
+    public void onStatus(final Status status)
+    {
+        try
+        {
+            if (!isMention(status))
+            {
+                return;
+            }
+
+            mentionHandler.handle(twitter, Collections.singletonList(status));
+
+            if (caughtUp)
+            {
+                getMentionsCommand.advanceLastTweetId(status.getId());
+            }
+        }
+        catch (TwitterException ex)
+        {
+            LOGGER.error("Could not process the streamed mention " + status.getId(), ex);
+        }
+        catch (IOException ex)
+        {
+            LOGGER.error("Could not process the streamed mention " + status.getId(), ex);
+        }
+    }
+
+    /**
+     * Records the loss of the connection.
+     */
+    private void disconnected()
+    {
+        if (connected)
+        {
+            generation.incrementAndGet();
+        }
+
+        connected = false;
+        caughtUp = false;
+    }
+
+    /**
+     * Waits before reconnecting, doubling the time for the next attempt.
+     */
+    private void waitToReconnect()
+    {
+        LOGGER.info("Reconnecting to the mentions stream in {} seconds", TimeUnit.MILLISECONDS
+            .toSeconds(backoff));
+
+        try
+        {
+            Thread.sleep(backoff);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+
+        backoff = Math.min(MAX_BACKOFF, backoff * 2);
+    }
+
+    /**
+     * Checks if the given status mentions the current Twitter user.
+     * <p>
+     * The user stream also delivers the statuses of the followed users.
+     * 
+     * @param status The status to check.
+     * @return Boolean indicating if the status is a mention.
+     * @throws TwitterException If the current Twitter user cannot be obtained.
+     */
+    private boolean isMention(final Status status) throws TwitterException
+    {
+        String mention = TwitterUtils.user(mentionHandler.getIdentity(twitter)
+            .getScreenName());
+        String text = status.getText();
+
+        return text != null && text.toLowerCase().contains(mention.toLowerCase());
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import java.util.concurrent.CountDownLatch;
+
+import twitter4j.ConnectionLifeCycleListener;
+import twitter4j.Status;
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.TwitterStream;
+import twitter4j.TwitterStreamFactory;
+import twitter4j.UserStreamAdapter;
+import twitter4j.auth.Authorization;
+
+/**
+ * {@link MentionSource} that uses the Twitter user stream of the given account.
+ * <p>
+ * The twitter4j stream reconnects by itself when the connection is lost. This source shuts it
+ * down instead, so the {@link MentionStreamer} can apply its own backoff policy.
+ * 
+ * @author Ignasi Barrera
+ */
+public class TwitterStreamSource implements MentionSource
+{
+    /** The credentials of the account to stream. */
+    private final Authorization authorization;
+
+    /** Released when the current connection is lost or closed. */
+    private volatile CountDownLatch closed;
+
+    /**
+     * Creates a new {@link TwitterStreamSource} for the given account.
+     * 
+     * @param twitter The account whose user stream will be read.
+     */
+    public TwitterStreamSource(final Twitter twitter)
+    {
+        super();
+        this.authorization = twitter.getAuthorization();
+    }
+
+    @Override
+    public void stream(final MentionListener listener) throws TwitterException
+    {
+        final CountDownLatch connection = new CountDownLatch(1);
+        final Exception[] failure = new Exception[1];
+
+        TwitterStream current = new TwitterStreamFactory().getInstance(authorization);
+
+        current.addConnectionLifeCycleListener(new ConnectionLifeCycleListener()
+        {
+            @Override
+            public void onConnect()
+            {
+                listener.onConnect();
+            }
+
+            @Override
+            public void onDisconnect()
+            {
+                connection.countDown();
+            }
+
+            @Override
+            public void onCleanUp()
+            {
+                connection.countDown();
+            }
+        });
+
+        current.addListener(new UserStreamAdapter()
+        {
+            @Override
+            public void onStatus(final Status status)
+            {
+                listener.onStatus(status);
+            }
+
+            @Override
+            public void onException(final Exception ex)
+            {
+                failure[0] = ex;
+                connection.countDown();
+            }
+        });
+
+        closed = connection;
+
+        try
+        {
+            current.user();
+            connection.await();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            current.shutdown();
+        }
+
+        if (failure[0] != null)
+        {
+            throw failure[0] instanceof TwitterException ? (TwitterException) failure[0]
+                : new TwitterException(failure[0]);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        CountDownLatch connection = closed;
+
+        if (connection != null)
+        {
+            connection.countDown();
+        }
+    }
+}
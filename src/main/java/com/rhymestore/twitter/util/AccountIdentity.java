@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.util;
+
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.User;
+
+/**
+ * The identity (id and screen name) of a Twitter account.
+ * <p>
+ * The identity is obtained from Twitter the first time it is needed and then cached, so checking
+ * if a tweet belongs to the account does not need any API call. If the credentials of the account
+ * change, the identity must be {@link #refresh() refreshed}. This class is thread-safe.
+ * 
+ * @author Ignasi Barrera
+ */
+public class AccountIdentity
+{
+    /** The Twitter account. */
+    private final Twitter twitter;
+
+    /** The id of the account, or <code>-1</code> if not obtained yet. */
+    private long id = -1L;
+
+    /** The screen name of the account, or <code>null</code> if not obtained yet. */
+    private String screenName;
+
+    /**
+     * Creates the identity of the given account.
+     * 
+     * @param twitter The Twitter account.
+     */
+    public AccountIdentity(final Twitter twitter)
+    {
+        super();
+        this.twitter = twitter;
+    }
+
+    /**
+     * Gets the id of the account.
+     * 
+     * @return The id of the account.
+     * @throws TwitterException If the identity of the account cannot be obtained.
+     */
+    public synchronized long getId() throws TwitterException
+    {
+        resolve();
+        return id;
+    }
+
+    /**
+     * Gets the screen name of the account.
+     * 
+     * @return The screen name of the account.
+     * @throws TwitterException If the identity of the account cannot be obtained.
+     */
+    public synchronized String getScreenName() throws TwitterException
+    {
+        resolve();
+        return screenName;
+    }
+
+    /**
+     * Checks if the given user is this account.
+     * 
+     * @param user The user to check.
+     * @return Boolean indicating if the given user is this account.
+     * @throws TwitterException If the identity of the account cannot be obtained.
+     */
+    public boolean isCurrentUser(final User user) throws TwitterException
+    {
+        return user != null && user.getId() == getId();
+    }
+
+    /**
+     * Discards the cached identity, so it is obtained again the next time it is needed.
+     */
+    public synchronized void refresh()
+    {
+        id = -1L;
+        screenName = null;
+    }
+
+    /**
+     * Obtains the identity of the account, if not cached.
+     * 
+     * @throws TwitterException If the identity of the account cannot be obtained.
+     */
+    private void resolve() throws TwitterException
+    {
+        if (id < 0)
+        {
+            User user = twitter.verifyCredentials();
+            screenName = user.getScreenName();
+            id = user.getId();
+        }
+    }
+}
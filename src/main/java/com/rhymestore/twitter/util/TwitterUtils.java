@@ -38,6 +38,12 @@ public class TwitterUtils
     /** Maximum number of API calls that can be performed in an hour. */
     public static final int MAX_API_CALLS_PER_HOUR = 150;
 
+    /** Maximum number of status updates that can be performed in a day. */
+    public static final int MAX_UPDATES_PER_DAY = 1000;
+
+    /** Maximum number of mentions returned in each page of the mentions timeline. */
+    public static final int MENTIONS_PER_PAGE = 200;
+
     /** The error produced when attempting to send duplicate tweets. */
     public static final String DUPLICATE_TWEET_ERROR = "Status is a duplicate.";
 
@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a JSON document directly to a {@link Writer}, without building it in memory.
+ * <p>
+ * Only the structure needed by the API is supported: objects, arrays, strings, numbers and
+ * booleans. The writer does not check that the document is well formed.
+ * 
+ * @author Ignasi Barrera
+ */
+public class JsonWriter
+{
+    /** The maximum nesting level of the document. */
+    private static final int MAX_DEPTH = 32;
+
+    /** The hexadecimal digits used to escape control characters. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The writer of the document. */
+    private final Writer out;
+
+    /** Indicates, for each open object or array, if it still has no elements. */
+    private final boolean[] empty = new boolean[MAX_DEPTH];
+
+    /** The current nesting level. */
+    private int depth;
+
+    /** Indicates if the next value belongs to a name just written. */
+    private boolean named;
+
+    /**
+     * Creates a new {@link JsonWriter}.
+     * 
+     * @param out The writer of the document.
+     */
+    public JsonWriter(final Writer out)
+    {
+        super();
+        this.out = out;
+    }
+
+    /**
+     * Starts an object.
+     * 
+     * @return This writer.
+     * @throws IOException If the object cannot be written.
+     */
+    public JsonWriter beginObject() throws IOException
+    {
+        return open('{');
+    }
+
+    /**
+     * Ends the current object.
+     * 
+     * @return This writer.
+     * @throws IOException If the object cannot be written.
+     */
+    public JsonWriter endObject() throws IOException
+    {
+        return close('}');
+    }
+
+    /**
+     * Starts an array.
+     * 
+     * @return This writer.
+     * @throws IOException If the array cannot be written.
+     */
+    public JsonWriter beginArray() throws IOException
+    {
+        return open('[');
+    }
+
+    /**
+     * Ends the current array.
+     * 
+     * @return This writer.
+     * @throws IOException If the array cannot be written.
+     */
+    public JsonWriter endArray() throws IOException
+    {
+        return close(']');
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     * 
+     * @param name The name of the member.
+     * @return This writer.
+     * @throws IOException If the name cannot be written.
+     */
+    public JsonWriter name(final String name) throws IOException
+    {
+        separate();
+        string(name);
+        out.write(':');
+        named = true;
+        return this;
+    }
+
+    /**
+     * Writes a string value.
+     * 
+     * @param value The value to write. May be <code>null</code>.
+     * @return This writer.
+     * @throws IOException If the value cannot be written.
+     */
+    public JsonWriter value(final String value) throws IOException
+    {
+        separate();
+
+        if (value == null)
+        {
+            out.write("null");
+        }
+        else
+        {
+            string(value);
+        }
+
+        return this;
+    }
+
+    /**
+     * Writes a numeric value.
+     * 
+     * @param value The value to write.
+     * @return This writer.
+     * @throws IOException If the value cannot be written.
+     */
+    public JsonWriter value(final long value) throws IOException
+    {
+        separate();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a boolean value.
+     * 
+     * @param value The value to write.
+     * @return This writer.
+     * @throws IOException If the value cannot be written.
+     */
+    public JsonWriter value(final boolean value) throws IOException
+    {
+        separate();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Sends the written content to the underlying writer.
+     * 
+     * @throws IOException If the content cannot be sent.
+     */
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     * Starts an object or an array.
+     * 
+     * @param bracket The opening bracket.
+     * @return This writer.
+     * @throws IOException If the bracket cannot be written.
+     */
+    private JsonWriter open(final char bracket) throws IOException
+    {
+        if (depth == MAX_DEPTH)
+        {
+            throw new IllegalStateException("The JSON document is nested too deeply");
+        }
+
+        separate();
+        out.write(bracket);
+        empty[depth++] = true;
+        return this;
+    }
+
+    /**
+     * Ends an object or an array.
+     * 
+     * @param bracket The closing bracket.
+     * @return This writer.
+     * @throws IOException If the bracket cannot be written.
+     */
+    private JsonWriter close(final char bracket) throws IOException
+    {
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    /**
+     * Writes the separator before a new element, if needed.
+     * 
+     * @throws IOException If the separator cannot be written.
+     */
+    private void separate() throws IOException
+    {
+        if (named)
+        {
+            // The element is the value of the last name
+            named = false;
+        }
+        else if (depth > 0)
+        {
+            if (!empty[depth - 1])
+            {
+                out.write(',');
+            }
+
+            empty[depth - 1] = false;
+        }
+    }
+
+    /**
+     * Writes a quoted and escaped string.
+     * 
+     * @param value The string to write.
+     * @throws IOException If the string cannot be written.
+     */
+    private void string(final String value) throws IOException
+    {
+        out.write('"');
+
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+
+            switch (c)
+            {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    // Line separators are escaped too, as they are not valid in JavaScript
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029)
+                    {
+                        out.write("\\u");
+                        out.write(HEX[c >> 12 & 0xf]);
+                        out.write(HEX[c >> 8 & 0xf]);
+                        out.write(HEX[c >> 4 & 0xf]);
+                        out.write(HEX[c & 0xf]);
+                    }
+                    else
+                    {
+                        out.write(c);
+                    }
+            }
+        }
+
+        out.write('"');
+    }
+}
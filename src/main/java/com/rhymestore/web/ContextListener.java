@@ -22,8 +22,7 @@
 
 package com.rhymestore.web;
 
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.IOException;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
@@ -31,17 +30,23 @@ import javax.servlet.ServletContextListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import twitter4j.Twitter;
 import twitter4j.TwitterException;
-import twitter4j.TwitterFactory;
 
 import com.rhymestore.config.Configuration;
-import com.rhymestore.store.RhymeLoader;
+import com.rhymestore.config.ConfigurationException;
+import com.rhymestore.event.EventBus;
+import com.rhymestore.store.DefaultRhymesLoader;
+import com.rhymestore.store.RhymeStore;
+import com.rhymestore.twitter.TwitterAccounts;
 import com.rhymestore.twitter.TwitterScheduler;
-import com.rhymestore.util.SSLUtils;
+import com.rhymestore.twitter.util.AccountIdentity;
+import com.rhymestore.web.async.AsyncApiServer;
+import com.rhymestore.web.async.EventStreamHandler;
+import com.rhymestore.web.async.HealthHandler;
+import com.rhymestore.web.async.RhymeLookupService;
 
 /**
- * Initializes and shuts down the twitter scheduler.
+ * Initializes and shuts down the twitter schedulers.
  * 
  * @author Ignasi Barrera
  */
@@ -56,11 +61,17 @@ public class ContextListener implements ServletContextListener
     /** Context parameter name used to enable or disable twitter communication. */
     private static final String TWITTER_ENABLE_PARAM_NAME = "TWITTER_ENABLED";
 
-    /** The Twitter API call scheduler. */
-    private TwitterScheduler twitterScheduler;
+    /** The Twitter API call schedulers of the configured accounts. */
+    private TwitterAccounts twitterAccounts;
 
-    /** The Twitter API client. */
-    private Twitter twitter;
+    /** Loads the default rhymes in the background. */
+    private DefaultRhymesLoader defaultRhymes;
+
+    /** The asynchronous rhyme API, if enabled. */
+    private AsyncApiServer asyncApiServer;
+
+    /** Streams the events of the store and the bot in the asynchronous API, if enabled. */
+    private EventStreamHandler eventStream;
 
     @Override
     public void contextInitialized(final ServletContextEvent sce)
@@ -69,48 +80,61 @@ public class ContextListener implements ServletContextListener
         if (twitterEnabled(sce))
         {
             // Connects to Twitter
-            twitter = new TwitterFactory().getInstance();
+            twitterAccounts = new TwitterAccounts();
 
             try
             {
-                LOGGER.info("Connected to Twitter as: {}", twitter.getScreenName());
-
-                // Store the user name in the servlet context to make it
-                // available to Controllers
-                sce.getServletContext().setAttribute(TWITTER_USER_NAME, twitter.getScreenName());
+                // The identities are cached by the schedulers, so they are
+                // obtained only once per account
+                for (TwitterScheduler scheduler : twitterAccounts.getSchedulers())
+                {
+                    LOGGER.info("Connected to Twitter as: {}", scheduler.getIdentity()
+                        .getScreenName());
+                }
+
+                // Store the user name of the first account in the servlet
+                // context to make it available to Controllers
+                AccountIdentity identity = twitterAccounts.getSchedulers().get(0).getIdentity();
+                sce.getServletContext().setAttribute(TWITTER_USER_NAME, identity.getScreenName());
             }
             catch (TwitterException ex)
             {
                 LOGGER.error("Could not get the Twitter username", ex);
             }
 
-            LOGGER.info("Starting the Twitter API scheduler");
+            LOGGER.info("Starting the Twitter API schedulers");
 
-            twitterScheduler = new TwitterScheduler(twitter);
-            twitterScheduler.start();
+            twitterAccounts.start();
         }
         else
         {
             LOGGER.info("Twitter communication is disabled");
         }
 
-        // Load the default rhymes
-        loadDefaultRhymes();
+        // Load the default rhymes without delaying the startup
+        defaultRhymes = new DefaultRhymesLoader();
+        defaultRhymes.start();
+
+        startAsyncApi();
     }
 
     @Override
     public void contextDestroyed(final ServletContextEvent sce)
     {
-        if (twitterEnabled(sce))
+        if (twitterAccounts != null)
         {
-            LOGGER.info("Shutting down the Twitter API scheduler");
+            LOGGER.info("Shutting down the Twitter API schedulers and disconnecting from Twitter");
 
-            twitterScheduler.shutdown(); // Stop scheduler
+            twitterAccounts.shutdown();
         }
 
-        LOGGER.info("Disconnecting from Twitter");
+        if (asyncApiServer != null)
+        {
+            LOGGER.info("Shutting down the asynchronous rhyme API");
 
-        twitter.shutdown(); // Disconnect from Twitter
+            eventStream.shutdown();
+            asyncApiServer.shutdown();
+        }
     }
 
     /**
@@ -126,32 +150,33 @@ public class ContextListener implements ServletContextListener
     }
 
     /**
-     * Load the default rhymes, if the URI is defined.
+     * Starts the asynchronous rhyme API, if a port is configured.
      */
-    private void loadDefaultRhymes()
+    private void startAsyncApi()
     {
-        // Load the rhymes URI
-        String rhymesURI = Configuration.getConfigValue(Configuration.DEFAULT_RHYMES_URI_PROPERTY);
+        String port = Configuration.getConfigValue(Configuration.ASYNC_API_PORT_PROPERTY);
 
-        if (rhymesURI != null)
+        if (port != null)
         {
-            LOGGER.info("Adding rhymes from: {}", rhymesURI);
-
             try
             {
-                // Ensure there won't be SSL certificate issues
-                SSLUtils.installIgnoreCertTrustManager();
-                URL url = new URL(rhymesURI);
-                URLConnection conn = url.openConnection();
-
-                // Load the rhymes from the configured URI
-                new RhymeLoader().load(conn.getInputStream());
+                asyncApiServer = new AsyncApiServer(Integer.parseInt(port.trim()),
+                    new RhymeLookupService(RhymeStore.getInstance()));
+                asyncApiServer.createContext(HealthHandler.HEALTH_PATH, new HealthHandler(
+                    defaultRhymes));
+
+                eventStream = new EventStreamHandler(EventBus.getInstance());
+                asyncApiServer.createContext(EventStreamHandler.EVENTS_PATH, eventStream);
+                asyncApiServer.start();
             }
-            catch (Exception ex)
+            catch (NumberFormatException ex)
             {
-                LOGGER.error("Could not load the default rhymes: " + ex.getMessage(), ex);
+                throw new ConfigurationException("Invalid port for the asynchronous API: " + port);
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not start the asynchronous rhyme API", ex);
             }
-
         }
     }
 
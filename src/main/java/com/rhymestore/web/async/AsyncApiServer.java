@@ -0,0 +1,420 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.async;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.model.validator.RhymeValidator;
+import com.rhymestore.util.JsonWriter;
+import com.rhymestore.util.XMLUtils;
+import com.rhymestore.web.controller.APIController;
+import com.rhymestore.web.controller.ResponseFormat;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP front for the rhyme API that does not hold a thread per request.
+ * <p>
+ * The requests are parsed by a small pool of threads and handed over to a
+ * {@link RhymeLookupService}. The handler returns immediately, and the response is sent by the
+ * same pool when the rhyme is found, so the lookup service never waits for the clients. It
+ * answers the same <code>GET /api?rhyme=...</code> requests than the {@link APIController}, in
+ * XML or JSON depending on the <code>Accept</code> header.
+ * 
+ * @author Ignasi Barrera
+ * @see APIController
+ */
+public class AsyncApiServer
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncApiServer.class);
+
+    /** The path of the rhyme API. */
+    public static final String API_PATH = "/api";
+
+    /** The number of threads that parse the requests. */
+    public static final int HANDLER_THREADS = 4;
+
+    /** The maximum number of connections waiting to be accepted. */
+    public static final int BACKLOG = 1024;
+
+    /** The character encoding of the request parameters. */
+    private static final String ENCODING = "UTF-8";
+
+    /** The service that finds the rhymes. */
+    private final RhymeLookupService lookupService;
+
+    /** Validates the sentences to rhyme. */
+    private final RhymeValidator validator;
+
+    /** The HTTP server. */
+    private final HttpServer server;
+
+    /** The threads that parse the requests. */
+    private final ExecutorService handlers;
+
+    /**
+     * Creates a new {@link AsyncApiServer}.
+     * 
+     * @param port The port to listen to. Use <code>0</code> to choose any free port.
+     * @param lookupService The service that finds the rhymes.
+     * @throws IOException If the server cannot listen to the given port.
+     */
+    public AsyncApiServer(final int port, final RhymeLookupService lookupService)
+        throws IOException
+    {
+        super();
+        this.lookupService = lookupService;
+        this.validator = RhymeValidator.getInstance();
+
+        handlers = Executors.newFixedThreadPool(HANDLER_THREADS, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "api-handler-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.createContext(API_PATH, new RhymeHandler());
+        server.setExecutor(handlers);
+    }
+
+    /**
+     * Serves the requests to the given path with the given handler.
+     * 
+     * @param path The path to serve.
+     * @param handler The handler of the requests.
+     */
+    public void createContext(final String path, final HttpHandler handler)
+    {
+        server.createContext(path, handler);
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start()
+    {
+        lookupService.start();
+        server.start();
+
+        LOGGER.info("Serving the asynchronous rhyme API on port {}", getPort());
+    }
+
+    /**
+     * Stops serving requests.
+     * <p>
+     * The requests waiting for their rhymes fail, and their responses are sent before the handler
+     * threads stop.
+     */
+    public void shutdown()
+    {
+        server.stop(0);
+        lookupService.shutdown();
+        handlers.shutdown();
+    }
+
+    /**
+     * Gets the port where the server listens.
+     * 
+     * @return The port where the server listens.
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the sentence to rhyme from a query string.
+     * <p>
+     * The sentence is read from the same parameters than the ones of the {@link APIController}.
+     * 
+     * @param query The query string. May be <code>null</code>.
+     * @return The value of the parameter, or <code>null</code> if it is not present.
+     * @throws UnsupportedEncodingException If the parameter cannot be decoded.
+     */
+    static String getRhymeParameter(final String query) throws UnsupportedEncodingException
+    {
+        if (query == null)
+        {
+            return null;
+        }
+
+        String shortValue = null;
+
+        for (String param : query.split("&"))
+        {
+            if (param.startsWith(APIController.RHYME_PARAMETER + "="))
+            {
+                String value = param.substring(APIController.RHYME_PARAMETER.length() + 1);
+                return URLDecoder.decode(value, ENCODING);
+            }
+
+            if (shortValue == null && param.startsWith(APIController.SHORT_RHYME_PARAMETER + "="))
+            {
+                shortValue = param.substring(APIController.SHORT_RHYME_PARAMETER.length() + 1);
+            }
+        }
+
+        return shortValue == null ? null : URLDecoder.decode(shortValue, ENCODING);
+    }
+
+    /**
+     * Sends a response and closes the exchange.
+     * 
+     * @param exchange The exchange to respond.
+     * @param status The HTTP status of the response.
+     * @param format The format of the response.
+     * @param body The body of the response.
+     */
+    private static void send(final HttpExchange exchange, final int status,
+        final ResponseFormat format, final String body)
+    {
+        try
+        {
+            byte[] bytes = body.getBytes(format == ResponseFormat.JSON ? "UTF-8" : "ISO-8859-1");
+
+            exchange.getResponseHeaders().set("Content-Type", format.getContentType());
+            exchange.getResponseHeaders().set("Vary", "Accept");
+            exchange.sendResponseHeaders(status, bytes.length);
+
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+        catch (IOException ex)
+        {
+            LOGGER.debug("Could not send the response: {}", ex.getMessage());
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends a response from the handler threads.
+     * <p>
+     * The lookup callbacks are run by the thread of the {@link RhymeLookupService}, which must
+     * never block writing the response to a slow client.
+     * 
+     * @param exchange The exchange to respond.
+     * @param status The HTTP status of the response.
+     * @param format The format of the response.
+     * @param body The body of the response.
+     */
+    private void sendLater(final HttpExchange exchange, final int status,
+        final ResponseFormat format, final String body)
+    {
+        try
+        {
+            handlers.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    send(exchange, status, format, body);
+                }
+            });
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // The server is being shut down
+            exchange.close();
+        }
+    }
+
+    /**
+     * Renders a rhyme in the given format.
+     * 
+     * @param format The format of the response.
+     * @param rhyme The rhyme.
+     * @return The rendered rhyme.
+     * @throws IOException If the rhyme cannot be rendered.
+     */
+    private static String renderRhyme(final ResponseFormat format, final String rhyme)
+        throws IOException
+    {
+        if (format == ResponseFormat.JSON)
+        {
+            StringWriter json = new StringWriter();
+            new JsonWriter(json).beginObject().name("rhyme").value(rhyme).endObject();
+            return json.toString();
+        }
+
+        return "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<rhyme>"
+            + XMLUtils.escape(rhyme) + "</rhyme>\n";
+    }
+
+    /**
+     * Renders an error in the given format.
+     * 
+     * @param format The format of the response.
+     * @param message The error message.
+     * @return The rendered error.
+     */
+    private static String renderError(final ResponseFormat format, final String message)
+    {
+        return renderErrors(format, Collections.singletonList(message));
+    }
+
+    /**
+     * Renders the given errors in the given format.
+     * 
+     * @param format The format of the response.
+     * @param messages The error messages.
+     * @return The rendered errors.
+     */
+    private static String renderErrors(final ResponseFormat format,
+        final List<String> messages)
+    {
+        if (format == ResponseFormat.JSON)
+        {
+            try
+            {
+                StringWriter out = new StringWriter();
+                JsonWriter json = new JsonWriter(out);
+                json.beginObject().name("errors").beginArray();
+
+                for (String message : messages)
+                {
+                    json.value(message);
+                }
+
+                json.endArray().endObject();
+                return out.toString();
+            }
+            catch (IOException ex)
+            {
+                // Writing to a StringWriter does not fail
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n");
+        xml.append("<errors>\n    <total>").append(messages.size()).append("</total>\n");
+
+        for (String message : messages)
+        {
+            xml.append("    <error>").append(XMLUtils.escape(message)).append("</error>\n");
+        }
+
+        return xml.append("</errors>\n").toString();
+    }
+
+    /**
+     * Hands the rhyme requests over to the lookup service.
+     * 
+     * @author Ignasi Barrera
+     */
+    private class RhymeHandler implements HttpHandler
+    {
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException
+        {
+            final ResponseFormat format = ResponseFormat.negotiate(exchange.getRequestHeaders()
+                .getFirst("Accept"));
+
+            if (!"GET".equals(exchange.getRequestMethod()))
+            {
+                send(exchange, HttpURLConnection.HTTP_BAD_METHOD, format, renderError(format,
+                    "Only GET is supported"));
+                return;
+            }
+
+            String sentence = null;
+
+            try
+            {
+                sentence = getRhymeParameter(exchange.getRequestURI().getRawQuery());
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // Invalid escape sequences
+                sentence = null;
+            }
+
+            List<String> violations = validator.validate(sentence);
+
+            if (!violations.isEmpty())
+            {
+                send(exchange, HttpURLConnection.HTTP_BAD_REQUEST, format, renderErrors(format,
+                    violations));
+                return;
+            }
+
+            boolean accepted = lookupService.lookup(sentence, new RhymeCallback()
+            {
+                @Override
+                public void rhymed(final String rhyme)
+                {
+                    try
+                    {
+                        sendLater(exchange, HttpURLConnection.HTTP_OK, format, renderRhyme(
+                            format, rhyme));
+                    }
+                    catch (IOException ex)
+                    {
+                        failed(ex);
+                    }
+                }
+
+                @Override
+                public void failed(final IOException ex)
+                {
+                    sendLater(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR, format,
+                        renderError(format, "Could not get rhyme: " + ex.getMessage()));
+                }
+            });
+
+            if (!accepted)
+            {
+                send(exchange, HttpURLConnection.HTTP_UNAVAILABLE, format, renderError(format,
+                    "Too many pending requests"));
+            }
+        }
+    }
+}
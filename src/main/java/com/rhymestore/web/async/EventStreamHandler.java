@@ -0,0 +1,508 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.web.async;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.event.Event;
+import com.rhymestore.event.EventBus;
+import com.rhymestore.event.EventListener;
+import com.rhymestore.util.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Streams the events of the {@link EventBus} as Server-Sent Events.
+ * <p>
+ * Each client gets a bounded buffer of {@link #MAX_BUFFERED_EVENTS} events, and the buffers are
+ * written by a small pool of threads, so a connection does not hold a thread while it waits for
+ * events. Clients that do not read fast enough are disconnected. When they reconnect with the
+ * <code>Last-Event-ID</code> header they get the kept events they have missed. A comment is sent
+ * every {@link #HEARTBEAT_INTERVAL} seconds to keep idle connections open.
+ * <p>
+ * The writes are blocking, so a client that stops reading would keep a writer thread once its
+ * connection is full. Writes that are pending for more than {@link #WRITE_TIMEOUT} seconds are
+ * interrupted, which closes the connection and releases the thread.
+ * 
+ * @author Ignasi Barrera
+ * @see EventBus
+ */
+public class EventStreamHandler implements HttpHandler
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventStreamHandler.class);
+
+    /** The path of the event stream. */
+    public static final String EVENTS_PATH = "/events";
+
+    /** The maximum number of events waiting to be written to each client. */
+    public static final int MAX_BUFFERED_EVENTS = 256;
+
+    /** The time between the comments sent to keep the connections open, in seconds. */
+    public static final int HEARTBEAT_INTERVAL = 15;
+
+    /** The time a write can be pending before the connection is closed, in seconds. */
+    public static final int WRITE_TIMEOUT = 30;
+
+    /** The number of threads that write the events. */
+    private static final int WRITER_THREADS = 2;
+
+    /** The time the clients wait before reconnecting, in milliseconds. */
+    private static final int RETRY_TIME = 3000;
+
+    /** Marks the heartbeats in the buffers of the clients. */
+    private static final Event HEARTBEAT =
+        new Event(0, null, 0, Collections.<String, String> emptyMap());
+
+    /** The bus with the events to stream. */
+    private final EventBus eventBus;
+
+    /** The time a write can be pending before the connection is closed, in milliseconds. */
+    private final long writeTimeout;
+
+    /** The threads that write the events. */
+    private final ExecutorService writers;
+
+    /** Sends the heartbeats. */
+    private final ScheduledExecutorService heartbeats;
+
+    /** The open streams. */
+    private final Set<EventStream> streams =
+        Collections.newSetFromMap(new ConcurrentHashMap<EventStream, Boolean>());
+
+    /**
+     * Creates a new {@link EventStreamHandler}.
+     * 
+     * @param eventBus The bus with the events to stream.
+     */
+    public EventStreamHandler(final EventBus eventBus)
+    {
+        this(eventBus, TimeUnit.SECONDS.toMillis(HEARTBEAT_INTERVAL), TimeUnit.SECONDS
+            .toMillis(WRITE_TIMEOUT));
+    }
+
+    /**
+     * Creates a new {@link EventStreamHandler} with the given times.
+     * 
+     * @param eventBus The bus with the events to stream.
+     * @param heartbeatInterval The time between the heartbeats, in milliseconds.
+     * @param writeTimeout The time a write can be pending before the connection is closed, in
+     *            milliseconds.
+     */
+    /* package */EventStreamHandler(final EventBus eventBus, final long heartbeatInterval,
+        final long writeTimeout)
+    {
+        super();
+        this.eventBus = eventBus;
+        this.writeTimeout = writeTimeout;
+
+        final AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "event-stream-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        writers = Executors.newFixedThreadPool(WRITER_THREADS, threadFactory);
+        heartbeats = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        heartbeats.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (EventStream stream : streams)
+                {
+                    stream.checkWrite();
+                    stream.heartbeat();
+                }
+            }
+        }, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException
+    {
+        if (!"GET".equals(exchange.getRequestMethod()))
+        {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_METHOD, -1);
+            exchange.close();
+            return;
+        }
+
+        long lastEventId = -1L;
+        String lastEventHeader = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+
+        if (lastEventHeader != null)
+        {
+            try
+            {
+                lastEventId = Long.parseLong(lastEventHeader.trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                LOGGER.debug("Ignoring invalid Last-Event-ID: {}", lastEventHeader);
+            }
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=UTF-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+
+        EventStream stream = new EventStream(exchange);
+        streams.add(stream);
+        eventBus.subscribe(stream);
+
+        try
+        {
+            stream.open(lastEventId);
+        }
+        catch (IOException ex)
+        {
+            stream.close();
+        }
+    }
+
+    /**
+     * Gets the number of open streams.
+     * 
+     * @return The number of open streams.
+     */
+    public int getStreams()
+    {
+        return streams.size();
+    }
+
+    /**
+     * Closes all the streams and stops sending events.
+     */
+    public void shutdown()
+    {
+        heartbeats.shutdownNow();
+        writers.shutdownNow();
+
+        for (EventStream stream : streams)
+        {
+            stream.close();
+        }
+    }
+
+    /**
+     * The events of a client.
+     * 
+     * @author Ignasi Barrera
+     */
+    private class EventStream implements EventListener, Runnable
+    {
+        /** The connection with the client. */
+        private final HttpExchange exchange;
+
+        /** The body of the response. */
+        private final OutputStream out;
+
+        /** The events waiting to be written. */
+        private final BlockingQueue<Event> buffer =
+            new ArrayBlockingQueue<Event>(MAX_BUFFERED_EVENTS);
+
+        /** Indicates if the buffer is being written or is scheduled to be written. */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /** Indicates if the missed events have been written, so the buffer can be written. */
+        private volatile boolean opened;
+
+        /** Indicates if the stream has been closed. */
+        private volatile boolean closed;
+
+        /** Indicates if the buffer has been filled, so the stream must be closed. */
+        private volatile boolean overflowed;
+
+        /** The sequence number of the last written event. */
+        private long lastWritten;
+
+        /** The thread that is writing the events, or <code>null</code>. */
+        private Thread writer;
+
+        /** The time the pending write started, in milliseconds. */
+        private volatile long writeStarted;
+
+        /**
+         * Creates a new {@link EventStream}.
+         * 
+         * @param exchange The connection with the client.
+         */
+        public EventStream(final HttpExchange exchange)
+        {
+            super();
+            this.exchange = exchange;
+            this.out = exchange.getResponseBody();
+        }
+
+        /**
+         * Writes the missed events, and starts writing the new ones.
+         * <p>
+         * The stream must be subscribed before calling this method, so no event is lost between
+         * the missed events and the buffered ones.
+         * 
+         * @param lastEventId The sequence number of the last event seen by the client, or
+         *            <code>-1</code> if it has not seen any event.
+         * @throws IOException If the events cannot be written.
+         */
+        public void open(final long lastEventId) throws IOException
+        {
+            startWriting();
+
+            try
+            {
+                write("retry: " + RETRY_TIME + "\n\n");
+
+                if (lastEventId >= 0)
+                {
+                    for (Event event : eventBus.getEventsSince(lastEventId))
+                    {
+                        write(event);
+                    }
+                }
+
+                flush();
+            }
+            finally
+            {
+                finishWriting();
+            }
+
+            opened = true;
+            schedule();
+        }
+
+        @Override
+        public void onEvent(final Event event)
+        {
+            if (closed)
+            {
+                return;
+            }
+
+            // The stream is closed by the writers, since closing the
+            // connection may block
+            if (!buffer.offer(event))
+            {
+                overflowed = true;
+            }
+
+            schedule();
+        }
+
+        /**
+         * Sends a comment to keep the connection open, unless the buffer is full.
+         */
+        public void heartbeat()
+        {
+            if (buffer.offer(HEARTBEAT))
+            {
+                schedule();
+            }
+        }
+
+        /**
+         * Interrupts the pending write if it has taken too long.
+         * <p>
+         * The connections are interruptible channels, so the interrupted write fails and the
+         * connection is closed.
+         */
+        public synchronized void checkWrite()
+        {
+            if (writer != null && System.currentTimeMillis() - writeStarted > writeTimeout)
+            {
+                LOGGER.info("Closing the event stream of a client that does not read");
+                writer.interrupt();
+                writer = null;
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            startWriting();
+
+            try
+            {
+                if (overflowed)
+                {
+                    LOGGER.info("Closing the event stream of a client that does not keep up");
+                    close();
+                    return;
+                }
+
+                Event event = null;
+
+                while (!closed && (event = buffer.poll()) != null)
+                {
+                    if (event == HEARTBEAT)
+                    {
+                        write(":\n\n");
+                    }
+                    else if (event.getId() > lastWritten)
+                    {
+                        write(event);
+                    }
+                }
+
+                flush();
+            }
+            catch (IOException ex)
+            {
+                LOGGER.debug("The client has closed the event stream: {}", ex.getMessage());
+                close();
+            }
+            finally
+            {
+                finishWriting();
+                scheduled.set(false);
+            }
+
+            // Events may have been buffered after the last poll
+            if (!buffer.isEmpty())
+            {
+                schedule();
+            }
+        }
+
+        /**
+         * Closes the stream.
+         */
+        public void close()
+        {
+            if (!closed)
+            {
+                closed = true;
+                eventBus.unsubscribe(this);
+                streams.remove(this);
+                buffer.clear();
+                exchange.close();
+            }
+        }
+
+        /**
+         * Schedules the buffered events to be written, if they are not being written already.
+         */
+        private void schedule()
+        {
+            if (opened && !closed && scheduled.compareAndSet(false, true))
+            {
+                try
+                {
+                    writers.execute(this);
+                }
+                catch (RejectedExecutionException ex)
+                {
+                    scheduled.set(false);
+                    close();
+                }
+            }
+        }
+
+        /**
+         * Marks the current thread as the writer of the stream, so its writes can be interrupted.
+         */
+        private synchronized void startWriting()
+        {
+            writeStarted = System.currentTimeMillis();
+            writer = Thread.currentThread();
+        }
+
+        /**
+         * Marks that the current thread is no longer writing.
+         * <p>
+         * The interrupt of a write that has timed out is cleared, so it does not affect the next
+         * task of the thread.
+         */
+        private synchronized void finishWriting()
+        {
+            writer = null;
+            Thread.interrupted();
+        }
+
+        /**
+         * Writes an event.
+         * 
+         * @param event The event.
+         * @throws IOException If the event cannot be written.
+         */
+        private void write(final Event event) throws IOException
+        {
+            StringWriter data = new StringWriter();
+            event.write(new JsonWriter(data));
+
+            write("id: " + event.getId() + "\nevent: " + event.getName() + "\ndata: " + data
+                + "\n\n");
+            lastWritten = event.getId();
+        }
+
+        /**
+         * Writes the given text.
+         * 
+         * @param text The text.
+         * @throws IOException If the text cannot be written.
+         */
+        private void write(final String text) throws IOException
+        {
+            writeStarted = System.currentTimeMillis();
+            out.write(text.getBytes("UTF-8"));
+        }
+
+        /**
+         * Sends the written events to the client.
+         * 
+         * @throws IOException If the events cannot be sent.
+         */
+        private void flush() throws IOException
+        {
+            writeStarted = System.currentTimeMillis();
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.async;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+
+import com.rhymestore.store.DefaultRhymesLoader;
+import com.rhymestore.store.DefaultRhymesLoader.State;
+import com.rhymestore.util.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Reports if the application is ready to serve requests.
+ * <p>
+ * The application is ready once the default rhymes have been loaded. Until then, the health
+ * check answers with a <code>503 Service Unavailable</code> status.
+ * 
+ * @author Ignasi Barrera
+ * @see DefaultRhymesLoader
+ */
+public class HealthHandler implements HttpHandler
+{
+    /** The path of the health check. */
+    public static final String HEALTH_PATH = "/health";
+
+    /** Loads the default rhymes. */
+    private final DefaultRhymesLoader defaultRhymes;
+
+    /**
+     * Creates a new {@link HealthHandler}.
+     * 
+     * @param defaultRhymes Loads the default rhymes.
+     */
+    public HealthHandler(final DefaultRhymesLoader defaultRhymes)
+    {
+        super();
+        this.defaultRhymes = defaultRhymes;
+    }
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException
+    {
+        State state = defaultRhymes.getState();
+
+        StringWriter json = new StringWriter();
+        new JsonWriter(json).beginObject().name("status").value(state.name().toLowerCase())
+            .name("changedRhymes").value(defaultRhymes.getChanged()).endObject();
+        byte[] body = json.toString().getBytes("UTF-8");
+
+        try
+        {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(state == State.READY ? HttpURLConnection.HTTP_OK
+                : HttpURLConnection.HTTP_UNAVAILABLE, body.length);
+
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+}
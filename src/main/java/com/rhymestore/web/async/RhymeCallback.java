@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.async;
+
+import java.io.IOException;
+
+/**
+ * Receives the result of an asynchronous rhyme lookup.
+ * <p>
+ * The methods are called from the thread of the {@link RhymeLookupService}, so they must not
+ * block: slow work such as writing the response must be handed over to other threads.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeLookupService
+ */
+public interface RhymeCallback
+{
+    /**
+     * Called when the rhyme has been found.
+     * 
+     * @param rhyme The rhyme of the sentence.
+     */
+    public void rhymed(String rhyme);
+
+    /**
+     * Called when the rhyme could not be obtained.
+     * 
+     * @param ex The cause of the failure.
+     */
+    public void failed(IOException ex);
+}
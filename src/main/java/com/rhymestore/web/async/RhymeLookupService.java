@@ -0,0 +1,301 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.async;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rhymestore.lang.WordParser;
+import com.rhymestore.lang.WordParserFactory;
+import com.rhymestore.store.RhymeStore;
+
+/**
+ * Finds rhymes asynchronously.
+ * <p>
+ * The lookups are queued and a single thread resolves all the queued lookups at once with
+ * {@link RhymeStore#getRhymes(List)}, so no thread is blocked waiting for each lookup and the
+ * number of concurrent lookups is only limited by the {@link #MAX_PENDING} bound and by the
+ * throughput of the store. The more lookups are queued, the bigger the batches are.
+ * 
+ * @author Ignasi Barrera
+ * @see RhymeCallback
+ */
+public class RhymeLookupService implements Runnable
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhymeLookupService.class);
+
+    /** The maximum number of lookups waiting to be resolved. */
+    public static final int MAX_PENDING = 10000;
+
+    /** The maximum number of lookups resolved at once. */
+    public static final int BATCH_SIZE = 500;
+
+    /** The time to wait for the pending lookups to fail when shutting down, in milliseconds. */
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
+    /** The store with the rhymes. */
+    private final RhymeStore store;
+
+    /** The {@link WordParser} used to get the default rhyme if none is found. */
+    private final WordParser wordParser;
+
+    /** The lookups waiting to be resolved. */
+    private final BlockingQueue<Lookup> pending = new LinkedBlockingQueue<Lookup>(MAX_PENDING);
+
+    /** Indicates if the service is running. */
+    private volatile boolean running;
+
+    /** The thread that resolves the lookups. */
+    private Thread thread;
+
+    /**
+     * Creates a new {@link RhymeLookupService}.
+     * 
+     * @param store The store with the rhymes.
+     */
+    public RhymeLookupService(final RhymeStore store)
+    {
+        super();
+        this.store = store;
+        this.wordParser = WordParserFactory.getWordParser();
+    }
+
+    /**
+     * Starts resolving the lookups in a new thread.
+     */
+    public synchronized void start()
+    {
+        running = true;
+        thread = new Thread(this, "rhyme-lookup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops resolving the lookups. The pending lookups fail, and no more lookups are accepted.
+     * <p>
+     * This method waits until the callbacks of the pending lookups have been called.
+     */
+    public synchronized void shutdown()
+    {
+        running = false;
+
+        if (thread == null)
+        {
+            failPending();
+            return;
+        }
+
+        thread.interrupt();
+
+        try
+        {
+            thread.join(SHUTDOWN_TIMEOUT);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Finds a rhyme for the given sentence.
+     * <p>
+     * The callback is called from the thread of the service, so it must not block.
+     * 
+     * @param sentence The sentence to rhyme.
+     * @param callback Receives the rhyme.
+     * @return Boolean indicating if the lookup has been accepted. If there are too many pending
+     *         lookups or the service has been shut down it is rejected, and the callback is never
+     *         called.
+     */
+    public boolean lookup(final String sentence, final RhymeCallback callback)
+    {
+        Lookup lookup = new Lookup(sentence, callback);
+
+        if (!running || !pending.offer(lookup))
+        {
+            return false;
+        }
+
+        // The service may have been shut down after the lookup was queued and
+        // the pending lookups drained. If the lookup cannot be removed, it has
+        // been taken by the service and its callback will be called
+        return running || !pending.remove(lookup);
+    }
+
+    /**
+     * Gets the number of lookups waiting to be resolved.
+     * 
+     * @return The number of lookups waiting to be resolved.
+     */
+    public int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    @Override
+    public void run()
+    {
+        List<Lookup> batch = new ArrayList<Lookup>(BATCH_SIZE);
+
+        while (running)
+        {
+            try
+            {
+                Lookup first = pending.poll(1, TimeUnit.SECONDS);
+
+                if (first != null)
+                {
+                    batch.add(first);
+                    pending.drainTo(batch, BATCH_SIZE - 1);
+                    resolve(batch);
+                    batch.clear();
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+
+        failPending();
+    }
+
+    /**
+     * Notifies the failure of the lookups that are still pending.
+     */
+    private void failPending()
+    {
+        List<Lookup> batch = new ArrayList<Lookup>();
+        pending.drainTo(batch);
+        fail(batch, new IOException("The rhyme lookup service has been shut down"));
+    }
+
+    /**
+     * Resolves the given lookups at once.
+     * 
+     * @param batch The lookups to resolve.
+     */
+    private void resolve(final List<Lookup> batch)
+    {
+        List<String> sentences = new ArrayList<String>(batch.size());
+        for (Lookup lookup : batch)
+        {
+            sentences.add(lookup.sentence);
+        }
+
+        List<String> rhymes = null;
+
+        try
+        {
+            rhymes = store.getRhymes(sentences);
+        }
+        catch (IOException ex)
+        {
+            LOGGER.error("Could not find the rhymes of " + batch.size() + " sentences", ex);
+            fail(batch, ex);
+            return;
+        }
+        catch (RuntimeException ex)
+        {
+            // Do not let unexpected errors stop the service
+            LOGGER.error("Unexpected error finding the rhymes of " + batch.size() + " sentences",
+                ex);
+            fail(batch, new IOException(ex.getMessage()));
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++)
+        {
+            String rhyme = rhymes.get(i);
+
+            try
+            {
+                batch.get(i).callback.rhymed(rhyme != null ? rhyme : wordParser
+                    .getDefaultRhyme());
+            }
+            catch (RuntimeException ex)
+            {
+                LOGGER.error("Could not deliver the rhyme of: " + batch.get(i).sentence, ex);
+            }
+        }
+    }
+
+    /**
+     * Notifies the failure of the given lookups.
+     * 
+     * @param batch The failed lookups.
+     * @param ex The cause of the failure.
+     */
+    private static void fail(final List<Lookup> batch, final IOException ex)
+    {
+        for (Lookup lookup : batch)
+        {
+            try
+            {
+                lookup.callback.failed(ex);
+            }
+            catch (RuntimeException cbex)
+            {
+                LOGGER.error("Could not deliver the failure of: " + lookup.sentence, cbex);
+            }
+        }
+    }
+
+    /**
+     * A pending lookup.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class Lookup
+    {
+        /** The sentence to rhyme. */
+        private final String sentence;
+
+        /** Receives the rhyme. */
+        private final RhymeCallback callback;
+
+        /**
+         * Creates a new {@link Lookup}.
+         * 
+         * @param sentence The sentence to rhyme.
+         * @param callback Receives the rhyme.
+         */
+        public Lookup(final String sentence, final RhymeCallback callback)
+        {
+            super();
+            this.sentence = sentence;
+            this.callback = callback;
+        }
+    }
+}
@@ -22,15 +22,26 @@
 
 package com.rhymestore.web.controller;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.sjmvc.controller.Controller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.rhymestore.lang.WordParser;
 import com.rhymestore.lang.WordParserFactory;
-import com.rhymestore.model.Rhyme;
+import com.rhymestore.model.validator.RhymeValidator;
 import com.rhymestore.store.RhymeStore;
+import com.rhymestore.util.JsonWriter;
+import com.rhymestore.util.XMLUtils;
 
 /**
  * Controller to handle API calls.
@@ -40,23 +51,68 @@ import com.rhymestore.store.RhymeStore;
  */
 public class APIController extends HttpMethodController
 {
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(APIController.class);
+
+    /** The number of sentences of a batch request that are rhymed at once. */
+    public static final int BATCH_SIZE = 500;
+
+    /** The time the clients and proxies may cache a rhyme, in seconds. */
+    public static final int MAX_AGE = 60;
+
+    /** The request parameter with the sentence to rhyme, as bound to the model. */
+    public static final String RHYME_PARAMETER = "model.rhyme";
+
+    /** The short request parameter with the sentence to rhyme. */
+    public static final String SHORT_RHYME_PARAMETER = "rhyme";
+
+    /** The encoding of the request bodies that do not declare their charset. */
+    private static final String ENCODING = "UTF-8";
+
+    /** The <code>Cache-Control</code> header of the rhymes. */
+    private static final String CACHE_CONTROL = "public, max-age=" + MAX_AGE;
+
+    /** The rhymes returned for each rhyme key, shared by all the requests. */
+    private static final RhymeCache CACHE = new RhymeCache();
+
     /** The Rhyme store. */
     private final RhymeStore store;
 
     /** The {@link WordParser} used to get the default rhyme if none is found. */
     private final WordParser wordParser;
 
+    /** Validates the sentences without the bean validation. */
+    private final RhymeValidator validator;
+
     /**
      * Creates the API {@link Controller}.
      */
     public APIController()
     {
-        store = RhymeStore.getInstance();
+        this(RhymeStore.getInstance());
+    }
+
+    /**
+     * Creates the API {@link Controller} that uses the given store.
+     * 
+     * @param store The Rhyme store.
+     */
+    /* package */APIController(final RhymeStore store)
+    {
+        super();
+        this.store = store;
         wordParser = WordParserFactory.getWordParser();
+        validator = RhymeValidator.getInstance();
     }
 
     /**
      * Handles GET requests to the mapped resource.
+     * <p>
+     * The response format is chosen with the <code>Accept</code> header. JSON responses are
+     * written directly to the response instead of rendering a view. Responses carry an
+     * <code>ETag</code> based on the store version, and conditional requests are answered
+     * without searching the rhymes. The sentence is validated with the shared
+     * {@link RhymeValidator}, which reports the same errors than the bean validation.
      * 
      * @param request The request.
      * @param response The response.
@@ -65,33 +121,359 @@ public class APIController extends HttpMethodController
     public void get(final HttpServletRequest request, final HttpServletResponse response)
         throws Exception
     {
-        Rhyme rhyme = new Rhyme();
-        bindAndValidate(rhyme, request);
+        ResponseFormat format = ResponseFormat.negotiate(request.getHeader("Accept"));
+        List<String> failures = null;
+        int status = HttpServletResponse.SC_BAD_REQUEST;
 
-        if (!errors())
+        String sentence = getSentence(request);
+        List<String> violations = validator.validate(sentence);
+
+        if (!violations.isEmpty())
+        {
+            failures = violations;
+        }
+        else
         {
             try
             {
-                String rhymeResponse = store.getRhyme(rhyme.getRhyme());
+                // Sentences with the same rhyme key get the same response until
+                // the store changes
+                long version = store.getVersion();
+                String key = store.getRhymeKey(sentence);
+                String etag = CacheHeaders.etag(version, format.name(), key);
+
+                response.setHeader("Vary", "Accept");
+                if (CacheHeaders.notModified(request, response, etag, CACHE_CONTROL))
+                {
+                    return;
+                }
+
+                String rhymeResponse = CACHE.get(version, key);
 
                 if (rhymeResponse == null)
                 {
-                    rhymeResponse = wordParser.getDefaultRhyme();
+                    rhymeResponse = store.getRhyme(sentence);
+
+                    if (rhymeResponse == null)
+                    {
+                        rhymeResponse = wordParser.getDefaultRhyme();
+                    }
+
+                    CACHE.put(version, key, rhymeResponse);
+                }
+
+                if (format == ResponseFormat.JSON)
+                {
+                    response.setContentType(format.getContentType());
+                    new JsonWriter(response.getWriter()).beginObject().name("rhyme").value(
+                        rhymeResponse).endObject().flush();
+                    return;
                 }
 
                 setModel(rhymeResponse);
             }
             catch (Exception ex)
             {
-                error("Could not get rhyme: " + ex.getMessage());
+                failures = Collections.singletonList("Could not get rhyme: " + ex.getMessage());
+                status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+            }
+        }
+
+        if (failures != null)
+        {
+            fail(format, failures, status, response);
+        }
+        else
+        {
+            response.setContentType(format.getContentType());
+        }
+    }
+
+    /**
+     * Handles POST requests to the mapped resource.
+     * <p>
+     * The request body contains the sentences to rhyme, one per line. The rhymes are returned in
+     * the same order, and are written as soon as each block of {@link #BATCH_SIZE} sentences has
+     * been rhymed, so the whole request is never held in memory. The response format is chosen
+     * with the <code>Accept</code> header. The body is read as UTF-8 unless the request declares
+     * another charset.
+     * <p>
+     * Each sentence is validated with the shared {@link RhymeValidator}. Errors in the first block
+     * are reported with a <code>400</code> status, and an invalid sentence in a later block ends
+     * the response.
+     * 
+     * @param request The request.
+     * @param response The response.
+     * @throws Exception If an error occurs during request processing.
+     */
+    public void post(final HttpServletRequest request, final HttpServletResponse response)
+        throws Exception
+    {
+        ResponseFormat format = ResponseFormat.negotiate(request.getHeader("Accept"));
+
+        // The servlet containers default to ISO-8859-1
+        if (request.getCharacterEncoding() == null)
+        {
+            request.setCharacterEncoding(ENCODING);
+        }
+
+        BufferedReader reader = request.getReader();
+        List<String> sentences = readBatch(reader);
+
+        if (sentences.isEmpty())
+        {
+            fail(format, "No sentences to rhyme", HttpServletResponse.SC_BAD_REQUEST, response);
+            return;
+        }
+
+        String violation = validate(sentences, 0);
+        if (violation != null)
+        {
+            fail(format, violation, HttpServletResponse.SC_BAD_REQUEST, response);
+            return;
+        }
+
+        List<String> rhymes = null;
+
+        try
+        {
+            rhymes = getRhymes(sentences);
+        }
+        catch (IOException ex)
+        {
+            fail(format, "Could not get rhymes: " + ex.getMessage(),
+                HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response);
+            return;
+        }
+
+        response.setContentType(format.getContentType());
+        writeRhymes(reader, rhymes, format, response.getWriter());
+    }
+
+    /**
+     * Validates the given block of sentences.
+     * 
+     * @param sentences The sentences to validate.
+     * @param offset The number of sentences read before the given block.
+     * @return The first error message, or <code>null</code> if all the sentences are valid.
+     */
+    /* package */String validate(final List<String> sentences, final int offset)
+    {
+        for (int i = 0; i < sentences.size(); i++)
+        {
+            List<String> violations = validator.validate(sentences.get(i));
+
+            if (!violations.isEmpty())
+            {
+                return "Invalid sentence " + (offset + i + 1) + ": " + violations.get(0);
             }
         }
 
-        if (errors())
+        return null;
+    }
+
+    /**
+     * Gets the sentence to rhyme from the request parameters.
+     * 
+     * @param request The request.
+     * @return The sentence to rhyme, or <code>null</code> if there is none.
+     */
+    private static String getSentence(final HttpServletRequest request)
+    {
+        String sentence = request.getParameter(RHYME_PARAMETER);
+        return sentence != null ? sentence : request.getParameter(SHORT_RHYME_PARAMETER);
+    }
+
+    /**
+     * Reports an error in the given format.
+     * 
+     * @param format The response format.
+     * @param message The error message.
+     * @param status The HTTP status of JSON errors.
+     * @param response The response.
+     * @throws IOException If the error cannot be written.
+     * @see #fail(ResponseFormat, List, int, HttpServletResponse)
+     */
+    private void fail(final ResponseFormat format, final String message, final int status,
+        final HttpServletResponse response) throws IOException
+    {
+        fail(format, Collections.singletonList(message), status, response);
+    }
+
+    /**
+     * Reports the given errors in the given format.
+     * <p>
+     * XML errors are rendered with the errors view, and JSON errors are written directly with the
+     * given HTTP status, so both formats report the same messages.
+     * 
+     * @param format The response format.
+     * @param messages The error messages.
+     * @param status The HTTP status of JSON errors.
+     * @param response The response.
+     * @throws IOException If the errors cannot be written.
+     */
+    private void fail(final ResponseFormat format, final List<String> messages, final int status,
+        final HttpServletResponse response) throws IOException
+    {
+        response.setContentType(format.getContentType());
+
+        if (format == ResponseFormat.JSON)
         {
+            response.setStatus(status);
+
+            JsonWriter json = new JsonWriter(response.getWriter());
+            json.beginObject().name("errors").beginArray();
+
+            for (String message : messages)
+            {
+                json.value(message);
+            }
+
+            json.endArray().endObject().flush();
+        }
+        else
+        {
+            for (String message : messages)
+            {
+                error(message);
+            }
+
             setView("errors");
         }
+    }
+
+    /**
+     * Writes the rhymes of the current and the remaining blocks of sentences.
+     * <p>
+     * Once the response has been committed errors cannot be reported, so the document is left
+     * unfinished if a sentence is not valid or its rhyme cannot be obtained.
+     * 
+     * @param reader The reader of the remaining sentences.
+     * @param firstRhymes The rhymes of the first block of sentences.
+     * @param format The response format.
+     * @param writer The writer of the response.
+     * @throws IOException If the sentences cannot be read.
+     */
+    /* package */void writeRhymes(final BufferedReader reader, final List<String> firstRhymes,
+        final ResponseFormat format, final PrintWriter writer) throws IOException
+    {
+        JsonWriter json = null;
+
+        if (format == ResponseFormat.JSON)
+        {
+            json = new JsonWriter(writer);
+            json.beginObject().name("rhymes").beginArray();
+        }
+        else
+        {
+            writer.println("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>");
+            writer.println("<rhymes>");
+        }
+
+        List<String> rhymes = firstRhymes;
+        int total = 0;
+
+        while (!rhymes.isEmpty())
+        {
+            for (String rhyme : rhymes)
+            {
+                if (json != null)
+                {
+                    json.value(rhyme);
+                }
+                else
+                {
+                    writer.print("    <rhyme>");
+                    writer.print(XMLUtils.escape(rhyme));
+                    writer.println("</rhyme>");
+                }
+            }
+
+            total += rhymes.size();
+            writer.flush();
+
+            List<String> sentences = readBatch(reader);
+            String violation = validate(sentences, total);
+
+            if (violation != null)
+            {
+                LOGGER.warn("Could not get rhymes after {} sentences: {}", total, violation);
+                return;
+            }
+
+            try
+            {
+                rhymes = getRhymes(sentences);
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error("Could not get rhymes after " + total + " sentences", ex);
+                return;
+            }
+        }
+
+        if (json != null)
+        {
+            json.endArray().endObject();
+        }
+        else
+        {
+            writer.println("</rhymes>");
+        }
+
+        writer.flush();
+
+        LOGGER.debug("Rhymed {} sentences", total);
+    }
+
+    /**
+     * Reads the next block of sentences to rhyme.
+     * 
+     * @param reader The reader of the sentences.
+     * @return The next sentences, up to {@link #BATCH_SIZE}. Empty lines are ignored.
+     * @throws IOException If the sentences cannot be read.
+     */
+    /* package */List<String> readBatch(final BufferedReader reader) throws IOException
+    {
+        List<String> sentences = new ArrayList<String>(BATCH_SIZE);
+        String line = null;
+
+        while (sentences.size() < BATCH_SIZE && (line = reader.readLine()) != null)
+        {
+            if (line.trim().length() > 0)
+            {
+                sentences.add(line.trim());
+            }
+        }
+
+        return sentences;
+    }
+
+    /**
+     * Gets a rhyme for each one of the given sentences, using the default rhyme for the sentences
+     * that have no rhyme.
+     * 
+     * @param sentences The sentences to rhyme.
+     * @return The rhymes, in the same order.
+     * @throws IOException If the rhymes cannot be obtained.
+     */
+    /* package */List<String> getRhymes(final List<String> sentences) throws IOException
+    {
+        if (sentences.isEmpty())
+        {
+            return sentences;
+        }
+
+        List<String> rhymes = store.getRhymes(sentences);
+
+        for (int i = 0; i < rhymes.size(); i++)
+        {
+            if (rhymes.get(i) == null)
+            {
+                rhymes.set(i, wordParser.getDefaultRhyme());
+            }
+        }
 
-        response.setContentType("text/xml; charset=ISO-8859-1");
+        return rhymes;
     }
 }
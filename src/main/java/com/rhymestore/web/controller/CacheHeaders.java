@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.controller;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Utility methods to let clients and proxies cache the responses.
+ * <p>
+ * Responses are identified with an <code>ETag</code> built from the version of the store, so
+ * conditional requests can be answered with a <code>304 Not Modified</code> without reading the
+ * rhymes.
+ * 
+ * @author Ignasi Barrera
+ */
+public class CacheHeaders
+{
+    /**
+     * Builds the entity tag of a response.
+     * 
+     * @param version The version of the store.
+     * @param parts The values that identify the response for a given version.
+     * @return The entity tag.
+     */
+    public static String etag(final long version, final String... parts)
+    {
+        StringBuilder content = new StringBuilder();
+        for (String part : parts)
+        {
+            content.append(part == null ? "" : part).append('\n');
+        }
+
+        return "\"" + version + "-" + DigestUtils.md5Hex(content.toString()) + "\"";
+    }
+
+    /**
+     * Adds the cache headers to the response and checks if the client already has it.
+     * <p>
+     * If the client has the response, the <code>304 Not Modified</code> status is sent and the
+     * request must not be processed any further.
+     * 
+     * @param request The request.
+     * @param response The response.
+     * @param etag The entity tag of the response.
+     * @param cacheControl The value of the <code>Cache-Control</code> header.
+     * @return Boolean indicating if the client already has the response.
+     * @throws IOException If the response cannot be sent.
+     */
+    public static boolean notModified(final HttpServletRequest request,
+        final HttpServletResponse response, final String etag, final String cacheControl)
+        throws IOException
+    {
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", cacheControl);
+
+        if (matches(request.getHeader("If-None-Match"), etag))
+        {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            response.flushBuffer();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if the given <code>If-None-Match</code> header matches the entity tag.
+     * 
+     * @param ifNoneMatch The value of the header. May be <code>null</code>.
+     * @param etag The entity tag of the response.
+     * @return Boolean indicating if the header matches the entity tag.
+     */
+    static boolean matches(final String ifNoneMatch, final String etag)
+    {
+        if (ifNoneMatch == null)
+        {
+            return false;
+        }
+
+        for (String tag : ifNoneMatch.split(","))
+        {
+            String candidate = tag.trim();
+
+            // Weak comparison is enough for GET requests
+            if (candidate.startsWith("W/"))
+            {
+                candidate = candidate.substring(2);
+            }
+
+            if (candidate.equals("*") || candidate.equals(etag))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
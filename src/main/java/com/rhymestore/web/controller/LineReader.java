@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.controller;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the lines of a request body, decoding each line with its own charset.
+ * <p>
+ * The parts of a <code>multipart/form-data</code> request may use different charsets, so the
+ * body cannot be read with a single {@link java.io.Reader}. Only charsets where the line
+ * terminators are single bytes, such as UTF-8 or ISO-8859-1, are supported.
+ * 
+ * @author Ignasi Barrera
+ */
+/* package */class LineReader
+{
+    /** The request body. */
+    private final InputStream in;
+
+    /** The bytes of the current line. */
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+    /**
+     * Creates a new {@link LineReader}.
+     * 
+     * @param in The request body.
+     */
+    public LineReader(final InputStream in)
+    {
+        super();
+        this.in = new BufferedInputStream(in);
+    }
+
+    /**
+     * Reads the next line.
+     * 
+     * @param charset The charset of the line.
+     * @return The line without the line terminator, or <code>null</code> if the end of the body
+     *         has been reached.
+     * @throws IOException If the line cannot be read or the charset is not supported.
+     */
+    public String readLine(final String charset) throws IOException
+    {
+        line.reset();
+        int b = -1;
+
+        while ((b = in.read()) >= 0 && b != '\n')
+        {
+            line.write(b);
+        }
+
+        if (b < 0 && line.size() == 0)
+        {
+            return null;
+        }
+
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+
+        if (length > 0 && bytes[length - 1] == '\r')
+        {
+            length--;
+        }
+
+        return new String(bytes, 0, length, charset);
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.controller;
+
+/**
+ * The formats of the API responses.
+ * 
+ * @author Ignasi Barrera
+ */
+public enum ResponseFormat
+{
+    /** XML rendered with the JSP views. */
+    XML("text/xml; charset=ISO-8859-1", "text/xml", "application/xml"),
+
+    /** JSON written directly to the response. */
+    JSON("application/json; charset=UTF-8", "application/json");
+
+    /** The content type of the responses in this format. */
+    private final String contentType;
+
+    /** The media types of the <code>Accept</code> header that select this format. */
+    private final String[] mediaTypes;
+
+    /**
+     * Creates a new {@link ResponseFormat}.
+     * 
+     * @param contentType The content type of the responses in this format.
+     * @param mediaTypes The media types that select this format.
+     */
+    private ResponseFormat(final String contentType, final String... mediaTypes)
+    {
+        this.contentType = contentType;
+        this.mediaTypes = mediaTypes;
+    }
+
+    /**
+     * Gets the content type of the responses in this format.
+     * 
+     * @return The content type of the responses in this format.
+     */
+    public String getContentType()
+    {
+        return contentType;
+    }
+
+    /**
+     * Chooses the format preferred by the client.
+     * <p>
+     * The media types of the <code>Accept</code> header are compared by their quality, and the
+     * first one wins in case of a tie. XML is used if no supported media type is accepted, to
+     * stay compatible with the clients that do not send the header.
+     * 
+     * @param accept The value of the <code>Accept</code> header. May be <code>null</code>.
+     * @return The format of the response.
+     */
+    public static ResponseFormat negotiate(final String accept)
+    {
+        if (accept == null)
+        {
+            return XML;
+        }
+
+        ResponseFormat preferred = XML;
+        float preferredQuality = 0.0f;
+
+        for (String range : accept.split(","))
+        {
+            String[] params = range.split(";");
+            ResponseFormat format = forMediaType(params[0].trim());
+
+            if (format != null)
+            {
+                float quality = quality(params);
+
+                if (quality > preferredQuality)
+                {
+                    preferred = format;
+                    preferredQuality = quality;
+                }
+            }
+        }
+
+        return preferred;
+    }
+
+    /**
+     * Gets the format selected by the given media type.
+     * 
+     * @param mediaType The media type.
+     * @return The selected format, or <code>null</code> if the media type is not supported.
+     */
+    private static ResponseFormat forMediaType(final String mediaType)
+    {
+        for (ResponseFormat format : values())
+        {
+            for (String supported : format.mediaTypes)
+            {
+                if (supported.equalsIgnoreCase(mediaType))
+                {
+                    return format;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the quality of a media range.
+     * 
+     * @param params The media type and the parameters of the media range.
+     * @return The quality of the media range.
+     */
+    private static float quality(final String[] params)
+    {
+        for (int i = 1; i < params.length; i++)
+        {
+            String param = params[i].trim();
+
+            if (param.startsWith("q="))
+            {
+                try
+                {
+                    return Float.parseFloat(param.substring(2));
+                }
+                catch (NumberFormatException ex)
+                {
+                    return 0.0f;
+                }
+            }
+        }
+
+        return 1.0f;
+    }
+}
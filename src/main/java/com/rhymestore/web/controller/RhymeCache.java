@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the rhyme returned for each rhyme key, as long as the version of the store does not
+ * change.
+ * <p>
+ * Sentences with the same rhyme key get the same rhyme until a rhyme is added or deleted, so
+ * the response matches the entity tag sent to the clients. This class is thread-safe.
+ * 
+ * @author Ignasi Barrera
+ * @see CacheHeaders
+ */
+public class RhymeCache
+{
+    /** The maximum number of cached rhymes. */
+    public static final int MAX_ENTRIES = 10000;
+
+    /** The version of the store of the cached rhymes. */
+    private long version = -1L;
+
+    /** The cached rhyme of each rhyme key, in access order. */
+    private final Map<String, String> rhymes = new LinkedHashMap<String, String>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Gets the cached rhyme for the given key.
+     * 
+     * @param version The current version of the store.
+     * @param key The rhyme key.
+     * @return The cached rhyme, or <code>null</code> if there is none for the given version.
+     */
+    public synchronized String get(final long version, final String key)
+    {
+        if (version != this.version)
+        {
+            rhymes.clear();
+            this.version = version;
+        }
+
+        return rhymes.get(key);
+    }
+
+    /**
+     * Caches the rhyme for the given key.
+     * 
+     * @param version The version of the store where the rhyme was found.
+     * @param key The rhyme key.
+     * @param rhyme The rhyme.
+     */
+    public synchronized void put(final long version, final String key, final String rhyme)
+    {
+        if (version == this.version)
+        {
+            rhymes.put(key, rhyme);
+        }
+    }
+}
@@ -22,10 +22,12 @@
 
 package com.rhymestore.web.controller;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
@@ -36,10 +38,20 @@ import org.sjmvc.controller.MethodInvokingController;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.rhymestore.config.ConfigurationException;
+import com.rhymestore.event.Event;
+import com.rhymestore.event.EventBus;
+import com.rhymestore.lang.StressType;
+import com.rhymestore.lang.WordParserFactory;
 import com.rhymestore.lang.WordUtils;
 import com.rhymestore.model.Rhyme;
+import com.rhymestore.model.validator.RhymeValidator;
+import com.rhymestore.store.BulkJob;
+import com.rhymestore.store.BulkJobManager;
 import com.rhymestore.store.RhymeStore;
+import com.rhymestore.store.SearchResult;
 import com.rhymestore.twitter.util.TwitterUtils;
+import com.rhymestore.util.JsonWriter;
 import com.rhymestore.web.ContextListener;
 
 /**
@@ -52,19 +64,54 @@ public class RhymeController extends MethodInvokingController
     /** The logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(RhymeController.class);
 
+    /** The number of rhymes submitted at once by the bulk operations. */
+    public static final int BULK_BATCH_SIZE = 1000;
+
+    /** The name of the multipart field with the rhymes of the bulk operations. */
+    public static final String BULK_FIELD = "rhymes";
+
+    /** The maximum number of rejected rhymes reported by the bulk operations. */
+    public static final int MAX_BULK_ERRORS = 10;
+
+    /** The number of rhymes returned by default in each page of a search. */
+    public static final int SEARCH_PAGE_SIZE = 50;
+
+    /** The maximum number of rhymes returned in each page of a search. */
+    public static final int MAX_SEARCH_PAGE_SIZE = 500;
+
+    /** The encoding of the request bodies that do not declare their charset. */
+    private static final String ENCODING = "UTF-8";
+
+    /** The encoding of the headers of the multipart parts. */
+    private static final String HEADER_ENCODING = "ISO-8859-1";
+
+    /** The <code>Cache-Control</code> header of the pages that list the rhymes. */
+    private static final String CACHE_CONTROL = "private, no-cache";
+
     /** The Rhyme store. */
     private final RhymeStore store;
 
+    /** Runs the bulk operations. */
+    private final BulkJobManager bulkJobs;
+
+    /** Validates the rhymes of the bulk uploads. */
+    private final RhymeValidator validator;
+
     /**
      * Default constructor.
      */
     public RhymeController()
     {
         store = RhymeStore.getInstance();
+        bulkJobs = BulkJobManager.getInstance();
+        validator = RhymeValidator.getInstance();
     }
 
     /**
      * Lists all rhymes in the the store.
+     * <p>
+     * The page depends on the user, so it can only be cached by the browser, and it must be
+     * revalidated with the <code>ETag</code> each time.
      * 
      * @param request The request.
      * @param response The response.
@@ -75,17 +122,18 @@ public class RhymeController extends MethodInvokingController
     {
         try
         {
-            Set<String> rhymes = store.findAll();
-
-            List<String> sortedRhymes = new ArrayList<String>(rhymes);
-            Collections.sort(sortedRhymes, String.CASE_INSENSITIVE_ORDER);
-
-            setModel(sortedRhymes);
+            String etag = CacheHeaders.etag(store.getVersion(), "list", request.getRemoteUser());
+            if (CacheHeaders.notModified(request, response, etag, CACHE_CONTROL))
+            {
+                return;
+            }
         }
-        catch (Exception ex)
+        catch (IOException ex)
         {
-            error("Could not get rhymes: " + ex.getMessage());
+            LOGGER.warn("Could not check the version of the rhymes: {}", ex.getMessage());
         }
+
+        loadRhymes();
     }
 
     /**
@@ -127,7 +175,7 @@ public class RhymeController extends MethodInvokingController
         }
 
         // Load the new list of rhymes to render the list view
-        list(request, response);
+        loadRhymes();
         setView("list");
     }
 
@@ -160,10 +208,274 @@ public class RhymeController extends MethodInvokingController
         }
 
         // Load the new list of rhymes to render the list view
-        list(request, response);
+        loadRhymes();
+        setView("list");
+    }
+
+    /**
+     * Adds all the rhymes in the request body to the store.
+     * <p>
+     * The body is a text file with one rhyme per line, sent as is or as the {@link #BULK_FIELD}
+     * field of a <code>multipart/form-data</code> request. The rhymes are added in the background
+     * while the body is read, and the id of the job is returned to check its progress with the
+     * {@link #job(HttpServletRequest, HttpServletResponse)} method.
+     * 
+     * @param request The request.
+     * @param response The response.
+     * @throws ControllerException If the rhymes cannot be read.
+     */
+    public void upload(final HttpServletRequest request, final HttpServletResponse response)
+        throws ControllerException
+    {
+        bulk(BulkJob.Type.ADD, request, response);
+    }
+
+    /**
+     * Deletes all the rhymes in the request body from the store.
+     * <p>
+     * The body has the same format than the one of the
+     * {@link #upload(HttpServletRequest, HttpServletResponse)} method. Rhymes that do not exist
+     * are ignored.
+     * 
+     * @param request The request.
+     * @param response The response.
+     * @throws ControllerException If the rhymes cannot be read.
+     */
+    public void bulkDelete(final HttpServletRequest request, final HttpServletResponse response)
+        throws ControllerException
+    {
+        bulk(BulkJob.Type.DELETE, request, response);
+    }
+
+    /**
+     * Reports the progress of the bulk operation with the given <code>id</code>.
+     * 
+     * @param request The request.
+     * @param response The response.
+     * @throws ControllerException If the progress cannot be written.
+     */
+    public void job(final HttpServletRequest request, final HttpServletResponse response)
+        throws ControllerException
+    {
+        try
+        {
+            String id = request.getParameter("id");
+            BulkJob job = id == null ? null : bulkJobs.getJob(id);
+
+            response.setContentType(ResponseFormat.JSON.getContentType());
+            response.setHeader("Cache-Control", "no-cache");
+
+            if (job == null)
+            {
+                fail(HttpServletResponse.SC_NOT_FOUND, "The job does not exist", response);
+                return;
+            }
+
+            JsonWriter json = new JsonWriter(response.getWriter());
+            json.beginObject().name("id").value(job.getId());
+            json.name("type").value(job.getType().name().toLowerCase());
+            json.name("submitted").value(job.getSubmitted());
+            json.name("processed").value(job.getProcessed());
+            json.name("changed").value(job.getChanged());
+            json.name("finished").value(job.isFinished());
+
+            if (job.getError() != null)
+            {
+                json.name("error").value(job.getError());
+            }
+
+            json.endObject().flush();
+        }
+        catch (IOException ex)
+        {
+            error("Could not get the progress of the job: " + ex.getMessage());
+            setView("list");
+        }
+    }
+
+    /**
+     * Searches the stored rhymes.
+     * <p>
+     * The rhymes can be searched by the words they contain, in the <code>q</code> parameter, by
+     * the sentence they rhyme with, in the <code>rhymesWith</code> parameter, and by the stress
+     * type of their last word, in the <code>stress</code> parameter. The page of results is
+     * selected with the <code>offset</code> and <code>limit</code> parameters, and is returned in
+     * JSON.
+     * 
+     * @param request The request.
+     * @param response The response.
+     * @throws ControllerException If the rhymes cannot be searched.
+     */
+    public void search(final HttpServletRequest request, final HttpServletResponse response)
+        throws ControllerException
+    {
+        try
+        {
+            String text = emptyToNull(request.getParameter("q"));
+            String rhymesWith = emptyToNull(request.getParameter("rhymesWith"));
+            String stress = emptyToNull(request.getParameter("stress"));
+            int offset = 0;
+            int limit = SEARCH_PAGE_SIZE;
+            StressType type = null;
+
+            try
+            {
+                type = stress == null ? null : StressType.valueOf(stress.toUpperCase());
+                offset = getInt(request, "offset", 0);
+                limit = Math.min(getInt(request, "limit", SEARCH_PAGE_SIZE), MAX_SEARCH_PAGE_SIZE);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                fail(HttpServletResponse.SC_BAD_REQUEST, "Invalid search parameters", response);
+                return;
+            }
+
+            if (text == null && rhymesWith == null && type == null)
+            {
+                fail(HttpServletResponse.SC_BAD_REQUEST, "No search criteria", response);
+                return;
+            }
+
+            SearchResult result = store.search(text, rhymesWith, type, offset, limit);
+
+            response.setContentType(ResponseFormat.JSON.getContentType());
+            response.setHeader("Cache-Control", CACHE_CONTROL);
+
+            JsonWriter json = new JsonWriter(response.getWriter());
+            json.beginObject().name("total").value(result.getTotal());
+            json.name("offset").value(result.getOffset()).name("rhymes").beginArray();
+
+            for (String rhyme : result.getRhymes())
+            {
+                json.value(rhyme);
+            }
+
+            json.endArray().endObject().flush();
+        }
+        catch (IOException ex)
+        {
+            error("Could not search the rhymes: " + ex.getMessage());
+            setView("list");
+        }
+    }
+
+    /**
+     * Reloads the configuration and replaces the default rhymes used when there are no rhymes for
+     * a mention.
+     * 
+     * @param request The request.
+     * @param response The response.
+     * @throws ControllerException If the default rhymes cannot be reloaded.
+     */
+    public void reloadDefaults(final HttpServletRequest request,
+        final HttpServletResponse response) throws ControllerException
+    {
+        try
+        {
+            WordParserFactory.getWordParser().reloadDefaultRhymes();
+            message("Reloaded the default rhymes");
+        }
+        catch (ConfigurationException ex)
+        {
+            error("Could not reload the default rhymes: " + ex.getMessage());
+        }
+
+        loadRhymes();
         setView("list");
     }
 
+    /**
+     * Reports the number of stored rhymes of each stress type.
+     * 
+     * @param request The request.
+     * @param response The response.
+     * @throws ControllerException If the rhymes cannot be counted.
+     */
+    public void stats(final HttpServletRequest request, final HttpServletResponse response)
+        throws ControllerException
+    {
+        try
+        {
+            Map<StressType, Integer> counts = store.getStressTypeCounts();
+
+            response.setContentType(ResponseFormat.JSON.getContentType());
+            response.setHeader("Cache-Control", CACHE_CONTROL);
+
+            JsonWriter json = new JsonWriter(response.getWriter());
+            json.beginObject().name("stressTypes").beginObject();
+
+            for (Map.Entry<StressType, Integer> count : counts.entrySet())
+            {
+                json.name(count.getKey().name().toLowerCase()).value(count.getValue());
+            }
+
+            json.endObject().endObject().flush();
+        }
+        catch (IOException ex)
+        {
+            error("Could not count the rhymes: " + ex.getMessage());
+            setView("list");
+        }
+    }
+
+    /**
+     * Reports the changes in the store and the replies of the bot since the given event.
+     * <p>
+     * Clients poll this method with the <code>since</code> parameter set to the
+     * <code>lastId</code> of the previous response, instead of listing all the rhymes. The
+     * response is <code>complete</code> unless some events have been discarded since then.
+     * 
+     * @param request The request.
+     * @param response The response.
+     * @throws ControllerException If the events cannot be written.
+     */
+    public void events(final HttpServletRequest request, final HttpServletResponse response)
+        throws ControllerException
+    {
+        try
+        {
+            EventBus eventBus = EventBus.getInstance();
+            String sinceParam = emptyToNull(request.getParameter("since"));
+            long since = 0;
+
+            try
+            {
+                since = sinceParam == null ? 0 : Long.parseLong(sinceParam);
+            }
+            catch (NumberFormatException ex)
+            {
+                since = -1;
+            }
+
+            if (since < 0)
+            {
+                fail(HttpServletResponse.SC_BAD_REQUEST, "Invalid event id", response);
+                return;
+            }
+
+            EventBus.Snapshot snapshot = eventBus.getSnapshot(since);
+
+            response.setContentType(ResponseFormat.JSON.getContentType());
+            response.setHeader("Cache-Control", "no-cache");
+
+            JsonWriter json = new JsonWriter(response.getWriter());
+            json.beginObject().name("lastId").value(snapshot.getLastId());
+            json.name("complete").value(snapshot.isComplete()).name("events").beginArray();
+
+            for (Event event : snapshot.getEvents())
+            {
+                event.write(json);
+            }
+
+            json.endArray().endObject().flush();
+        }
+        catch (IOException ex)
+        {
+            error("Could not get the events: " + ex.getMessage());
+            setView("list");
+        }
+    }
+
     /**
      * Download all the stored rhymes in a text file.
      * 
@@ -205,6 +517,303 @@ public class RhymeController extends MethodInvokingController
         }
     }
 
+    /**
+     * Submits all the rhymes in the request body to a new bulk job.
+     * <p>
+     * The rhymes are submitted in batches of {@link #BULK_BATCH_SIZE} while the body is read, and
+     * reading waits while the {@link BulkJobManager} has too many batches pending, so only a few
+     * batches of the body are held in memory at once. The list of rhymes is not loaded again: the
+     * browser gets the new list when the job is finished, as the version of the store changes.
+     * <p>
+     * The body is read as UTF-8 unless the request declares another charset, and each multipart
+     * part is read with its own charset, if it declares one. The uploaded rhymes are validated
+     * with the same constraints than the rhymes added one by one, and the rejected ones are
+     * reported in the response, with the errors of the first {@link #MAX_BULK_ERRORS}.
+     * 
+     * @param type The type of the bulk operation.
+     * @param request The request.
+     * @param response The response.
+     * @throws ControllerException If the rhymes cannot be read.
+     */
+    private void bulk(final BulkJob.Type type, final HttpServletRequest request,
+        final HttpServletResponse response) throws ControllerException
+    {
+        String twitterUser = getTwitterUser(request, response);
+        String mention = twitterUser == null ? null : TwitterUtils.user(twitterUser);
+        BulkJob job = bulkJobs.start(type);
+        List<String> errors = new ArrayList<String>();
+        int ignored = 0;
+        int rejected = 0;
+        int read = 0;
+
+        try
+        {
+            // The servlet containers default to ISO-8859-1
+            if (request.getCharacterEncoding() == null)
+            {
+                request.setCharacterEncoding(ENCODING);
+            }
+
+            String bodyCharset = request.getCharacterEncoding();
+            LineReader reader = new LineReader(request.getInputStream());
+            String boundary = getBoundary(request.getContentType());
+            List<String> batch = new ArrayList<String>(BULK_BATCH_SIZE);
+            boolean inBody = boundary == null;
+            String charset = bodyCharset;
+            String line = null;
+
+            while ((line = reader.readLine(charset)) != null)
+            {
+                if (boundary != null && line.startsWith(boundary))
+                {
+                    // Only the parts of the rhymes field are read, with their own charset
+                    String partCharset =
+                        line.startsWith(boundary + "--") ? null : getBulkFieldCharset(reader,
+                            bodyCharset);
+                    inBody = partCharset != null;
+                    charset = inBody ? partCharset : bodyCharset;
+                    continue;
+                }
+
+                String rhyme = line.trim();
+
+                if (!inBody || rhyme.length() == 0)
+                {
+                    continue;
+                }
+
+                read++;
+
+                if (type == BulkJob.Type.ADD && mention != null && rhyme.contains(mention))
+                {
+                    ignored++;
+                    continue;
+                }
+
+                if (type == BulkJob.Type.ADD)
+                {
+                    List<String> violations = validator.validate(rhyme);
+
+                    if (!violations.isEmpty())
+                    {
+                        if (errors.size() < MAX_BULK_ERRORS)
+                        {
+                            errors.add("Invalid rhyme " + read + ": " + violations.get(0));
+                        }
+
+                        rejected++;
+                        continue;
+                    }
+                }
+
+                batch.add(WordUtils.capitalize(rhyme));
+
+                if (batch.size() == BULK_BATCH_SIZE)
+                {
+                    bulkJobs.submit(job, batch);
+                    batch = new ArrayList<String>(BULK_BATCH_SIZE);
+                }
+            }
+
+            bulkJobs.submit(job, batch);
+
+            if (ignored > 0)
+            {
+                LOGGER.warn("Ignored {} rhymes that contain the Twitter user name", ignored);
+            }
+
+            if (rejected > 0)
+            {
+                LOGGER.warn("Rejected {} invalid rhymes", rejected);
+            }
+
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            response.setContentType(ResponseFormat.JSON.getContentType());
+
+            JsonWriter json = new JsonWriter(response.getWriter());
+            json.beginObject().name("id").value(job.getId()).name("submitted").value(
+                job.getSubmitted()).name("ignored").value(ignored).name("rejected").value(rejected);
+            json.name("errors").beginArray();
+
+            for (String error : errors)
+            {
+                json.value(error);
+            }
+
+            json.endArray().endObject().flush();
+        }
+        catch (IOException ex)
+        {
+            error("Could not read the rhymes: " + ex.getMessage());
+            setView("list");
+        }
+        finally
+        {
+            bulkJobs.finish(job);
+        }
+    }
+
+    /**
+     * Writes a JSON error with the given HTTP status.
+     * 
+     * @param status The HTTP status.
+     * @param message The error message.
+     * @param response The response.
+     * @throws IOException If the error cannot be written.
+     */
+    private static void fail(final int status, final String message,
+        final HttpServletResponse response) throws IOException
+    {
+        response.setStatus(status);
+        response.setContentType(ResponseFormat.JSON.getContentType());
+        new JsonWriter(response.getWriter()).beginObject().name("errors").beginArray().value(
+            message).endArray().endObject().flush();
+    }
+
+    /**
+     * Gets the value of a non negative integer parameter.
+     * 
+     * @param request The request.
+     * @param name The name of the parameter.
+     * @param defaultValue The value to use if the parameter is not present.
+     * @return The value of the parameter.
+     * @throws IllegalArgumentException If the value is not a non negative integer.
+     */
+    private static int getInt(final HttpServletRequest request, final String name,
+        final int defaultValue)
+    {
+        String value = emptyToNull(request.getParameter(name));
+
+        if (value == null)
+        {
+            return defaultValue;
+        }
+
+        int number = Integer.parseInt(value);
+
+        if (number < 0)
+        {
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
+
+        return number;
+    }
+
+    /**
+     * Converts blank values to <code>null</code>.
+     * 
+     * @param value The value.
+     * @return The trimmed value, or <code>null</code> if it is blank.
+     */
+    private static String emptyToNull(final String value)
+    {
+        return value == null || value.trim().length() == 0 ? null : value.trim();
+    }
+
+    /**
+     * Gets the delimiter of the parts of a <code>multipart/form-data</code> request.
+     * 
+     * @param contentType The content type of the request.
+     * @return The delimiter of the parts, or <code>null</code> if the request is not multipart.
+     */
+    static String getBoundary(final String contentType)
+    {
+        if (contentType == null || !contentType.toLowerCase().startsWith("multipart/form-data"))
+        {
+            return null;
+        }
+
+        String boundary = getHeaderParameter(contentType, "boundary");
+        return boundary == null ? null : "--" + boundary;
+    }
+
+    /**
+     * Gets the value of a parameter of a header, such as the charset of a content type.
+     * 
+     * @param header The value of the header.
+     * @param name The name of the parameter.
+     * @return The unquoted value of the parameter, or <code>null</code> if it is not present.
+     */
+    static String getHeaderParameter(final String header, final String name)
+    {
+        for (String param : header.split(";"))
+        {
+            String[] pair = param.trim().split("=", 2);
+
+            if (pair.length == 2 && pair[0].trim().equalsIgnoreCase(name))
+            {
+                String value = pair[1].trim();
+
+                if (value.startsWith("\"") && value.endsWith("\"") && value.length() > 1)
+                {
+                    value = value.substring(1, value.length() - 1);
+                }
+
+                return value;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the headers of a multipart part and gets its charset if it is the
+     * {@link #BULK_FIELD} field.
+     * 
+     * @param reader The reader of the request body, positioned after the delimiter of the part.
+     * @param defaultCharset The charset of the parts that do not declare one.
+     * @return The charset of the part, or <code>null</code> if the part does not contain the
+     *         rhymes.
+     * @throws IOException If the headers cannot be read.
+     */
+    static String getBulkFieldCharset(final LineReader reader, final String defaultCharset)
+        throws IOException
+    {
+        boolean bulkField = false;
+        String charset = defaultCharset;
+        String line = null;
+
+        while ((line = reader.readLine(HEADER_ENCODING)) != null && line.length() > 0)
+        {
+            String header = line.toLowerCase();
+
+            if (header.startsWith("content-disposition:"))
+            {
+                bulkField = BULK_FIELD.equals(getHeaderParameter(line, "name"));
+            }
+            else if (header.startsWith("content-type:"))
+            {
+                String partCharset = getHeaderParameter(line, "charset");
+                if (partCharset != null)
+                {
+                    charset = partCharset;
+                }
+            }
+        }
+
+        return bulkField ? charset : null;
+    }
+
+    /**
+     * Loads all the rhymes in the store, sorted, as the model of the list view.
+     */
+    private void loadRhymes()
+    {
+        try
+        {
+            Set<String> rhymes = store.findAll();
+
+            List<String> sortedRhymes = new ArrayList<String>(rhymes);
+            Collections.sort(sortedRhymes, String.CASE_INSENSITIVE_ORDER);
+
+            setModel(sortedRhymes);
+        }
+        catch (Exception ex)
+        {
+            error("Could not get rhymes: " + ex.getMessage());
+        }
+    }
+
     /**
      * Gets the Twitter user.
      * 
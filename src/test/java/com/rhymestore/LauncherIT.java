@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.web.async.AsyncApiServer;
+import com.rhymestore.web.async.HealthHandler;
+
+/**
+ * Integration tests for the {@link Launcher} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class LauncherIT
+{
+    /** The launcher to test. */
+    private Launcher launcher;
+
+    @AfterMethod
+    public void tearDown()
+    {
+        launcher.shutdown();
+    }
+
+    @Test
+    public void testStartup() throws Exception
+    {
+        long begin = System.currentTimeMillis();
+
+        launcher = new Launcher(0, false);
+        launcher.start();
+
+        assertTrue(System.currentTimeMillis() - begin < 1000);
+        assertEquals(get(HealthHandler.HEALTH_PATH), HttpURLConnection.HTTP_OK);
+        assertEquals(get(AsyncApiServer.API_PATH + "?rhyme=hola"), HttpURLConnection.HTTP_OK);
+    }
+
+    private int get(final String path) throws Exception
+    {
+        URL url = new URL("http://localhost:" + launcher.getPort() + path);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+
+        try
+        {
+            return conn.getResponseCode();
+        }
+        finally
+        {
+            conn.disconnect();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.event;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link EventBus} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class EventBusTest
+{
+    /** The bus to test. */
+    private EventBus eventBus;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        eventBus = new EventBus();
+    }
+
+    @Test
+    public void testPublish()
+    {
+        final List<Event> received = new ArrayList<Event>();
+        eventBus.subscribe(new EventListener()
+        {
+            @Override
+            public void onEvent(final Event event)
+            {
+                received.add(event);
+            }
+        });
+
+        Event added = eventBus.publish(Event.Type.ADDED, rhyme("Me escondo y no me ves"));
+        Event deleted = eventBus.publish(Event.Type.DELETED, rhyme("Me escondo y no me ves"));
+
+        assertEquals(added.getId(), 1L);
+        assertEquals(deleted.getId(), 2L);
+        assertEquals(deleted.getName(), "deleted");
+        assertEquals(deleted.getData().get("rhyme"), "Me escondo y no me ves");
+        assertEquals(received.size(), 2);
+        assertEquals(received.get(0), added);
+        assertEquals(received.get(1), deleted);
+        assertEquals(eventBus.getLastId(), 2L);
+    }
+
+    @Test
+    public void testFailingListener()
+    {
+        final List<Event> received = new ArrayList<Event>();
+        eventBus.subscribe(new EventListener()
+        {
+            @Override
+            public void onEvent(final Event event)
+            {
+                throw new IllegalStateException("Failing listener");
+            }
+        });
+        eventBus.subscribe(new EventListener()
+        {
+            @Override
+            public void onEvent(final Event event)
+            {
+                received.add(event);
+            }
+        });
+
+        eventBus.publish(Event.Type.ADDED, rhyme("Ya son veintidós!!"));
+        assertEquals(received.size(), 1);
+    }
+
+    @Test
+    public void testUnsubscribe()
+    {
+        EventListener listener = new EventListener()
+        {
+            @Override
+            public void onEvent(final Event event)
+            {
+                throw new IllegalStateException("Unsubscribed listener");
+            }
+        };
+
+        eventBus.subscribe(listener);
+        assertEquals(eventBus.getSubscribers(), 1);
+
+        eventBus.unsubscribe(listener);
+        assertEquals(eventBus.getSubscribers(), 0);
+    }
+
+    @Test
+    public void testGetEventsSince()
+    {
+        assertTrue(eventBus.getEventsSince(0).isEmpty());
+
+        for (int i = 0; i < EventBus.RECENT_EVENTS + 10; i++)
+        {
+            eventBus.publish(Event.Type.ADDED, rhyme(i + " veces dije que no"));
+        }
+
+        List<Event> events = eventBus.getEventsSince(0);
+        assertEquals(events.size(), EventBus.RECENT_EVENTS);
+        assertEquals(events.get(0).getId(), 11L);
+
+        events = eventBus.getEventsSince(EventBus.RECENT_EVENTS + 8);
+        assertEquals(events.size(), 2);
+        assertEquals(events.get(0).getId(), EventBus.RECENT_EVENTS + 9L);
+
+        assertTrue(eventBus.getEventsSince(EventBus.RECENT_EVENTS + 10).isEmpty());
+    }
+
+    @Test
+    public void testGetSnapshot()
+    {
+        EventBus.Snapshot snapshot = eventBus.getSnapshot(0);
+        assertTrue(snapshot.getEvents().isEmpty());
+        assertEquals(snapshot.getLastId(), 0L);
+        assertTrue(snapshot.isComplete());
+
+        for (int i = 0; i < EventBus.RECENT_EVENTS + 10; i++)
+        {
+            eventBus.publish(Event.Type.ADDED, rhyme(i + " veces dije que no"));
+        }
+
+        // The first events have been discarded
+        snapshot = eventBus.getSnapshot(5);
+        assertEquals(snapshot.getEvents().size(), EventBus.RECENT_EVENTS);
+        assertEquals(snapshot.getLastId(), EventBus.RECENT_EVENTS + 10L);
+        assertFalse(snapshot.isComplete());
+
+        snapshot = eventBus.getSnapshot(10);
+        assertEquals(snapshot.getEvents().get(0).getId(), 11L);
+        assertTrue(snapshot.isComplete());
+
+        snapshot = eventBus.getSnapshot(EventBus.RECENT_EVENTS + 10);
+        assertTrue(snapshot.getEvents().isEmpty());
+        assertEquals(snapshot.getLastId(), EventBus.RECENT_EVENTS + 10L);
+        assertTrue(snapshot.isComplete());
+    }
+
+    private static Map<String, String> rhyme(final String rhyme)
+    {
+        return Collections.singletonMap("rhyme", rhyme);
+    }
+}
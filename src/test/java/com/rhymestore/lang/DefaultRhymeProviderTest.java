@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.rhymestore.config.Configuration;
+import com.rhymestore.config.ConfigurationException;
+import com.rhymestore.lang.DefaultRhymeProvider.Strategy;
+
+/**
+ * Unit tests for the {@link DefaultRhymeProvider} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class DefaultRhymeProviderTest
+{
+    private static final List<String> RHYMES = Arrays.asList("uno", "dos", "tres");
+
+    @Test
+    public void testEmptyProvider()
+    {
+        DefaultRhymeProvider provider =
+            new DefaultRhymeProvider(Strategy.ROUND_ROBIN, Collections.<String> emptyList());
+
+        assertNull(provider.getDefaultRhyme());
+        assertNull(provider.getDefaultRhyme("user"));
+    }
+
+    @Test
+    public void testRoundRobin()
+    {
+        DefaultRhymeProvider provider = new DefaultRhymeProvider(Strategy.ROUND_ROBIN, RHYMES);
+
+        for (int i = 0; i < 6; i++)
+        {
+            assertEquals(provider.getDefaultRhyme(), RHYMES.get(i % RHYMES.size()));
+        }
+    }
+
+    @Test
+    public void testRoundRobinOverflow()
+    {
+        DefaultRhymeProvider provider = new DefaultRhymeProvider(Strategy.ROUND_ROBIN, RHYMES);
+        provider.counter.set(Integer.MAX_VALUE - 2);
+
+        for (int i = 0; i < 6; i++)
+        {
+            assertTrue(RHYMES.contains(provider.getDefaultRhyme()));
+        }
+    }
+
+    @Test
+    public void testConcurrentRoundRobin() throws InterruptedException
+    {
+        final DefaultRhymeProvider provider =
+            new DefaultRhymeProvider(Strategy.ROUND_ROBIN, RHYMES);
+        final ConcurrentMap<String, AtomicInteger> counts =
+            new ConcurrentHashMap<String, AtomicInteger>();
+        for (String rhyme : RHYMES)
+        {
+            counts.put(rhyme, new AtomicInteger());
+        }
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 3000; j++)
+                    {
+                        counts.get(provider.getDefaultRhyme()).incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        // No updates must be lost
+        for (String rhyme : RHYMES)
+        {
+            assertEquals(counts.get(rhyme).get(), 4000);
+        }
+    }
+
+    @Test
+    public void testRandom()
+    {
+        DefaultRhymeProvider provider = new DefaultRhymeProvider(Strategy.RANDOM, RHYMES);
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertTrue(RHYMES.contains(provider.getDefaultRhyme()));
+        }
+    }
+
+    @Test
+    public void testWeighted()
+    {
+        DefaultRhymeProvider provider =
+            new DefaultRhymeProvider(Strategy.WEIGHTED, Arrays.asList("uno", "dos"), new int[] {
+            1, 1000000});
+
+        int dos = 0;
+        for (int i = 0; i < 100; i++)
+        {
+            if (provider.getDefaultRhyme().equals("dos"))
+            {
+                dos++;
+            }
+        }
+
+        assertTrue(dos > 90);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidWeights()
+    {
+        new DefaultRhymeProvider(Strategy.WEIGHTED, RHYMES, new int[] {1});
+    }
+
+    @Test
+    public void testUserDoesNotGetTheSameRhymeTwice()
+    {
+        DefaultRhymeProvider provider = new DefaultRhymeProvider(Strategy.RANDOM, RHYMES);
+        String last = provider.getDefaultRhyme("user");
+
+        for (int i = 0; i < 100; i++)
+        {
+            String rhyme = provider.getDefaultRhyme("user");
+            assertFalse(rhyme.equals(last));
+            last = rhyme;
+        }
+    }
+
+    @Test
+    public void testReplaceRhymes()
+    {
+        DefaultRhymeProvider provider = new DefaultRhymeProvider(Strategy.ROUND_ROBIN, RHYMES);
+        provider.setRhymes(Arrays.asList("cuatro"), null);
+
+        assertEquals(provider.getRhymes(), Arrays.asList("cuatro"));
+        assertEquals(provider.getDefaultRhyme(), "cuatro");
+        assertEquals(provider.getDefaultRhyme("user"), "cuatro");
+        assertEquals(provider.getDefaultRhyme("user"), "cuatro");
+    }
+
+    @Test
+    public void testLoad()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.DEFAULT_RHYME_PROPERTY + "10", "diez");
+        properties.setProperty(Configuration.DEFAULT_RHYME_PROPERTY + "2", "dos");
+        properties.setProperty(Configuration.DEFAULT_RHYME_PROPERTY + "1", "uno");
+        properties.setProperty(Configuration.DEFAULT_RHYME_WEIGHT_PROPERTY + "2", "5");
+        properties.setProperty(Configuration.DEFAULT_RHYME_STRATEGY_PROPERTY, "weighted");
+
+        DefaultRhymeProvider provider = new DefaultRhymeProvider(Strategy.ROUND_ROBIN, RHYMES);
+        provider.load(properties);
+
+        assertEquals(provider.getStrategy(), Strategy.WEIGHTED);
+        assertEquals(provider.getRhymes(), Arrays.asList("uno", "dos", "diez"));
+    }
+
+    @Test(expectedExceptions = ConfigurationException.class)
+    public void testLoadInvalidStrategy()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.DEFAULT_RHYME_STRATEGY_PROPERTY, "unexisting");
+
+        new DefaultRhymeProvider(Strategy.ROUND_ROBIN, RHYMES).load(properties);
+    }
+
+    @Test
+    public void testFromConfiguration()
+    {
+        DefaultRhymeProvider provider = DefaultRhymeProvider.fromConfiguration();
+
+        assertEquals(provider.getStrategy(), Strategy.ROUND_ROBIN);
+        assertEquals(provider.getRhymes().size(), 2);
+
+        provider.reload();
+        assertEquals(provider.getRhymes().size(), 2);
+    }
+}
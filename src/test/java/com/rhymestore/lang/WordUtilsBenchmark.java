@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the performance of {@link WordUtils#getLastWord(String)} with the previous
+ * implementation, based on splitting the whole sentence.
+ * <p>
+ * This is not a unit test. Run it as a Java application with the test classpath.
+ * 
+ * @author Ignasi Barrera
+ */
+public class WordUtilsBenchmark
+{
+    /** Sample sentences, similar to the received mentions. */
+    private static final String[] SENTENCES =
+        {"@rhymestore dime algo que rime con camión",
+            "@rhymestore   ¿Hay algo que rime con tres?  ",
+            "Esta es una frase bastante más larga que las demás, como las que se suelen enviar"
+                + " en un tweet cuando alguien se aburre y quiere que le rimen algo @rhymestore",
+            "@rhymestore\trima\testo\n", "@rhymestore 1000000"};
+
+    private static final int WARMUP_ITERATIONS = 200000;
+
+    private static final int ITERATIONS = 2000000;
+
+    public static void main(final String... args)
+    {
+        // Warm up both implementations
+        run(true, WARMUP_ITERATIONS);
+        run(false, WARMUP_ITERATIONS);
+
+        long split = run(true, ITERATIONS);
+        long scan = run(false, ITERATIONS);
+
+        System.out.printf("split-based: %.1f ns/op%n", (double) split / ITERATIONS);
+        System.out.printf("backwards scan: %.1f ns/op%n", (double) scan / ITERATIONS);
+    }
+
+    private static long run(final boolean legacy, final int iterations)
+    {
+        int length = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            String sentence = SENTENCES[i % SENTENCES.length];
+            length += legacy ? splitLastWord(sentence).length() : WordUtils.getLastWord(sentence)
+                .length();
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        // Use the result so the loop is not optimized away
+        if (length == 42)
+        {
+            System.out.println();
+        }
+
+        return elapsed;
+    }
+
+    /**
+     * The previous implementation of {@link WordUtils#getLastWord(String)}.
+     */
+    private static String splitLastWord(final String sentence)
+    {
+        String word = "";
+
+        if (sentence != null)
+        {
+            List<String> words = Arrays.asList(sentence.split(" "));
+
+            if (words.size() > 0)
+            {
+                word = words.get(words.size() - 1);
+            }
+        }
+
+        return word;
+    }
+}
@@ -24,11 +24,15 @@ package com.rhymestore.lang;
 
 import static com.rhymestore.lang.WordUtils.capitalize;
 import static com.rhymestore.lang.WordUtils.getLastWord;
+import static com.rhymestore.lang.WordUtils.getLastWords;
 import static com.rhymestore.lang.WordUtils.isNumber;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import org.testng.annotations.Test;
 
 /**
@@ -57,6 +61,42 @@ public class WordUtilsTest
         assertEquals(getLastWord("hola ."), ".");
     }
 
+    @Test
+    public void testGetLastWordWithWhitespace()
+    {
+        assertEquals(getLastWord("   "), "");
+        assertEquals(getLastWord("hola adios "), "adios");
+        assertEquals(getLastWord("hola\tadios"), "adios");
+        assertEquals(getLastWord("hola\nadios\r\n"), "adios");
+        assertEquals(getLastWord("hola\u00A0adios"), "adios");
+        assertEquals(getLastWord("hola\u3000adios\u2009"), "adios");
+        assertEquals(getLastWord("hola \uD835\uDC00"), "\uD835\uDC00");
+    }
+
+    @Test
+    public void testGetLastWordSkippingEntities()
+    {
+        assertEquals(getLastWord(null, true), "");
+        assertEquals(getLastWord("@rhymestore #rima", true), "");
+        assertEquals(getLastWord("@rhymestore hola", true), "hola");
+        assertEquals(getLastWord("hola @rhymestore", true), "hola");
+        assertEquals(getLastWord("hola #rima http://t.co/x", true), "hola");
+        assertEquals(getLastWord("hola HTTPS://t.co/x www.rhymestore.com", true), "hola");
+        assertEquals(getLastWord("hola @", true), "@");
+        assertEquals(getLastWord("hola #rima", false), "#rima");
+    }
+
+    @Test
+    public void testGetLastWords()
+    {
+        assertEquals(getLastWords(null, 2, false), Collections.emptyList());
+        assertEquals(getLastWords("hola", 0, false), Collections.emptyList());
+        assertEquals(getLastWords("hola", 2, false), Arrays.asList("hola"));
+        assertEquals(getLastWords(" una  dos\ttres ", 2, false), Arrays.asList("dos", "tres"));
+        assertEquals(getLastWords("una dos #tag tres @user", 3, true), Arrays.asList("una",
+            "dos", "tres"));
+    }
+
     @Test
     public void testIsNumber()
     {
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang.es;
+
+/**
+ * Compares the performance of {@link SpanishNumberResolver} with the {@link SpanishNumber} enum.
+ * <p>
+ * This is not a unit test. Run it as a Java application with the test classpath.
+ * 
+ * @author Serafin Sedano
+ */
+public class SpanishNumberBenchmark
+{
+    /** Sample numbers, as they appear at the end of the mentions. */
+    private static final String[] NUMBERS =
+        {"7", "15", "100", "2011", "45000", "-300", "1000000", "123456789", "20000000",
+            "98765432109876543210"};
+
+    private static final int WARMUP_ITERATIONS = 200000;
+
+    private static final int ITERATIONS = 2000000;
+
+    public static void main(final String... args)
+    {
+        // Warm up both implementations
+        run(true, WARMUP_ITERATIONS);
+        run(false, WARMUP_ITERATIONS);
+
+        long enumBased = run(true, ITERATIONS);
+        long tableBased = run(false, ITERATIONS);
+
+        System.out.printf("SpanishNumber: %.1f ns/op%n", (double) enumBased / ITERATIONS);
+        System.out.printf("SpanishNumberResolver: %.1f ns/op%n", (double) tableBased
+            / ITERATIONS);
+    }
+
+    private static long run(final boolean legacy, final int iterations)
+    {
+        int length = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            String number = NUMBERS[i % NUMBERS.length];
+            length += legacy ? SpanishNumber.getBaseSound(number).length()
+                : SpanishNumberResolver.getBaseSound(number).length();
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        // Use the result so the loop is not optimized away
+        if (length == 42)
+        {
+            System.out.println();
+        }
+
+        return elapsed;
+    }
+}
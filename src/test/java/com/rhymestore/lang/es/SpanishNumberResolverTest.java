@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.lang.es;
+
+import static org.testng.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link SpanishNumberResolver} class.
+ * 
+ * @author Serafin Sedano
+ */
+public class SpanishNumberResolverTest
+{
+    /** The upper bound of the exhaustive equivalence test. */
+    private static final int MAX_EXHAUSTIVE = 10000000;
+
+    @Test
+    public void testEquivalentToSpanishNumber()
+    {
+        for (int i = 0; i <= MAX_EXHAUSTIVE; i++)
+        {
+            String expected = SpanishNumber.getBaseSound(i);
+            if (!expected.equals(SpanishNumberResolver.getBaseSound(i)))
+            {
+                // Only build the assertion message for the failures
+                assertEquals(SpanishNumberResolver.getBaseSound(i), expected, "Number " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testGetBaseSoundFromString()
+    {
+        String[] numbers =
+            {"0", "7", "007", "-15", "-100", "0100", "1000000", "20000001", "9223372036854775807",
+                "9223372036854775808", "-9223372036854775808", "12345678901234567890",
+                "10000000000000000000", "30000000000000000000000000000000000000000000000",
+                "30000000000000000000000000000000000000000000045"};
+
+        for (String number : numbers)
+        {
+            assertEquals(SpanishNumberResolver.getBaseSound(number),
+                SpanishNumber.getBaseSound(number), "Number " + number);
+        }
+
+        assertEquals(SpanishNumberResolver.getBaseSound(""), null);
+        assertEquals(SpanishNumberResolver.getBaseSound((String) null), null);
+    }
+
+    @Test(expectedExceptions = NumberFormatException.class)
+    public void testGetBaseSoundFromInvalidString()
+    {
+        SpanishNumberResolver.getBaseSound("12a");
+    }
+
+    @Test
+    public void testGetBaseSoundFromLong()
+    {
+        long[] numbers = {-1, -70, 1000000, 3000000000L, 123456789012L, Long.MAX_VALUE,
+            Long.MIN_VALUE};
+
+        for (long number : numbers)
+        {
+            assertEquals(SpanishNumberResolver.getBaseSound(number),
+                SpanishNumber.getBaseSound(number), "Number " + number);
+        }
+    }
+
+    @Test
+    public void testGetBaseSoundFromBigDecimal()
+    {
+        String[] numbers =
+            {"0", "15", "-15", "3.5", "3.05", "3.50", "1.1000000", "-2.20", "1E+3", "4.7E+8",
+                "12345678901234567890.25", "12345678901234567890000"};
+
+        for (String number : numbers)
+        {
+            BigDecimal decimal = new BigDecimal(number);
+            assertEquals(SpanishNumberResolver.getBaseSound(decimal),
+                SpanishNumber.getBaseSound(decimal), "Number " + number);
+        }
+    }
+
+    @Test
+    public void testGetBaseSoundFromBigInteger()
+    {
+        assertEquals(SpanishNumberResolver.getBaseSound(BigInteger.valueOf(100)), "cien");
+        assertEquals(SpanishNumberResolver.getBaseSound(BigInteger.TEN.pow(30)), "millones");
+        assertEquals(SpanishNumberResolver.getBaseSound(BigInteger.TEN.pow(30).add(
+            BigInteger.valueOf(14))), "catorce");
+        assertEquals(SpanishNumberResolver.getBaseSound(BigInteger.TEN.pow(30).negate()),
+            "millones");
+    }
+}
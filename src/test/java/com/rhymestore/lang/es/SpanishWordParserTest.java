@@ -26,10 +26,15 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.testng.annotations.Test;
 
 import com.rhymestore.lang.AbstractWordParserTest;
 import com.rhymestore.lang.StressType;
+import com.rhymestore.lang.WordAnalysis;
 import com.rhymestore.lang.WordParser;
 
 /**
@@ -192,8 +197,10 @@ public class SpanishWordParserTest extends AbstractWordParserTest
 	@Override
 	public void testGetDefaultRhyme()
 	{
-		String rhyme0 = ((SpanishWordParser) wordParser).defaultRhymes.get(0);
-		String rhyme1 = ((SpanishWordParser) wordParser).defaultRhymes.get(1);
+		String rhyme0 = ((SpanishWordParser) wordParser).defaultRhymes
+				.getRhymes().get(0);
+		String rhyme1 = ((SpanishWordParser) wordParser).defaultRhymes
+				.getRhymes().get(1);
 
 		assertEquals(wordParser.getDefaultRhyme(), rhyme0);
 		assertEquals(wordParser.getDefaultRhyme(), rhyme1);
@@ -201,6 +208,19 @@ public class SpanishWordParserTest extends AbstractWordParserTest
 		assertEquals(wordParser.getDefaultRhyme(), rhyme1);
 	}
 
+	@Test
+	public void testReloadDefaultRhymes()
+	{
+		List<String> rhymes = ((SpanishWordParser) wordParser).defaultRhymes
+				.getRhymes();
+
+		wordParser.reloadDefaultRhymes();
+
+		assertEquals(((SpanishWordParser) wordParser).defaultRhymes.getRhymes(),
+				rhymes);
+		assertTrue(rhymes.contains(wordParser.getDefaultRhyme()));
+	}
+
 	@Test
 	public void testGetNumberPhoneticRhymePart()
 	{
@@ -211,4 +231,52 @@ public class SpanishWordParserTest extends AbstractWordParserTest
 		assertEquals(wordParser.phoneticRhymePart("350000"), "il");
 		assertEquals(wordParser.phoneticRhymePart("5000000"), "ones");
 	}
+
+	@Test
+	public void testAnalyze()
+	{
+		for (String word : Arrays.asList("pez", "Telecinco", "cáspita",
+				"recuérdamelo", "calor!", "-1", "3521637", "LOGROÑO"))
+		{
+			WordAnalysis analysis = wordParser.analyze(word);
+
+			assertTrue(analysis.isValid());
+			assertEquals(analysis.getWord(), word);
+			assertEquals(analysis.getRhymePart(),
+					wordParser.phoneticRhymePart(word));
+			assertEquals(analysis.getStressType(), wordParser.stressType(word));
+		}
+
+		assertFalse(wordParser.analyze("").isValid());
+		assertFalse(wordParser.analyze("hola.adios").isValid());
+		assertFalse(wordParser.analyze("bcd").isValid());
+	}
+
+	@Test
+	public void testAnalyzeBatch()
+	{
+		List<String> samples = Arrays.asList("pez", "melón", "carromato",
+				"cáspita", "ab23cd", "suyo", "25", "");
+		List<String> words = new ArrayList<String>();
+
+		// Big enough to be split across several threads
+		while (words.size() < SpanishWordParser.PARALLEL_THRESHOLD * 8)
+		{
+			words.addAll(samples);
+		}
+
+		List<WordAnalysis> analysis = wordParser.analyze(words);
+
+		assertEquals(analysis.size(), words.size());
+		for (int i = 0; i < words.size(); i++)
+		{
+			WordAnalysis expected = wordParser.analyze(words.get(i));
+
+			assertEquals(analysis.get(i).getWord(), words.get(i));
+			assertEquals(analysis.get(i).getRhymePart(),
+					expected.getRhymePart());
+			assertEquals(analysis.get(i).getStressType(),
+					expected.getStressType());
+		}
+	}
 }
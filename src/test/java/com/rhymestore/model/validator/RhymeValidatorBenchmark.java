@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.model.validator;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import com.rhymestore.lang.WordParserFactory;
+import com.rhymestore.model.Rhyme;
+
+/**
+ * Compares the performance of the {@link RhymeValidator} with the bean validation of the
+ * {@link Rhyme} class.
+ * <p>
+ * This is not a unit test. Run it as a Java application with the test classpath.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RhymeValidatorBenchmark
+{
+    /** Sample sentences, both valid and invalid. */
+    private static final String[] VALUES =
+        {"Me escondo y no me ves", "¿Hay algo que rime con tres?", "Ya son veintidós!!",
+            "Esto no es ab23cd", "", "Complicado me lo pones; patada en los cojones"};
+
+    private static final int WARMUP_ITERATIONS = 100000;
+
+    private static final int ITERATIONS = 500000;
+
+    public static void main(final String... args)
+    {
+        Validator beanValidator = Validation.buildDefaultValidatorFactory().getValidator();
+        RhymeValidator validator = new RhymeValidator(WordParserFactory.getWordParser());
+
+        // Warm up both implementations
+        run(beanValidator, null, WARMUP_ITERATIONS);
+        run(null, validator, WARMUP_ITERATIONS);
+
+        long bean = run(beanValidator, null, ITERATIONS);
+        long fast = run(null, validator, ITERATIONS);
+
+        System.out.printf("bean validation: %.1f ns/op%n", (double) bean / ITERATIONS);
+        System.out.printf("rhyme validator: %.1f ns/op%n", (double) fast / ITERATIONS);
+    }
+
+    private static long run(final Validator beanValidator, final RhymeValidator validator,
+        final int iterations)
+    {
+        int errors = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            String value = VALUES[i % VALUES.length];
+
+            if (validator == null)
+            {
+                Rhyme rhyme = new Rhyme();
+                rhyme.setRhyme(value);
+                errors += beanValidator.validate(rhyme).size();
+            }
+            else
+            {
+                errors += validator.validate(value).size();
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        // Use the result so the loop is not optimized away
+        if (errors == 42)
+        {
+            System.out.println();
+        }
+
+        return elapsed;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.model.validator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.lang.WordParserFactory;
+import com.rhymestore.twitter.util.TwitterUtils;
+
+/**
+ * Unit tests for the {@link RhymeValidator} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RhymeValidatorTest
+{
+    /** The message of the length constraint. */
+    private static final String LENGTH_MESSAGE =
+        "length must be between 1 and " + TwitterUtils.MAX_TWEET_LENGTH;
+
+    /** The validator to test. */
+    private RhymeValidator validator;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        validator = new RhymeValidator(WordParserFactory.getWordParser());
+    }
+
+    @Test
+    public void testValid()
+    {
+        assertTrue(validator.validate("Esta rima es valida").isEmpty());
+        assertTrue(validator.validate("¿Rima con tres?").isEmpty());
+    }
+
+    @Test
+    public void testNull()
+    {
+        assertEquals(validator.validate(null), Collections
+            .singletonList("rhyme text must not be null"));
+    }
+
+    @Test
+    public void testLength()
+    {
+        assertEquals(validator.validate(""), Collections.singletonList(LENGTH_MESSAGE));
+
+        StringBuilder text = new StringBuilder();
+        while (text.length() <= TwitterUtils.MAX_TWEET_LENGTH)
+        {
+            text.append("hola ");
+        }
+
+        assertEquals(validator.validate(text.toString().trim()), Collections
+            .singletonList(LENGTH_MESSAGE));
+    }
+
+    @Test
+    public void testInvalidWord()
+    {
+        assertEquals(validator.validate("Esto no es ab23cd"), Collections
+            .singletonList("The input text contains invalid words: Esto no es ab23cd"));
+    }
+
+    @Test
+    public void testAllErrors()
+    {
+        StringBuilder text = new StringBuilder();
+        while (text.length() <= TwitterUtils.MAX_TWEET_LENGTH)
+        {
+            text.append("hola ");
+        }
+        text.append("ab23cd");
+
+        assertEquals(validator.validate(text.toString()), Arrays.asList(LENGTH_MESSAGE,
+            "The input text contains invalid words: " + text));
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.store;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link BulkJobManager} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class BulkJobManagerTest
+{
+    /** The store with the rhymes. */
+    private TestRhymeStore store;
+
+    /** The manager to test. */
+    private BulkJobManager manager;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        store = new TestRhymeStore();
+        manager = new BulkJobManager(store, 4);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        manager.shutdown();
+        store.cleanDB();
+    }
+
+    @Test
+    public void testAdd() throws IOException, InterruptedException
+    {
+        BulkJob job = manager.start(BulkJob.Type.ADD);
+        List<String> batch = new ArrayList<String>();
+
+        for (int i = 0; i < 100; i++)
+        {
+            batch.add(i + " veces dije que no");
+
+            if (batch.size() == 10)
+            {
+                manager.submit(job, batch);
+                batch = new ArrayList<String>();
+            }
+        }
+
+        manager.finish(job);
+        waitFor(job);
+
+        assertEquals(job.getSubmitted(), 100);
+        assertEquals(job.getProcessed(), 100);
+        assertEquals(job.getChanged(), 100);
+        assertNull(job.getError());
+        assertEquals(store.findAll().size(), 100);
+    }
+
+    @Test
+    public void testAddDuplicates() throws IOException, InterruptedException
+    {
+        store.add("Esta es una rima");
+
+        BulkJob job = manager.start(BulkJob.Type.ADD);
+        manager.submit(job, Arrays.asList("Esta es una rima", "Esta es otra rima",
+            "Esta es otra rima"));
+        manager.finish(job);
+        waitFor(job);
+
+        assertEquals(job.getProcessed(), 3);
+        assertEquals(job.getChanged(), 1);
+        assertEquals(store.findAll().size(), 2);
+    }
+
+    @Test
+    public void testDelete() throws IOException, InterruptedException
+    {
+        store.add("Esta es una rima");
+        store.add("Esta es otra rima");
+
+        BulkJob job = manager.start(BulkJob.Type.DELETE);
+        manager.submit(job, Arrays.asList("Esta es una rima", "Esta rima no existe"));
+        manager.finish(job);
+        waitFor(job);
+
+        assertEquals(job.getProcessed(), 2);
+        assertEquals(job.getChanged(), 1);
+        assertEquals(store.findAll().size(), 1);
+        assertTrue(store.findAll().contains("Esta es otra rima"));
+    }
+
+    @Test
+    public void testNotFinishedUntilSealed()
+    {
+        BulkJob job = manager.start(BulkJob.Type.ADD);
+        assertFalse(job.isFinished());
+
+        manager.finish(job);
+        assertTrue(job.isFinished());
+    }
+
+    @Test
+    public void testGetJob()
+    {
+        BulkJob job = manager.start(BulkJob.Type.ADD);
+        assertEquals(manager.getJob(job.getId()), job);
+        assertNull(manager.getJob("unexisting"));
+
+        for (int i = 0; i < BulkJobManager.RECENT_JOBS; i++)
+        {
+            manager.start(BulkJob.Type.ADD);
+        }
+
+        assertNull(manager.getJob(job.getId()));
+    }
+
+    @Test
+    public void testSubmitBlocksWhileTooManyBatchesArePending() throws InterruptedException
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        TestRhymeStore slowStore = new TestRhymeStore()
+        {
+            @Override
+            public int addAll(final List<String> sentences) throws IOException
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+
+                return super.addAll(sentences);
+            }
+        };
+
+        final BulkJobManager slowManager = new BulkJobManager(slowStore, 1);
+        final BulkJob job = slowManager.start(BulkJob.Type.ADD);
+
+        try
+        {
+            for (int i = 0; i < BulkJobManager.PENDING_BATCHES_PER_THREAD; i++)
+            {
+                slowManager.submit(job, Arrays.asList(i + " veces dije que no"));
+            }
+
+            Thread submitter = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    slowManager.submit(job, Arrays.asList("Y otra vez dije que no"));
+                }
+            };
+
+            submitter.start();
+            submitter.join(200);
+            assertTrue(submitter.isAlive());
+
+            release.countDown();
+            submitter.join(5000);
+            assertFalse(submitter.isAlive());
+
+            slowManager.finish(job);
+            waitFor(job);
+
+            assertEquals(job.getProcessed(), BulkJobManager.PENDING_BATCHES_PER_THREAD + 1);
+        }
+        finally
+        {
+            release.countDown();
+            slowManager.shutdown();
+        }
+    }
+
+    private static void waitFor(final BulkJob job) throws InterruptedException
+    {
+        for (int i = 0; i < 200 && !job.isFinished(); i++)
+        {
+            Thread.sleep(50);
+        }
+
+        assertTrue(job.isFinished());
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+import com.rhymestore.store.DefaultRhymesLoader.State;
+
+/**
+ * Unit tests for the {@link DefaultRhymesLoader} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class DefaultRhymesLoaderTest
+{
+    @Test
+    public void testReadyWithoutDefaultRhymes()
+    {
+        DefaultRhymesLoader loader = new DefaultRhymesLoader(null);
+        assertEquals(loader.getState(), State.LOADING);
+
+        loader.start();
+        assertEquals(loader.getState(), State.READY);
+        assertEquals(loader.getChanged(), 0);
+    }
+
+    @Test
+    public void testFailedLoad() throws InterruptedException
+    {
+        DefaultRhymesLoader loader = new DefaultRhymesLoader("file:///unexisting/rhymes.txt");
+        loader.start();
+
+        for (int i = 0; i < 100 && loader.getState() == State.LOADING; i++)
+        {
+            Thread.sleep(50);
+        }
+
+        assertEquals(loader.getState(), State.FAILED);
+    }
+}
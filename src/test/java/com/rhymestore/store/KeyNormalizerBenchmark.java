@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+/**
+ * Compares the performance of the {@link KeyNormalizer} with the previous regular expression
+ * based normalization.
+ * <p>
+ * This is not a unit test. Run it as a Java application with the test classpath.
+ * 
+ * @author Enric Ruiz
+ */
+public class KeyNormalizerBenchmark
+{
+    /** Sample sentences and rhyme parts. */
+    private static final String[] VALUES =
+        {"Me escondo y no me ves", "¿Hay algo que rime con tres?", "Ya son veintidós!!", "on",
+            "ado", "Complicado me lo pones; patada en los cojones"};
+
+    private static final int WARMUP_ITERATIONS = 200000;
+
+    private static final int ITERATIONS = 1000000;
+
+    public static void main(final String... args)
+    {
+        KeyNormalizer normalizer = new KeyNormalizer();
+
+        // Warm up both implementations
+        run(null, WARMUP_ITERATIONS);
+        run(normalizer, WARMUP_ITERATIONS);
+
+        long legacy = run(null, ITERATIONS);
+        long table = run(normalizer, ITERATIONS);
+
+        System.out.printf("regular expressions: %.1f ns/op%n", (double) legacy / ITERATIONS);
+        System.out.printf("folding table: %.1f ns/op%n", (double) table / ITERATIONS);
+    }
+
+    private static long run(final KeyNormalizer normalizer, final int iterations)
+    {
+        int length = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            String value = VALUES[i % VALUES.length];
+            length += normalizer == null ? KeyNormalizerTest.legacyNormalize(value).length()
+                : normalizer.normalize(value).length();
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        // Use the result so the loop is not optimized away
+        if (length == 42)
+        {
+            System.out.println();
+        }
+
+        return elapsed;
+    }
+}
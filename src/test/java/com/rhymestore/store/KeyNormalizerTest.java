@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import static org.testng.Assert.assertEquals;
+
+import java.text.Normalizer;
+import java.text.Normalizer.Form;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link KeyNormalizer} class.
+ * 
+ * @author Enric Ruiz
+ */
+public class KeyNormalizerTest
+{
+    private final KeyNormalizer normalizer = new KeyNormalizer();
+
+    @Test
+    public void testNormalize()
+    {
+        assertEquals(normalizer.normalize(""), "");
+        assertEquals(normalizer.normalize("hola"), "hola");
+        assertEquals(normalizer.normalize("Canción"), "cancion");
+        assertEquals(normalizer.normalize("¿Qué tal, PINGÜINO?"), "quetalpinguino");
+        assertEquals(normalizer.normalize("Logroño 2011!!"), "logrono2011");
+    }
+
+    @Test
+    public void testCompatibleWithAllCharacters()
+    {
+        for (int c = 0; c <= Character.MAX_VALUE; c++)
+        {
+            String value = "a" + (char) c + "Z";
+            assertEquals(normalizer.normalize(value), legacyNormalize(value),
+                "Character " + Integer.toHexString(c));
+        }
+    }
+
+    @Test
+    public void testCompatibleWithSentences()
+    {
+        String[] sentences =
+            {"Ya son veintidós!!", "Me escondo y no me ves", "¿Hay algo que rime con tres?",
+                "ÁÉÍÓÚ áéíóú ÀÈÌÒÙ àèìòù ÄËÏÖÜ äëïöü Ññ Çç", "İstanbul ﬁ ǅ Ⅻ ①",
+                "𝐀 😀 \uD800 sueltos", "tab\tnewline\nend"};
+
+        for (String sentence : sentences)
+        {
+            assertEquals(normalizer.normalize(sentence), legacyNormalize(sentence));
+        }
+    }
+
+    /**
+     * The previous normalization implementation, used to check that the keys do not change.
+     */
+    /* package */static String legacyNormalize(final String value)
+    {
+        String token = value.toLowerCase();
+        token = Normalizer.normalize(token, Form.NFD);
+        token = token.replaceAll("[^\\p{ASCII}]", "");
+        token = token.replaceAll("[^a-zA-Z0-9]", "");
+        return token;
+    }
+}
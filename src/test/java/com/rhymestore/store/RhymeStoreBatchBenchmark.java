@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the performance of rhyming the sentences of a batch request one by one with rhyming
+ * them at once with {@link RhymeStore#getRhymes(List)}.
+ * <p>
+ * This is not a unit test. Run it as a Java application with the test classpath and a running
+ * Redis server. The test database is cleaned when the benchmark finishes.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RhymeStoreBatchBenchmark
+{
+    /** Sample rhymes. */
+    private static final String[] RHYMES =
+        {"Me escondo y no me ves", "Ya son veintidós!!", "Complicado me lo pones",
+            "Patada en los cojones"};
+
+    /** Sample sentences to rhyme. */
+    private static final String[] SENTENCES =
+        {"¿Hay algo que rime con tres?", "Rima con dos", "¿Cómo lo pones?", "Sin rima"};
+
+    /** The number of sentences rhymed at once, as in the batch requests of the API. */
+    private static final int BATCH_SIZE = 500;
+
+    private static final int WARMUP_ITERATIONS = 5000;
+
+    private static final int ITERATIONS = 20000;
+
+    public static void main(final String... args) throws IOException
+    {
+        TestRhymeStore store = new TestRhymeStore();
+
+        try
+        {
+            for (String rhyme : RHYMES)
+            {
+                store.add(rhyme);
+            }
+
+            // Warm up both implementations
+            run(store, false, WARMUP_ITERATIONS);
+            run(store, true, WARMUP_ITERATIONS);
+
+            long single = run(store, false, ITERATIONS);
+            long batch = run(store, true, ITERATIONS);
+
+            System.out.printf("one by one: %.1f ns/op%n", (double) single / ITERATIONS);
+            System.out.printf("batches of %d: %.1f ns/op%n", BATCH_SIZE, (double) batch
+                / ITERATIONS);
+        }
+        finally
+        {
+            store.cleanDB();
+        }
+    }
+
+    private static long run(final RhymeStore store, final boolean batched, final int iterations)
+        throws IOException
+    {
+        int found = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i += BATCH_SIZE)
+        {
+            List<String> sentences = new ArrayList<String>(BATCH_SIZE);
+            for (int j = i; j < Math.min(i + BATCH_SIZE, iterations); j++)
+            {
+                sentences.add(SENTENCES[j % SENTENCES.length]);
+            }
+
+            if (batched)
+            {
+                for (String rhyme : store.getRhymes(sentences))
+                {
+                    found += rhyme != null ? 1 : 0;
+                }
+            }
+            else
+            {
+                for (String sentence : sentences)
+                {
+                    found += store.getRhyme(sentence) != null ? 1 : 0;
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        // Use the result so the loop is not optimized away
+        if (found == 42)
+        {
+            System.out.println();
+        }
+
+        return elapsed;
+    }
+}
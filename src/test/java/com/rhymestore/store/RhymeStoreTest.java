@@ -27,11 +27,17 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.rhymestore.lang.StressType;
+
 /**
  * Unit tests for the {@link RhymeStore} class.
  * 
@@ -73,6 +79,46 @@ public class RhymeStoreTest
         assertEquals(store.getRhyme("Nada rima con dos"), "Ya son veintidós!!");
     }
 
+    @Test
+    public void testGetRhymes() throws IOException
+    {
+        List<String> rhymes = store.getRhymes(Arrays.asList("¿Hay algo que rime con tres?",
+            "no hay rima", "Nada rima con dos", "", "Otra vez con tres"));
+
+        assertEquals(rhymes.size(), 5);
+        assertEquals(rhymes.get(0), "Me escondo y no me ves");
+        assertNull(rhymes.get(1));
+        assertEquals(rhymes.get(2), "Ya son veintidós!!");
+        assertNull(rhymes.get(3));
+        assertEquals(rhymes.get(4), "Me escondo y no me ves");
+    }
+
+    @Test
+    public void testVersion() throws IOException
+    {
+        long version = store.getVersion();
+
+        store.add("Me escondo y no me ves");
+        assertEquals(store.getVersion(), version);
+
+        store.add("Otra vez con tres");
+        assertTrue(store.getVersion() > version);
+
+        version = store.getVersion();
+        store.delete("Otra vez con tres");
+        assertTrue(store.getVersion() > version);
+    }
+
+    @Test
+    public void testGetRhymeKey()
+    {
+        String key = store.getRhymeKey("Rima con tres");
+
+        assertEquals(store.getRhymeKey("Me escondo y no me ves"), key);
+        assertTrue(!key.equals(store.getRhymeKey("Rima con seis")));
+        assertNull(store.getRhymeKey(""));
+    }
+
     @Test
     public void testDeleteWithoutText() throws IOException
     {
@@ -108,4 +154,85 @@ public class RhymeStoreTest
         assertEquals(store.getRhyme("Nada rima con 1000000"), "Me apetece un montón");
         assertEquals(store.getRhyme("Nada rima con 7!"), "Dile que apriete");
     }
+
+    @Test
+    public void testSearchByWords() throws IOException
+    {
+        store.add("No me ves porque me escondo");
+
+        SearchResult result = store.search("me ESCONDO", null, null, 0, 10);
+        assertEquals(result.getTotal(), 2);
+        assertEquals(result.getRhymes(), Arrays.asList("Me escondo y no me ves",
+            "No me ves porque me escondo"));
+
+        assertEquals(store.search("veintidos", null, null, 0, 10).getRhymes(), Collections
+            .singletonList("Ya son veintidós!!"));
+        assertEquals(store.search("escondo veintidós", null, null, 0, 10).getTotal(), 0);
+        assertEquals(store.search("unexisting", null, null, 0, 10).getTotal(), 0);
+    }
+
+    @Test
+    public void testSearchRhymesWith() throws IOException
+    {
+        store.add("Esta rima es infame");
+
+        assertEquals(store.search(null, "¿Hay algo que rime con tres?", null, 0, 10).getRhymes(),
+            Collections.singletonList("Me escondo y no me ves"));
+        assertEquals(store.search("ya", "Nada rima con dos", null, 0, 10).getRhymes(), Collections
+            .singletonList("Ya son veintidós!!"));
+        assertEquals(store.search(null, "no hay rima", null, 0, 10).getTotal(), 0);
+    }
+
+    @Test
+    public void testSearchByStressTypeWithPages() throws IOException
+    {
+        store.add("Esta rima es infame");
+        store.add("Rima por defecto");
+
+        SearchResult first = store.search(null, null, StressType.LAST, 0, 1);
+        assertEquals(first.getTotal(), 2);
+        assertEquals(first.getRhymes(), Collections.singletonList("Me escondo y no me ves"));
+
+        SearchResult second = store.search(null, null, StressType.LAST, 1, 1);
+        assertEquals(second.getOffset(), 1);
+        assertEquals(second.getRhymes(), Collections.singletonList("Ya son veintidós!!"));
+
+        assertTrue(store.search(null, null, StressType.LAST, 2, 1).getRhymes().isEmpty());
+        assertEquals(store.search("rima", null, StressType.SECOND_LAST, 0, 10).getTotal(), 2);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSearchWithoutCriteria() throws IOException
+    {
+        store.search(" ", null, null, 0, 10);
+    }
+
+    @Test
+    public void testSearchAfterDelete() throws IOException
+    {
+        store.delete("Me escondo y no me ves");
+
+        assertEquals(store.search("escondo", null, null, 0, 10).getTotal(), 0);
+        assertEquals(store.search(null, null, StressType.LAST, 0, 10).getRhymes(), Collections
+            .singletonList("Ya son veintidós!!"));
+    }
+
+    @Test
+    public void testGetStressTypeCounts() throws IOException
+    {
+        store.add("Esta rima es infame");
+
+        Map<StressType, Integer> counts = store.getStressTypeCounts();
+        assertEquals(counts.get(StressType.LAST), Integer.valueOf(2));
+        assertEquals(counts.get(StressType.SECOND_LAST), Integer.valueOf(1));
+        assertEquals(counts.get(StressType.THIRD_LAST), Integer.valueOf(0));
+    }
+
+    @Test
+    public void testBuildSearchIndex() throws IOException
+    {
+        assertEquals(store.buildSearchIndex(), 2);
+        assertEquals(store.buildSearchIndex(), 0);
+        assertEquals(store.search("escondo", null, null, 0, 10).getTotal(), 1);
+    }
 }
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.store;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link RhymeSync} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RhymeSyncTest
+{
+    /** The store to synchronize. */
+    private TestRhymeStore store;
+
+    /** The synchronization to test. */
+    private RhymeSync sync;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        store = new TestRhymeStore();
+        sync = new RhymeSync(store);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        store.cleanDB();
+    }
+
+    @Test
+    public void testFirstSync() throws IOException
+    {
+        assertEquals(sync.sync(stream("Me escondo y no me ves\nYa son veintidós!!\n")), 2);
+        assertEquals(store.findAll().size(), 2);
+    }
+
+    @Test
+    public void testSyncOnlyChanges() throws IOException
+    {
+        StringBuilder rhymes = new StringBuilder();
+        for (int i = 0; i < 300; i++)
+        {
+            rhymes.append("Rima número ").append(i).append('\n');
+        }
+
+        assertEquals(sync.sync(stream(rhymes.toString())), 300);
+        assertEquals(sync.sync(stream(rhymes.toString())), 0);
+
+        // Replace one rhyme
+        String changed = rhymes.toString().replace("Rima número 150\n", "Me escondo y no me ves\n");
+        assertEquals(sync.sync(stream(changed)), 2);
+
+        Set<String> all = store.findAll();
+        assertEquals(all.size(), 300);
+        assertTrue(all.contains("Me escondo y no me ves"));
+        assertTrue(!all.contains("Rima número 150"));
+    }
+
+    @Test
+    public void testSyncUnchangedFile() throws IOException
+    {
+        File file = File.createTempFile("rhymes", ".txt");
+        file.deleteOnExit();
+
+        FileWriter writer = new FileWriter(file);
+        writer.write("Me escondo y no me ves\n");
+        writer.close();
+
+        assertEquals(sync.sync(file.toURI().toURL()), 1);
+
+        // The file is not read again
+        store.delete("Me escondo y no me ves");
+        assertEquals(sync.sync(file.toURI().toURL()), 0);
+        assertTrue(store.findAll().isEmpty());
+    }
+
+    private static InputStream stream(final String content)
+    {
+        return new ByteArrayInputStream(content.getBytes());
+    }
+}
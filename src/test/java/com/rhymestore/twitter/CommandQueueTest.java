@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import twitter4j.Twitter;
+
+import com.rhymestore.twitter.commands.TwitterCommand;
+
+/**
+ * Unit tests for the {@link CommandQueue} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class CommandQueueTest
+{
+    @Test
+    public void testEarliestDeadlineFirst() throws InterruptedException
+    {
+        CommandQueue queue = new CommandQueue(10);
+        ScheduledCommand late = command(5000);
+        ScheduledCommand early = command(1000);
+        ScheduledCommand none = command(ScheduledCommand.NO_DEADLINE);
+
+        queue.put(none);
+        queue.put(late);
+        queue.put(early);
+
+        List<ScheduledCommand> expired = new ArrayList<ScheduledCommand>();
+        assertSame(queue.poll(0, expired), early);
+        assertSame(queue.poll(0, expired), late);
+        assertSame(queue.poll(0, expired), none);
+        assertNull(queue.poll(0, expired));
+        assertTrue(expired.isEmpty());
+    }
+
+    @Test
+    public void testExpiredCommandsAreDiscarded() throws InterruptedException
+    {
+        CommandQueue queue = new CommandQueue(10);
+        ScheduledCommand expiring = command(1000);
+        ScheduledCommand valid = command(5000);
+
+        queue.put(expiring);
+        queue.put(valid);
+
+        List<ScheduledCommand> expired = new ArrayList<ScheduledCommand>();
+        assertSame(queue.poll(2000, expired), valid);
+        assertEquals(expired.size(), 1);
+        assertSame(expired.get(0), expiring);
+        assertEquals(queue.getExpiredCount(), 1);
+    }
+
+    @Test
+    public void testRetriesWaitAndGoLast() throws InterruptedException
+    {
+        CommandQueue queue = new CommandQueue(10);
+        ScheduledCommand failed = command(1000);
+        ScheduledCommand fresh = command(5000);
+
+        failed.failed(100);
+        queue.retry(failed);
+        queue.put(fresh);
+
+        assertEquals(queue.getDelayedCount(), 1);
+        assertEquals(queue.size(), 2);
+
+        List<ScheduledCommand> expired = new ArrayList<ScheduledCommand>();
+        assertSame(queue.poll(0, expired), fresh);
+        assertFalse(queue.hasReady(99));
+        assertTrue(queue.hasReady(100));
+        assertSame(queue.poll(100, expired), failed);
+    }
+
+    @Test
+    public void testOldestAge() throws InterruptedException
+    {
+        CommandQueue queue = new CommandQueue(10);
+        assertEquals(queue.getOldestAge(1000), 0);
+
+        queue.put(new ScheduledCommand(new NoOpCommand(), ScheduledCommand.NO_DEADLINE, 200));
+        queue.put(new ScheduledCommand(new NoOpCommand(), ScheduledCommand.NO_DEADLINE, 100));
+        assertEquals(queue.getOldestAge(1000), 900);
+    }
+
+    @Test
+    public void testPutWaitsForRoom() throws InterruptedException
+    {
+        final CommandQueue queue = new CommandQueue(1);
+        queue.put(command(ScheduledCommand.NO_DEADLINE));
+
+        Thread producer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    queue.put(command(ScheduledCommand.NO_DEADLINE));
+                }
+                catch (InterruptedException ex)
+                {
+                    // Test finished
+                }
+            }
+        };
+
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        queue.poll(0, new ArrayList<ScheduledCommand>());
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(queue.size(), 1);
+    }
+
+    @Test
+    public void testOfferDoesNotWaitForever() throws InterruptedException
+    {
+        CommandQueue queue = new CommandQueue(1);
+        assertTrue(queue.offer(command(ScheduledCommand.NO_DEADLINE), 10, TimeUnit.MILLISECONDS));
+
+        // The retries fill the queue, but do not block the offers
+        queue.retry(command(ScheduledCommand.NO_DEADLINE));
+        assertFalse(queue.offer(command(ScheduledCommand.NO_DEADLINE), 10, TimeUnit.MILLISECONDS));
+        assertEquals(queue.size(), 2);
+
+        queue.poll(0, new ArrayList<ScheduledCommand>());
+        queue.poll(0, new ArrayList<ScheduledCommand>());
+        assertTrue(queue.offer(command(ScheduledCommand.NO_DEADLINE), 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRemainingCapacity() throws InterruptedException
+    {
+        CommandQueue queue = new CommandQueue(2);
+        assertEquals(queue.remainingCapacity(), 2);
+
+        queue.put(command(ScheduledCommand.NO_DEADLINE));
+        assertEquals(queue.remainingCapacity(), 1);
+
+        // Retries may exceed the capacity
+        queue.retry(command(ScheduledCommand.NO_DEADLINE));
+        queue.retry(command(ScheduledCommand.NO_DEADLINE));
+        assertEquals(queue.remainingCapacity(), 0);
+    }
+
+    private static ScheduledCommand command(final long deadline)
+    {
+        return new ScheduledCommand(new NoOpCommand(), deadline, 0);
+    }
+
+    private static class NoOpCommand implements TwitterCommand
+    {
+        @Override
+        public void execute(final Twitter twitter)
+        {
+            // Nothing to do
+        }
+    }
+}
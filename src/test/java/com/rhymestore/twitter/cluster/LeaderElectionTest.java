@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.cluster;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link LeaderElection} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class LeaderElectionTest
+{
+    /** The lease used in the tests. */
+    private static final String LEASE = "twitter:test:leader";
+
+    /** The lease time to live, in milliseconds. */
+    private static final long TTL = LeaderElection.LEASE_TTL * 1000L;
+
+    /** The backend shared by the nodes. */
+    private ManualClockBackend backend;
+
+    /** The election of the first node. */
+    private LeaderElection node1;
+
+    /** The election of the second node. */
+    private LeaderElection node2;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        backend = new ManualClockBackend();
+        node1 = new LeaderElection(backend, LEASE, "node1");
+        node2 = new LeaderElection(backend, LEASE, "node2");
+    }
+
+    @Test
+    public void testOnlyOneLeader()
+    {
+        assertTrue(node1.update(0));
+        assertFalse(node2.update(0));
+
+        // The leader keeps the lease while it renews it
+        for (long now = 0; now < 3 * TTL; now += 1000)
+        {
+            backend.now = now;
+            assertTrue(node1.update(now));
+            assertFalse(node2.update(now));
+        }
+    }
+
+    @Test
+    public void testFailoverWhenLeaderDies()
+    {
+        assertTrue(node1.update(0));
+        assertFalse(node2.update(0));
+
+        // The first node stops renewing the lease
+        backend.now = TTL - 1;
+        assertFalse(node2.update(backend.now));
+
+        backend.now = TTL;
+        assertTrue(node2.update(backend.now));
+        assertFalse(node1.update(backend.now));
+    }
+
+    @Test
+    public void testFailoverWhenLeaderReleases()
+    {
+        assertTrue(node1.update(0));
+        node1.release();
+
+        assertFalse(node1.isLeader());
+        assertTrue(node2.update(0));
+    }
+
+    @Test
+    public void testStepDownIfLeaseCannotBeRenewed()
+    {
+        FlakyBackend flaky = new FlakyBackend();
+        LeaderElection node = new LeaderElection(flaky, LEASE, "node");
+
+        assertTrue(node.update(0));
+
+        flaky.failing = true;
+        assertTrue(node.update(LeaderElection.RENEW_INTERVAL));
+
+        // Step down before the lease expires
+        assertFalse(node.update(TTL - LeaderElection.RENEW_INTERVAL));
+    }
+
+    /**
+     * Local backend with a manual clock.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class ManualClockBackend extends LocalClusterBackend
+    {
+        /** The current time. */
+        private long now;
+
+        @Override
+        protected long currentTime()
+        {
+            return now;
+        }
+    }
+
+    /**
+     * Backend that fails when requested.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class FlakyBackend implements ClusterBackend
+    {
+        /** The backend used while not failing. */
+        private final LocalClusterBackend delegate = new LocalClusterBackend();
+
+        /** Makes the backend fail. */
+        private boolean failing;
+
+        @Override
+        public boolean acquireLease(final String lease, final String node, final int ttl)
+            throws IOException
+        {
+            check();
+            return delegate.acquireLease(lease, node, ttl);
+        }
+
+        @Override
+        public void releaseLease(final String lease, final String node) throws IOException
+        {
+            check();
+            delegate.releaseLease(lease, node);
+        }
+
+        @Override
+        public void push(final String queue, final String item) throws IOException
+        {
+            check();
+            delegate.push(queue, item);
+        }
+
+        @Override
+        public String pop(final String queue) throws IOException
+        {
+            check();
+            return delegate.pop(queue);
+        }
+
+        @Override
+        public int size(final String queue) throws IOException
+        {
+            check();
+            return delegate.size(queue);
+        }
+
+        @Override
+        public String get(final String key) throws IOException
+        {
+            check();
+            return delegate.get(key);
+        }
+
+        @Override
+        public void set(final String key, final String value) throws IOException
+        {
+            check();
+            delegate.set(key, value);
+        }
+
+        private void check() throws IOException
+        {
+            if (failing)
+            {
+                throw new IOException("Backend down");
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.cluster;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link RedisClusterBackend} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RedisClusterBackendTest
+{
+    /** The lease used in the tests. */
+    private static final String LEASE = "twitter:test:leader";
+
+    /** The queue used in the tests. */
+    private static final String QUEUE = "twitter:test:replies";
+
+    /** The key used in the tests. */
+    private static final String KEY = "twitter:test:checkpoint";
+
+    /** The backend to test. */
+    private RedisClusterBackend backend;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        backend = new RedisClusterBackend();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        backend.delete(Arrays.asList(LEASE, QUEUE, KEY));
+        backend.close();
+    }
+
+    @Test
+    public void testLease() throws IOException
+    {
+        assertTrue(backend.acquireLease(LEASE, "node1", 10));
+        assertFalse(backend.acquireLease(LEASE, "node2", 10));
+
+        // Renew the lease
+        assertTrue(backend.acquireLease(LEASE, "node1", 10));
+
+        // Only the owner can release the lease
+        backend.releaseLease(LEASE, "node2");
+        assertFalse(backend.acquireLease(LEASE, "node2", 10));
+
+        backend.releaseLease(LEASE, "node1");
+        assertTrue(backend.acquireLease(LEASE, "node2", 10));
+    }
+
+    @Test
+    public void testQueue() throws IOException
+    {
+        assertNull(backend.pop(QUEUE));
+
+        backend.push(QUEUE, "first");
+        backend.push(QUEUE, "second");
+        assertEquals(backend.size(QUEUE), 2);
+
+        assertEquals(backend.pop(QUEUE), "first");
+        assertEquals(backend.pop(QUEUE), "second");
+        assertEquals(backend.size(QUEUE), 0);
+    }
+
+    @Test
+    public void testGetAndSet() throws IOException
+    {
+        assertNull(backend.get(KEY));
+
+        backend.set(KEY, "12345");
+        assertEquals(backend.get(KEY), "12345");
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.cluster;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.twitter.commands.ReplyCommand;
+import com.rhymestore.twitter.journal.PendingReply;
+
+/**
+ * Unit tests for the {@link SharedReplyQueue} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class SharedReplyQueueTest
+{
+    /** The backend shared by the nodes. */
+    private LocalClusterBackend backend;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        backend = new LocalClusterBackend();
+    }
+
+    @Test
+    public void testRepliesAreSharedInOrder() throws IOException
+    {
+        SharedReplyQueue leader = new SharedReplyQueue(backend, "replies");
+        SharedReplyQueue follower = new SharedReplyQueue(backend, "replies");
+
+        assertTrue(leader.offer(reply(1, "Rima con camión")));
+        assertTrue(leader.offer(reply(2, "¿Y con 100%?")));
+        assertEquals(follower.size(), 2);
+
+        PendingReply first = follower.poll().getStatus();
+        assertEquals(first.getStatusId(), 1L);
+        assertEquals(first.getScreenName(), "user1");
+        assertEquals(first.getText(), "Rima con camión");
+        assertEquals(first.getCreatedAt(), 1000L);
+
+        PendingReply second = leader.poll().getStatus();
+        assertEquals(second.getStatusId(), 2L);
+        assertEquals(second.getText(), "¿Y con 100%?");
+
+        assertNull(follower.poll());
+        assertTrue(follower.isEmpty());
+    }
+
+    @Test
+    public void testInvalidRepliesAreIgnored()
+    {
+        backend.push("replies", "invalid");
+        assertNull(new SharedReplyQueue(backend, "replies").poll());
+        assertEquals(backend.pop("replies" + SharedReplyQueue.INVALID_SUFFIX), "invalid");
+    }
+
+    @Test
+    public void testInvalidRepliesDoNotStopTheQueue() throws IOException
+    {
+        SharedReplyQueue replies = new SharedReplyQueue(backend, "replies");
+
+        assertTrue(replies.offer(reply(1, "Rima con camión")));
+        backend.push("replies", "invalid");
+        assertTrue(replies.offer(reply(2, "¿Y con 100%?")));
+
+        assertEquals(replies.poll().getStatus().getStatusId(), 1L);
+        assertEquals(replies.poll().getStatus().getStatusId(), 2L);
+        assertNull(replies.poll());
+        assertEquals(backend.size("replies" + SharedReplyQueue.INVALID_SUFFIX), 1);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testFailuresArePropagated() throws IOException
+    {
+        new SharedReplyQueue(new UnavailableBackend(), "replies").offer(reply(1,
+            "Rima con camión"));
+    }
+
+    private static ReplyCommand reply(final long id, final String text)
+    {
+        return new ReplyCommand(new PendingReply(id, "user" + id, text, id * 1000));
+    }
+
+    /**
+     * {@link ClusterBackend} that cannot be reached.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class UnavailableBackend implements ClusterBackend
+    {
+        @Override
+        public boolean acquireLease(final String lease, final String node, final int ttl)
+            throws IOException
+        {
+            throw new IOException("The backend is not available");
+        }
+
+        @Override
+        public void releaseLease(final String lease, final String node) throws IOException
+        {
+            throw new IOException("The backend is not available");
+        }
+
+        @Override
+        public void push(final String queue, final String item) throws IOException
+        {
+            throw new IOException("The backend is not available");
+        }
+
+        @Override
+        public String pop(final String queue) throws IOException
+        {
+            throw new IOException("The backend is not available");
+        }
+
+        @Override
+        public int size(final String queue) throws IOException
+        {
+            throw new IOException("The backend is not available");
+        }
+
+        @Override
+        public String get(final String key) throws IOException
+        {
+            throw new IOException("The backend is not available");
+        }
+
+        @Override
+        public void set(final String key, final String value) throws IOException
+        {
+            throw new IOException("The backend is not available");
+        }
+    }
+}
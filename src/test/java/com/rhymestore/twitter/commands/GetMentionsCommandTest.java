@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.commands;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import twitter4j.Paging;
+import twitter4j.ResponseList;
+import twitter4j.Status;
+import twitter4j.TwitterException;
+
+import com.rhymestore.twitter.mock.MockResponseList;
+import com.rhymestore.twitter.mock.MockStatus;
+import com.rhymestore.twitter.mock.MockTwitter;
+import com.rhymestore.twitter.util.TwitterUtils;
+
+/**
+ * Unit tests for the {@link GetMentionsCommand} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class GetMentionsCommandTest
+{
+    /** The queue where the replies are enqueued. */
+    private Queue<TwitterCommand> commandQueue;
+
+    /** The command to test. */
+    private GetMentionsCommand getMentionsCommand;
+
+    /** The Twitter account with the mentions. */
+    private MentionsTwitter twitter;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        commandQueue = new LinkedBlockingQueue<TwitterCommand>();
+        getMentionsCommand = new GetMentionsCommand(commandQueue);
+        twitter = new MentionsTwitter();
+    }
+
+    @Test
+    public void testFirstExecutionDoesNotReply() throws TwitterException
+    {
+        twitter.mentions = 50;
+        getMentionsCommand.execute(twitter);
+
+        assertEquals(getMentionsCommand.getLastTweetId(), 50L);
+        assertTrue(commandQueue.isEmpty());
+        assertEquals(twitter.calls, 1);
+    }
+
+    @Test
+    public void testSinglePartialPage() throws TwitterException
+    {
+        getMentionsCommand.advanceLastTweetId(10);
+        twitter.mentions = 50;
+        getMentionsCommand.execute(twitter);
+
+        assertEquals(getMentionsCommand.getLastTweetId(), 50L);
+        assertEquals(commandQueue.size(), 40);
+        assertEquals(twitter.calls, 1);
+    }
+
+    @Test
+    public void testWalkSeveralPages() throws TwitterException
+    {
+        int pending = TwitterUtils.MENTIONS_PER_PAGE * 2 + 50;
+
+        getMentionsCommand.advanceLastTweetId(10);
+        twitter.mentions = 10 + pending;
+        getMentionsCommand.execute(twitter);
+
+        assertEquals(getMentionsCommand.getLastTweetId(), 10L + pending);
+        assertEquals(commandQueue.size(), pending);
+        assertEquals(twitter.calls, 3);
+
+        // Replies must be enqueued in chronological order
+        long previous = 10;
+        for (TwitterCommand cmd : commandQueue)
+        {
+            long statusId = ((ReplyCommand) cmd).getStatus().getStatusId();
+            assertEquals(statusId, previous + 1);
+            previous = statusId;
+        }
+    }
+
+    @Test
+    public void testPagesAreLimited() throws TwitterException
+    {
+        int maxMentions = TwitterUtils.MENTIONS_PER_PAGE * GetMentionsCommand.MAX_PAGES;
+
+        getMentionsCommand.advanceLastTweetId(10);
+        twitter.mentions = 10 + maxMentions + 100;
+        getMentionsCommand.execute(twitter);
+
+        // The last tweet must not skip the mentions that have not been fetched
+        assertEquals(getMentionsCommand.getLastTweetId(), 10L);
+        assertEquals(commandQueue.size(), maxMentions);
+        assertEquals(twitter.calls, GetMentionsCommand.MAX_PAGES);
+
+        // The next execution fetches the oldest mentions
+        getMentionsCommand.execute(twitter);
+
+        assertEquals(getMentionsCommand.getLastTweetId(), twitter.mentions);
+        assertEquals(commandQueue.size(), maxMentions + 100);
+        assertEquals(twitter.calls, GetMentionsCommand.MAX_PAGES + 1);
+    }
+
+    @Test
+    public void testShortPagesDoNotEndTheTimeline() throws TwitterException
+    {
+        getMentionsCommand.advanceLastTweetId(10);
+        twitter.mentions = 10 + TwitterUtils.MENTIONS_PER_PAGE + 50;
+        twitter.pageSize = TwitterUtils.MENTIONS_PER_PAGE / 2;
+        getMentionsCommand.execute(twitter);
+
+        assertEquals(getMentionsCommand.getLastTweetId(), twitter.mentions);
+        assertEquals(commandQueue.size(), TwitterUtils.MENTIONS_PER_PAGE + 50);
+        assertEquals(twitter.calls, 3);
+    }
+
+    @Test
+    public void testFailedRepliesAreNotSkipped() throws TwitterException
+    {
+        final List<ReplyCommand> shared = new ArrayList<ReplyCommand>();
+        final int[] failures = {1};
+
+        ReplySink sink = new ReplySink()
+        {
+            @Override
+            public boolean offer(final ReplyCommand reply) throws IOException
+            {
+                if (shared.size() == 20 && failures[0]-- > 0)
+                {
+                    throw new IOException("The shared queue is not available");
+                }
+
+                shared.add(reply);
+                return true;
+            }
+        };
+
+        getMentionsCommand = new GetMentionsCommand(new MentionHandler(sink, null, null));
+        getMentionsCommand.advanceLastTweetId(10);
+        twitter.mentions = 50;
+
+        try
+        {
+            getMentionsCommand.execute(twitter);
+            fail("The failure to share a reply should have been propagated");
+        }
+        catch (TwitterException ex)
+        {
+            // Expected
+        }
+
+        assertEquals(getMentionsCommand.getLastTweetId(), 10L);
+        assertEquals(shared.size(), 20);
+
+        // The next execution shares the remaining mentions
+        getMentionsCommand.execute(twitter);
+
+        assertEquals(getMentionsCommand.getLastTweetId(), 50L);
+        assertEquals(shared.size(), 40);
+    }
+
+    @Test
+    public void testNoNewMentions() throws TwitterException
+    {
+        getMentionsCommand.advanceLastTweetId(10);
+        twitter.mentions = 10;
+        getMentionsCommand.execute(twitter);
+
+        assertEquals(getMentionsCommand.getLastTweetId(), 10L);
+        assertTrue(commandQueue.isEmpty());
+        assertEquals(twitter.calls, 1);
+    }
+
+    /**
+     * Twitter account with mentions identified from 1 to {@link #mentions}.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class MentionsTwitter extends MockTwitter
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** The id of the most recent mention. */
+        private long mentions;
+
+        /** The number of calls to the mentions timeline. */
+        private int calls;
+
+        /** The maximum number of mentions returned in each page, if any. */
+        private int pageSize = -1;
+
+        @Override
+        public ResponseList<Status> getMentions(final Paging paging) throws TwitterException
+        {
+            calls++;
+
+            long sinceId = Math.max(paging.getSinceId(), 0);
+            long maxId = paging.getMaxId() > 0 ? paging.getMaxId() : mentions;
+            int count = paging.getCount() > 0 ? paging.getCount() : 20;
+            if (pageSize > 0)
+            {
+                count = Math.min(count, pageSize);
+            }
+
+            ResponseList<Status> page = new MockResponseList<Status>();
+            for (long id = maxId; id > sinceId && page.size() < count; id--)
+            {
+                page.add(new MockStatus(id, "@rhymestore rima con camión"));
+            }
+
+            return page;
+        }
+
+        @Override
+        public String getScreenName()
+        {
+            return "rhymestore";
+        }
+    }
+}
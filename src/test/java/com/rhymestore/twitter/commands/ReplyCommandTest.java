@@ -88,7 +88,7 @@ public class ReplyCommandTest
 
     private ReplyCommand createReplyCommand(String status)
     {
-        ReplyCommand replyCommand = new ReplyCommand(new MockStatus(status), null);
+        ReplyCommand replyCommand = new ReplyCommand(new MockStatus(status));
         replyCommand.rhymeStore = store;
         return replyCommand;
     }
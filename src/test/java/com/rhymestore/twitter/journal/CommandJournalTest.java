@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.journal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link CommandJournal} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class CommandJournalTest
+{
+    /** The journal file. */
+    private File file;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("rhymestore", ".journal");
+        file.delete();
+    }
+
+    @AfterMethod
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void testEmptyJournal() throws IOException
+    {
+        CommandJournal journal = CommandJournal.open(file);
+        assertEquals(journal.getLastTweetId(), -1L);
+        assertTrue(journal.getPendingReplies().isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void testReplay() throws IOException
+    {
+        CommandJournal journal = CommandJournal.open(file);
+        journal.added(new PendingReply(1L, "user", "Rima esto, por favor", 0L));
+        journal.added(new PendingReply(2L, "other user", "Línea\nnueva", 1300000000000L));
+        journal.added(new PendingReply(3L, "user", "", 0L));
+        journal.completed(1L);
+        journal.checkpoint(3L);
+        journal.close();
+
+        journal = CommandJournal.open(file);
+        List<PendingReply> pending = journal.getPendingReplies();
+
+        assertEquals(journal.getLastTweetId(), 3L);
+        assertEquals(pending.size(), 2);
+        assertEquals(pending.get(0).getStatusId(), 2L);
+        assertEquals(pending.get(0).getScreenName(), "other user");
+        assertEquals(pending.get(0).getText(), "Línea\nnueva");
+        assertEquals(pending.get(0).getCreatedAt(), 1300000000000L);
+        assertEquals(pending.get(1).getStatusId(), 3L);
+        assertEquals(pending.get(1).getText(), "");
+        journal.close();
+    }
+
+    @Test
+    public void testUncommittedChangesAreNotWritten() throws IOException
+    {
+        CommandJournal journal = CommandJournal.open(file);
+        journal.added(new PendingReply(1L, "user", "Primera", 0L));
+        journal.commit();
+        journal.added(new PendingReply(2L, "user", "Segunda", 0L));
+
+        // Read the journal without closing the current one, as after a crash
+        CommandJournal recovered = CommandJournal.open(file);
+        assertEquals(recovered.getPendingReplies().size(), 1);
+        assertEquals(recovered.getPendingReplies().get(0).getStatusId(), 1L);
+        recovered.close();
+        journal.close();
+    }
+
+    @Test
+    public void testIncompleteRecordsAreIgnored() throws IOException
+    {
+        CommandJournal journal = CommandJournal.open(file);
+        journal.added(new PendingReply(1L, "user", "Primera", 0L));
+        journal.checkpoint(1L);
+        journal.close();
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("A 2 use".getBytes("UTF-8"));
+        out.close();
+
+        journal = CommandJournal.open(file);
+        assertEquals(journal.getLastTweetId(), 1L);
+        assertEquals(journal.getPendingReplies().size(), 1);
+        journal.close();
+    }
+
+    @Test
+    public void testCompaction() throws IOException
+    {
+        CommandJournal journal = CommandJournal.open(file);
+        journal.added(new PendingReply(0L, "user", "Pendiente", 0L));
+
+        for (int i = 1; i <= CommandJournal.COMPACTION_THRESHOLD; i++)
+        {
+            journal.added(new PendingReply(i, "user", "Rima número " + i, 0L));
+            journal.completed(i);
+        }
+
+        journal.checkpoint(CommandJournal.COMPACTION_THRESHOLD);
+        journal.close();
+
+        // Only the pending reply and the checkpoint remain
+        assertTrue(file.length() < 100);
+
+        journal = CommandJournal.open(file);
+        assertEquals(journal.getLastTweetId(), CommandJournal.COMPACTION_THRESHOLD);
+        assertEquals(journal.getPendingReplies().size(), 1);
+        assertEquals(journal.getPendingReplies().get(0).getStatusId(), 0L);
+        journal.close();
+    }
+}
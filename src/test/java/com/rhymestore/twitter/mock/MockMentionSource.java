@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.mock;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import twitter4j.Status;
+import twitter4j.TwitterException;
+
+import com.rhymestore.twitter.stream.MentionListener;
+import com.rhymestore.twitter.stream.MentionSource;
+
+/**
+ * Local stand-in for the Twitter streaming API, used in tests.
+ * <p>
+ * Each connection delivers the pushed statuses until it is closed or a failure is pushed.
+ * 
+ * @author Ignasi Barrera
+ */
+public class MockMentionSource implements MentionSource
+{
+    /** Event that closes the current connection. */
+    private static final Object DISCONNECT = new Object();
+
+    /** The events to deliver. */
+    private final BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+
+    /** The number of established connections. */
+    private final AtomicInteger connections = new AtomicInteger();
+
+    // Methods used in tests
+
+    public void push(final Status status)
+    {
+        events.add(status);
+    }
+
+    public void fail(final TwitterException ex)
+    {
+        events.add(ex);
+    }
+
+    public void disconnect()
+    {
+        events.add(DISCONNECT);
+    }
+
+    public int getConnections()
+    {
+        return connections.get();
+    }
+
+    public boolean isIdle()
+    {
+        return events.isEmpty();
+    }
+
+    @Override
+    public void stream(final MentionListener listener) throws TwitterException
+    {
+        connections.incrementAndGet();
+        listener.onConnect();
+
+        try
+        {
+            while (true)
+            {
+                Object event = events.take();
+
+                if (event == DISCONNECT)
+                {
+                    return;
+                }
+                if (event instanceof TwitterException)
+                {
+                    throw (TwitterException) event;
+                }
+
+                listener.onStatus((Status) event);
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        disconnect();
+    }
+}
@@ -43,14 +43,23 @@ public class MockStatus implements Status
 {
     private static final long serialVersionUID = 1L;
 
+    /** The status id. */
+    private final long id;
+
     /** The status text. */
     private final String text;
 
     // Methods used in tests
 
     public MockStatus(String text)
+    {
+        this(0, text);
+    }
+
+    public MockStatus(long id, String text)
     {
         super();
+        this.id = id;
         this.text = text;
     }
 
@@ -69,7 +78,7 @@ public class MockStatus implements Status
     @Override
     public long getId()
     {
-        return 0;
+        return id;
     }
 
     // Unused methods
@@ -71,6 +71,9 @@ public class MockTwitter implements Twitter
 {
     private static final long serialVersionUID = 1L;
 
+    /** The id of the mocked account, different from the id of the {@link MockUser}. */
+    public static final long ACCOUNT_ID = 1;
+
     private String lastUpdatedStatus;
 
     // Methods used in tests
@@ -87,6 +90,12 @@ public class MockTwitter implements Twitter
         return lastUpdatedStatus;
     }
 
+    @Override
+    public User verifyCredentials() throws TwitterException
+    {
+        return new MockUser(ACCOUNT_ID, getScreenName());
+    }
+
     // Unused methods
 
     @Override
@@ -889,12 +898,6 @@ public class MockTwitter implements Twitter
         return null;
     }
 
-    @Override
-    public User verifyCredentials() throws TwitterException
-    {
-        return null;
-    }
-
     @Override
     public Status createFavorite(long id) throws TwitterException
     {
@@ -38,12 +38,34 @@ public class MockUser implements User
 {
     private static final long serialVersionUID = 1L;
 
+    private final long id;
+
+    private final String screenName;
+
+    public MockUser()
+    {
+        this(0, "MockName");
+    }
+
+    public MockUser(final long id, final String screenName)
+    {
+        super();
+        this.id = id;
+        this.screenName = screenName;
+    }
+
     // Methods used in tests
 
+    @Override
+    public long getId()
+    {
+        return id;
+    }
+
     @Override
     public String getScreenName()
     {
-        return "MockName";
+        return screenName;
     }
 
     // Unused methods
@@ -78,12 +100,6 @@ public class MockUser implements User
         return 0;
     }
 
-    @Override
-    public long getId()
-    {
-        return 0;
-    }
-
     @Override
     public String getLang()
     {
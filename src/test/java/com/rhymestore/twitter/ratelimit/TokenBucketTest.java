@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.ratelimit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link TokenBucket} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class TokenBucketTest
+{
+    /** One call per second, with bursts of three calls. */
+    private TokenBucket createBucket()
+    {
+        return new TokenBucket(3, 60, 60000, 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCapacity()
+    {
+        new TokenBucket(0, 60, 60000, 0);
+    }
+
+    @Test
+    public void testBurst()
+    {
+        TokenBucket bucket = createBucket();
+
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(0));
+        assertEquals(bucket.getWaitTime(0), 1000);
+    }
+
+    @Test
+    public void testRefill()
+    {
+        TokenBucket bucket = createBucket();
+
+        for (int i = 0; i < 3; i++)
+        {
+            bucket.tryAcquire(0);
+        }
+
+        assertFalse(bucket.tryAcquire(999));
+        assertTrue(bucket.tryAcquire(1000));
+        assertFalse(bucket.tryAcquire(1000));
+
+        // The bucket does not grow beyond its capacity
+        assertEquals(bucket.getAvailableTokens(100000), 3);
+    }
+
+    @Test
+    public void testUpdateSpreadsRemainingCalls()
+    {
+        TokenBucket bucket = createBucket();
+
+        // Two calls left in the next ten seconds
+        bucket.update(2, 10000, 0);
+        assertEquals(bucket.getAvailableTokens(0), 2);
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(4999));
+        assertTrue(bucket.tryAcquire(5000));
+
+        // The default rate is restored after the reset time
+        assertEquals(bucket.getAvailableTokens(11000), 2);
+    }
+
+    @Test
+    public void testUpdateWithoutRemainingCalls()
+    {
+        TokenBucket bucket = createBucket();
+
+        bucket.update(0, 10000, 0);
+        assertFalse(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(9999));
+        assertEquals(bucket.getWaitTime(5000), 5000);
+
+        // The whole quota is available after the reset
+        assertEquals(bucket.getAvailableTokens(10000), 3);
+    }
+
+    @Test
+    public void testUpdateAfterReset()
+    {
+        TokenBucket bucket = createBucket();
+
+        bucket.update(0, 1000, 2000);
+        assertEquals(bucket.getAvailableTokens(2000), 3);
+    }
+
+    @Test
+    public void testBlock()
+    {
+        TokenBucket bucket = createBucket();
+
+        bucket.block(5000);
+        assertFalse(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(4999));
+        assertEquals(bucket.getWaitTime(0), 5000);
+
+        // Only one call is allowed after the block
+        assertTrue(bucket.tryAcquire(5000));
+        assertFalse(bucket.tryAcquire(5000));
+    }
+}
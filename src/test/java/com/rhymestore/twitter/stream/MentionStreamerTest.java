@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import twitter4j.TwitterException;
+
+import com.rhymestore.twitter.commands.GetMentionsCommand;
+import com.rhymestore.twitter.commands.MentionHandler;
+import com.rhymestore.twitter.commands.TwitterCommand;
+import com.rhymestore.twitter.mock.MockMentionSource;
+import com.rhymestore.twitter.mock.MockStatus;
+import com.rhymestore.twitter.mock.MockTwitter;
+
+/**
+ * Unit tests for the {@link MentionStreamer} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class MentionStreamerTest
+{
+    /** The maximum time to wait for the streamer, in milliseconds. */
+    private static final long TIMEOUT = 5000;
+
+    /** The local stand-in of the stream. */
+    private MockMentionSource source;
+
+    /** The queue where the replies are enqueued. */
+    private Queue<TwitterCommand> commandQueue;
+
+    /** The streamer to test. */
+    private MentionStreamer streamer;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        source = new MockMentionSource();
+        commandQueue = new LinkedBlockingQueue<TwitterCommand>();
+
+        MentionHandler handler = new MentionHandler(commandQueue, null);
+        MockTwitter twitter = new MockTwitter()
+        {
+            @Override
+            public String getScreenName()
+            {
+                return "RhymeStore";
+            }
+        };
+
+        streamer = new MentionStreamer(source, handler, new GetMentionsCommand(handler), twitter);
+        streamer.start();
+    }
+
+    @AfterMethod
+    public void tearDown()
+    {
+        streamer.shutdown();
+    }
+
+    @Test
+    public void testEnqueueStreamedMentions() throws InterruptedException
+    {
+        source.push(new MockStatus(1, "@rhymestore rima con camión"));
+        source.push(new MockStatus(2, "Esto no es una mención"));
+        source.push(new MockStatus(1, "@rhymestore rima con camión")); // Duplicate
+        source.push(new MockStatus(3, "@RhymeStore y esto con sartén"));
+
+        waitUntilIdle();
+
+        assertEquals(commandQueue.size(), 2);
+    }
+
+    @Test
+    public void testReconnectAfterFailure() throws InterruptedException
+    {
+        waitForConnections(1);
+        source.fail(new TwitterException("Connection lost"));
+        waitForConnections(2);
+    }
+
+    @Test
+    public void testCaughtUpAfterPoll() throws InterruptedException
+    {
+        waitForConnections(1);
+        assertFalse(streamer.isCaughtUp());
+
+        streamer.polled(streamer.getGeneration());
+        assertTrue(streamer.isCaughtUp());
+
+        // Polling is needed again after the connection is lost
+        source.disconnect();
+        waitUntilIdle();
+        assertFalse(streamer.isCaughtUp());
+    }
+
+    @Test
+    public void testNotCaughtUpIfConnectedDuringPoll() throws InterruptedException
+    {
+        waitForConnections(1);
+        int generation = streamer.getGeneration();
+
+        source.disconnect();
+        waitForConnections(2);
+
+        streamer.polled(generation);
+        assertFalse(streamer.isCaughtUp());
+    }
+
+    private void waitUntilIdle() throws InterruptedException
+    {
+        long start = System.currentTimeMillis();
+        while (!source.isIdle() && System.currentTimeMillis() - start < TIMEOUT)
+        {
+            Thread.sleep(10);
+        }
+
+        // Let the streamer process the last event
+        Thread.sleep(100);
+    }
+
+    private void waitForConnections(final int connections) throws InterruptedException
+    {
+        long start = System.currentTimeMillis();
+        while (source.getConnections() < connections
+            && System.currentTimeMillis() - start < TIMEOUT)
+        {
+            Thread.sleep(10);
+        }
+
+        assertEquals(source.getConnections(), connections);
+    }
+}
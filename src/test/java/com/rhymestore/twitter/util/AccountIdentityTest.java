@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.twitter.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import twitter4j.TwitterException;
+import twitter4j.User;
+
+import com.rhymestore.twitter.mock.MockTwitter;
+import com.rhymestore.twitter.mock.MockUser;
+
+/**
+ * Unit tests for the {@link AccountIdentity} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class AccountIdentityTest
+{
+    /** The mocked Twitter API client. */
+    private CountingTwitter twitter;
+
+    /** The identity to test. */
+    private AccountIdentity identity;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        twitter = new CountingTwitter();
+        identity = new AccountIdentity(twitter);
+    }
+
+    @Test
+    public void testIdentityIsCached() throws TwitterException
+    {
+        assertEquals(identity.getId(), MockTwitter.ACCOUNT_ID);
+        assertEquals(identity.getScreenName(), "rhymestore");
+        assertTrue(identity.isCurrentUser(new MockUser(MockTwitter.ACCOUNT_ID, "rhymestore")));
+        assertEquals(twitter.calls, 1);
+    }
+
+    @Test
+    public void testIsCurrentUserComparesIds() throws TwitterException
+    {
+        assertTrue(identity.isCurrentUser(new MockUser(MockTwitter.ACCOUNT_ID, "renamed")));
+        assertFalse(identity.isCurrentUser(new MockUser(MockTwitter.ACCOUNT_ID + 1,
+            "rhymestore")));
+        assertFalse(identity.isCurrentUser(null));
+    }
+
+    @Test
+    public void testRefresh() throws TwitterException
+    {
+        assertEquals(identity.getScreenName(), "rhymestore");
+
+        twitter.screenName = "rhymestore2";
+        assertEquals(identity.getScreenName(), "rhymestore");
+
+        identity.refresh();
+        assertEquals(identity.getScreenName(), "rhymestore2");
+        assertEquals(twitter.calls, 2);
+    }
+
+    /**
+     * Counts the calls to obtain the identity of the account.
+     * 
+     * @author Ignasi Barrera
+     */
+    private static class CountingTwitter extends MockTwitter
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int calls;
+
+        private String screenName = "rhymestore";
+
+        @Override
+        public User verifyCredentials() throws TwitterException
+        {
+            calls++;
+            return super.verifyCredentials();
+        }
+
+        @Override
+        public String getScreenName()
+        {
+            return screenName;
+        }
+    }
+}
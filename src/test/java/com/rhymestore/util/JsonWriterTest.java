@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.util;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link JsonWriter} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class JsonWriterTest
+{
+    /** The written document. */
+    private StringWriter out;
+
+    /** The writer to test. */
+    private JsonWriter json;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        out = new StringWriter();
+        json = new JsonWriter(out);
+    }
+
+    @Test
+    public void testWriteObject() throws IOException
+    {
+        json.beginObject().name("rhyme").value("Rima").name("total").value(2).name("valid")
+            .value(true).name("none").value((String) null).endObject();
+
+        assertEquals(out.toString(),
+            "{\"rhyme\":\"Rima\",\"total\":2,\"valid\":true,\"none\":null}");
+    }
+
+    @Test
+    public void testWriteNested() throws IOException
+    {
+        json.beginObject().name("rhymes").beginArray().value("Una").value("Dos").endArray()
+            .name("empty").beginArray().endArray().name("object").beginObject().endObject()
+            .endObject();
+
+        assertEquals(out.toString(),
+            "{\"rhymes\":[\"Una\",\"Dos\"],\"empty\":[],\"object\":{}}");
+    }
+
+    @Test
+    public void testEscape() throws IOException
+    {
+        json.value("\"Rima\"\\\n\t\u0001\u2028ñ");
+        assertEquals(out.toString(), "\"\\\"Rima\\\"\\\\\\n\\t\\u0001\\u2028ñ\"");
+    }
+}
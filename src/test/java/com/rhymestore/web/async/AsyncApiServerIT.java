@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.async;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.store.TestRhymeStore;
+
+/**
+ * Load tests for the {@link AsyncApiServer} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class AsyncApiServerIT
+{
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncApiServerIT.class);
+
+    /** The number of concurrent clients. */
+    private static final int CLIENTS = 1000;
+
+    /** The store with the rhymes. */
+    private TestRhymeStore store;
+
+    /** The server to test. */
+    private AsyncApiServer server;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        store = new TestRhymeStore();
+        store.add("Me escondo y no me ves");
+
+        server = new AsyncApiServer(0, new RhymeLookupService(store));
+        server.start();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        server.shutdown();
+        store.cleanDB();
+    }
+
+    @Test
+    public void testConcurrentClients() throws Exception
+    {
+        final URL url = new URL("http://localhost:" + server.getPort() + AsyncApiServer.API_PATH
+            + "?rhyme=" + URLEncoder.encode("¿Rima con tres?", "UTF-8"));
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger rhymed = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+
+        for (int i = 0; i < CLIENTS; i++)
+        {
+            clients.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+
+                        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+                        conn.setRequestProperty("Accept", "application/json");
+
+                        if (conn.getResponseCode() == HttpURLConnection.HTTP_OK
+                            && read(conn.getInputStream()).contains("Me escondo y no me ves"))
+                        {
+                            rhymed.incrementAndGet();
+                        }
+                    }
+                    catch (Exception ex)
+                    {
+                        LOGGER.error("Request failed", ex);
+                    }
+                }
+            });
+        }
+
+        long begin = System.currentTimeMillis();
+        start.countDown();
+        clients.shutdown();
+
+        assertTrue(clients.awaitTermination(60, TimeUnit.SECONDS));
+        long elapsed = System.currentTimeMillis() - begin;
+
+        LOGGER.info("{} concurrent requests served in {} ms", CLIENTS, elapsed);
+        assertEquals(rhymed.get(), CLIENTS);
+    }
+
+    @Test
+    public void testInvalidRhymesReportTheViolations() throws Exception
+    {
+        URL url = new URL("http://localhost:" + server.getPort() + AsyncApiServer.API_PATH
+            + "?rhyme=" + URLEncoder.encode("Esto no es ab23cd", "UTF-8"));
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("Accept", "application/json");
+
+        assertEquals(conn.getResponseCode(), HttpURLConnection.HTTP_BAD_REQUEST);
+
+        String body = read(conn.getErrorStream());
+        assertTrue(body.startsWith("{\"errors\":[\""));
+        assertTrue(body.contains("Esto no es ab23cd"));
+    }
+
+    private static String read(final InputStream in) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+
+        try
+        {
+            StringBuilder body = new StringBuilder();
+            String line = null;
+
+            while ((line = reader.readLine()) != null)
+            {
+                body.append(line);
+            }
+
+            return body.toString();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.web.async;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.event.Event;
+import com.rhymestore.event.EventBus;
+import com.rhymestore.store.TestRhymeStore;
+
+/**
+ * Integration tests for the {@link EventStreamHandler} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class EventStreamHandlerIT
+{
+    /** The number of concurrent clients. */
+    private static final int CLIENTS = 50;
+
+    /** The time between the heartbeats, in milliseconds. */
+    private static final long HEARTBEAT_INTERVAL = 100;
+
+    /** The time a write can be pending, in milliseconds. */
+    private static final long WRITE_TIMEOUT = 500;
+
+    /** The bus with the events. */
+    private EventBus eventBus;
+
+    /** The handler to test. */
+    private EventStreamHandler handler;
+
+    /** The server. */
+    private AsyncApiServer server;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        eventBus = new EventBus();
+        handler = new EventStreamHandler(eventBus, HEARTBEAT_INTERVAL, WRITE_TIMEOUT);
+
+        server = new AsyncApiServer(0, new RhymeLookupService(new TestRhymeStore()));
+        server.createContext(EventStreamHandler.EVENTS_PATH, handler);
+        server.start();
+    }
+
+    @AfterMethod
+    public void tearDown()
+    {
+        handler.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void testFanOut() throws Exception
+    {
+        List<BufferedReader> clients = new ArrayList<BufferedReader>();
+        for (int i = 0; i < CLIENTS; i++)
+        {
+            clients.add(connect(null));
+        }
+
+        waitForStreams(CLIENTS);
+        Event event = eventBus.publish(Event.Type.ADDED, Collections.singletonMap("rhyme", "Hola"));
+
+        for (BufferedReader client : clients)
+        {
+            assertEquals(readEvent(client), "id: 1|event: added|data: {\"id\":1,\"type\":\"added\","
+                + "\"time\":" + event.getTime() + ",\"rhyme\":\"Hola\"}");
+            client.close();
+        }
+    }
+
+    @Test
+    public void testReplayMissedEvents() throws Exception
+    {
+        eventBus.publish(Event.Type.ADDED, Collections.singletonMap("rhyme", "Primera rima"));
+        eventBus.publish(Event.Type.DELETED, Collections.singletonMap("rhyme", "Primera rima"));
+
+        BufferedReader client = connect("1");
+        assertTrue(readEvent(client).startsWith("id: 2|event: deleted|"));
+
+        waitForStreams(1);
+        eventBus.publish(Event.Type.ADDED, Collections.singletonMap("rhyme", "Segunda rima"));
+        assertTrue(readEvent(client).startsWith("id: 3|event: added|"));
+        client.close();
+    }
+
+    @Test
+    public void testClientsThatDoNotReadAreDisconnected() throws Exception
+    {
+        // Enough clients that do not read to block all the writers
+        List<Socket> stalled = new ArrayList<Socket>();
+        for (int i = 0; i < 4; i++)
+        {
+            Socket socket = new Socket("localhost", server.getPort());
+            socket.setReceiveBufferSize(1024);
+
+            OutputStream request = socket.getOutputStream();
+            request.write(("GET " + EventStreamHandler.EVENTS_PATH + " HTTP/1.1\r\nHost: localhost"
+                + "\r\n\r\n").getBytes("UTF-8"));
+            request.flush();
+            stalled.add(socket);
+        }
+
+        waitForStreams(stalled.size());
+
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 64 * 1024)
+        {
+            text.append("Una rima muy larga ");
+        }
+
+        for (int i = 0; i < EventStreamHandler.MAX_BUFFERED_EVENTS / 2; i++)
+        {
+            eventBus.publish(Event.Type.ADDED, Collections.singletonMap("rhyme", text.toString()));
+        }
+
+        waitForStreams(0);
+
+        // The writers are available for the clients that read
+        BufferedReader client = connect(null);
+        waitForStreams(1);
+        eventBus.publish(Event.Type.ADDED, Collections.singletonMap("rhyme", "Hola"));
+        assertTrue(readEvent(client).contains("\"rhyme\":\"Hola\""));
+        client.close();
+
+        for (Socket socket : stalled)
+        {
+            socket.close();
+        }
+    }
+
+    private BufferedReader connect(final String lastEventId) throws IOException
+    {
+        URL url =
+            new URL("http://localhost:" + server.getPort() + EventStreamHandler.EVENTS_PATH);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+
+        if (lastEventId != null)
+        {
+            conn.setRequestProperty("Last-Event-ID", lastEventId);
+        }
+
+        assertEquals(conn.getResponseCode(), HttpURLConnection.HTTP_OK);
+        assertTrue(conn.getContentType().startsWith("text/event-stream"));
+
+        return new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"));
+    }
+
+    private void waitForStreams(final int streams) throws InterruptedException
+    {
+        for (int i = 0; i < 100 && handler.getStreams() != streams; i++)
+        {
+            Thread.sleep(50);
+        }
+
+        assertEquals(handler.getStreams(), streams);
+    }
+
+    private static String readEvent(final BufferedReader reader) throws IOException
+    {
+        StringBuilder event = new StringBuilder();
+        String line = null;
+
+        while ((line = reader.readLine()) != null)
+        {
+            if (line.length() == 0)
+            {
+                if (event.length() > 0)
+                {
+                    return event.toString();
+                }
+            }
+            else if (!line.startsWith(":") && !line.startsWith("retry:"))
+            {
+                event.append(event.length() > 0 ? "|" : "").append(line);
+            }
+        }
+
+        return event.toString();
+    }
+}
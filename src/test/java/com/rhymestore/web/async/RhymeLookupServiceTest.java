@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.async;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.store.TestRhymeStore;
+
+/**
+ * Unit tests for the {@link RhymeLookupService} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RhymeLookupServiceTest
+{
+    /** The store with the rhymes. */
+    private TestRhymeStore store;
+
+    /** The service to test. */
+    private RhymeLookupService service;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        store = new TestRhymeStore();
+        store.add("Me escondo y no me ves");
+        store.add("Ya son veintidós!!");
+
+        service = new RhymeLookupService(store);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        service.shutdown();
+        store.cleanDB();
+    }
+
+    @Test
+    public void testLookup() throws InterruptedException
+    {
+        service.start();
+
+        int lookups = 100;
+        final Map<String, String> rhymes = new ConcurrentHashMap<String, String>();
+        final CountDownLatch done = new CountDownLatch(lookups);
+
+        for (int i = 0; i < lookups; i++)
+        {
+            final String sentence = i % 2 == 0 ? i + " rima con tres" : i + " rima con dos";
+
+            assertTrue(service.lookup(sentence, new RhymeCallback()
+            {
+                @Override
+                public void rhymed(final String rhyme)
+                {
+                    rhymes.put(sentence, rhyme);
+                    done.countDown();
+                }
+
+                @Override
+                public void failed(final IOException ex)
+                {
+                    done.countDown();
+                }
+            }));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(rhymes.size(), lookups);
+        assertEquals(rhymes.get("0 rima con tres"), "Me escondo y no me ves");
+        assertEquals(rhymes.get("1 rima con dos"), "Ya son veintidós!!");
+    }
+
+    @Test
+    public void testLookupWhenStopped()
+    {
+        assertFalse(service.lookup("Rima con tres", new RhymeCallback()
+        {
+            @Override
+            public void rhymed(final String rhyme)
+            {
+                // Not called
+            }
+
+            @Override
+            public void failed(final IOException ex)
+            {
+                // Not called
+            }
+        }));
+    }
+
+    @Test
+    public void testAcceptedLookupsAreAnsweredOnShutdown() throws InterruptedException
+    {
+        service.start();
+
+        final AtomicInteger accepted = new AtomicInteger();
+        final AtomicInteger answered = new AtomicInteger();
+        final RhymeCallback callback = new RhymeCallback()
+        {
+            @Override
+            public void rhymed(final String rhyme)
+            {
+                answered.incrementAndGet();
+            }
+
+            @Override
+            public void failed(final IOException ex)
+            {
+                answered.incrementAndGet();
+            }
+        };
+
+        Thread client = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < 100000; i++)
+                {
+                    if (service.lookup(i + " rima con tres", callback))
+                    {
+                        accepted.incrementAndGet();
+                    }
+                }
+            }
+        };
+
+        client.start();
+        Thread.sleep(50);
+        service.shutdown();
+        client.join();
+
+        assertFalse(service.lookup("Rima con tres", callback));
+        assertEquals(answered.get(), accepted.get());
+    }
+}
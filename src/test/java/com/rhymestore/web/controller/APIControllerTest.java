@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.controller;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.rhymestore.store.TestRhymeStore;
+
+/**
+ * Unit tests for the batch requests of the {@link APIController} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class APIControllerTest
+{
+    /** The store with the rhymes. */
+    private TestRhymeStore store;
+
+    /** The controller to test. */
+    private APIController controller;
+
+    @BeforeMethod
+    public void setUp() throws IOException
+    {
+        store = new TestRhymeStore();
+        store.add("Me escondo y no me ves");
+        store.add("Ya son veintidós!!");
+
+        controller = new APIController(store);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException
+    {
+        store.cleanDB();
+    }
+
+    @Test
+    public void testPostJson() throws IOException
+    {
+        String response = post("Rima con tres\n\n  Rima con dos  \n", ResponseFormat.JSON);
+
+        assertEquals(response, "{\"rhymes\":[\"Me escondo y no me ves\",\"Ya son veintidós!!\"]}");
+    }
+
+    @Test
+    public void testPostXml() throws IOException
+    {
+        String response = post("Rima con tres\nRima con dos\n", ResponseFormat.XML);
+
+        assertTrue(response.startsWith("<?xml"));
+        assertTrue(response.contains("<rhyme>Me escondo y no me ves</rhyme>"));
+        assertTrue(response.contains("<rhyme>Ya son veintidós!!</rhyme>"));
+        assertTrue(response.trim().endsWith("</rhymes>"));
+    }
+
+    @Test
+    public void testPostSeveralBatches() throws IOException
+    {
+        int sentences = APIController.BATCH_SIZE * 2 + 1;
+        StringBuilder body = new StringBuilder();
+
+        for (int i = 0; i < sentences; i++)
+        {
+            body.append(i % 2 == 0 ? "Rima con tres" : "Rima con dos").append('\n');
+        }
+
+        String response = post(body.toString(), ResponseFormat.JSON);
+
+        assertTrue(response.endsWith("]}"));
+        assertEquals(count(response, "Me escondo y no me ves"), APIController.BATCH_SIZE + 1);
+        assertEquals(count(response, "Ya son veintidós!!"), APIController.BATCH_SIZE);
+    }
+
+    @Test
+    public void testValidate()
+    {
+        assertNull(controller.validate(Arrays.asList("Rima con tres", "Rima con dos"), 0));
+
+        String violation =
+            controller.validate(Arrays.asList("Rima con tres", "Esto no es ab23cd"), 10);
+        assertTrue(violation.startsWith("Invalid sentence 12: "));
+    }
+
+    @Test
+    public void testInvalidSentenceEndsTheResponse() throws IOException
+    {
+        StringBuilder body = new StringBuilder();
+
+        for (int i = 0; i < APIController.BATCH_SIZE; i++)
+        {
+            body.append("Rima con tres\n");
+        }
+
+        body.append("Esto no es ab23cd\nRima con dos\n");
+
+        String response = post(body.toString(), ResponseFormat.JSON);
+
+        assertFalse(response.endsWith("]}"));
+        assertEquals(count(response, "Me escondo y no me ves"), APIController.BATCH_SIZE);
+        assertEquals(count(response, "Ya son veintidós!!"), 0);
+    }
+
+    private String post(final String body, final ResponseFormat format) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        BufferedReader reader = new BufferedReader(new StringReader(body));
+
+        List<String> sentences = controller.readBatch(reader);
+        assertNull(controller.validate(sentences, 0));
+
+        controller.writeRhymes(reader, controller.getRhymes(sentences), format,
+            new PrintWriter(out));
+
+        return out.toString();
+    }
+
+    private static int count(final String text, final String value)
+    {
+        int count = 0;
+
+        for (int i = text.indexOf(value); i >= 0; i = text.indexOf(value, i + value.length()))
+        {
+            count++;
+        }
+
+        return count;
+    }
+}
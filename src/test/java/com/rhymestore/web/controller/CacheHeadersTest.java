@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.controller;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link CacheHeaders} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class CacheHeadersTest
+{
+    @Test
+    public void testEtag()
+    {
+        String etag = CacheHeaders.etag(3, "JSON", "key");
+
+        assertTrue(etag.startsWith("\"3-"));
+        assertTrue(etag.endsWith("\""));
+        assertEquals(CacheHeaders.etag(3, "JSON", "key"), etag);
+        assertFalse(CacheHeaders.etag(4, "JSON", "key").equals(etag));
+        assertFalse(CacheHeaders.etag(3, "XML", "key").equals(etag));
+        assertEquals(CacheHeaders.etag(3, "JSON", null), CacheHeaders.etag(3, "JSON", ""));
+    }
+
+    @Test
+    public void testMatches()
+    {
+        String etag = CacheHeaders.etag(1, "list");
+
+        assertFalse(CacheHeaders.matches(null, etag));
+        assertFalse(CacheHeaders.matches("\"0-abc\"", etag));
+        assertTrue(CacheHeaders.matches(etag, etag));
+        assertTrue(CacheHeaders.matches("W/" + etag, etag));
+        assertTrue(CacheHeaders.matches("\"0-abc\", " + etag, etag));
+        assertTrue(CacheHeaders.matches("*", etag));
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.rhymestore.web.controller;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link ResponseFormat} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class ResponseFormatTest
+{
+    @Test
+    public void testNegotiateDefault()
+    {
+        assertEquals(ResponseFormat.negotiate(null), ResponseFormat.XML);
+        assertEquals(ResponseFormat.negotiate("*/*"), ResponseFormat.XML);
+        assertEquals(ResponseFormat.negotiate("text/html"), ResponseFormat.XML);
+    }
+
+    @Test
+    public void testNegotiateMediaType()
+    {
+        assertEquals(ResponseFormat.negotiate("application/json"), ResponseFormat.JSON);
+        assertEquals(ResponseFormat.negotiate("text/xml"), ResponseFormat.XML);
+        assertEquals(ResponseFormat.negotiate("text/html, Application/JSON, */*"),
+            ResponseFormat.JSON);
+    }
+
+    @Test
+    public void testNegotiateQuality()
+    {
+        assertEquals(ResponseFormat.negotiate("application/json;q=0.5, text/xml"),
+            ResponseFormat.XML);
+        assertEquals(ResponseFormat.negotiate("text/xml; q=0.2, application/json; q=0.8"),
+            ResponseFormat.JSON);
+        assertEquals(ResponseFormat.negotiate("application/json, text/xml"), ResponseFormat.JSON);
+        assertEquals(ResponseFormat.negotiate("application/json;q=0"), ResponseFormat.XML);
+    }
+}
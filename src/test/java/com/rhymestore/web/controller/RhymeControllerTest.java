@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2010 Enric Ruiz, Ignasi Barrera
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.rhymestore.web.controller;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link RhymeController} class.
+ * 
+ * @author Ignasi Barrera
+ */
+public class RhymeControllerTest
+{
+    @Test
+    public void testGetBoundary()
+    {
+        assertEquals(RhymeController.getBoundary("multipart/form-data; boundary=abc"), "--abc");
+        assertEquals(RhymeController.getBoundary("Multipart/Form-Data; boundary=\"a b\""),
+            "--a b");
+        assertEquals(RhymeController.getBoundary("multipart/form-data; charset=UTF-8; "
+            + "boundary=abc"), "--abc");
+    }
+
+    @Test
+    public void testGetBoundaryWithoutMultipart()
+    {
+        assertNull(RhymeController.getBoundary(null));
+        assertNull(RhymeController.getBoundary("text/plain"));
+        assertNull(RhymeController.getBoundary("multipart/form-data"));
+    }
+
+    @Test
+    public void testGetHeaderParameter()
+    {
+        assertEquals(RhymeController.getHeaderParameter("text/plain; charset=ISO-8859-1",
+            "charset"), "ISO-8859-1");
+        assertEquals(RhymeController.getHeaderParameter("form-data; name=\"rhymes\"", "name"),
+            "rhymes");
+        assertNull(RhymeController.getHeaderParameter("text/plain", "charset"));
+    }
+
+    @Test
+    public void testReadPartsWithTheirCharset() throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("Content-Disposition: form-data; name=\"rhymes\"\r\n"
+            + "Content-Type: text/plain; charset=ISO-8859-1\r\n\r\n").getBytes("ISO-8859-1"));
+        body.write("Rima con camión\r\n".getBytes("ISO-8859-1"));
+        body.write("Content-Disposition: form-data; name=rhymes\r\n\r\n".getBytes("UTF-8"));
+        body.write("Rima con camión\r\n".getBytes("UTF-8"));
+        body.write("Content-Disposition: form-data; name=\"other\"\r\n\r\n".getBytes("UTF-8"));
+
+        LineReader reader = new LineReader(new ByteArrayInputStream(body.toByteArray()));
+
+        String charset = RhymeController.getBulkFieldCharset(reader, "UTF-8");
+        assertEquals(charset, "ISO-8859-1");
+        assertEquals(reader.readLine(charset), "Rima con camión");
+
+        charset = RhymeController.getBulkFieldCharset(reader, "UTF-8");
+        assertEquals(charset, "UTF-8");
+        assertEquals(reader.readLine(charset), "Rima con camión");
+
+        assertNull(RhymeController.getBulkFieldCharset(reader, "UTF-8"));
+        assertNull(reader.readLine("UTF-8"));
+    }
+}